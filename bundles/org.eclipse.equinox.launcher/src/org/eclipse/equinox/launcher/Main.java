@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2012 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -249,6 +249,23 @@ public class Main {
 	private static final String KEY_CONFIGINI_TIMESTAMP = "configIniTimestamp"; //$NON-NLS-1$
 	private static final String PROP_IGNORE_USER_CONFIGURATION = "eclipse.ignoreUserConfiguration"; //$NON-NLS-1$
 
+	// sorted directory listings keyed by directory abs path; see getSearchCandidates
+	private final Map searchCandidates = new HashMap(4);
+
+	/**
+	 * The sorted names of a directory and the modification time of the directory
+	 * at the time it got listed.
+	 */
+	private static final class DirectoryListing {
+		final long lastModified;
+		final String[] names;
+
+		DirectoryListing(long lastModified, String[] names) {
+			this.lastModified = lastModified;
+			this.names = names;
+		}
+	}
+
 	/**
 	 * A structured form for a version identifier.
 	 * 
@@ -1028,12 +1045,14 @@ public class Main {
 		File root = resolveFile(new File(start));
 
 		// Note that File.list only gives you file names not the complete path from start
-		String[] candidates = root.list();
+		String[] candidates = getSearchCandidates(root);
 		if (candidates == null)
 			return null;
 
 		ArrayList matches = new ArrayList(2);
-		for (int i = 0; i < candidates.length; i++) {
+		// the candidates are sorted; only the names starting with the target can match
+		int first = Arrays.binarySearch(candidates, target);
+		for (int i = first < 0 ? -(first + 1) : first; i < candidates.length && candidates[i].startsWith(target); i++) {
 			if (isMatchingCandidate(target, candidates[i], root))
 				matches.add(candidates[i]);
 		}
@@ -1045,6 +1064,27 @@ public class Main {
 		return candidate.getAbsolutePath().replace(File.separatorChar, '/') + (candidate.isDirectory() ? "/" : ""); //$NON-NLS-1$//$NON-NLS-2$
 	}
 
+	/*
+	 * Returns the sorted names of the given directory.  The launcher searches the same
+	 * directories (e.g. the plugins directory) for several targets so the names are only
+	 * listed again if the directory got modified since it was last listed.
+	 */
+	private String[] getSearchCandidates(File root) {
+		String key = root.getAbsolutePath();
+		long lastModified = root.lastModified();
+		DirectoryListing listing = (DirectoryListing) searchCandidates.get(key);
+		if (listing != null && listing.lastModified == lastModified)
+			return listing.names;
+		String[] names = root.list();
+		if (names == null) {
+			searchCandidates.remove(key);
+			return null;
+		}
+		Arrays.sort(names);
+		searchCandidates.put(key, new DirectoryListing(lastModified, names));
+		return names;
+	}
+
 	private boolean isMatchingCandidate(String target, String candidate, File root) {
 		if (candidate.equals(target))
 			return true;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2012 IBM Corporation and others. All rights reserved.
+ * Copyright (c) 2004, 2014 IBM Corporation and others. All rights reserved.
  * This program and the accompanying materials are made available under the
  * terms of the Eclipse Public License v1.0 which accompanies this distribution,
  * and is available at http://www.eclipse.org/legal/epl-v10.html
@@ -21,6 +21,11 @@ public class GroupingChecker {
 	// ResolverBundle -> HashMap of packages; keyed by
 	// package name -> PackageRoots
 	private Map<ResolverBundle, Map<String, PackageRoots>> bundles = new HashMap<ResolverBundle, Map<String, PackageRoots>>();
+	// caches the result of consistency checks between package roots; keyed by
+	// PackageRoots -> HashMap of results; keyed by
+	// PackageRoots -> Boolean
+	// the entries of package roots are removed when the roots change or get cleared
+	private Map<PackageRoots, Map<PackageRoots, Boolean>> consistentWith = new HashMap<PackageRoots, Map<PackageRoots, Boolean>>();
 
 	/*
 	 * This method fully populates a bundles package roots for the purpose of resolving
@@ -36,7 +41,7 @@ public class GroupingChecker {
 		for (int j = 0; j < requires.length; j++) {
 			ResolverBundle selectedSupplier = (ResolverBundle) requires[j].getSelectedSupplier();
 			if (selectedSupplier != null)
-				isConsistentInternal(bundle, selectedSupplier, new ArrayList<ResolverBundle>(1), true, null);
+				isConsistentInternal(bundle, selectedSupplier, new HashSet<ResolverBundle>(), true, null);
 		}
 		// process all imports
 		// must check resolved imports to get any dynamically resolved imports
@@ -67,15 +72,14 @@ public class GroupingChecker {
 	 * If an inconsistency is found the export inconsistency is returned; otherwise null is returned
 	 */
 	public PackageRoots[][] isConsistent(ResolverBundle requiringBundle, ResolverBundle matchingBundle) {
-		List<PackageRoots[]> results = isConsistentInternal(requiringBundle, matchingBundle, new ArrayList<ResolverBundle>(1), false, null);
+		List<PackageRoots[]> results = isConsistentInternal(requiringBundle, matchingBundle, new HashSet<ResolverBundle>(), false, null);
 		return results == null ? null : results.toArray(new PackageRoots[results.size()][]);
 	}
 
-	private List<PackageRoots[]> isConsistentInternal(ResolverBundle requiringBundle, ResolverBundle matchingBundle, List<ResolverBundle> visited, boolean dynamicImport, List<PackageRoots[]> results) {
+	private List<PackageRoots[]> isConsistentInternal(ResolverBundle requiringBundle, ResolverBundle matchingBundle, Set<ResolverBundle> visited, boolean dynamicImport, List<PackageRoots[]> results) {
 		// needed to prevent endless cycles
-		if (visited.contains(matchingBundle))
+		if (!visited.add(matchingBundle))
 			return results;
-		visited.add(matchingBundle);
 		// check that the packages exported by the matching bundle are consistent
 		ResolverExport[] matchingExports = matchingBundle.getExportPackages();
 		for (int i = 0; i < matchingExports.length; i++) {
@@ -164,7 +168,7 @@ public class GroupingChecker {
 	/*
 	 * returns package roots for a specific package name for a specific bundle
 	 */
-	PackageRoots getPackageRoots(ResolverBundle bundle, String packageName, List<ResolverBundle> visited) {
+	PackageRoots getPackageRoots(ResolverBundle bundle, String packageName, Set<ResolverBundle> visited) {
 		Map<String, PackageRoots> packages = bundles.get(bundle);
 		if (packages == null) {
 			packages = new HashMap<String, PackageRoots>(5);
@@ -172,16 +176,15 @@ public class GroupingChecker {
 		}
 		PackageRoots packageRoots = packages.get(packageName);
 		if (packageRoots == null) {
-			packageRoots = createPackageRoots(bundle, packageName, visited == null ? new ArrayList<ResolverBundle>(1) : visited);
+			packageRoots = createPackageRoots(bundle, packageName, visited == null ? new HashSet<ResolverBundle>() : visited);
 			packages.put(packageName, packageRoots);
 		}
 		return packageRoots != null ? packageRoots : nullPackageRoots;
 	}
 
-	private PackageRoots createPackageRoots(ResolverBundle bundle, String packageName, List<ResolverBundle> visited) {
-		if (visited.contains(bundle))
-			return null;
-		visited.add(bundle); // prevent endless cycles
+	private PackageRoots createPackageRoots(ResolverBundle bundle, String packageName, Set<ResolverBundle> visited) {
+		if (!visited.add(bundle))
+			return null; // prevent endless cycles
 		// check imports
 		if (bundle.getBundleDescription().isResolved()) {
 			// must check resolved imports to get any dynamically resolved imports 
@@ -267,10 +270,48 @@ public class GroupingChecker {
 
 	public void clear() {
 		bundles.clear();
+		consistentWith.clear();
 	}
 
 	public void clear(ResolverBundle rb) {
-		bundles.remove(rb);
+		Map<String, PackageRoots> packages = bundles.remove(rb);
+		if (packages == null)
+			return;
+		for (PackageRoots packageRoots : packages.values())
+			clearConsistentWith(packageRoots);
+	}
+
+	// the roots are consistent if one is a subset of the other
+	boolean isConsistentWith(PackageRoots roots1, PackageRoots roots2) {
+		Map<PackageRoots, Boolean> results = consistentWith.get(roots1);
+		Boolean result = results == null ? null : results.get(roots2);
+		if (result == null) {
+			result = Boolean.valueOf(roots1.subSet(roots1.roots, roots2.roots) || roots1.subSet(roots2.roots, roots1.roots));
+			// the check is symmetric
+			putConsistentWith(roots1, roots2, result);
+			putConsistentWith(roots2, roots1, result);
+		}
+		return result.booleanValue();
+	}
+
+	private void putConsistentWith(PackageRoots roots1, PackageRoots roots2, Boolean result) {
+		Map<PackageRoots, Boolean> results = consistentWith.get(roots1);
+		if (results == null) {
+			results = new HashMap<PackageRoots, Boolean>(4);
+			consistentWith.put(roots1, results);
+		}
+		results.put(roots2, result);
+	}
+
+	void clearConsistentWith(PackageRoots packageRoots) {
+		Map<PackageRoots, Boolean> results = consistentWith.remove(packageRoots);
+		if (results == null)
+			return;
+		for (PackageRoots other : results.keySet()) {
+			Map<PackageRoots, Boolean> otherResults = consistentWith.get(other);
+			if (otherResults != null)
+				otherResults.remove(packageRoots);
+		}
 	}
 
 	class PackageRoots {
@@ -304,6 +345,8 @@ public class GroupingChecker {
 				System.arraycopy(roots, 0, newRoots, 0, roots.length);
 				newRoots[roots.length] = export;
 				roots = newRoots;
+				// the cached consistency checks used the old roots
+				clearConsistentWith(this);
 			}
 		}
 
@@ -322,14 +365,13 @@ public class GroupingChecker {
 				addRoot(packageRoots.roots[i]);
 		}
 
-		public List<PackageRoots[]> isConsistentClassSpace(ResolverBundle importingBundle, List<PackageRoots> visited, List<PackageRoots[]> results) {
+		public List<PackageRoots[]> isConsistentClassSpace(ResolverBundle importingBundle, Set<PackageRoots> visited, List<PackageRoots[]> results) {
 			if (roots == null)
 				return results;
 			if (visited == null)
-				visited = new ArrayList<PackageRoots>(1);
-			if (visited.contains(this))
+				visited = new HashSet<PackageRoots>();
+			if (!visited.add(this))
 				return results;
-			visited.add(this);
 			int size = roots.length;
 			for (int i = 0; i < size; i++) {
 				ResolverExport root = roots[i];
@@ -344,7 +386,7 @@ public class GroupingChecker {
 					if (thisUsedRoots == importingUsedRoots)
 						continue;
 					if (thisUsedRoots != nullPackageRoots && importingUsedRoots != nullPackageRoots)
-						if (!(subSet(thisUsedRoots.roots, importingUsedRoots.roots) || subSet(importingUsedRoots.roots, thisUsedRoots.roots))) {
+						if (!isConsistentWith(thisUsedRoots, importingUsedRoots)) {
 							if (results == null)
 								results = new ArrayList<PackageRoots[]>(1);
 							results.add(new PackageRoots[] {this, importingUsedRoots});
@@ -356,7 +398,7 @@ public class GroupingChecker {
 			return results;
 		}
 
-		public List<PackageRoots[]> isConsistentClassSpace(PackageRoots exportingRoots, ResolverBundle exporter, List<PackageRoots> visited, List<PackageRoots[]> results) {
+		public List<PackageRoots[]> isConsistentClassSpace(PackageRoots exportingRoots, ResolverBundle exporter, Set<PackageRoots> visited, List<PackageRoots[]> results) {
 			if (roots == null)
 				return results;
 			int size = roots.length;
@@ -366,10 +408,9 @@ public class GroupingChecker {
 				if (uses == null)
 					continue;
 				if (visited == null)
-					visited = new ArrayList<PackageRoots>(1);
-				if (visited.contains(this))
+					visited = new HashSet<PackageRoots>();
+				if (!visited.add(this))
 					return results;
-				visited.add(this);
 				for (int j = 0; j < uses.length; j++) {
 					if (uses[j].equals(root.getName()) || !uses[j].equals(exportingRoots.name))
 						continue;
@@ -378,7 +419,7 @@ public class GroupingChecker {
 					if (thisUsedRoots == exportingRoots)
 						return results;
 					if (thisUsedRoots != nullPackageRoots && exportingUsedRoots != nullPackageRoots)
-						if (!(subSet(thisUsedRoots.roots, exportingUsedRoots.roots) || subSet(exportingUsedRoots.roots, thisUsedRoots.roots))) {
+						if (!isConsistentWith(thisUsedRoots, exportingUsedRoots)) {
 							if (results == null)
 								results = new ArrayList<PackageRoots[]>(1);
 							results.add(new PackageRoots[] {this, exportingUsedRoots});
@@ -390,12 +431,12 @@ public class GroupingChecker {
 			return results;
 		}
 
-		List<PackageRoots[]> addConflicts(ResolverBundle bundle, String usedPackage, List<PackageRoots> visited, List<PackageRoots[]> results) {
+		List<PackageRoots[]> addConflicts(ResolverBundle bundle, String usedPackage, Set<PackageRoots> visited, List<PackageRoots[]> results) {
 			PackageRoots bundleUsedRoots = getPackageRoots(bundle, usedPackage, null);
 			if (this == bundleUsedRoots)
 				return results;
 			if (this != nullPackageRoots && bundleUsedRoots != nullPackageRoots)
-				if (!(subSet(this.roots, bundleUsedRoots.roots) || subSet(bundleUsedRoots.roots, this.roots))) {
+				if (!isConsistentWith(this, bundleUsedRoots)) {
 					if (results == null)
 						results = new ArrayList<PackageRoots[]>(1);
 					results.add(new PackageRoots[] {this, bundleUsedRoots});
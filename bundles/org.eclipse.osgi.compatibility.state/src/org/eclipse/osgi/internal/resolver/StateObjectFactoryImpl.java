@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2003, 2011 IBM Corporation and others.
+ * Copyright (c) 2003, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -454,7 +454,11 @@ public class StateObjectFactoryImpl implements StateObjectFactory {
 				storageManager.close();
 			}
 		}
-		StateReader reader = new StateReader(stateFile, lazyFile, false);
+		boolean lazyLoad = StateReader.isLazyLoadingEnabled();
+		StateReader reader = new StateReader(stateFile, lazyFile, lazyLoad);
+		if (lazyLoad)
+			// the reader must be set before the bundles are added so that they get marked as lazy loaded
+			toRestore.setReader(reader);
 		if (!reader.loadState(toRestore, expectedTimestamp))
 			return null;
 		return toRestore;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2003, 2013 IBM Corporation and others.
+ * Copyright (c) 2003, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -13,6 +13,8 @@ package org.eclipse.osgi.internal.resolver;
 
 import java.io.*;
 import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.AccessController;
 import java.util.*;
 import java.util.Map.Entry;
@@ -31,7 +33,8 @@ final class StateReader {
 	public static final String STATE_FILE = ".state"; //$NON-NLS-1$
 	public static final String LAZY_FILE = ".lazy"; //$NON-NLS-1$
 	public static final String UTF_8 = "UTF-8"; //$NON-NLS-1$
-	private static final int BUFFER_SIZE_LAZY = 4096;
+	/** The system property used to enable lazy loading of the bundle descriptions read from a state directory */
+	public static final String PROP_LAZY_LOADING = "osgi.state.lazyLoading"; //$NON-NLS-1$
 	private static final int BUFFER_SIZE_FULLYREAD = 16384;
 	private static final SecureAction secureAction = AccessController.doPrivileged(SecureAction.createSecureAction());
 
@@ -134,7 +137,7 @@ final class StateReader {
 			//read in from lazy data file; using the fully read buffer size because we are reading the complete file in.
 			lazyIn = new DataInputStream(new BufferedInputStream(secureAction.getFileInputStream(lazyFile), BUFFER_SIZE_FULLYREAD));
 			for (int i = 0; i < numBundles; i++)
-				readBundleDescriptionLazyData(lazyIn, 0);
+				readBundleDescriptionLazyData(lazyIn);
 		} finally {
 			in.close();
 			if (lazyIn != null)
@@ -189,7 +192,7 @@ final class StateReader {
 		if (lazyLoad)
 			return true;
 		for (int i = 0; i < numBundles; i++)
-			readBundleDescriptionLazyData(in, 0);
+			readBundleDescriptionLazyData(in);
 		return true;
 	}
 
@@ -256,9 +259,7 @@ final class StateReader {
 	}
 
 	@SuppressWarnings("unchecked")
-	private BundleDescriptionImpl readBundleDescriptionLazyData(DataInputStream in, int skip) throws IOException {
-		if (skip > 0)
-			in.skipBytes(skip);
+	private BundleDescriptionImpl readBundleDescriptionLazyData(DataInputStream in) throws IOException {
 		int index = in.readInt();
 		BundleDescriptionImpl result = (BundleDescriptionImpl) getFromObjectTable(index);
 		if (result.isFullyLoaded()) {
@@ -775,10 +776,66 @@ final class StateReader {
 		return in.readByte();
 	}
 
-	private DataInputStream openLazyFile() throws IOException {
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, offset);
+			if (read < 0)
+				throw new EOFException();
+			offset += read;
+		}
+	}
+
+	/**
+	 * An unsynchronized input stream over a byte array.
+	 */
+	private static final class BytesInputStream extends InputStream {
+		private final byte[] bytes;
+		private int pos;
+
+		BytesInputStream(byte[] bytes) {
+			this.bytes = bytes;
+		}
+
+		public int read() {
+			return pos < bytes.length ? bytes[pos++] & 0xff : -1;
+		}
+
+		public int read(byte[] b, int off, int len) {
+			if (len == 0)
+				return 0;
+			int available = bytes.length - pos;
+			if (available <= 0)
+				return -1;
+			if (len > available)
+				len = available;
+			System.arraycopy(bytes, pos, b, off, len);
+			pos += len;
+			return len;
+		}
+
+		public long skip(long n) {
+			int skipped = (int) Math.max(0, Math.min(n, bytes.length - pos));
+			pos += skipped;
+			return skipped;
+		}
+
+		public int available() {
+			return bytes.length - pos;
+		}
+	}
+
+	private File getLazyFile() throws IOException {
 		if (lazyFile == null)
-			throw new IOException(); // TODO error message here!
-		return new DataInputStream(new BufferedInputStream(secureAction.getFileInputStream(lazyFile), BUFFER_SIZE_LAZY));
+			throw new IOException("The state was not read from a state directory; there is no lazy data file to load from."); //$NON-NLS-1$
+		return lazyFile;
+	}
+
+	private DataInputStream openLazyFile() throws IOException {
+		return new DataInputStream(new BufferedInputStream(secureAction.getFileInputStream(getLazyFile()), BUFFER_SIZE_FULLYREAD));
+	}
+
+	static boolean isLazyLoadingEnabled() {
+		return Boolean.valueOf(secureAction.getProperty(PROP_LAZY_LOADING)).booleanValue();
 	}
 
 	boolean isLazyLoaded() {
@@ -799,7 +856,7 @@ final class StateReader {
 		try {
 			in = openLazyFile();
 			for (int i = 0; i < numBundles; i++)
-				readBundleDescriptionLazyData(in, 0);
+				readBundleDescriptionLazyData(in);
 		} catch (IOException ioe) {
 			throw new RuntimeException(ioe.getMessage(), ioe); // TODO need error message here
 		} finally {
@@ -814,19 +871,23 @@ final class StateReader {
 
 	void fullyLoad(BundleDescriptionImpl target) throws IOException {
 		setAccessedFlag(true);
-		DataInputStream in = null;
+		// get the set of bundles that must be loaded according to dependencies
+		List<BundleDescriptionImpl> toLoad = new ArrayList<BundleDescriptionImpl>();
+		addDependencies(target, toLoad);
+		if (toLoad.isEmpty())
+			return;
+		FileInputStream fis = secureAction.getFileInputStream(getLazyFile());
 		try {
-			in = openLazyFile();
-			// get the set of bundles that must be loaded according to dependencies
-			List<BundleDescriptionImpl> toLoad = new ArrayList<BundleDescriptionImpl>();
-			addDependencies(target, toLoad);
-			int skipBytes[] = getSkipBytes(toLoad);
-			// look for the lazy data of the toLoad list
-			for (int i = 0; i < skipBytes.length; i++)
-				readBundleDescriptionLazyData(in, skipBytes[i]);
+			FileChannel channel = fis.getChannel();
+			// read the lazy data of each bundle directly at its offset; dependencies are read first
+			// so that references to their objects can be found in the object table
+			for (BundleDescriptionImpl bundle : toLoad) {
+				byte[] data = new byte[bundle.getLazyDataSize()];
+				readFully(channel, ByteBuffer.wrap(data), bundle.getLazyDataOffset());
+				readBundleDescriptionLazyData(new DataInputStream(new BytesInputStream(data)));
+			}
 		} finally {
-			if (in != null)
-				in.close();
+			fis.close();
 		}
 	}
 
@@ -851,20 +912,6 @@ final class StateReader {
 			addDependencies((BundleDescriptionImpl) iter.next(), toLoad);
 	}
 
-	private int[] getSkipBytes(List<BundleDescriptionImpl> toLoad) {
-		int[] skipBytes = new int[toLoad.size()];
-		for (int i = 0; i < skipBytes.length; i++) {
-			BundleDescriptionImpl current = toLoad.get(i);
-			if (i == 0) {
-				skipBytes[i] = current.getLazyDataOffset();
-				continue;
-			}
-			BundleDescriptionImpl previous = toLoad.get(i - 1);
-			skipBytes[i] = current.getLazyDataOffset() - previous.getLazyDataOffset() - previous.getLazyDataSize();
-		}
-		return skipBytes;
-	}
-
 	void flushLazyObjectCache() {
 		for (Iterator<Entry<Integer, Object>> entries = objectTable.entrySet().iterator(); entries.hasNext();) {
 			Map.Entry<Integer, Object> entry = entries.next();
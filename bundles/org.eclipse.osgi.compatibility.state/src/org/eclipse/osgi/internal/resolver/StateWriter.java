@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2003, 2013 IBM Corporation and others.
+ * Copyright (c) 2003, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -95,6 +95,8 @@ class StateWriter {
 		DataOutputStream outState = null;
 		FileOutputStream fosLazy = null;
 		FileOutputStream fosState = null;
+		// the lazy data may be read from the files about to be overwritten; load it all first
+		state.fullyLoad();
 		synchronized (state.monitor) {
 			try {
 				BundleDescription[] bundles = state.getBundles();
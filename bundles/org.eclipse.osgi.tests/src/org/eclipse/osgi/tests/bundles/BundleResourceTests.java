@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2013 IBM Corporation and others.
+ * Copyright (c) 2010, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,8 +10,10 @@
  *******************************************************************************/
 package org.eclipse.osgi.tests.bundles;
 
+import java.io.*;
 import java.net.URL;
-import java.util.Enumeration;
+import java.util.*;
+import java.util.jar.*;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 import org.eclipse.core.tests.harness.CoreTest;
@@ -134,6 +136,66 @@ public class BundleResourceTests extends CoreTest {
 		assertFalse("Only one entry should have been found", entries.hasMoreElements());
 	}
 
+	public void testFindEntriesWildcards() throws Exception {
+		String[] paths = {"a.txt", "folder/a", "folder/a.txt", "folder/ab.txt", "folder/aba", "folder/b.txt", "folder/sub/", "folder/sub/a.txt", "folder/sub/aa", "folder/x*y.txt", "folder/xzy.txt"}; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$ //$NON-NLS-10$ //$NON-NLS-11$
+		File small = createJar(OSGiTestsActivator.getContext().getDataFile(getName() + "/small.jar"), paths, 0); //$NON-NLS-1$
+		// a jar with too many entries for the directory index
+		File large = createJar(OSGiTestsActivator.getContext().getDataFile(getName() + "/large.jar"), paths, 10001); //$NON-NLS-1$
+		for (File jar : new File[] {small, large}) {
+			Bundle bundle = OSGiTestsActivator.getContext().installBundle(jar.toURI().toString());
+			try {
+				checkEntries(bundle, "*", true, new String[] {"folder/a", "folder/a.txt", "folder/ab.txt", "folder/aba", "folder/b.txt", "folder/sub/", "folder/sub/a.txt", "folder/sub/aa", "folder/x*y.txt", "folder/xzy.txt"}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$ //$NON-NLS-10$ //$NON-NLS-11$
+				checkEntries(bundle, "**", true, new String[] {"folder/a", "folder/a.txt", "folder/ab.txt", "folder/aba", "folder/b.txt", "folder/sub/", "folder/sub/a.txt", "folder/sub/aa", "folder/x*y.txt", "folder/xzy.txt"}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$ //$NON-NLS-10$ //$NON-NLS-11$
+				checkEntries(bundle, "a", true, new String[] {"folder/a"}); //$NON-NLS-1$ //$NON-NLS-2$
+				checkEntries(bundle, "a*", true, new String[] {"folder/a", "folder/a.txt", "folder/ab.txt", "folder/aba", "folder/sub/a.txt", "folder/sub/aa"}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$
+				checkEntries(bundle, "a*", false, new String[] {"folder/a", "folder/a.txt", "folder/ab.txt", "folder/aba"}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+				checkEntries(bundle, "*a", true, new String[] {"folder/a", "folder/aba", "folder/sub/aa"}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+				// the prefix and the suffix must not overlap
+				checkEntries(bundle, "a*a", true, new String[] {"folder/aba", "folder/sub/aa"}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				checkEntries(bundle, "*.txt", true, new String[] {"folder/a.txt", "folder/ab.txt", "folder/b.txt", "folder/sub/a.txt", "folder/x*y.txt", "folder/xzy.txt"}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$
+				checkEntries(bundle, "a*b*", true, new String[] {"folder/ab.txt", "folder/aba"}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				checkEntries(bundle, "*z*", true, new String[] {"folder/xzy.txt"}); //$NON-NLS-1$ //$NON-NLS-2$
+				// directories are matched by their name without the trailing slash
+				checkEntries(bundle, "s*b", true, new String[] {"folder/sub/"}); //$NON-NLS-1$ //$NON-NLS-2$
+				checkEntries(bundle, "x*y.txt", true, new String[] {"folder/x*y.txt", "folder/xzy.txt"}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				checkEntries(bundle, "x\\*y.txt", true, new String[] {"folder/x*y.txt"}); //$NON-NLS-1$ //$NON-NLS-2$
+				checkEntries(bundle, "b*a", true, new String[0]); //$NON-NLS-1$
+			} finally {
+				bundle.uninstall();
+			}
+		}
+	}
+
+	private static File createJar(File file, String[] paths, int padding) throws IOException {
+		file.getParentFile().mkdirs();
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().putValue("Manifest-Version", "1.0"); //$NON-NLS-1$ //$NON-NLS-2$
+		manifest.getMainAttributes().putValue(Constants.BUNDLE_MANIFESTVERSION, "2"); //$NON-NLS-1$
+		manifest.getMainAttributes().putValue(Constants.BUNDLE_SYMBOLICNAME, file.getName());
+		JarOutputStream jos = new JarOutputStream(new FileOutputStream(file), manifest);
+		try {
+			for (String path : paths) {
+				jos.putNextEntry(new JarEntry(path));
+				jos.closeEntry();
+			}
+			for (int i = 0; i < padding; i++) {
+				jos.putNextEntry(new JarEntry("padding/" + i)); //$NON-NLS-1$
+				jos.closeEntry();
+			}
+		} finally {
+			jos.close();
+		}
+		return file;
+	}
+
+	private void checkEntries(Bundle bundle, String filePattern, boolean recurse, String[] expected) {
+		Enumeration<URL> entries = bundle.findEntries("folder", filePattern, recurse); //$NON-NLS-1$
+		Set<String> actual = new TreeSet<String>();
+		while (entries != null && entries.hasMoreElements())
+			actual.add(entries.nextElement().getPath().substring(1));
+		assertEquals("Wrong entries for " + filePattern, new TreeSet<String>(Arrays.asList(expected)), actual); //$NON-NLS-1$
+	}
+
 	private void checkEntries(Bundle bundle, String filePattern, int expectedNumber) {
 		Enumeration entries = bundle.findEntries("folder", filePattern, false);
 		if (expectedNumber == 0) {
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2013 IBM Corporation and others.
+ * Copyright (c) 2013, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -16,8 +16,10 @@ import java.util.Map;
 import java.util.jar.*;
 import junit.framework.Test;
 import junit.framework.TestSuite;
+import org.eclipse.osgi.internal.framework.EquinoxConfiguration;
 import org.eclipse.osgi.launch.Equinox;
 import org.eclipse.osgi.tests.OSGiTestsActivator;
+import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleException;
 import org.osgi.framework.Constants;
 
@@ -45,6 +47,11 @@ public class PersistedBundleTests extends AbstractBundleTests {
 				manifest.getMainAttributes().putValue(Constants.BUNDLE_SYMBOLICNAME, value);
 				return this;
 			}
+
+			public BundleManifestBuilder header(String key, String value) {
+				manifest.getMainAttributes().putValue(key, value);
+				return this;
+			}
 		}
 
 		private final BundleManifestBuilder manifestBuilder = new BundleManifestBuilder();
@@ -60,6 +67,11 @@ public class PersistedBundleTests extends AbstractBundleTests {
 			manifestBuilder.symbolicName(value);
 			return this;
 		}
+
+		public BundleBuilder header(String key, String value) {
+			manifestBuilder.header(key, value);
+			return this;
+		}
 	}
 
 	private static final String ECLIPSE_STATESAVEDELAYINTERVAL = "eclipse.stateSaveDelayInterval";
@@ -180,6 +192,38 @@ public class PersistedBundleTests extends AbstractBundleTests {
 		}
 	}
 
+	/*
+	 * Test that header values larger than 64k survive a restart when all
+	 * manifest headers are persisted.
+	 */
+	public void testCachedOversizedHeader() throws Exception {
+		Map<String, Object> configuration = createConfiguration();
+		configuration.put(EquinoxConfiguration.PROP_CACHED_MANIFEST_HEADERS, "*");
+		StringBuilder builder = new StringBuilder();
+		while (builder.length() < 70000)
+			builder.append("large-value,");
+		String largeValue = builder.toString();
+		Equinox equinox = new Equinox(configuration);
+		initAndStart(equinox);
+		try {
+			// Bundle-Name is one of the headers which are always cached
+			equinox.getBundleContext().installBundle(getName(), new BundleBuilder().symbolicName(getName()).header(Constants.BUNDLE_NAME, largeValue).header("Large-Header", largeValue).build());
+		} finally {
+			stopQuietly(equinox);
+		}
+		equinox = new Equinox(configuration);
+		initAndStart(equinox);
+		try {
+			Bundle bundle = equinox.getBundleContext().getBundle(getName());
+			assertNotNull("Bundle does not exist", bundle);
+			assertEquals("Wrong Bundle-Name", largeValue, bundle.getHeaders("").get(Constants.BUNDLE_NAME));
+			assertEquals("Wrong Large-Header", largeValue, bundle.getHeaders("").get("Large-Header"));
+			assertEquals("Wrong Bundle-SymbolicName", getName(), bundle.getHeaders("").get(Constants.BUNDLE_SYMBOLICNAME));
+		} finally {
+			stopQuietly(equinox);
+		}
+	}
+
 	private Map<String, Object> createConfiguration() {
 		File file = OSGiTestsActivator.getContext().getDataFile(getName());
 		Map<String, Object> result = new HashMap<String, Object>();
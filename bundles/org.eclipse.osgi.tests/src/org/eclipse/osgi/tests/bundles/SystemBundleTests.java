@@ -21,12 +21,15 @@ import junit.framework.Test;
 import junit.framework.TestSuite;
 import org.eclipse.osgi.launch.Equinox;
 import org.eclipse.osgi.service.datalocation.Location;
+import org.eclipse.osgi.service.monitoring.*;
 import org.eclipse.osgi.tests.OSGiTestsActivator;
+import org.osgi.dto.framework.FrameworkDTO;
 import org.osgi.framework.*;
 import org.osgi.framework.hooks.resolver.ResolverHook;
 import org.osgi.framework.hooks.resolver.ResolverHookFactory;
 import org.osgi.framework.hooks.weaving.WeavingHook;
 import org.osgi.framework.hooks.weaving.WovenClass;
+import org.osgi.framework.startlevel.BundleStartLevel;
 import org.osgi.framework.wiring.*;
 import org.osgi.service.packageadmin.ExportedPackage;
 import org.osgi.service.packageadmin.PackageAdmin;
@@ -2082,6 +2085,302 @@ public class SystemBundleTests extends AbstractBundleTests {
 		}
 	}
 
+	public void testDynamicFragmentLocalization() throws BundleException, IOException {
+		File config = OSGiTestsActivator.getContext().getDataFile(getName()); //$NON-NLS-1$
+		Map<String, Object> configuration = new HashMap<String, Object>();
+		configuration.put(Constants.FRAMEWORK_STORAGE, config.getAbsolutePath());
+		Equinox equinox = new Equinox(configuration);
+		equinox.start();
+		try {
+			BundleContext systemContext = equinox.getBundleContext();
+			Map<String, String> hostHeaders = new HashMap<String, String>();
+			hostHeaders.put(Constants.BUNDLE_MANIFESTVERSION, "2"); //$NON-NLS-1$
+			hostHeaders.put(Constants.BUNDLE_SYMBOLICNAME, "localization.host"); //$NON-NLS-1$
+			hostHeaders.put(Constants.BUNDLE_NAME, "%bundleName"); //$NON-NLS-1$
+			Bundle host = systemContext.installBundle("host", new FileInputStream(createJar(new File(config, "host.jar"), hostHeaders, Collections.<String, String> emptyMap()))); //$NON-NLS-1$ //$NON-NLS-2$
+			assertTrue("Host could not resolve.", equinox.adapt(FrameworkWiring.class).resolveBundles(Collections.singleton(host))); //$NON-NLS-1$
+			// the host does not provide the localization resources itself
+			assertEquals("Wrong Bundle-Name", "bundleName", host.getHeaders().get(Constants.BUNDLE_NAME)); //$NON-NLS-1$ //$NON-NLS-2$
+
+			Map<String, String> fragmentHeaders = new HashMap<String, String>();
+			fragmentHeaders.put(Constants.BUNDLE_MANIFESTVERSION, "2"); //$NON-NLS-1$
+			fragmentHeaders.put(Constants.BUNDLE_SYMBOLICNAME, "localization.fragment"); //$NON-NLS-1$
+			fragmentHeaders.put(Constants.FRAGMENT_HOST, "localization.host"); //$NON-NLS-1$
+			Map<String, String> fragmentEntries = new HashMap<String, String>();
+			fragmentEntries.put(Constants.BUNDLE_LOCALIZATION_DEFAULT_BASENAME + ".properties", "bundleName=Localized Host"); //$NON-NLS-1$ //$NON-NLS-2$
+			Bundle fragment = systemContext.installBundle("fragment", new FileInputStream(createJar(new File(config, "fragment.jar"), fragmentHeaders, fragmentEntries))); //$NON-NLS-1$ //$NON-NLS-2$
+			// attach the fragment to the resolved host without refreshing the host
+			assertTrue("Fragment could not resolve.", equinox.adapt(FrameworkWiring.class).resolveBundles(Collections.singleton(fragment))); //$NON-NLS-1$
+			assertEquals("Wrong host wiring.", 1, host.adapt(BundleWiring.class).getProvidedWires(BundleRevision.HOST_NAMESPACE).size()); //$NON-NLS-1$
+			assertEquals("Wrong Bundle-Name", "Localized Host", host.getHeaders().get(Constants.BUNDLE_NAME)); //$NON-NLS-1$ //$NON-NLS-2$
+		} finally {
+			equinox.stop();
+			try {
+				equinox.waitForStop(10000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				fail("Unexpected interruption.", e); //$NON-NLS-1$
+			}
+		}
+	}
+
+	public void testFrameworkDTOSnapshot() throws BundleException, IOException {
+		File config = OSGiTestsActivator.getContext().getDataFile(getName()); //$NON-NLS-1$
+		Map<String, Object> configuration = new HashMap<String, Object>();
+		configuration.put(Constants.FRAMEWORK_STORAGE, config.getAbsolutePath());
+		configuration.put("osgi.frameworkState", "true"); //$NON-NLS-1$ //$NON-NLS-2$
+		Equinox equinox = new Equinox(configuration);
+		equinox.start();
+		try {
+			BundleContext systemContext = equinox.getBundleContext();
+			ServiceReference<FrameworkState> stateRef = systemContext.getServiceReference(FrameworkState.class);
+			assertNotNull("No FrameworkState service.", stateRef); //$NON-NLS-1$
+			FrameworkState state = systemContext.getService(stateRef);
+
+			FrameworkDTOSnapshot snapshot = state.getSnapshot();
+			assertSame("Snapshot changed without a state change.", snapshot, state.getSnapshot()); //$NON-NLS-1$
+			FrameworkDTO dto = snapshot.getFrameworkDTO();
+			assertNotSame("DTO is shared.", dto, snapshot.getFrameworkDTO()); //$NON-NLS-1$
+			int bundleCount = dto.bundles.size();
+			int serviceCount = dto.services.size();
+			// modifying a DTO must not change the snapshot
+			dto.bundles.clear();
+			dto.services.get(0).properties.clear();
+			dto.properties.clear();
+			FrameworkDTO other = snapshot.getFrameworkDTO();
+			assertEquals("Wrong number of bundles.", bundleCount, other.bundles.size()); //$NON-NLS-1$
+			assertFalse("Service properties modified.", other.services.get(0).properties.isEmpty()); //$NON-NLS-1$
+			assertFalse("Framework properties modified.", other.properties.isEmpty()); //$NON-NLS-1$
+
+			Map<String, String> headers = new HashMap<String, String>();
+			headers.put(Constants.BUNDLE_MANIFESTVERSION, "2"); //$NON-NLS-1$
+			headers.put(Constants.BUNDLE_SYMBOLICNAME, "snapshot.bundle"); //$NON-NLS-1$
+			systemContext.installBundle("snapshot", new FileInputStream(createJar(new File(config, "snapshot.jar"), headers, Collections.<String, String> emptyMap()))); //$NON-NLS-1$ //$NON-NLS-2$
+			FrameworkDTOSnapshot installed = state.getSnapshot();
+			assertTrue("Version did not increase.", installed.getVersion() > snapshot.getVersion()); //$NON-NLS-1$
+			assertEquals("Wrong number of bundles.", bundleCount + 1, installed.getFrameworkDTO().bundles.size()); //$NON-NLS-1$
+			// the old snapshot is immutable
+			assertEquals("Old snapshot changed.", bundleCount, snapshot.getFrameworkDTO().bundles.size()); //$NON-NLS-1$
+
+			systemContext.registerService(Object.class, new Object(), null);
+			FrameworkDTOSnapshot registered = state.getSnapshot();
+			assertTrue("Version did not increase.", registered.getVersion() > installed.getVersion()); //$NON-NLS-1$
+			assertEquals("Wrong number of services.", serviceCount + 1, registered.getFrameworkDTO().services.size()); //$NON-NLS-1$
+		} finally {
+			equinox.stop();
+			try {
+				equinox.waitForStop(10000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				fail("Unexpected interruption.", e); //$NON-NLS-1$
+			}
+		}
+	}
+
+	public void testResourceUsage() throws BundleException, IOException {
+		File config = OSGiTestsActivator.getContext().getDataFile(getName()); //$NON-NLS-1$
+		Map<String, Object> configuration = new HashMap<String, Object>();
+		configuration.put(Constants.FRAMEWORK_STORAGE, config.getAbsolutePath());
+		configuration.put("osgi.resourceUsage", "true"); //$NON-NLS-1$ //$NON-NLS-2$
+		Equinox equinox = new Equinox(configuration);
+		equinox.start();
+		try {
+			BundleContext systemContext = equinox.getBundleContext();
+			ServiceReference<ResourceUsage> usageRef = systemContext.getServiceReference(ResourceUsage.class);
+			assertNotNull("No ResourceUsage service.", usageRef); //$NON-NLS-1$
+			ResourceUsage usage = systemContext.getService(usageRef);
+
+			Map<String, String> headers = new HashMap<String, String>();
+			headers.put(Constants.BUNDLE_MANIFESTVERSION, "2"); //$NON-NLS-1$
+			headers.put(Constants.BUNDLE_SYMBOLICNAME, "usage.bundle"); //$NON-NLS-1$
+			Bundle b = systemContext.installBundle("usage", new FileInputStream(createJar(new File(config, "usage.jar"), headers, Collections.singletonMap("resource.txt", "resource")))); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+			b.start();
+			ServiceRegistration<Object> registration = b.getBundleContext().registerService(Object.class, new Object(), null);
+			assertEquals("Wrong services registered.", 1, usage.getResourceUsageDTO(b.getBundleId()).servicesRegistered); //$NON-NLS-1$
+
+			long inUse = usage.getResourceUsageDTO(0).servicesInUse;
+			systemContext.getService(registration.getReference());
+			assertEquals("Wrong services in use.", inUse + 1, usage.getResourceUsageDTO(0).servicesInUse); //$NON-NLS-1$
+			systemContext.ungetService(registration.getReference());
+			assertEquals("Wrong services in use.", inUse, usage.getResourceUsageDTO(0).servicesInUse); //$NON-NLS-1$
+
+			ClassLoader loader = b.adapt(BundleWiring.class).getClassLoader();
+			assertNotNull("No resource found.", loader.getResource("resource.txt")); //$NON-NLS-1$ //$NON-NLS-2$
+			assertTrue("No resource lookups.", usage.getResourceUsageDTO(b.getBundleId()).resourceLookups > 0); //$NON-NLS-1$
+
+			b.uninstall();
+			assertNull("Usage of uninstalled bundle.", usage.getResourceUsageDTO(b.getBundleId())); //$NON-NLS-1$
+			// using the class loader of the uninstalled bundle must not account the bundle again
+			loader.getResource("resource.txt"); //$NON-NLS-1$
+			assertNull("Usage of uninstalled bundle.", usage.getResourceUsageDTO(b.getBundleId())); //$NON-NLS-1$
+			for (ResourceUsageDTO dto : usage.getResourceUsageDTOs()) {
+				assertFalse("Usage of uninstalled bundle.", dto.bundle == b.getBundleId()); //$NON-NLS-1$
+			}
+		} finally {
+			equinox.stop();
+			try {
+				equinox.waitForStop(10000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				fail("Unexpected interruption.", e); //$NON-NLS-1$
+			}
+		}
+	}
+
+	public void testTimeline() throws BundleException {
+		File config = OSGiTestsActivator.getContext().getDataFile(getName()); //$NON-NLS-1$
+		Map<String, Object> configuration = new HashMap<String, Object>();
+		configuration.put(Constants.FRAMEWORK_STORAGE, config.getAbsolutePath());
+		configuration.put("osgi.timeline", "true"); //$NON-NLS-1$ //$NON-NLS-2$
+		Equinox equinox = new Equinox(configuration);
+		equinox.start();
+		try {
+			BundleContext systemContext = equinox.getBundleContext();
+			ServiceReference<FrameworkTimeline> timelineRef = systemContext.getServiceReference(FrameworkTimeline.class);
+			assertNotNull("No FrameworkTimeline service.", timelineRef); //$NON-NLS-1$
+			List<TimelineEventDTO> events = systemContext.getService(timelineRef).getEvents();
+			Set<String> types = new HashSet<String>();
+			TimelineEventDTO first = null;
+			for (TimelineEventDTO event : events) {
+				assertTrue("Negative duration.", event.duration >= 0); //$NON-NLS-1$
+				types.add(event.type);
+				if (first == null || event.start < first.start)
+					first = event;
+			}
+			// the startup phases of a fresh framework
+			assertTrue("No storage load: " + types, types.contains("STORAGE_LOAD")); //$NON-NLS-1$ //$NON-NLS-2$
+			assertTrue("No resolve: " + types, types.contains("RESOLVE")); //$NON-NLS-1$ //$NON-NLS-2$
+			assertTrue("No start level: " + types, types.contains("START_LEVEL")); //$NON-NLS-1$ //$NON-NLS-2$
+			assertTrue("No service registration: " + types, types.contains("SERVICE_REGISTER")); //$NON-NLS-1$ //$NON-NLS-2$
+			// the events are ordered by their end; the storage load is the first event to start
+			assertEquals("Wrong first event.", "STORAGE_LOAD", first.type); //$NON-NLS-1$ //$NON-NLS-2$
+		} finally {
+			equinox.stop();
+			try {
+				equinox.waitForStop(10000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				fail("Unexpected interruption.", e); //$NON-NLS-1$
+			}
+		}
+	}
+
+	public void testClassList() throws Exception {
+		File config = OSGiTestsActivator.getContext().getDataFile(getName()); //$NON-NLS-1$
+		Map<String, Object> configuration = new HashMap<String, Object>();
+		configuration.put(Constants.FRAMEWORK_STORAGE, config.getAbsolutePath());
+		configuration.put("osgi.classloader.classList", "true"); //$NON-NLS-1$ //$NON-NLS-2$
+		Map<String, String> headers = new HashMap<String, String>();
+		headers.put(Constants.BUNDLE_MANIFESTVERSION, "2"); //$NON-NLS-1$
+		headers.put(Constants.BUNDLE_SYMBOLICNAME, "class.list"); //$NON-NLS-1$
+		Map<String, String> entries = new HashMap<String, String>();
+		String classFile = ClassListClass.class.getName().replace('.', '/') + ".class"; //$NON-NLS-1$
+		entries.put(classFile, readClassFile(classFile));
+		File jar = createJar(new File(config, "classlist.jar"), headers, entries); //$NON-NLS-1$
+		File classList = new File(config, "org.eclipse.osgi/classlist/classes.lst"); //$NON-NLS-1$
+
+		// the training run records the classes defined by the bundle class loaders
+		Equinox equinox = new Equinox(configuration);
+		equinox.start();
+		long bundleId = equinox.getBundleContext().installBundle("reference:" + jar.toURI()).getBundleId(); //$NON-NLS-1$
+		loadClassListClass(equinox, bundleId);
+		stop(equinox);
+		assertTrue("No class list.", classList.isFile()); //$NON-NLS-1$
+		List<String> lines = readLines(classList);
+		// the super types of the bundle class are listed first with the ids used by the bundle class
+		assertEquals("Wrong class list.", Arrays.asList("java/lang/Object id: 0", "java/lang/Runnable id: 1", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				ClassListClass.class.getName().replace('.', '/') + " id: 2 super: 0 interfaces: 1 source: " + jar.getAbsolutePath()), lines); //$NON-NLS-1$
+
+		// the class list is kept while the bundle content is unchanged; other changes do not trigger a new training run
+		assertTrue("Could not change the class list time.", classList.setLastModified(classList.lastModified() - 10000)); //$NON-NLS-1$
+		long lastModified = classList.lastModified();
+		equinox = new Equinox(configuration);
+		equinox.start();
+		equinox.getBundleContext().getBundle(bundleId).adapt(BundleStartLevel.class).setStartLevel(5);
+		loadClassListClass(equinox, bundleId);
+		stop(equinox);
+		assertEquals("The class list was recorded again.", lastModified, classList.lastModified()); //$NON-NLS-1$
+		assertEquals("Wrong class list.", lines, readLines(classList)); //$NON-NLS-1$
+
+		// changed bundle content triggers a new training run
+		entries.put("resource.txt", "resource"); //$NON-NLS-1$ //$NON-NLS-2$
+		File updated = createJar(new File(config, "updated.jar"), headers, entries); //$NON-NLS-1$
+		equinox = new Equinox(configuration);
+		equinox.start();
+		equinox.getBundleContext().getBundle(bundleId).update(new FileInputStream(updated));
+		stop(equinox);
+		assertEquals("The class list was recorded again.", lastModified, classList.lastModified()); //$NON-NLS-1$
+		equinox = new Equinox(configuration);
+		equinox.start();
+		loadClassListClass(equinox, bundleId);
+		stop(equinox);
+		List<String> updatedLines = readLines(classList);
+		assertEquals("Wrong number of classes.", 3, updatedLines.size()); //$NON-NLS-1$
+		assertFalse("The class list was not recorded again.", lines.equals(updatedLines)); //$NON-NLS-1$
+	}
+
+	private static void loadClassListClass(Equinox equinox, long bundleId) throws ClassNotFoundException {
+		Class<?> clazz = equinox.getBundleContext().getBundle(bundleId).loadClass(ClassListClass.class.getName());
+		assertNotSame("The class is not defined by the bundle.", ClassListClass.class, clazz); //$NON-NLS-1$
+	}
+
+	private static void stop(Equinox equinox) throws BundleException, InterruptedException {
+		equinox.stop();
+		assertEquals("Wrong stop event.", FrameworkEvent.STOPPED, equinox.waitForStop(10000).getType()); //$NON-NLS-1$
+	}
+
+	private static String readClassFile(String classFile) throws IOException {
+		InputStream in = SystemBundleTests.class.getClassLoader().getResourceAsStream(classFile);
+		assertNotNull("No class file: " + classFile, in); //$NON-NLS-1$
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			for (int read = in.read(buffer); read > 0; read = in.read(buffer))
+				out.write(buffer, 0, read);
+			// createJar writes the entries with the same encoding
+			return out.toString("ISO-8859-1"); //$NON-NLS-1$
+		} finally {
+			in.close();
+		}
+	}
+
+	private static List<String> readLines(File file) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8")); //$NON-NLS-1$
+		try {
+			for (String line = reader.readLine(); line != null; line = reader.readLine())
+				lines.add(line);
+		} finally {
+			reader.close();
+		}
+		return lines;
+	}
+
+	public static class ClassListClass implements Runnable {
+		public void run() {
+			// nothing
+		}
+	}
+
+	private static File createJar(File file, Map<String, String> headers, Map<String, String> entries) throws IOException {
+		file.getParentFile().mkdirs();
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().putValue("Manifest-Version", "1.0"); //$NON-NLS-1$ //$NON-NLS-2$
+		for (Map.Entry<String, String> header : headers.entrySet())
+			manifest.getMainAttributes().putValue(header.getKey(), header.getValue());
+		JarOutputStream jos = new JarOutputStream(new FileOutputStream(file), manifest);
+		try {
+			for (Map.Entry<String, String> entry : entries.entrySet()) {
+				jos.putNextEntry(new JarEntry(entry.getKey()));
+				jos.write(entry.getValue().getBytes("ISO-8859-1")); //$NON-NLS-1$
+				jos.closeEntry();
+			}
+		} finally {
+			jos.close();
+		}
+		return file;
+	}
+
 	private static File[] createBundles(File outputDir, int bundleCount) throws IOException {
 		outputDir.mkdirs();
 
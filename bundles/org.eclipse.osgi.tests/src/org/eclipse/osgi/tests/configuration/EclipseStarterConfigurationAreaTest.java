@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2013 IBM Corporation and others.
+ * Copyright (c) 2013, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,12 +10,13 @@
  *******************************************************************************/
 package org.eclipse.osgi.tests.configuration;
 
-import java.util.List;
+import java.util.*;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.tests.session.ConfigurationSessionTestSuite;
 import org.eclipse.osgi.tests.OSGiTest;
+import org.osgi.framework.Bundle;
 import org.osgi.framework.Constants;
 import org.osgi.framework.namespace.HostNamespace;
 import org.osgi.framework.wiring.BundleWire;
@@ -35,6 +36,7 @@ public class EclipseStarterConfigurationAreaTest extends OSGiTest {
 		// disable clean-up, we want to reuse the configuration
 		initialization.setCleanup(false);
 		initialization.addTest(new EclipseStarterConfigurationAreaTest("testInitializeExtension"));
+		initialization.addTest(new EclipseStarterConfigurationAreaTest("testInitialBundleOrder"));
 		suite.addTest(initialization);
 
 		// restart with cache but remove the compatibility fragment
@@ -60,6 +62,30 @@ public class EclipseStarterConfigurationAreaTest extends OSGiTest {
 		assertEquals("Wrong number of system fragments.", 1, fragWires.size());
 	}
 
+	public void testInitialBundleOrder() {
+		// initialization session; the initial bundles must be installed in the order of the osgi.bundles entries
+		List<String> symbolicNames = new ArrayList<String>();
+		symbolicNames.add("org.eclipse.osgi.compatibility.state");
+		symbolicNames.addAll(Arrays.asList(ConfigurationSessionTestSuite.MINIMAL_BUNDLE_SET));
+		symbolicNames.add(PI_OSGI_TESTS);
+		Map<String, Bundle> bundles = new HashMap<String, Bundle>();
+		for (Bundle bundle : getContext().getBundles()) {
+			if (bundle.getBundleId() != 0)
+				bundles.put(bundle.getSymbolicName(), bundle);
+		}
+		long lastId = 0;
+		int found = 0;
+		for (String symbolicName : symbolicNames) {
+			Bundle bundle = bundles.get(symbolicName);
+			if (bundle == null)
+				continue; // the system bundle
+			assertTrue("Wrong id for " + symbolicName + ": " + bundle.getBundleId(), bundle.getBundleId() > lastId);
+			lastId = bundle.getBundleId();
+			found++;
+		}
+		assertTrue("Missing initial bundles.", found > 1);
+	}
+
 	public void testRemoveExtension() {
 		// removed extension session
 		List<BundleWire> fragWires = getContext().getBundle(Constants.SYSTEM_BUNDLE_LOCATION).adapt(BundleWiring.class).getProvidedWires(HostNamespace.HOST_NAMESPACE);
@@ -1511,6 +1511,94 @@ public class TestModuleContainer extends AbstractTest {
 		container.uninstall(c6v180);
 	}
 
+	@Test
+	public void testCompactAttributes() throws BundleException {
+		DummyContainerAdaptor adaptor = createDummyAdaptor();
+		ModuleContainer container = adaptor.getContainer();
+
+		Map<String, Object> attributes = new LinkedHashMap<String, Object>();
+		attributes.put("test.compact", "value");
+		attributes.put("version", new Version(1, 0, 0));
+		attributes.put("count", Long.valueOf(3));
+		attributes.put("list", Arrays.asList("a", "b"));
+		Map<String, String> directives = new LinkedHashMap<String, String>();
+		directives.put("uses", "a.b");
+		directives.put("mandatory", "count");
+		ModuleRevisionBuilder builder = new ModuleRevisionBuilder();
+		builder.setSymbolicName("compact");
+		builder.addCapability("test.compact", directives, attributes);
+		builder.addCapability("test.compact", Collections.<String, String> emptyMap(), Collections.<String, Object> emptyMap());
+		Module module = container.install(null, "compact", builder, null);
+		List<ModuleCapability> capabilities = module.getCurrentRevision().getModuleCapabilities("test.compact");
+		Assert.assertEquals("Wrong number of capabilities.", 2, capabilities.size());
+
+		// lookup
+		Map<String, Object> compactAttributes = capabilities.get(0).getAttributes();
+		Assert.assertEquals("Wrong attributes.", attributes, compactAttributes);
+		Assert.assertEquals("Wrong hash code.", attributes.hashCode(), compactAttributes.hashCode());
+		Assert.assertEquals("Wrong size.", 4, compactAttributes.size());
+		Assert.assertEquals("Wrong value.", "value", compactAttributes.get("test.compact"));
+		Assert.assertEquals("Wrong value.", new Version(1, 0, 0), compactAttributes.get("version"));
+		Assert.assertTrue("Missing key.", compactAttributes.containsKey("count"));
+		Assert.assertFalse("Unexpected key.", compactAttributes.containsKey("missing"));
+		Assert.assertNull("Unexpected value.", compactAttributes.get("missing"));
+		Assert.assertNull("Unexpected value.", compactAttributes.get(null));
+		Map<String, String> compactDirectives = capabilities.get(0).getDirectives();
+		Assert.assertEquals("Wrong directives.", directives, compactDirectives);
+		Assert.assertTrue("Attributes not empty.", capabilities.get(1).getAttributes().isEmpty());
+		Assert.assertTrue("Directives not empty.", capabilities.get(1).getDirectives().isEmpty());
+
+		// iteration is in the sorted order of the keys
+		Assert.assertEquals("Wrong iteration order.", Arrays.asList("count", "list", "test.compact", "version"), new ArrayList<String>(compactAttributes.keySet()));
+		Assert.assertEquals("Wrong iteration order.", Arrays.asList("mandatory", "uses"), new ArrayList<String>(compactDirectives.keySet()));
+		List<Object> values = new ArrayList<Object>();
+		for (Map.Entry<String, Object> entry : compactAttributes.entrySet()) {
+			Assert.assertEquals("Wrong entry value.", attributes.get(entry.getKey()), entry.getValue());
+			values.add(entry.getValue());
+		}
+		Assert.assertEquals("Wrong values.", Arrays.asList(Long.valueOf(3), Arrays.asList("a", "b"), "value", new Version(1, 0, 0)), values);
+		Iterator<String> keys = compactDirectives.keySet().iterator();
+		keys.next();
+		keys.next();
+		try {
+			keys.next();
+			Assert.fail("Iterated past the last key.");
+		} catch (NoSuchElementException e) {
+			// expected
+		}
+
+		// immutability
+		try {
+			compactAttributes.put("test.compact", "other");
+			Assert.fail("The attributes are modifiable.");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		try {
+			compactAttributes.remove("count");
+			Assert.fail("The attributes are modifiable.");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		Iterator<Map.Entry<String, Object>> entries = compactAttributes.entrySet().iterator();
+		Map.Entry<String, Object> entry = entries.next();
+		try {
+			entry.setValue("other");
+			Assert.fail("The entries are modifiable.");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		try {
+			entries.remove();
+			Assert.fail("The attributes are modifiable.");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		// changing the builder maps does not change the capability
+		attributes.put("test.compact", "changed");
+		Assert.assertEquals("Wrong value.", "value", compactAttributes.get("test.compact"));
+	}
+
 	private static void assertWires(List<ModuleWire> required, List<ModuleWire>... provided) {
 		for (ModuleWire requiredWire : required) {
 			for (List<ModuleWire> providedList : provided) {
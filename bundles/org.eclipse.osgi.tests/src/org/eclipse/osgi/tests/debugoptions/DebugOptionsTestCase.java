@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2010 IBM Corporation and others.
+ * Copyright (c) 2009, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -22,10 +22,10 @@ import java.util.Map.Entry;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 import org.eclipse.core.tests.harness.CoreTest;
+import org.eclipse.osgi.launch.Equinox;
 import org.eclipse.osgi.service.debug.*;
 import org.eclipse.osgi.tests.OSGiTestsActivator;
-import org.osgi.framework.ServiceReference;
-import org.osgi.framework.ServiceRegistration;
+import org.osgi.framework.*;
 
 public class DebugOptionsTestCase extends CoreTest {
 	public static Test suite() {
@@ -962,6 +962,141 @@ public class DebugOptionsTestCase extends CoreTest {
 		traceFile.delete();
 	}
 
+	/**
+	 * tests that the trace file is opened again after it got rotated or deleted by someone else.
+	 */
+	public void testTraceFileRotatedExternally() {
+
+		final File traceFile = OSGiTestsActivator.getContext().getDataFile(getName() + ".trace"); //$NON-NLS-1$
+		final File rotatedFile = OSGiTestsActivator.getContext().getDataFile(getName() + ".1.trace"); //$NON-NLS-1$
+		TestDebugTrace debugTrace = this.createDebugTrace(traceFile);
+		TraceEntry[] rotatedOutput = null;
+		TraceEntry[] traceOutput = null;
+		TraceEntry[] deletedOutput = null;
+		try {
+			debugTrace.trace("/debug", "before rotation"); //$NON-NLS-1$ //$NON-NLS-2$
+			assertTrue("Could not rotate the trace file", traceFile.renameTo(rotatedFile)); //$NON-NLS-1$
+			debugTrace.trace("/debug", "after rotation"); //$NON-NLS-1$ //$NON-NLS-2$
+			rotatedOutput = readTraceFile(rotatedFile);
+			traceOutput = readTraceFile(traceFile);
+			assertTrue("Could not delete the trace file", traceFile.delete()); //$NON-NLS-1$
+			debugTrace.trace("/debug", "after deletion"); //$NON-NLS-1$ //$NON-NLS-2$
+			deletedOutput = readTraceFile(traceFile);
+		} catch (InvalidTraceEntry invalidEx) {
+			fail("Failed 'DebugTrace.trace(option, message)' test as an invalid trace entry was found.  Actual Value: '" + invalidEx.getActualValue() + "'.", invalidEx); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		assertEquals("Wrong number of entries in the rotated file", 1, rotatedOutput.length); //$NON-NLS-1$
+		assertEquals("Trace message is not correct", "before rotation", rotatedOutput[0].getMessage()); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("Wrong number of entries after the rotation", 1, traceOutput.length); //$NON-NLS-1$
+		assertEquals("Trace message is not correct", "after rotation", traceOutput[0].getMessage()); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("Wrong number of entries after the deletion", 1, deletedOutput.length); //$NON-NLS-1$
+		assertEquals("Trace message is not correct", "after deletion", deletedOutput[0].getMessage()); //$NON-NLS-1$ //$NON-NLS-2$
+		// delete the trace files
+		traceFile.delete();
+		rotatedFile.delete();
+	}
+
+	/**
+	 * tests that asynchronous tracing keeps the order of the entries of each thread and
+	 * that no entry is lost when the trace writer is closed while threads are tracing.
+	 */
+	public void testAsyncTraceOrderAndClose() throws Exception {
+
+		final File traceFile = OSGiTestsActivator.getContext().getDataFile(getName() + ".trace"); //$NON-NLS-1$
+		Map<String, Object> configuration = new HashMap<String, Object>();
+		configuration.put(Constants.FRAMEWORK_STORAGE, OSGiTestsActivator.getContext().getDataFile(getName()).getAbsolutePath());
+		configuration.put("eclipse.trace.async", "true"); //$NON-NLS-1$ //$NON-NLS-2$
+		// a small queue makes the tracing threads wait for the writer thread
+		configuration.put("eclipse.trace.queue.size", "8"); //$NON-NLS-1$ //$NON-NLS-2$
+		Equinox equinox = new Equinox(configuration);
+		equinox.start();
+		DebugOptions asyncOptions = equinox.getBundleContext().getService(equinox.getBundleContext().getServiceReference(DebugOptions.class));
+		asyncOptions.setDebugEnabled(true);
+		asyncOptions.setOption(getName() + "/debug", "true"); //$NON-NLS-1$ //$NON-NLS-2$
+		asyncOptions.setFile(traceFile);
+		final DebugTrace debugTrace = asyncOptions.newDebugTrace(getName());
+
+		final int threadCount = 4;
+		final int entryCount = 500;
+		Thread[] threads = new Thread[threadCount];
+		for (int i = 0; i < threadCount; i++) {
+			threads[i] = new Thread(new Runnable() {
+				public void run() {
+					for (int j = 0; j < entryCount; j++) {
+						debugTrace.trace("/debug", Integer.toString(j)); //$NON-NLS-1$
+					}
+				}
+			}, getName() + '-' + i);
+			threads[i].start();
+		}
+		// stopping the framework closes the trace writer while the threads are tracing
+		equinox.stop();
+		equinox.waitForStop(10000);
+		for (int i = 0; i < threadCount; i++) {
+			threads[i].join(10000);
+			assertFalse("Tracing thread did not finish", threads[i].isAlive()); //$NON-NLS-1$
+		}
+		// the entries traced after the close are written on the tracing threads
+		assertFalse("The trace writer thread is still running", isTraceWriterThreadAlive()); //$NON-NLS-1$
+		TraceEntry[] traceOutput = null;
+		try {
+			traceOutput = readTraceFile(traceFile);
+		} catch (InvalidTraceEntry invalidEx) {
+			fail("Failed 'DebugTrace.trace(option, message)' test as an invalid trace entry was found.  Actual Value: '" + invalidEx.getActualValue() + "'.", invalidEx); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		assertEquals("Wrong number of entries", threadCount * entryCount, traceOutput.length); //$NON-NLS-1$
+		Map<String, Integer> nextEntries = new HashMap<String, Integer>();
+		for (int i = 0; i < traceOutput.length; i++) {
+			Integer next = nextEntries.get(traceOutput[i].getThreadName());
+			int expected = next == null ? 0 : next.intValue();
+			assertEquals("Wrong order of the entries of " + traceOutput[i].getThreadName(), Integer.toString(expected), traceOutput[i].getMessage()); //$NON-NLS-1$
+			nextEntries.put(traceOutput[i].getThreadName(), Integer.valueOf(expected + 1));
+		}
+		assertEquals("Wrong number of threads", threadCount, nextEntries.size()); //$NON-NLS-1$
+		// delete the trace file
+		traceFile.delete();
+	}
+
+	public void testTraceAfterStop() throws Exception {
+
+		File traceFile = OSGiTestsActivator.getContext().getDataFile(getName() + ".trace"); //$NON-NLS-1$
+		Map<String, Object> configuration = new HashMap<String, Object>();
+		configuration.put(Constants.FRAMEWORK_STORAGE, OSGiTestsActivator.getContext().getDataFile(getName()).getAbsolutePath());
+		Equinox equinox = new Equinox(configuration);
+		equinox.start();
+		DebugOptions syncOptions = equinox.getBundleContext().getService(equinox.getBundleContext().getServiceReference(DebugOptions.class));
+		syncOptions.setDebugEnabled(true);
+		syncOptions.setOption(getName() + "/debug", "true"); //$NON-NLS-1$ //$NON-NLS-2$
+		syncOptions.setFile(traceFile);
+		DebugTrace debugTrace = syncOptions.newDebugTrace(getName());
+		debugTrace.trace("/debug", "before stop"); //$NON-NLS-1$ //$NON-NLS-2$
+		equinox.stop();
+		equinox.waitForStop(10000);
+		// the trace file is opened and closed again for each entry traced after the stop
+		debugTrace.trace("/debug", "after stop"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertFalse("The trace writer thread is running", isTraceWriterThreadAlive()); //$NON-NLS-1$
+		assertTrue("Could not delete the trace file", traceFile.delete()); //$NON-NLS-1$
+		debugTrace.trace("/debug", "after delete"); //$NON-NLS-1$ //$NON-NLS-2$
+		TraceEntry[] traceOutput = null;
+		try {
+			traceOutput = readTraceFile(traceFile);
+		} catch (InvalidTraceEntry invalidEx) {
+			fail("Failed 'DebugTrace.trace(option, message)' test as an invalid trace entry was found.  Actual Value: '" + invalidEx.getActualValue() + "'.", invalidEx); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		assertEquals("Wrong number of entries", 1, traceOutput.length); //$NON-NLS-1$
+		assertEquals("Wrong message", "after delete", traceOutput[0].getMessage()); //$NON-NLS-1$ //$NON-NLS-2$
+		// delete the trace file
+		traceFile.delete();
+	}
+
+	private static boolean isTraceWriterThreadAlive() {
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if ("Framework Trace Writer".equals(thread.getName()) && thread.isAlive()) //$NON-NLS-1$
+				return true;
+		}
+		return false;
+	}
+
 	private static String decodeString(final String inputString) {
 		if (inputString == null || inputString.indexOf(TRACE_ELEMENT_DELIMITER_ENCODED) < 0)
 			return inputString;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2013 IBM Corporation and others.
+ * Copyright (c) 2013, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -17,6 +17,7 @@ public class AllFrameworkHookTests {
 	public static Test suite() {
 		TestSuite suite = new TestSuite(AllFrameworkHookTests.class.getName());
 		suite.addTest(new TestSuite(StorageHookTests.class));
+		suite.addTest(new TestSuite(ClassCacheTests.class));
 		return suite;
 	}
 }
@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.osgi.tests.hooks.framework;
+
+import java.io.*;
+import java.net.URL;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.eclipse.osgi.internal.framework.EquinoxConfiguration;
+import org.eclipse.osgi.tests.OSGiTestsActivator;
+import org.osgi.framework.*;
+import org.osgi.framework.hooks.weaving.*;
+import org.osgi.framework.launch.Framework;
+
+public class ClassCacheTests extends AbstractFrameworkHookTests {
+	private static final String TEST_BUNDLE = "substitutes.a";
+	private static final String TEST_CLASSNAME = "substitutes.x.Ax";
+	private static final String TEST_CLASSFILE = "substitutes/x/Ax.class";
+
+	private Map<String, String> configuration;
+	private Framework framework;
+	private File bundleDir;
+	private String location;
+
+	final List<String> woven = Collections.synchronizedList(new ArrayList<String>());
+	final List<Integer> events = Collections.synchronizedList(new ArrayList<Integer>());
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		File file = OSGiTestsActivator.getContext().getDataFile(getName());
+		// use a directory bundle so that the time of a single class file can be changed
+		bundleDir = new File(file, "bundle");
+		extract(bundleInstaller.getBundleLocation(TEST_BUNDLE), bundleDir);
+		location = "reference:" + bundleDir.toURI();
+		configuration = new HashMap<String, String>();
+		configuration.put(Constants.FRAMEWORK_STORAGE, new File(file, "storage").getAbsolutePath());
+		configuration.put(EquinoxConfiguration.PROP_CLASS_CACHE, "true");
+		framework = createFramework(configuration);
+	}
+
+	protected void tearDown() throws Exception {
+		stopQuietly(framework);
+		super.tearDown();
+	}
+
+	private static void extract(String loc, File dir) throws IOException {
+		ZipFile zip = new ZipFile(new File(new URL(loc.substring(loc.indexOf("file:"))).getPath()));
+		try {
+			for (Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements();) {
+				ZipEntry entry = entries.nextElement();
+				File target = new File(dir, entry.getName());
+				if (entry.isDirectory()) {
+					target.mkdirs();
+					continue;
+				}
+				target.getParentFile().mkdirs();
+				InputStream in = zip.getInputStream(entry);
+				OutputStream out = new FileOutputStream(target);
+				try {
+					byte[] buffer = new byte[4096];
+					for (int read = in.read(buffer); read > 0; read = in.read(buffer))
+						out.write(buffer, 0, read);
+				} finally {
+					in.close();
+					out.close();
+				}
+			}
+		} finally {
+			zip.close();
+		}
+	}
+
+	private void registerHooks(String config) {
+		Dictionary<String, Object> props = new Hashtable<String, Object>();
+		props.put("weaving.config", config);
+		BundleContext context = framework.getBundleContext();
+		context.registerService(WeavingHook.class, new WeavingHook() {
+			@Override
+			public void weave(WovenClass wovenClass) {
+				if (!TEST_CLASSNAME.equals(wovenClass.getClassName()))
+					return;
+				woven.add(wovenClass.getClassName());
+				// hand out a copy so that the class counts as transformed
+				wovenClass.setBytes(wovenClass.getBytes().clone());
+			}
+		}, props);
+		context.registerService(WovenClassListener.class, new WovenClassListener() {
+			@Override
+			public void modified(WovenClass wovenClass) {
+				if (TEST_CLASSNAME.equals(wovenClass.getClassName()))
+					events.add(wovenClass.getState());
+			}
+		}, null);
+	}
+
+	private void loadTestClass(String config) throws Exception {
+		initAndStart(framework);
+		registerHooks(config);
+		Bundle b = framework.getBundleContext().getBundle(location);
+		if (b == null)
+			b = framework.getBundleContext().installBundle(location);
+		b.loadClass(TEST_CLASSNAME);
+	}
+
+	private void restartAndLoadTestClass(String config) throws Exception {
+		stop(framework);
+		woven.clear();
+		events.clear();
+		framework = createFramework(configuration);
+		loadTestClass(config);
+	}
+
+	private void assertEvents() {
+		assertEquals("Wrong woven class events.", Arrays.asList(WovenClass.TRANSFORMED, WovenClass.DEFINED), events);
+	}
+
+	public void testCacheMiss() throws Exception {
+		loadTestClass("a");
+		assertEquals("The weaving hook was not called.", 1, woven.size());
+		assertEvents();
+	}
+
+	public void testCacheHit() throws Exception {
+		loadTestClass("a");
+		restartAndLoadTestClass("a");
+		assertEquals("The weaving hook was called.", 0, woven.size());
+		// the listeners still see the transformation of the cached class
+		assertEvents();
+	}
+
+	public void testCacheInvalidatedByHookProperties() throws Exception {
+		loadTestClass("a");
+		restartAndLoadTestClass("b");
+		assertEquals("The weaving hook was not called.", 1, woven.size());
+		assertEvents();
+		restartAndLoadTestClass("b");
+		assertEquals("The weaving hook was called.", 0, woven.size());
+	}
+
+	public void testCacheInvalidatedByEntry() throws Exception {
+		loadTestClass("a");
+		stop(framework);
+		File classFile = new File(bundleDir, TEST_CLASSFILE);
+		assertTrue("Could not change the class file time.", classFile.setLastModified(classFile.lastModified() - 10000));
+		framework = createFramework(configuration);
+		woven.clear();
+		events.clear();
+		loadTestClass("a");
+		assertEquals("The weaving hook was not called.", 1, woven.size());
+		assertEvents();
+	}
+}
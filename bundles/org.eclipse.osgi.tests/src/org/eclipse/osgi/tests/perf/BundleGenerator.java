@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.osgi.tests.perf;
+
+import java.io.*;
+import java.util.*;
+import java.util.jar.*;
+import java.util.zip.ZipEntry;
+import org.osgi.framework.Constants;
+
+/**
+ * Generates bundle manifests and bundle jars for the performance tests so that
+ * they can run headless without depending on pre-built test bundles.
+ * <p>
+ * The generated bundle graphs are chains; bundle <code>i</code> exports package
+ * <code>perf.chain.i</code> which uses the package of bundle <code>i - 1</code>,
+ * imports the packages of all the previous bundles up to the given fan in and
+ * requires a few earlier bundles by symbolic name.
+ */
+public class BundleGenerator {
+	public static final String CHAIN_PACKAGE = "perf.chain."; //$NON-NLS-1$
+	public static final String CHAIN_BUNDLE = "perf.chain.bundle"; //$NON-NLS-1$
+	public static final String CHAIN_CLASS = "C"; //$NON-NLS-1$
+
+	private BundleGenerator() {
+		// no instances
+	}
+
+	public static Map<String, String> createChainManifest(int index, int fanIn) {
+		Map<String, String> manifest = new HashMap<String, String>();
+		manifest.put(Constants.BUNDLE_MANIFESTVERSION, "2"); //$NON-NLS-1$
+		manifest.put(Constants.BUNDLE_SYMBOLICNAME, CHAIN_BUNDLE + index);
+		manifest.put(Constants.BUNDLE_VERSION, "1.0.0"); //$NON-NLS-1$
+		StringBuffer exports = new StringBuffer(CHAIN_PACKAGE).append(index).append("; version=1.0"); //$NON-NLS-1$
+		if (index > 0)
+			exports.append("; uses:=\"").append(CHAIN_PACKAGE).append(index - 1).append('"'); //$NON-NLS-1$
+		manifest.put(Constants.EXPORT_PACKAGE, exports.toString());
+		if (index > 0) {
+			StringBuffer imports = new StringBuffer();
+			for (int i = Math.max(0, index - fanIn); i < index; i++) {
+				if (imports.length() > 0)
+					imports.append(", "); //$NON-NLS-1$
+				imports.append(CHAIN_PACKAGE).append(i).append("; version=\"[1.0,2.0)\""); //$NON-NLS-1$
+			}
+			manifest.put(Constants.IMPORT_PACKAGE, imports.toString());
+		}
+		if (index > 1) {
+			// require every tenth bundle before this one, at most five of them
+			StringBuffer requires = new StringBuffer();
+			for (int i = index - 2, count = 0; i >= 0 && count < 5; i -= 10, count++) {
+				if (requires.length() > 0)
+					requires.append(", "); //$NON-NLS-1$
+				requires.append(CHAIN_BUNDLE).append(i);
+			}
+			manifest.put(Constants.REQUIRE_BUNDLE, requires.toString());
+		}
+		return manifest;
+	}
+
+	/**
+	 * Creates a chain of bundle jars in the given directory.  Each bundle contains
+	 * the class <code>perf.chain.i.C</code> and the given number of resources.
+	 * @return the generated bundle files in chain order
+	 */
+	public static File[] createChainBundles(File outputDir, int bundleCount, int fanIn, int resourceCount) throws IOException {
+		outputDir.mkdirs();
+		File[] bundles = new File[bundleCount];
+		for (int i = 0; i < bundleCount; i++) {
+			Map<String, String> headers = createChainManifest(i, fanIn);
+			String packagePath = (CHAIN_PACKAGE + i).replace('.', '/');
+			bundles[i] = createBundle(new File(outputDir, CHAIN_BUNDLE + i + ".jar"), headers, packagePath, resourceCount); //$NON-NLS-1$
+		}
+		return bundles;
+	}
+
+	public static File createBundle(File file, Map<String, String> headers, String packagePath, int resourceCount) throws IOException {
+		Manifest manifest = new Manifest();
+		Attributes attributes = manifest.getMainAttributes();
+		attributes.putValue("Manifest-Version", "1.0"); //$NON-NLS-1$ //$NON-NLS-2$
+		for (Map.Entry<String, String> header : headers.entrySet())
+			attributes.putValue(header.getKey(), header.getValue());
+		JarOutputStream jos = new JarOutputStream(new FileOutputStream(file), manifest);
+		try {
+			jos.putNextEntry(new ZipEntry(packagePath + '/' + CHAIN_CLASS + ".class")); //$NON-NLS-1$
+			jos.write(createEmptyClass(packagePath + '/' + CHAIN_CLASS));
+			jos.closeEntry();
+			byte[] content = new byte[256];
+			Arrays.fill(content, (byte) 'x');
+			for (int i = 0; i < resourceCount; i++) {
+				jos.putNextEntry(new ZipEntry(packagePath + "/resources/r" + i + ".txt")); //$NON-NLS-1$ //$NON-NLS-2$
+				jos.write(content);
+				jos.closeEntry();
+			}
+		} finally {
+			jos.close();
+		}
+		return file;
+	}
+
+	/**
+	 * Returns the bytes of a public class with the given internal name which
+	 * extends java.lang.Object and has no members.
+	 */
+	public static byte[] createEmptyClass(String internalName) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(0xCAFEBABE);
+		out.writeShort(0); // minor version
+		out.writeShort(50); // major version (Java 6)
+		out.writeShort(5); // constant pool count
+		out.writeByte(7); // #1 CONSTANT_Class
+		out.writeShort(2);
+		out.writeByte(1); // #2 CONSTANT_Utf8
+		out.writeUTF(internalName);
+		out.writeByte(7); // #3 CONSTANT_Class
+		out.writeShort(4);
+		out.writeByte(1); // #4 CONSTANT_Utf8
+		out.writeUTF("java/lang/Object"); //$NON-NLS-1$
+		out.writeShort(0x0021); // ACC_PUBLIC | ACC_SUPER
+		out.writeShort(1); // this class
+		out.writeShort(3); // super class
+		out.writeShort(0); // interfaces
+		out.writeShort(0); // fields
+		out.writeShort(0); // methods
+		out.writeShort(0); // attributes
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	public static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null)
+			for (int i = 0; i < children.length; i++)
+				delete(children[i]);
+		file.delete();
+	}
+}
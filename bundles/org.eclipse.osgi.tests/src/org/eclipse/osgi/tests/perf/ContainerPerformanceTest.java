@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.osgi.tests.perf;
+
+import java.io.*;
+import java.util.*;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import org.eclipse.core.tests.harness.CoreTest;
+import org.eclipse.core.tests.harness.PerformanceTestRunner;
+import org.eclipse.osgi.container.*;
+import org.eclipse.osgi.container.builders.OSGiManifestBuilderFactory;
+import org.eclipse.osgi.tests.container.dummys.*;
+import org.osgi.framework.BundleException;
+import org.osgi.framework.Constants;
+
+/**
+ * Measures resolving generated bundle graphs with the {@link ModuleContainer}
+ * and storing/loading the {@link ModuleDatabase}.
+ */
+public class ContainerPerformanceTest extends CoreTest {
+
+	public static Test suite() {
+		return new TestSuite(ContainerPerformanceTest.class);
+	}
+
+	public ContainerPerformanceTest(String name) {
+		super(name);
+	}
+
+	private DummyContainerAdaptor createContainer(int bundleCount, int fanIn) throws BundleException {
+		DummyContainerAdaptor adaptor = new DummyContainerAdaptor(new DummyCollisionHook(false), Collections.<String, String> emptyMap());
+		ModuleContainer container = adaptor.getContainer();
+		Map<String, String> systemManifest = new HashMap<String, String>();
+		systemManifest.put(Constants.BUNDLE_MANIFESTVERSION, "2"); //$NON-NLS-1$
+		systemManifest.put(Constants.BUNDLE_SYMBOLICNAME, Constants.SYSTEM_BUNDLE_SYMBOLICNAME);
+		container.install(null, Constants.SYSTEM_BUNDLE_LOCATION, OSGiManifestBuilderFactory.createBuilder(systemManifest), null);
+		Module systemModule = container.getModule(0);
+		for (int i = 0; i < bundleCount; i++) {
+			ModuleRevisionBuilder builder = OSGiManifestBuilderFactory.createBuilder(BundleGenerator.createChainManifest(i, fanIn));
+			container.install(systemModule, BundleGenerator.CHAIN_BUNDLE + i, builder, null);
+		}
+		return adaptor;
+	}
+
+	private void doResolve(final int bundleCount, final int fanIn, int steps) {
+		PerformanceTestRunner runner = new PerformanceTestRunner() {
+			private ModuleContainer container;
+
+			protected void setUp() {
+				try {
+					container = createContainer(bundleCount, fanIn).getContainer();
+				} catch (BundleException e) {
+					CoreTest.fail("Failed to create container", e); //$NON-NLS-1$
+				}
+			}
+
+			protected void test() {
+				ModuleResolutionReport report = container.resolve(null, false);
+				if (report.getResolutionException() != null)
+					CoreTest.fail("Failed to resolve", report.getResolutionException()); //$NON-NLS-1$
+			}
+		};
+		runner.run(this, steps, 1);
+	}
+
+	public void testResolve0100() {
+		doResolve(100, 5, 10);
+	}
+
+	public void testResolve0500() {
+		doResolve(500, 5, 10);
+	}
+
+	public void testResolve0500FanIn20() {
+		doResolve(500, 20, 5);
+	}
+
+	private void doResolveDynamic(final int bundleCount, int steps) {
+		PerformanceTestRunner runner = new PerformanceTestRunner() {
+			private ModuleContainer container;
+			private ModuleRevision importer;
+
+			protected void setUp() {
+				try {
+					container = createContainer(bundleCount, 5).getContainer();
+					Map<String, String> manifest = new HashMap<String, String>();
+					manifest.put(Constants.BUNDLE_MANIFESTVERSION, "2"); //$NON-NLS-1$
+					manifest.put(Constants.BUNDLE_SYMBOLICNAME, "perf.dynamic.importer"); //$NON-NLS-1$
+					manifest.put(Constants.DYNAMICIMPORT_PACKAGE, "*"); //$NON-NLS-1$
+					Module module = container.install(container.getModule(0), "perf.dynamic.importer", OSGiManifestBuilderFactory.createBuilder(manifest), null); //$NON-NLS-1$
+					ModuleResolutionReport report = container.resolve(null, false);
+					if (report.getResolutionException() != null)
+						CoreTest.fail("Failed to resolve", report.getResolutionException()); //$NON-NLS-1$
+					importer = module.getCurrentRevision();
+				} catch (BundleException e) {
+					CoreTest.fail("Failed to create container", e); //$NON-NLS-1$
+				}
+			}
+
+			protected void test() {
+				// the cost of each dynamic import should not depend on the number of installed bundles
+				for (int i = 0; i < 100; i++)
+					assertNotNull("Missing dynamic wire", container.resolveDynamic(BundleGenerator.CHAIN_PACKAGE + i, importer)); //$NON-NLS-1$
+			}
+		};
+		runner.run(this, steps, 1);
+	}
+
+	public void testResolveDynamic0100() {
+		doResolveDynamic(100, 10);
+	}
+
+	public void testResolveDynamic1000() {
+		doResolveDynamic(1000, 10);
+	}
+
+	public void testInstall3000() {
+		PerformanceTestRunner runner = new PerformanceTestRunner() {
+			protected void test() {
+				try {
+					createContainer(3000, 5);
+				} catch (BundleException e) {
+					CoreTest.fail("Failed to create container", e); //$NON-NLS-1$
+				}
+			}
+		};
+		runner.run(this, 5, 1);
+	}
+
+	public void testStoreAndLoad() throws BundleException, IOException {
+		DummyContainerAdaptor adaptor = createContainer(1000, 5);
+		adaptor.getContainer().resolve(null, false);
+		final ModuleDatabase database = adaptor.getDatabase();
+		PerformanceTestRunner runner = new PerformanceTestRunner() {
+			protected void test() {
+				try {
+					ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+					database.store(new DataOutputStream(bytes), true);
+					DummyContainerAdaptor loaded = new DummyContainerAdaptor(new DummyCollisionHook(false), Collections.<String, String> emptyMap());
+					loaded.getDatabase().load(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+				} catch (IOException e) {
+					CoreTest.fail("Failed to store and load the database", e); //$NON-NLS-1$
+				}
+			}
+		};
+		runner.run(this, 10, 5);
+	}
+}
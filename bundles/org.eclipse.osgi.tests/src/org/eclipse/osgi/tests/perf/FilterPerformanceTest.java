@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.osgi.tests.perf;
+
+import java.util.*;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import org.eclipse.core.tests.harness.CoreTest;
+import org.eclipse.core.tests.harness.PerformanceTestRunner;
+import org.osgi.framework.*;
+
+/**
+ * Measures parsing and matching of filters created with {@link FrameworkUtil#createFilter(String)}.
+ */
+public class FilterPerformanceTest extends CoreTest {
+	private static final String[] FILTERS = {"(objectClass=org.example.Service)", //$NON-NLS-1$
+			"(&(objectClass=org.example.Service)(service.ranking>=10))", //$NON-NLS-1$
+			"(&(objectClass=org.example.Service)(|(name=foo*)(name=*bar)(name=b*a*z))(!(disabled=true)))", //$NON-NLS-1$
+			"(&(version>=1.0.0)(!(version>=2.0.0))(osgi.wiring.package=org.example.api))", //$NON-NLS-1$
+			"(|(a=1)(b=2)(c=3)(d=4)(e=5)(f=6)(g=7)(h=8)(i=9)(j=10))"}; //$NON-NLS-1$
+
+	public static Test suite() {
+		return new TestSuite(FilterPerformanceTest.class);
+	}
+
+	public FilterPerformanceTest(String name) {
+		super(name);
+	}
+
+	private static Filter[] createFilters() throws InvalidSyntaxException {
+		Filter[] filters = new Filter[FILTERS.length];
+		for (int i = 0; i < filters.length; i++)
+			filters[i] = FrameworkUtil.createFilter(FILTERS[i]);
+		return filters;
+	}
+
+	private static Dictionary<String, Object> createProperties() {
+		Dictionary<String, Object> properties = new Hashtable<String, Object>();
+		properties.put(Constants.OBJECTCLASS, new String[] {"org.example.Other", "org.example.Service"}); //$NON-NLS-1$ //$NON-NLS-2$
+		properties.put(Constants.SERVICE_RANKING, new Integer(20));
+		properties.put("name", "bazaar"); //$NON-NLS-1$ //$NON-NLS-2$
+		properties.put("disabled", Boolean.FALSE); //$NON-NLS-1$
+		properties.put("version", new Version(1, 5, 0)); //$NON-NLS-1$
+		properties.put("osgi.wiring.package", "org.example.api"); //$NON-NLS-1$ //$NON-NLS-2$
+		properties.put("j", new Long(10)); //$NON-NLS-1$
+		return properties;
+	}
+
+	public void testParse() {
+		new PerformanceTestRunner() {
+			protected void test() {
+				try {
+					for (int i = 0; i < 1000; i++)
+						createFilters();
+				} catch (InvalidSyntaxException e) {
+					CoreTest.fail("Failed to parse filter", e); //$NON-NLS-1$
+				}
+			}
+		}.run(this, 10, 10);
+	}
+
+	public void testMatch() throws InvalidSyntaxException {
+		final Filter[] filters = createFilters();
+		final Dictionary<String, Object> properties = createProperties();
+		new PerformanceTestRunner() {
+			protected void test() {
+				for (int i = 0; i < 10000; i++)
+					for (int j = 0; j < filters.length; j++)
+						filters[j].match(properties);
+			}
+		}.run(this, 10, 10);
+	}
+
+	public void testMatchMap() throws InvalidSyntaxException {
+		final Filter[] filters = createFilters();
+		Dictionary<String, Object> properties = createProperties();
+		final Map<String, Object> map = new HashMap<String, Object>();
+		for (Enumeration<String> keys = properties.keys(); keys.hasMoreElements();) {
+			String key = keys.nextElement();
+			map.put(key, properties.get(key));
+		}
+		new PerformanceTestRunner() {
+			protected void test() {
+				for (int i = 0; i < 10000; i++)
+					for (int j = 0; j < filters.length; j++)
+						filters[j].matches(map);
+			}
+		}.run(this, 10, 10);
+	}
+}
@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.osgi.tests.perf;
+
+import java.io.*;
+import java.net.URL;
+import java.util.*;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import org.eclipse.core.tests.harness.CoreTest;
+import org.eclipse.core.tests.harness.PerformanceTestRunner;
+import org.eclipse.osgi.launch.Equinox;
+import org.eclipse.osgi.tests.OSGiTestsActivator;
+import org.osgi.framework.*;
+import org.osgi.framework.wiring.FrameworkWiring;
+
+/**
+ * Measures launching a framework with generated bundles installed, loading
+ * classes through chains of package imports and reading bundle entries.
+ */
+public class FrameworkPerformanceTest extends CoreTest {
+	private File root;
+	private Equinox equinox;
+
+	public static Test suite() {
+		return new TestSuite(FrameworkPerformanceTest.class);
+	}
+
+	public FrameworkPerformanceTest(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		root = OSGiTestsActivator.getContext().getDataFile(getName());
+		BundleGenerator.delete(root);
+	}
+
+	protected void tearDown() throws Exception {
+		stopFramework();
+		BundleGenerator.delete(root);
+		super.tearDown();
+	}
+
+	private Equinox startFramework() throws BundleException {
+		Map<String, Object> configuration = new HashMap<String, Object>();
+		configuration.put(Constants.FRAMEWORK_STORAGE, new File(root, "storage").getAbsolutePath()); //$NON-NLS-1$
+		equinox = new Equinox(configuration);
+		equinox.start();
+		return equinox;
+	}
+
+	private void stopFramework() throws BundleException, InterruptedException {
+		if (equinox == null)
+			return;
+		equinox.stop();
+		equinox.waitForStop(10000);
+		equinox = null;
+	}
+
+	private Bundle[] installChain(int bundleCount, int fanIn, int resourceCount) throws BundleException, IOException {
+		File[] files = BundleGenerator.createChainBundles(new File(root, "bundles"), bundleCount, fanIn, resourceCount); //$NON-NLS-1$
+		BundleContext context = equinox.getBundleContext();
+		Bundle[] bundles = new Bundle[files.length];
+		for (int i = 0; i < files.length; i++)
+			bundles[i] = context.installBundle(files[i].toURI().toString());
+		assertTrue("Failed to resolve bundles", equinox.adapt(FrameworkWiring.class).resolveBundles(Arrays.asList(bundles))); //$NON-NLS-1$
+		return bundles;
+	}
+
+	public void testLaunchToActive() throws Exception {
+		startFramework();
+		Bundle[] bundles = installChain(500, 5, 0);
+		for (int i = 0; i < bundles.length; i++)
+			bundles[i].start();
+		stopFramework();
+
+		new PerformanceTestRunner() {
+			protected void tearDown() {
+				try {
+					stopFramework();
+				} catch (Exception e) {
+					CoreTest.fail("Failed to stop framework", e); //$NON-NLS-1$
+				}
+			}
+
+			protected void test() {
+				try {
+					startFramework();
+				} catch (BundleException e) {
+					CoreTest.fail("Failed to start framework", e); //$NON-NLS-1$
+				}
+			}
+		}.run(this, 10, 1);
+	}
+
+	public void testClassLoadingImportChain() throws Exception {
+		startFramework();
+		final Bundle[] bundles = installChain(100, 100, 0);
+		final Bundle last = bundles[bundles.length - 1];
+		final String[] classNames = new String[bundles.length - 1];
+		for (int i = 0; i < classNames.length; i++)
+			classNames[i] = BundleGenerator.CHAIN_PACKAGE + i + '.' + BundleGenerator.CHAIN_CLASS;
+
+		new PerformanceTestRunner() {
+			protected void test() {
+				try {
+					for (int i = 0; i < 100; i++)
+						for (int j = 0; j < classNames.length; j++)
+							last.loadClass(classNames[j]);
+				} catch (ClassNotFoundException e) {
+					CoreTest.fail("Failed to load class", e); //$NON-NLS-1$
+				}
+			}
+		}.run(this, 10, 10);
+	}
+
+	public void testEntryReads() throws Exception {
+		startFramework();
+		final int resourceCount = 200;
+		final Bundle[] bundles = installChain(20, 1, resourceCount);
+		final byte[] buffer = new byte[1024];
+
+		new PerformanceTestRunner() {
+			protected void test() {
+				try {
+					for (int i = 0; i < bundles.length; i++) {
+						String path = (BundleGenerator.CHAIN_PACKAGE + i).replace('.', '/') + "/resources/r"; //$NON-NLS-1$
+						for (int j = 0; j < resourceCount; j++) {
+							URL entry = bundles[i].getEntry(path + j + ".txt"); //$NON-NLS-1$
+							InputStream in = entry.openStream();
+							try {
+								while (in.read(buffer) != -1) {
+									// just read the content
+								}
+							} finally {
+								in.close();
+							}
+						}
+					}
+				} catch (IOException e) {
+					CoreTest.fail("Failed to read entry", e); //$NON-NLS-1$
+				}
+			}
+		}.run(this, 10, 5);
+	}
+
+	public void testFindEntries() throws Exception {
+		startFramework();
+		final Bundle[] bundles = installChain(20, 1, 200);
+
+		new PerformanceTestRunner() {
+			protected void test() {
+				for (int i = 0; i < bundles.length; i++) {
+					Enumeration<URL> entries = bundles[i].findEntries("/", "*.txt", true); //$NON-NLS-1$ //$NON-NLS-2$
+					while (entries != null && entries.hasMoreElements())
+						entries.nextElement();
+				}
+			}
+		}.run(this, 10, 5);
+	}
+}
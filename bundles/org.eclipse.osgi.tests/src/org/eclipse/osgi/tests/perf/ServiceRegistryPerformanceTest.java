@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.osgi.tests.perf;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import org.eclipse.core.tests.harness.CoreTest;
+import org.eclipse.core.tests.harness.PerformanceTestRunner;
+import org.eclipse.osgi.launch.Equinox;
+import org.eclipse.osgi.tests.OSGiTestsActivator;
+import org.osgi.framework.*;
+
+/**
+ * Measures service lookups, service event publishing and concurrent service
+ * registrations in a nested framework.
+ */
+public class ServiceRegistryPerformanceTest extends CoreTest {
+	private static final int CLASS_COUNT = 100;
+	// a factory allows registering under generated class names which do not exist
+	private static final ServiceFactory<Object> FACTORY = new ServiceFactory<Object>() {
+		public Object getService(Bundle bundle, ServiceRegistration<Object> registration) {
+			return new Object();
+		}
+
+		public void ungetService(Bundle bundle, ServiceRegistration<Object> registration, Object service) {
+			// nothing
+		}
+	};
+	private File root;
+	private Equinox equinox;
+	private BundleContext context;
+
+	public static Test suite() {
+		return new TestSuite(ServiceRegistryPerformanceTest.class);
+	}
+
+	public ServiceRegistryPerformanceTest(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		root = OSGiTestsActivator.getContext().getDataFile(getName());
+		BundleGenerator.delete(root);
+		Map<String, Object> configuration = new HashMap<String, Object>();
+		configuration.put(Constants.FRAMEWORK_STORAGE, root.getAbsolutePath());
+		equinox = new Equinox(configuration);
+		equinox.start();
+		context = equinox.getBundleContext();
+	}
+
+	protected void tearDown() throws Exception {
+		equinox.stop();
+		equinox.waitForStop(10000);
+		BundleGenerator.delete(root);
+		super.tearDown();
+	}
+
+	static String getClassName(int i) {
+		return "org.example.Service" + (i % CLASS_COUNT); //$NON-NLS-1$
+	}
+
+	private List<ServiceRegistration<?>> registerServices(int serviceCount) {
+		List<ServiceRegistration<?>> registrations = new ArrayList<ServiceRegistration<?>>(serviceCount);
+		for (int i = 0; i < serviceCount; i++) {
+			Dictionary<String, Object> properties = new Hashtable<String, Object>();
+			properties.put("index", new Integer(i)); //$NON-NLS-1$
+			properties.put(Constants.SERVICE_RANKING, new Integer(i % 10));
+			registrations.add(context.registerService(getClassName(i), FACTORY, properties));
+		}
+		return registrations;
+	}
+
+	public void testGetServiceReferencesByClass() {
+		registerServices(10000);
+		new PerformanceTestRunner() {
+			protected void test() {
+				for (int i = 0; i < 10000; i++)
+					assertNotNull(context.getServiceReference(getClassName(i)));
+			}
+		}.run(this, 10, 10);
+	}
+
+	public void testGetServiceReferencesByFilter() {
+		registerServices(10000);
+		new PerformanceTestRunner() {
+			protected void test() {
+				try {
+					for (int i = 0; i < 1000; i++)
+						assertNotNull(context.getServiceReferences(getClassName(i), "(index=" + i + ")")); //$NON-NLS-1$ //$NON-NLS-2$
+					for (int i = 0; i < 10; i++)
+						assertNotNull(context.getServiceReferences((String) null, "(service.ranking=" + i + ")")); //$NON-NLS-1$ //$NON-NLS-2$
+				} catch (InvalidSyntaxException e) {
+					CoreTest.fail("Invalid filter", e); //$NON-NLS-1$
+				}
+			}
+		}.run(this, 10, 10);
+	}
+
+	public void testServiceEventPublishing() throws InvalidSyntaxException {
+		final int[] events = new int[1];
+		for (int i = 0; i < 1010; i++) {
+			ServiceListener listener = new ServiceListener() {
+				public void serviceChanged(ServiceEvent event) {
+					events[0]++;
+				}
+			};
+			if (i < 1000)
+				context.addServiceListener(listener, "(objectClass=" + getClassName(i) + ")"); //$NON-NLS-1$ //$NON-NLS-2$
+			else
+				// listeners without a filter are called for every event
+				context.addServiceListener(listener);
+		}
+
+		new PerformanceTestRunner() {
+			protected void test() {
+				List<ServiceRegistration<?>> registrations = registerServices(1000);
+				for (ServiceRegistration<?> registration : registrations)
+					registration.setProperties(new Hashtable<String, Object>(Collections.singletonMap("modified", Boolean.TRUE))); //$NON-NLS-1$
+				for (ServiceRegistration<?> registration : registrations)
+					registration.unregister();
+			}
+		}.run(this, 10, 5);
+		assertTrue("No events delivered", events[0] > 0); //$NON-NLS-1$
+	}
+
+	public void testRegistrationStorm() throws Exception {
+		final int threadCount = 8;
+		File[] files = BundleGenerator.createChainBundles(new File(root, "bundles"), threadCount, 1, 0); //$NON-NLS-1$
+		final BundleContext[] contexts = new BundleContext[threadCount];
+		for (int i = 0; i < threadCount; i++) {
+			Bundle bundle = context.installBundle(files[i].toURI().toString());
+			bundle.start();
+			contexts[i] = bundle.getBundleContext();
+		}
+		final AtomicInteger events = new AtomicInteger();
+		final ServiceListener listener = new ServiceListener() {
+			public void serviceChanged(ServiceEvent event) {
+				events.incrementAndGet();
+			}
+		};
+		// each bundle listens to all events so each event is published to all the bundles
+		for (BundleContext bundleContext : contexts)
+			bundleContext.addServiceListener(listener);
+		final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+
+		new PerformanceTestRunner() {
+			protected void test() {
+				Thread[] threads = new Thread[threadCount];
+				for (int i = 0; i < threadCount; i++) {
+					final BundleContext bundleContext = contexts[i];
+					threads[i] = new Thread(new Runnable() {
+						public void run() {
+							try {
+								for (int j = 0; j < 500; j++) {
+									// activators typically add listeners while other bundles register services
+									ServiceListener tracker = new ServiceListener() {
+										public void serviceChanged(ServiceEvent event) {
+											// nothing
+										}
+									};
+									bundleContext.addServiceListener(tracker, "(objectClass=" + getClassName(j) + ")"); //$NON-NLS-1$ //$NON-NLS-2$
+									ServiceRegistration<?> registration = bundleContext.registerService(getClassName(j), FACTORY, null);
+									registration.unregister();
+									bundleContext.removeServiceListener(tracker);
+								}
+							} catch (Throwable t) {
+								errors.add(t);
+							}
+						}
+					}, "RegistrationStorm-" + i); //$NON-NLS-1$
+					threads[i].start();
+				}
+				for (Thread thread : threads) {
+					try {
+						thread.join();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}
+		}.run(this, 5, 1);
+		assertTrue("Unexpected errors: " + errors, errors.isEmpty()); //$NON-NLS-1$
+		assertTrue("No events delivered", events.get() > 0); //$NON-NLS-1$
+	}
+}
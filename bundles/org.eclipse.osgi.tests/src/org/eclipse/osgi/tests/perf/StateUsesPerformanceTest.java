@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2003, 2010 IBM Corporation and others.
+ * Copyright (c) 2003, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -57,6 +57,63 @@ public class StateUsesPerformanceTest extends BasePerformanceTest {
 		doUsesResolution(5000, 1, null, AllTests.DEGRADATION_RESOLUTION);
 	}
 
+	private void doDuplicateExportsResolution(int copies, int repetitions, String localName, String degradation) throws BundleException {
+		final State originalState = buildRandomState(100);
+		addDuplicateExportBundles(originalState, copies);
+		PerformanceTestRunner runner = new PerformanceTestRunner() {
+			protected void test() {
+				originalState.resolve(false);
+			}
+		};
+		runner.setRegressionReason(degradation);
+		runner.run(this, localName, 10, repetitions);
+	}
+
+	public void testDuplicateExportsResolution010() throws BundleException {
+		doDuplicateExportsResolution(10, 10, null, AllTests.DEGRADATION_RESOLUTION);
+	}
+
+	public void testDuplicateExportsResolution050() throws BundleException {
+		doDuplicateExportsResolution(50, 10, null, AllTests.DEGRADATION_RESOLUTION);
+	}
+
+	public void testDuplicateExportsResolution100() throws BundleException {
+		doDuplicateExportsResolution(100, 1, null, AllTests.DEGRADATION_RESOLUTION);
+	}
+
+	/*
+	 * Adds copies of bundles exporting the same packages.  The X bundles only accept the
+	 * lowest version of package y while the consumers would initially select the highest
+	 * version; this forces the resolver to search the multiple supplier combinations.
+	 */
+	private void addDuplicateExportBundles(State state, int copies) throws BundleException {
+		int id = state.getBundles().length + 500;
+		for (int i = 1; i <= copies; i++) {
+			Hashtable manifest = new Hashtable();
+			manifest.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+			manifest.put(Constants.BUNDLE_SYMBOLICNAME, "Y");
+			manifest.put(Constants.BUNDLE_VERSION, i + ".0.0");
+			manifest.put(Constants.EXPORT_PACKAGE, "y; version=" + i + ".0.0");
+			state.addBundle(state.getFactory().createBundleDescription(state, manifest, (String) manifest.get(Constants.BUNDLE_SYMBOLICNAME) + (String) manifest.get(Constants.BUNDLE_VERSION), id++));
+
+			manifest = new Hashtable();
+			manifest.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+			manifest.put(Constants.BUNDLE_SYMBOLICNAME, "X");
+			manifest.put(Constants.BUNDLE_VERSION, i + ".0.0");
+			manifest.put(Constants.EXPORT_PACKAGE, "x; uses:=y; version=" + i + ".0.0");
+			manifest.put(Constants.IMPORT_PACKAGE, "y; version=\"[1.0.0,2.0.0)\"");
+			state.addBundle(state.getFactory().createBundleDescription(state, manifest, (String) manifest.get(Constants.BUNDLE_SYMBOLICNAME) + (String) manifest.get(Constants.BUNDLE_VERSION), id++));
+
+			manifest = new Hashtable();
+			manifest.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+			manifest.put(Constants.BUNDLE_SYMBOLICNAME, "D" + i);
+			manifest.put(Constants.BUNDLE_VERSION, "1.0.0");
+			manifest.put(Constants.EXPORT_PACKAGE, "d" + i + "; uses:=x");
+			manifest.put(Constants.IMPORT_PACKAGE, "x, y");
+			state.addBundle(state.getFactory().createBundleDescription(state, manifest, (String) manifest.get(Constants.BUNDLE_SYMBOLICNAME) + (String) manifest.get(Constants.BUNDLE_VERSION), id++));
+		}
+	}
+
 	private void addUsesBundles(State state) throws BundleException {
 		int id = state.getBundles().length + 500;
 		Hashtable manifest = new Hashtable();
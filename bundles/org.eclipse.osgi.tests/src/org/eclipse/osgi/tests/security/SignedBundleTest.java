@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2012 IBM Corporation and others.
+ * Copyright (c) 2007, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,15 +11,23 @@
 package org.eclipse.osgi.tests.security;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.lang.reflect.Field;
 import java.security.SignatureException;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
+import java.util.HashMap;
+import java.util.Map;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 import org.eclipse.core.tests.session.ConfigurationSessionTestSuite;
+import org.eclipse.osgi.container.Module;
+import org.eclipse.osgi.internal.signedcontent.SignedStorageHook;
+import org.eclipse.osgi.launch.Equinox;
 import org.eclipse.osgi.signedcontent.*;
-import org.osgi.framework.Bundle;
-import org.osgi.framework.BundleException;
+import org.eclipse.osgi.storage.BundleInfo.Generation;
+import org.eclipse.osgi.tests.OSGiTestsActivator;
+import org.osgi.framework.*;
 
 public class SignedBundleTest extends BaseSecurityTest {
 
@@ -909,4 +917,72 @@ public class SignedBundleTest extends BaseSecurityTest {
 			}
 		}
 	}
+
+	public void testSignedContentPersisted() throws Exception {
+		File unsignedFile = copyEntryFile(getTestJarPath("unsigned"));
+		File signedFile = copyEntryFile(getTestJarPath("signed"));
+		File content = new File(unsignedFile.getParentFile(), getName() + ".jar");
+		copy(new FileInputStream(unsignedFile), content);
+
+		Map<String, Object> configuration = new HashMap<String, Object>();
+		configuration.put(Constants.FRAMEWORK_STORAGE, OSGiTestsActivator.getContext().getDataFile(getName()).getAbsolutePath());
+		configuration.put("osgi.signedcontent.support", "all");
+		Equinox equinox = new Equinox(configuration);
+		try {
+			equinox.start();
+			// install by reference so that the content can be replaced
+			long bundleId = equinox.getBundleContext().installBundle("reference:" + content.toURI()).getBundleId();
+			// the content is processed with the storage hook attached on the next launch
+			stop(equinox);
+			equinox = new Equinox(configuration);
+			equinox.start();
+			assertFalse("Content is signed", getSignedContent(equinox, bundleId).isSigned());
+			assertTrue("Content is not verified", isVerified(equinox, bundleId));
+
+			// the verification result survives a restart
+			stop(equinox);
+			equinox = new Equinox(configuration);
+			equinox.init();
+			assertTrue("Verification result did not survive the restart", isVerified(equinox, bundleId));
+			assertFalse("Content is signed", getSignedContent(equinox, bundleId).isSigned());
+
+			// replacing the content invalidates the persisted result
+			stop(equinox);
+			copy(new FileInputStream(signedFile), content);
+			equinox = new Equinox(configuration);
+			equinox.init();
+			assertFalse("Verification result of the replaced content is still valid", isVerified(equinox, bundleId));
+			assertTrue("Replaced content is not signed", getSignedContent(equinox, bundleId).isSigned());
+			assertTrue("Content is not verified", isVerified(equinox, bundleId));
+		} finally {
+			stop(equinox);
+		}
+	}
+
+	private static void stop(Equinox equinox) throws Exception {
+		equinox.stop();
+		FrameworkEvent event = equinox.waitForStop(10000);
+		assertEquals("Wrong event type", FrameworkEvent.STOPPED, event.getType());
+	}
+
+	private static SignedContent getSignedContent(Equinox equinox, long bundleId) throws Exception {
+		BundleContext context = equinox.getBundleContext();
+		ServiceReference<SignedContentFactory> ref = context.getServiceReference(SignedContentFactory.class);
+		assertNotNull("No SignedContentFactory service", ref);
+		SignedContentFactory factory = context.getService(ref);
+		try {
+			return factory.getSignedContent(context.getBundle(bundleId));
+		} finally {
+			context.ungetService(ref);
+		}
+	}
+
+	private static boolean isVerified(Equinox equinox, long bundleId) throws Exception {
+		Module module = equinox.getBundleContext().getBundle(bundleId).adapt(Module.class);
+		Generation generation = (Generation) module.getCurrentRevision().getRevisionInfo();
+		Object hook = generation.getStorageHook(SignedStorageHook.class);
+		Field verified = hook.getClass().getDeclaredField("verified");
+		verified.setAccessible(true);
+		return verified.getBoolean(hook);
+	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2013 IBM Corporation and others.
+ * Copyright (c) 2008, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -40,6 +40,7 @@ public class SecurityAdminUnitTests extends AbstractBundleTests {
 
 	private static final ConditionInfo[] ALLLOCATION_CONDS = new ConditionInfo[] {new ConditionInfo("org.osgi.service.condpermadmin.BundleLocationCondition", new String[] {"*"})}; //$NON-NLS-1$ //$NON-NLS-2$
 	private static final ConditionInfo POST_MUT_SAT = new ConditionInfo("ext.framework.b.TestCondition", new String[] {"POST_MUT_SAT", "true", "true", "true"}); //$NON-NLS-1$//$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+	private static final ConditionInfo MUT_SAT = new ConditionInfo("ext.framework.b.TestCondition", new String[] {"MUT_SAT", "true", "false", "true"}); //$NON-NLS-1$//$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
 	private static final ConditionInfo POST_MUT_UNSAT = new ConditionInfo("ext.framework.b.TestCondition", new String[] {"POST_MUT_UNSAT", "true", "true", "false"}); //$NON-NLS-1$//$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
 
 	private static final ConditionInfo SIGNER_CONDITION1 = new ConditionInfo("org.osgi.service.condpermadmin.BundleSignerCondition", new String[] {"*;cn=test1,c=US"}); //$NON-NLS-1$//$NON-NLS-2$
@@ -647,6 +648,72 @@ public class SecurityAdminUnitTests extends AbstractBundleTests {
 		testSMPermission(pds, new FilePermission("test", "read"), true); //$NON-NLS-1$ //$NON-NLS-2$
 	}
 
+	public void testMutableConditionDecisions() {
+		installConditionBundle();
+		TestCondition.clearConditions();
+		Bundle test1 = installTestBundle(TEST_BUNDLE);
+		ProtectionDomain pd1 = test1.adapt(ProtectionDomain.class);
+
+		ConditionalPermissionUpdate update = cpa.newConditionalPermissionUpdate();
+		List rows = update.getConditionalPermissionInfos();
+		rows.add(cpa.newConditionalPermissionInfo(null, new ConditionInfo[] {MUT_SAT}, READONLY_INFOS, ConditionalPermissionInfo.ALLOW));
+		assertTrue("failed to commit", update.commit()); //$NON-NLS-1$
+
+		FilePermission read = new FilePermission("test", "read"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertTrue("test should have the permission", pd1.implies(read)); //$NON-NLS-1$
+		TestCondition tc1 = TestCondition.getTestCondition("MUT_SAT_" + test1.getBundleId()); //$NON-NLS-1$
+		assertNotNull("tc1", tc1); //$NON-NLS-1$
+
+		// the decision depends on a mutable condition; it must be evaluated again
+		tc1.setSatisfied(false);
+		assertFalse("test should not have the permission", pd1.implies(read)); //$NON-NLS-1$
+		tc1.setSatisfied(true);
+		assertTrue("test should have the permission", pd1.implies(read)); //$NON-NLS-1$
+
+		// permission admin changes must be seen by previously checked domains
+		pa.setPermissions(test1.getLocation(), SOCKET_INFOS);
+		assertFalse("test should not have the permission", pd1.implies(read)); //$NON-NLS-1$
+		assertTrue("test should have the permission", pd1.implies(new SocketPermission("localhost", "accept"))); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		pa.setPermissions(test1.getLocation(), null);
+		assertTrue("test should have the permission", pd1.implies(read)); //$NON-NLS-1$
+	}
+
+	public void testBundleBoundPermissionDecisions() {
+		Bundle test1 = installTestBundle(TEST_BUNDLE);
+		Bundle test2 = installTestBundle(TEST2_BUNDLE);
+		ProtectionDomain pd1 = test1.adapt(ProtectionDomain.class);
+
+		ConditionalPermissionUpdate update = cpa.newConditionalPermissionUpdate();
+		List rows = update.getConditionalPermissionInfos();
+		PermissionInfo[] importInfos = new PermissionInfo[] {new PermissionInfo(PackagePermission.class.getName(), "(id=" + test1.getBundleId() + ")", PackagePermission.IMPORT)}; //$NON-NLS-1$ //$NON-NLS-2$
+		rows.add(cpa.newConditionalPermissionInfo(null, ALLLOCATION_CONDS, importInfos, ConditionalPermissionInfo.ALLOW));
+		assertTrue("failed to commit", update.commit()); //$NON-NLS-1$
+
+		// the permissions have the same type, name and actions but refer to different exporters
+		assertTrue("test should have the permission", pd1.implies(new PackagePermission("test.pkg", test1, PackagePermission.IMPORT))); //$NON-NLS-1$ //$NON-NLS-2$
+		assertFalse("test should not have the permission", pd1.implies(new PackagePermission("test.pkg", test2, PackagePermission.IMPORT))); //$NON-NLS-1$ //$NON-NLS-2$
+		assertTrue("test should have the permission", pd1.implies(new PackagePermission("test.pkg", test1, PackagePermission.IMPORT))); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public void testAdaptPermissionDecisions() {
+		Bundle test1 = installTestBundle(TEST_BUNDLE);
+		Bundle test2 = installTestBundle(TEST2_BUNDLE);
+		ProtectionDomain pd1 = test1.adapt(ProtectionDomain.class);
+
+		ConditionalPermissionUpdate update = cpa.newConditionalPermissionUpdate();
+		List rows = update.getConditionalPermissionInfos();
+		PermissionInfo[] adaptInfos = new PermissionInfo[] {new PermissionInfo(AdaptPermission.class.getName(), "(id=" + test1.getBundleId() + ")", AdaptPermission.ADAPT)}; //$NON-NLS-1$ //$NON-NLS-2$
+		rows.add(cpa.newConditionalPermissionInfo(null, ALLLOCATION_CONDS, adaptInfos, ConditionalPermissionInfo.ALLOW));
+		assertTrue("failed to commit", update.commit()); //$NON-NLS-1$
+
+		// the permissions checked when adapting the bundles have the same type, name and actions
+		String type = Object.class.getName();
+		for (int i = 0; i < 2; i++) {
+			assertTrue("test should be allowed to adapt test", pd1.implies(new AdaptPermission(type, test1, AdaptPermission.ADAPT))); //$NON-NLS-1$
+			assertFalse("test should not be allowed to adapt test2", pd1.implies(new AdaptPermission(type, test2, AdaptPermission.ADAPT))); //$NON-NLS-1$
+		}
+	}
+
 	public void testAccessControlContext01() {
 		// test single row with signer condition
 		ConditionalPermissionUpdate update = cpa.newConditionalPermissionUpdate();
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2009 IBM Corporation and others.
+ * Copyright (c) 2008, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,9 +10,10 @@
  *******************************************************************************/
 package org.eclipse.osgi.tests.serviceregistry;
 
-import java.util.Hashtable;
+import java.util.*;
 import junit.framework.Test;
 import junit.framework.TestSuite;
+import org.eclipse.osgi.internal.framework.BundleContextImpl;
 import org.eclipse.osgi.tests.OSGiTestsActivator;
 import org.eclipse.osgi.tests.bundles.AbstractBundleTests;
 import org.osgi.framework.*;
@@ -481,6 +482,67 @@ public class ServiceRegistryTests extends AbstractBundleTests {
 		}
 	}
 
+	public void testBatchRegistration() throws InvalidSyntaxException {
+		final List<Object> events = new ArrayList<Object>();
+		ServiceListener testListener = new ServiceListener() {
+			public void serviceChanged(ServiceEvent event) {
+				events.add(event.getType() + ":" + event.getServiceReference().getProperty("index")); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		};
+		BundleContextImpl context = (BundleContextImpl) getContext();
+		List<String[]> clazzes = new ArrayList<String[]>();
+		List<Object> services = new ArrayList<Object>();
+		List<Dictionary<String, Object>> properties = new ArrayList<Dictionary<String, Object>>();
+		for (int i = 0; i < 10; i++) {
+			clazzes.add(new String[] {Runnable.class.getName()});
+			services.add(new Runnable() {
+				public void run() {
+					// nothing
+				}
+			});
+			Hashtable<String, Object> props = new Hashtable<String, Object>();
+			props.put(getName(), Boolean.TRUE);
+			props.put("index", new Integer(i)); //$NON-NLS-1$
+			props.put(Constants.SERVICE_RANKING, new Integer(i % 3));
+			properties.add(props);
+		}
+		context.addServiceListener(testListener, "(" + getName() + "=true)"); //$NON-NLS-1$ //$NON-NLS-2$
+		List<ServiceRegistration<?>> registrations = null;
+		try {
+			registrations = context.registerServices(clazzes, services, properties);
+			assertEquals("wrong number of registrations", 10, registrations.size()); //$NON-NLS-1$
+			for (int i = 0; i < 10; i++)
+				assertEquals("wrong event", ServiceEvent.REGISTERED + ":" + i, events.get(i)); //$NON-NLS-1$ //$NON-NLS-2$
+			// the highest ranking with the lowest service id is index 2
+			assertEquals("wrong service reference", registrations.get(2).getReference(), context.getServiceReference(Runnable.class.getName())); //$NON-NLS-1$
+			ServiceReference<?>[] refs = context.getServiceReferences(Runnable.class.getName(), "(" + getName() + "=true)"); //$NON-NLS-1$ //$NON-NLS-2$
+			assertEquals("wrong number of references", 10, refs.length); //$NON-NLS-1$
+
+			events.clear();
+			context.unregisterServices(registrations);
+			assertEquals("wrong number of events", 10, events.size()); //$NON-NLS-1$
+			for (int i = 0; i < 10; i++)
+				assertEquals("wrong event", ServiceEvent.UNREGISTERING + ":" + i, events.get(i)); //$NON-NLS-1$ //$NON-NLS-2$
+			assertNull("services still registered", context.getServiceReferences(Runnable.class.getName(), "(" + getName() + "=true)")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			try {
+				context.unregisterServices(registrations);
+				fail("expected IllegalStateException"); //$NON-NLS-1$
+			} catch (IllegalStateException e) {
+				// expected
+			}
+			registrations = null;
+		} finally {
+			context.removeServiceListener(testListener);
+			if (registrations != null)
+				for (ServiceRegistration<?> registration : registrations)
+					try {
+						registration.unregister();
+					} catch (IllegalStateException e) {
+						// ignore
+					}
+		}
+	}
+
 	private void clearResults(boolean[] results) {
 		for (int i = 0; i < results.length; i++)
 			results[i] = false;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2009 IBM Corporation and others.
+ * Copyright (c) 2008, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -252,6 +252,116 @@ public class ServiceTrackerTests extends AbstractBundleTests {
 		}
 	}
 
+	public void testServiceTrackerRankingOrder() {
+		final String testMethodName = getName();
+		ServiceRegistration[] regs = new ServiceRegistration[3];
+		ServiceTracker testTracker = null;
+		try {
+			testTracker = new ServiceTracker(OSGiTestsActivator.getContext(), FrameworkUtil.createFilter("(&(objectclass=java.lang.Runnable)(" + testMethodName.toLowerCase() + "=true))"), null); //$NON-NLS-1$ //$NON-NLS-2$
+			testTracker.open();
+			assertNull("Found a service", testTracker.getService()); //$NON-NLS-1$
+			assertNull("Found references", testTracker.getServiceReferences()); //$NON-NLS-1$
+
+			Runnable[] services = new Runnable[regs.length];
+			for (int i = 0; i < regs.length; i++) {
+				services[i] = new Runnable() {
+					public void run() {
+						// nothing
+					}
+				};
+				Hashtable props = new Hashtable();
+				props.put(testMethodName, Boolean.TRUE);
+				props.put(Constants.SERVICE_RANKING, new Integer(i));
+				regs[i] = OSGiTestsActivator.getContext().registerService(Runnable.class.getName(), services[i], props);
+			}
+			assertEquals("Wrong service", services[2], testTracker.getService()); //$NON-NLS-1$
+			assertEquals("Wrong reference", regs[2].getReference(), testTracker.getServiceReference()); //$NON-NLS-1$
+			assertEquals("Wrong number of references", regs.length, testTracker.getServiceReferences().length); //$NON-NLS-1$
+			Object[] trackedServices = testTracker.getServices();
+			assertEquals("Wrong number of services", regs.length, trackedServices.length); //$NON-NLS-1$
+			for (int i = 0; i < trackedServices.length; i++) {
+				assertEquals("Wrong service order", services[regs.length - 1 - i], trackedServices[i]); //$NON-NLS-1$
+			}
+			// modifying the returned array must not change the tracker
+			trackedServices[0] = null;
+			assertEquals("Wrong service", services[2], testTracker.getServices()[0]); //$NON-NLS-1$
+			assertEquals("Wrong service", services[2], testTracker.getServices(new Runnable[0])[0]); //$NON-NLS-1$
+
+			// raise the ranking of the lowest service
+			Hashtable props = new Hashtable();
+			props.put(testMethodName, Boolean.TRUE);
+			props.put(Constants.SERVICE_RANKING, new Integer(10));
+			regs[0].setProperties(props);
+			assertEquals("Wrong service after modify", services[0], testTracker.getService()); //$NON-NLS-1$
+
+			regs[0].unregister();
+			regs[0] = null;
+			assertEquals("Wrong service after unregister", services[2], testTracker.getService()); //$NON-NLS-1$
+			assertEquals("Wrong number of services", 2, testTracker.getServices().length); //$NON-NLS-1$
+		} catch (InvalidSyntaxException e) {
+			fail("filter error", e); //$NON-NLS-1$
+		} finally {
+			for (int i = 0; i < regs.length; i++)
+				if (regs[i] != null)
+					regs[i].unregister();
+			if (testTracker != null)
+				testTracker.close();
+		}
+	}
+
+	public void testServiceTrackerDelegation() {
+		final String testMethodName = getName();
+		ServiceRegistration[] regs = new ServiceRegistration[2];
+		ServiceTracker testTracker = null;
+		try {
+			final Runnable[] services = new Runnable[regs.length];
+			for (int i = 0; i < regs.length; i++) {
+				services[i] = new Runnable() {
+					public void run() {
+						// nothing
+					}
+				};
+				Hashtable props = new Hashtable();
+				props.put(testMethodName, Boolean.TRUE);
+				props.put(Constants.SERVICE_RANKING, new Integer(i));
+				regs[i] = OSGiTestsActivator.getContext().registerService(Runnable.class.getName(), services[i], props);
+			}
+			final ServiceReference lowest = regs[0].getReference();
+			final Runnable replacement = new Runnable() {
+				public void run() {
+					// nothing
+				}
+			};
+			// the read methods must use the overridden methods to get the tracked services
+			testTracker = new ServiceTracker(OSGiTestsActivator.getContext(), FrameworkUtil.createFilter("(&(objectclass=java.lang.Runnable)(" + testMethodName.toLowerCase() + "=true))"), null) { //$NON-NLS-1$ //$NON-NLS-2$
+				public ServiceReference[] getServiceReferences() {
+					return new ServiceReference[] {lowest};
+				}
+
+				public Object getService(ServiceReference reference) {
+					return reference == lowest ? replacement : super.getService(reference);
+				}
+			};
+			testTracker.open();
+			assertEquals("Wrong reference", lowest, testTracker.getServiceReference()); //$NON-NLS-1$
+			assertEquals("Wrong service", replacement, testTracker.getService()); //$NON-NLS-1$
+			Object[] trackedServices = testTracker.getServices();
+			assertEquals("Wrong number of services", 1, trackedServices.length); //$NON-NLS-1$
+			assertEquals("Wrong service", replacement, trackedServices[0]); //$NON-NLS-1$
+			trackedServices = testTracker.getServices(new Runnable[0]);
+			assertEquals("Wrong number of services", 1, trackedServices.length); //$NON-NLS-1$
+			assertEquals("Wrong service", replacement, trackedServices[0]); //$NON-NLS-1$
+		} catch (InvalidSyntaxException e) {
+			fail("filter error", e); //$NON-NLS-1$
+		} finally {
+			for (int i = 0; i < regs.length; i++)
+				if (regs[i] != null)
+					regs[i].unregister();
+			if (testTracker != null)
+				testTracker.close();
+		}
+	}
+
 	private void clearResults(boolean[] results) {
 		for (int i = 0; i < results.length; i++)
 			results[i] = false;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2011 IBM Corporation and others.
+ * Copyright (c) 2004, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -499,4 +499,195 @@ public class StreamManagerTests extends OSGiTest {
 		}
 	}
 
+	/**
+	 * This tests that the managed files written in a batch are only updated
+	 * when the batch is committed.
+	 */
+	public void testBatch() {
+		testBatch(true);
+		testBatch(false);
+	}
+
+	private void testBatch(boolean reliable) {
+		File mgrDir;
+		if (reliable)
+			mgrDir = new File(base, "batchReliable");
+		else
+			mgrDir = new File(base, "batchStd");
+		String fileName1 = "testBatch1.txt";
+		String fileName2 = "testBatch2.txt";
+		String fileName3 = "testBatch3.txt";
+		File file1_1 = new File(mgrDir, fileName1 + ".1");
+		File file2_1 = new File(mgrDir, fileName2 + ".1");
+		File file3_1 = new File(mgrDir, fileName3 + ".1");
+		try {
+			System.setProperty("osgi.useReliableFiles", reliable ? "true" : "false"); // force reliable files
+			manager1 = new StorageManager(mgrDir, null);
+			manager1.open(true);
+			manager1.beginBatch();
+			ManagedOutputStream[] outs = manager1.getOutputStreamSet(new String[] {fileName1, fileName2});
+			outs[0].write("contents #1".getBytes());
+			outs[1].write("contents #2".getBytes());
+			outs[0].close();
+			outs[1].close();
+			ManagedOutputStream out = manager1.getOutputStream(fileName3);
+			out.write("old contents #3".getBytes());
+			out.close();
+			out = manager1.getOutputStream(fileName3);
+			out.write("contents #3".getBytes());
+			out.close();
+			assertFalse(file1_1.exists());
+			assertFalse(file2_1.exists());
+			assertFalse(file3_1.exists());
+			assertNull(manager1.lookup(fileName1, false));
+			manager1.commitBatch();
+			assertTrue(file1_1.exists());
+			assertTrue(file2_1.exists());
+			assertTrue(file3_1.exists());
+			assertEquals("contents #1", getInputStreamContents(manager1.getInputStream(fileName1)));
+			assertEquals("contents #2", getInputStreamContents(manager1.getInputStream(fileName2)));
+			assertEquals("contents #3", getInputStreamContents(manager1.getInputStream(fileName3)));
+			manager1.close();
+			manager1 = null;
+
+			// open a new manager & check the table was saved
+			manager2 = new StorageManager(mgrDir, null);
+			manager2.open(true);
+			assertEquals(1, manager2.getId(fileName1));
+			assertEquals(1, manager2.getId(fileName2));
+			assertEquals(1, manager2.getId(fileName3));
+			assertEquals("contents #3", getInputStreamContents(manager2.getInputStream(fileName3)));
+			manager2.close();
+			manager2 = null;
+		} catch (IOException e) {
+			fail("unexepected exception", e);
+		}
+	}
+
+	/**
+	 * This tests that aborting a batch discards the managed files written in the batch.
+	 */
+	public void testAbortBatch() {
+		testAbortBatch(true);
+		testAbortBatch(false);
+	}
+
+	private void testAbortBatch(boolean reliable) {
+		File mgrDir;
+		if (reliable)
+			mgrDir = new File(base, "abortBatchReliable");
+		else
+			mgrDir = new File(base, "abortBatchStd");
+		String fileName1 = "testBatch1.txt";
+		String fileName2 = "testBatch2.txt";
+		try {
+			mgrDir.mkdirs();
+			System.setProperty("osgi.useReliableFiles", reliable ? "true" : "false"); // force reliable files
+			manager1 = new StorageManager(mgrDir, null);
+			manager1.open(true);
+			manager1.beginBatch();
+			ManagedOutputStream[] outs = manager1.getOutputStreamSet(new String[] {fileName1, fileName2});
+			outs[0].write("contents #1".getBytes());
+			outs[1].write("contents #2".getBytes());
+			outs[0].close();
+			outs[1].close();
+			manager1.abortBatch();
+			manager1.commitBatch(); //noop
+			String[] list = mgrDir.list();
+			assertEquals(1, list.length);
+			assertNull(manager1.lookup(fileName1, false));
+			assertNull(manager1.lookup(fileName2, false));
+			manager1.close();
+			manager1 = null;
+		} catch (IOException e) {
+			fail("unexepected exception", e);
+		}
+	}
+
+	/**
+	 * This tests that a batch is confined to the thread which began it.
+	 */
+	public void testBatchOtherThread() {
+		File mgrDir = new File(base, "batchOtherThread");
+		final String fileName1 = "testBatch1.txt";
+		String fileName2 = "testBatch2.txt";
+		try {
+			System.setProperty("osgi.useReliableFiles", "false"); // force plain files
+			manager1 = new StorageManager(mgrDir, null);
+			manager1.open(true);
+			manager1.beginBatch();
+			final IOException[] error = new IOException[1];
+			Thread other = new Thread(new Runnable() {
+				public void run() {
+					try {
+						ManagedOutputStream out = manager1.getOutputStream(fileName1);
+						out.write("contents #1".getBytes());
+						out.close();
+					} catch (IOException e) {
+						error[0] = e;
+					}
+				}
+			});
+			other.start();
+			other.join();
+			if (error[0] != null)
+				throw error[0];
+			// the stream closed by the other thread is not part of the batch
+			assertEquals("contents #1", getInputStreamContents(manager1.getInputStream(fileName1)));
+			ManagedOutputStream out = manager1.getOutputStream(fileName2);
+			out.write("contents #2".getBytes());
+			out.close();
+			assertNull(manager1.lookup(fileName2, false));
+			manager1.commitBatch();
+			assertEquals("contents #2", getInputStreamContents(manager1.getInputStream(fileName2)));
+			manager1.close();
+			manager1 = null;
+		} catch (IOException e) {
+			fail("unexepected exception", e);
+		} catch (InterruptedException e) {
+			fail("unexepected interruption", e);
+		}
+	}
+
+	/**
+	 * This tests that a batch remains open if the commit fails and that
+	 * the manager can not be closed while a batch is open.
+	 */
+	public void testCommitBatchFailure() {
+		File mgrDir = new File(base, "commitBatchFailure");
+		String fileName1 = "testBatch1.txt";
+		try {
+			System.setProperty("osgi.useReliableFiles", "false"); // force plain files
+			manager1 = new StorageManager(mgrDir, null);
+			manager1.open(true);
+			manager1.beginBatch();
+			ManagedOutputStream out = manager1.getOutputStream(fileName1);
+			out.write("contents #1".getBytes());
+			out.close();
+			// remove the new content of the closed stream so the commit fails
+			File[] files = mgrDir.listFiles();
+			for (int i = 0; i < files.length; i++) {
+				if (files[i].getName().endsWith(".tmp"))
+					assertTrue(files[i].delete());
+			}
+			try {
+				manager1.commitBatch();
+				fail("Expected the commit to fail.");
+			} catch (IOException e) {
+				// expected
+			}
+			try {
+				manager1.close();
+				fail("Expected the close to fail with an open batch.");
+			} catch (IllegalStateException e) {
+				// expected
+			}
+			// the failed batch is still open and must be aborted
+			manager1.abortBatch();
+			manager1.close();
+			manager1 = null;
+		} catch (IOException e) {
+			fail("unexepected exception", e);
+		}
+	}
 }
@@ -3151,6 +3151,52 @@ public class StateResolverTest extends AbstractStateTest {
 		assertTrue("2.2", bCache.isResolved()); //$NON-NLS-1$
 	}
 
+	public void testLazyStateLoading() throws BundleException, IOException {
+		State state = buildEmptyState();
+		int bundleID = 0;
+		for (int i = 0; i < 20; i++) {
+			Hashtable manifest = new Hashtable();
+			manifest.put(Constants.BUNDLE_MANIFESTVERSION, "2"); //$NON-NLS-1$
+			manifest.put(Constants.BUNDLE_SYMBOLICNAME, "B" + i); //$NON-NLS-1$
+			manifest.put(Constants.BUNDLE_VERSION, "1.0"); //$NON-NLS-1$
+			manifest.put(Constants.EXPORT_PACKAGE, "p" + i); //$NON-NLS-1$
+			if (i > 0)
+				manifest.put(Constants.IMPORT_PACKAGE, "p" + (i - 1)); //$NON-NLS-1$
+			state.addBundle(state.getFactory().createBundleDescription(state, manifest, "B" + i, bundleID++)); //$NON-NLS-1$
+		}
+		state.resolve();
+
+		BundleContext context = OSGiTestsActivator.getContext();
+		File stateCache = context.getDataFile("statecache"); //$NON-NLS-1$
+		stateCache.mkdirs();
+		StateObjectFactory.defaultFactory.writeState(state, stateCache);
+		String previous = System.getProperty("osgi.state.lazyLoading"); //$NON-NLS-1$
+		System.setProperty("osgi.state.lazyLoading", "true"); //$NON-NLS-1$ //$NON-NLS-2$
+		try {
+			state = StateObjectFactory.defaultFactory.readState(stateCache);
+			BundleDescription b10 = state.getBundle("B10", null); //$NON-NLS-1$
+			assertTrue("1.0", b10.isResolved()); //$NON-NLS-1$
+			assertEquals("1.1", "p10", b10.getExportPackages()[0].getName()); //$NON-NLS-1$ //$NON-NLS-2$
+			assertEquals("1.2", state.getBundle("B9", null), b10.getResolvedImports()[0].getExporter()); //$NON-NLS-1$ //$NON-NLS-2$
+			assertEquals("1.3", "B10", b10.getLocation()); //$NON-NLS-1$ //$NON-NLS-2$
+
+			// write back to the same files the lazy data is loaded from
+			StateObjectFactory.defaultFactory.writeState(state, stateCache);
+			state = StateObjectFactory.defaultFactory.readState(stateCache);
+			BundleDescription[] bundles = state.getBundles();
+			assertEquals("2.0", 20, bundles.length); //$NON-NLS-1$
+			for (int i = 0; i < bundles.length; i++) {
+				assertTrue("2.1", bundles[i].isResolved()); //$NON-NLS-1$
+				assertEquals("2.2", "p" + bundles[i].getSymbolicName().substring(1), bundles[i].getExportPackages()[0].getName()); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		} finally {
+			if (previous == null)
+				System.getProperties().remove("osgi.state.lazyLoading"); //$NON-NLS-1$
+			else
+				System.setProperty("osgi.state.lazyLoading", previous); //$NON-NLS-1$
+		}
+	}
+
 	public void testPlatformPropertiesBug207500a() throws BundleException, IOException {
 		State state = buildEmptyState();
 		int bundleID = 0;
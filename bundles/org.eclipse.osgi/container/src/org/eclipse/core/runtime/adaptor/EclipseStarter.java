@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2003, 2013 IBM Corporation and others.
+ * Copyright (c) 2003, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -17,7 +17,9 @@ import java.net.*;
 import java.security.CodeSource;
 import java.security.ProtectionDomain;
 import java.util.*;
+import java.util.concurrent.*;
 import org.eclipse.core.runtime.internal.adaptor.*;
+import org.eclipse.core.runtime.internal.adaptor.Semaphore;
 import org.eclipse.osgi.container.namespaces.EquinoxModuleDataNamespace;
 import org.eclipse.osgi.framework.log.FrameworkLog;
 import org.eclipse.osgi.framework.log.FrameworkLogEntry;
@@ -37,9 +39,10 @@ import org.eclipse.osgi.util.ManifestElement;
 import org.eclipse.osgi.util.NLS;
 import org.osgi.framework.*;
 import org.osgi.framework.launch.Framework;
+import org.osgi.framework.namespace.HostNamespace;
 import org.osgi.framework.startlevel.BundleStartLevel;
 import org.osgi.framework.startlevel.FrameworkStartLevel;
-import org.osgi.framework.wiring.FrameworkWiring;
+import org.osgi.framework.wiring.*;
 import org.osgi.util.tracker.ServiceTracker;
 
 /**
@@ -129,8 +132,8 @@ public class EclipseStarter {
 	private static final String DEFAULT_BUNDLES_STARTLEVEL = "4"; //$NON-NLS-1$
 
 	private static FrameworkLog log;
-	// directory of serch candidates keyed by directory abs path -> directory listing (bug 122024)
-	private static Map<String, String[]> searchCandidates = new HashMap<String, String[]>(4);
+	// directory of serch candidates keyed by directory abs path -> sorted directory listing (bug 122024)
+	private static Map<String, String[]> searchCandidates = new ConcurrentHashMap<String, String[]>(4);
 	private static EclipseAppLauncher appLauncher;
 	private static List<Runnable> shutdownHandlers;
 
@@ -551,15 +554,23 @@ public class EclipseStarter {
 		// uninstall any of the currently installed bundles that do not exist in the 
 		// initial bundle list from installEntries.
 		uninstallBundles(curInitBundles, initialBundles, toRefresh);
+		boolean uninstalled = !toRefresh.isEmpty();
 
 		// install the initialBundles that are not already installed.
 		List<Bundle> startBundles = new ArrayList<Bundle>(installEntries.length);
 		List<Bundle> lazyActivationBundles = new ArrayList<Bundle>(installEntries.length);
 		installBundles(initialBundles, curInitBundles, startBundles, lazyActivationBundles, toRefresh);
 
-		// If we installed/uninstalled something, force a refresh of all installed/uninstalled bundles
-		if (!toRefresh.isEmpty() && refreshPackages(toRefresh.toArray(new Bundle[toRefresh.size()])))
-			return null; // cannot continue; refreshPackages shutdown the framework
+		if (!toRefresh.isEmpty()) {
+			if (uninstalled || hasFrameworkExtension(toRefresh)) {
+				// If we uninstalled something or installed a framework extension, force a refresh of all installed/uninstalled bundles
+				if (refreshPackages(toRefresh.toArray(new Bundle[toRefresh.size()])))
+					return null; // cannot continue; refreshPackages shutdown the framework
+			} else {
+				// only unresolved bundles got installed; resolving them all at once is enough
+				resolveBundles(toRefresh);
+			}
+		}
 
 		// schedule all basic bundles to be started
 		Bundle[] startInitBundles = startBundles.toArray(new Bundle[startBundles.size()]);
@@ -571,6 +582,26 @@ public class EclipseStarter {
 		return startInitBundles;
 	}
 
+	private static ExecutorService createSearchExecutor(int numEntries) {
+		int numThreads = Math.max(1, Math.min(numEntries, Runtime.getRuntime().availableProcessors()));
+		return Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Initial Bundle Search"); //$NON-NLS-1$
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	private static <T> T getResult(Future<T> result) throws ExecutionException {
+		try {
+			return result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+	}
+
 	private static InitialBundle[] getInitialBundles(String[] installEntries) {
 		searchCandidates.clear();
 		List<InitialBundle> result = new ArrayList<InitialBundle>(installEntries.length);
@@ -588,46 +619,68 @@ public class EclipseStarter {
 		} catch (InvalidSyntaxException e) {
 			throw new RuntimeException(e);
 		}
-		Location installLocation = installLocRef == null ? null : context.getService(installLocRef.iterator().next());
+		final Location installLocation = installLocRef == null ? null : context.getService(installLocRef.iterator().next());
 		if (installLocation == null) {
 			throw new IllegalStateException(Msg.EclipseStarter_InstallLocation);
 		}
-		for (int i = 0; i < installEntries.length; i++) {
-			String name = installEntries[i];
-			int level = defaultStartLevel;
-			boolean start = false;
-			int index = name.lastIndexOf('@');
-			if (index >= 0) {
-				String[] attributes = getArrayFromList(name.substring(index + 1, name.length()), ":"); //$NON-NLS-1$
-				for (int j = 0; j < attributes.length; j++) {
-					String attribute = attributes[j];
-					if (attribute.equals("start")) //$NON-NLS-1$
-						start = true;
-					else {
-						try {
-							level = Integer.parseInt(attribute);
-						} catch (NumberFormatException e) { // bug 188089
-							index = name.length();
-							continue;
+		final String searchPath = syspath;
+		int[] levels = new int[installEntries.length];
+		boolean[] starts = new boolean[installEntries.length];
+		List<Future<URL>> locations = new ArrayList<Future<URL>>(installEntries.length);
+		// the bundle locations are searched in parallel
+		ExecutorService executor = createSearchExecutor(installEntries.length);
+		try {
+			for (int i = 0; i < installEntries.length; i++) {
+				String name = installEntries[i];
+				int level = defaultStartLevel;
+				boolean start = false;
+				int index = name.lastIndexOf('@');
+				if (index >= 0) {
+					String[] attributes = getArrayFromList(name.substring(index + 1, name.length()), ":"); //$NON-NLS-1$
+					for (int j = 0; j < attributes.length; j++) {
+						String attribute = attributes[j];
+						if (attribute.equals("start")) //$NON-NLS-1$
+							start = true;
+						else {
+							try {
+								level = Integer.parseInt(attribute);
+							} catch (NumberFormatException e) { // bug 188089
+								index = name.length();
+								continue;
+							}
 						}
 					}
+					name = name.substring(0, index);
 				}
-				name = name.substring(0, index);
+				levels[i] = level;
+				starts[i] = start;
+				final String bundleName = name;
+				locations.add(executor.submit(new Callable<URL>() {
+					public URL call() throws IOException {
+						URL location = searchForBundle(bundleName, searchPath);
+						return location == null ? null : makeRelative(installLocation.getURL(), location);
+					}
+				}));
 			}
-			try {
-				URL location = searchForBundle(name, syspath);
-				if (location == null) {
-					FrameworkLogEntry entry = new FrameworkLogEntry(EquinoxContainer.NAME, FrameworkLogEntry.ERROR, 0, NLS.bind(Msg.ECLIPSE_STARTUP_BUNDLE_NOT_FOUND, installEntries[i]), 0, null, null);
-					log.log(entry);
-					// skip this entry
-					continue;
+			// collect the locations in the order of the entries
+			for (int i = 0; i < installEntries.length; i++) {
+				try {
+					URL location = getResult(locations.get(i));
+					if (location == null) {
+						FrameworkLogEntry entry = new FrameworkLogEntry(EquinoxContainer.NAME, FrameworkLogEntry.ERROR, 0, NLS.bind(Msg.ECLIPSE_STARTUP_BUNDLE_NOT_FOUND, installEntries[i]), 0, null, null);
+						log.log(entry);
+						// skip this entry
+						continue;
+					}
+					String locationString = INITIAL_LOCATION + location.toExternalForm();
+					result.add(new InitialBundle(locationString, location, levels[i], starts[i]));
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					log.log(new FrameworkLogEntry(EquinoxContainer.NAME, FrameworkLogEntry.ERROR, 0, cause.getMessage(), 0, cause, null));
 				}
-				location = makeRelative(installLocation.getURL(), location);
-				String locationString = INITIAL_LOCATION + location.toExternalForm();
-				result.add(new InitialBundle(locationString, location, level, start));
-			} catch (IOException e) {
-				log.log(new FrameworkLogEntry(EquinoxContainer.NAME, FrameworkLogEntry.ERROR, 0, e.getMessage(), 0, e, null));
 			}
+		} finally {
+			executor.shutdown();
 		}
 		return result.toArray(new InitialBundle[result.size()]);
 	}
@@ -645,6 +698,29 @@ public class EclipseStarter {
 		return isForcedRestart();
 	}
 
+	private static void resolveBundles(List<Bundle> bundles) {
+		FrameworkWiring frameworkWiring = context.getBundle().adapt(FrameworkWiring.class);
+		if (frameworkWiring != null)
+			frameworkWiring.resolveBundles(bundles);
+	}
+
+	private static boolean hasFrameworkExtension(List<Bundle> bundles) {
+		BundleRevision systemRevision = context.getBundle().adapt(BundleRevision.class);
+		List<BundleCapability> systemHosts = systemRevision.getDeclaredCapabilities(HostNamespace.HOST_NAMESPACE);
+		for (Bundle bundle : bundles) {
+			BundleRevision revision = bundle.adapt(BundleRevision.class);
+			if (revision == null || (revision.getTypes() & BundleRevision.TYPE_FRAGMENT) == 0)
+				continue;
+			for (BundleRequirement host : revision.getDeclaredRequirements(HostNamespace.HOST_NAMESPACE)) {
+				for (BundleCapability systemHost : systemHosts) {
+					if (host.matches(systemHost))
+						return true;
+				}
+			}
+		}
+		return false;
+	}
+
 	private static void waitForShutdown() {
 		// wait for the system bundle to stop
 		try {
@@ -1186,18 +1262,22 @@ public class EclipseStarter {
 					startFile = f;
 			}
 			candidates = startFile.list();
-			if (candidates != null)
+			if (candidates != null) {
+				// sort the names so each search only looks at the names starting with its target
+				Arrays.sort(candidates);
 				searchCandidates.put(start, candidates);
+			}
 		}
 		if (candidates == null)
 			return null;
 		String result = null;
 		Object[] maxVersion = null;
 		boolean resultIsFile = false;
-		for (int i = 0; i < candidates.length; i++) {
+		int first = Arrays.binarySearch(candidates, target);
+		for (int i = first < 0 ? -(first + 1) : first; i < candidates.length; i++) {
 			String candidateName = candidates[i];
 			if (!candidateName.startsWith(target))
-				continue;
+				break;
 			boolean simpleJar = false;
 			final char versionSep = candidateName.length() > target.length() ? candidateName.charAt(target.length()) : 0;
 			if (candidateName.length() > target.length() && versionSep != '_' && versionSep != '-') {
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2012, 2013 IBM Corporation and others.
+ * Copyright (c) 2012, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -15,6 +15,7 @@ import java.util.EnumSet;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 import org.eclipse.osgi.container.ModuleContainerAdaptor.ModuleEvent;
+import org.eclipse.osgi.internal.debug.Timeline;
 import org.eclipse.osgi.internal.messages.Msg;
 import org.osgi.framework.*;
 import org.osgi.framework.startlevel.BundleStartLevel;
@@ -425,8 +426,13 @@ public abstract class Module implements BundleReference, BundleStartLevel, Compa
 				}
 			}
 
+			Timeline timeline = revisions.getContainer().getTimeline();
+			long start = timeline == null ? 0 : System.nanoTime();
 			try {
 				event = doStart(options);
+				if (timeline != null && event != null) {
+					timeline.record(Timeline.Type.MODULE_START, start, getId(), event);
+				}
 			} catch (BundleException e) {
 				// must return state to resolved
 				setState(State.RESOLVED);
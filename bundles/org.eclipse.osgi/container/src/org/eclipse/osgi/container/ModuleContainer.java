@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2012, 2013 IBM Corporation and others.
+ * Copyright (c) 2012, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -28,7 +28,9 @@ import org.eclipse.osgi.framework.util.SecureAction;
 import org.eclipse.osgi.internal.container.InternalUtils;
 import org.eclipse.osgi.internal.container.LockSet;
 import org.eclipse.osgi.internal.debug.Debug;
+import org.eclipse.osgi.internal.debug.Timeline;
 import org.eclipse.osgi.internal.framework.EquinoxConfiguration;
+import org.eclipse.osgi.internal.framework.EquinoxContainerAdaptor;
 import org.eclipse.osgi.internal.messages.Msg;
 import org.eclipse.osgi.report.resolution.ResolutionReport.Entry;
 import org.eclipse.osgi.service.debug.DebugOptions;
@@ -423,6 +425,8 @@ public final class ModuleContainer {
 		if (isRefreshingSystemModule()) {
 			return new ModuleResolutionReport(null, Collections.<Resource, List<Entry>> emptyMap(), new ResolutionException("Unable to resolve while shutting down the framework.")); //$NON-NLS-1$
 		}
+		Timeline timeline = getTimeline();
+		long start = timeline == null ? 0 : System.nanoTime();
 		ModuleResolutionReport report = null;
 		do {
 			try {
@@ -437,6 +441,9 @@ public final class ModuleContainer {
 				throw e;
 			}
 		} while (report == null);
+		if (timeline != null) {
+			timeline.record(Timeline.Type.RESOLVE, start, -1, triggers == null ? null : Integer.valueOf(triggers.size()));
+		}
 		return report;
 	}
 
@@ -499,7 +506,7 @@ public final class ModuleContainer {
 			result = null;
 			Map<ModuleRevision, ModuleWiring> wiringClone = null;
 			List<DynamicModuleRequirement> dynamicReqs = null;
-			Collection<ModuleRevision> unresolved = new ArrayList<ModuleRevision>();
+			Collection<ModuleRevision> unresolved = null;
 			moduleDatabase.readLock();
 			try {
 				ModuleWiring wiring = revision.getWiring();
@@ -523,13 +530,10 @@ public final class ModuleContainer {
 					return null;
 				}
 				timestamp = moduleDatabase.getRevisionsTimestamp();
-				wiringClone = moduleDatabase.getWiringsClone();
-				Collection<Module> allModules = moduleDatabase.getModules();
-				for (Module module : allModules) {
-					ModuleRevision current = module.getCurrentRevision();
-					if (current != null && !wiringClone.containsKey(current))
-						unresolved.add(current);
-				}
+				// resolving a dynamic import typically only looks at a few wirings;
+				// avoid cloning the complete wiring map for each dynamic import
+				wiringClone = moduleDatabase.getWiringsLazyClone();
+				unresolved = moduleDatabase.getUnresolvedRevisions();
 			} finally {
 				moduleDatabase.readUnlock();
 			}
@@ -623,9 +627,8 @@ public final class ModuleContainer {
 						throw new IllegalStateException(Msg.ModuleContainer_StateLockError, e);
 					}
 				}
-				Map<ModuleRevision, ModuleWiring> wiringCopy = moduleDatabase.getWiringsCopy();
 				for (Map.Entry<ModuleRevision, ModuleWiring> deltaEntry : deltaWiring.entrySet()) {
-					ModuleWiring current = wiringCopy.get(deltaEntry.getKey());
+					ModuleWiring current = moduleDatabase.getWiring(deltaEntry.getKey());
 					if (current != null) {
 						// need to update the provided capabilities, provided and required wires for currently resolved
 						current.setCapabilities(deltaEntry.getValue().getModuleCapabilities(null));
@@ -1206,6 +1209,11 @@ public final class ModuleContainer {
 		t.start();
 	}
 
+	Timeline getTimeline() {
+		// the timeline is internal to the framework; it is only recorded for the equinox adaptor
+		return adaptor instanceof EquinoxContainerAdaptor ? ((EquinoxContainerAdaptor) adaptor).getTimeline() : null;
+	}
+
 	boolean isRefreshingSystemModule() {
 		return refreshingSystemModule.get() != null;
 	}
@@ -1490,25 +1498,34 @@ public final class ModuleContainer {
 							return;
 						}
 					}
+					Timeline timeline = getTimeline();
 					// Note that we must get a new list of modules each time;
 					// this is because additional modules could have been installed from the previous start-level
 					if (newStartLevel > currentSL) {
 						for (int i = currentSL; i < newStartLevel; i++) {
 							int toStartLevel = i + 1;
+							long start = timeline == null ? 0 : System.nanoTime();
 							activeStartLevel.set(toStartLevel);
 							if (debugStartLevel) {
 								Debug.println("StartLevel: incremented active start level to; " + toStartLevel); //$NON-NLS-1$
 							}
 							incStartLevel(toStartLevel, moduleDatabase.getSortedModules(Sort.BY_START_LEVEL));
+							if (timeline != null) {
+								timeline.record(Timeline.Type.START_LEVEL, start, -1, Integer.valueOf(toStartLevel));
+							}
 						}
 					} else {
 						for (int i = currentSL; i > newStartLevel; i--) {
 							int toStartLevel = i - 1;
+							long start = timeline == null ? 0 : System.nanoTime();
 							activeStartLevel.set(toStartLevel);
 							if (debugStartLevel) {
 								Debug.println("StartLevel: decremented active start level to " + toStartLevel); //$NON-NLS-1$
 							}
 							decStartLevel(toStartLevel, moduleDatabase.getSortedModules(Sort.BY_START_LEVEL, Sort.BY_DEPENDENCY));
+							if (timeline != null) {
+								timeline.record(Timeline.Type.START_LEVEL, start, -1, Integer.valueOf(toStartLevel));
+							}
 						}
 					}
 					if (currentSL > 0 && newStartLevel > 0) {
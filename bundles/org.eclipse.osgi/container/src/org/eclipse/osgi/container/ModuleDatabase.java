@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2012, 2013 IBM Corporation and others.
+ * Copyright (c) 2012, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -81,6 +81,12 @@ public class ModuleDatabase {
 	 */
 	final Map<ModuleRevision, ModuleWiring> wirings;
 
+	/**
+	 * A cache of the current revisions which have no wiring ordered by module id.
+	 * Cleared when revisions get installed, updated, uninstalled or resolved.
+	 */
+	private volatile List<ModuleRevision> unresolvedRevisions;
+
 	/**
 	 * Holds the next id to be assigned to a module when it is installed
 	 */
@@ -466,8 +472,7 @@ public class ModuleDatabase {
 		try {
 			Map<ModuleRevision, ModuleWiring> clonedWirings = new HashMap<ModuleRevision, ModuleWiring>();
 			for (Map.Entry<ModuleRevision, ModuleWiring> entry : wirings.entrySet()) {
-				ModuleWiring wiring = new ModuleWiring(entry.getKey(), entry.getValue().getModuleCapabilities(null), entry.getValue().getModuleRequirements(null), entry.getValue().getProvidedModuleWires(null), entry.getValue().getRequiredModuleWires(null), entry.getValue().getSubstitutedNames());
-				clonedWirings.put(entry.getKey(), wiring);
+				clonedWirings.put(entry.getKey(), cloneWiring(entry.getValue()));
 			}
 			return clonedWirings;
 		} finally {
@@ -475,6 +480,146 @@ public class ModuleDatabase {
 		}
 	}
 
+	/**
+	 * Returns a lazily cloned view of the wirings of all revisions.  Unlike
+	 * {@link #getWiringsClone()} the wirings are only cloned when they are first
+	 * retrieved from the returned map which makes this method useful for
+	 * resolve operations which only look at a few wirings, such as resolving
+	 * a dynamic import.
+	 * <p>
+	 * The returned map is read-only and may be read from while not holding any read
+	 * or write locks on this database.  The view is not a consistent snapshot; wirings
+	 * retrieved after the {@link #getRevisionsTimestamp() revisions timestamp} changed
+	 * reflect the new state.  Callers must use the timestamp to detect such changes
+	 * before applying results based on the view.
+	 * @return a lazily cloned view of the wirings of all revisions.
+	 */
+	final Map<ModuleRevision, ModuleWiring> getWiringsLazyClone() {
+		return new LazyWiringsClone();
+	}
+
+	private static ModuleWiring cloneWiring(ModuleWiring wiring) {
+		return new ModuleWiring(wiring.getRevision(), wiring.getModuleCapabilities(null), wiring.getModuleRequirements(null), wiring.getProvidedModuleWires(null), wiring.getRequiredModuleWires(null), wiring.getSubstitutedNames());
+	}
+
+	private class LazyWiringsClone extends AbstractMap<ModuleRevision, ModuleWiring> {
+		private final Map<ModuleRevision, ModuleWiring> clones = new HashMap<ModuleRevision, ModuleWiring>();
+
+		LazyWiringsClone() {
+			// nothing
+		}
+
+		@Override
+		public synchronized ModuleWiring get(Object key) {
+			ModuleWiring clone = clones.get(key);
+			if (clone != null || !(key instanceof ModuleRevision)) {
+				return clone;
+			}
+			readLock();
+			try {
+				ModuleWiring wiring = wirings.get(key);
+				if (wiring == null) {
+					return null;
+				}
+				clone = cloneWiring(wiring);
+			} finally {
+				readUnlock();
+			}
+			clones.put((ModuleRevision) key, clone);
+			return clone;
+		}
+
+		@Override
+		public synchronized boolean containsKey(Object key) {
+			if (clones.containsKey(key)) {
+				return true;
+			}
+			readLock();
+			try {
+				return wirings.containsKey(key);
+			} finally {
+				readUnlock();
+			}
+		}
+
+		@Override
+		public int size() {
+			readLock();
+			try {
+				return wirings.size();
+			} finally {
+				readUnlock();
+			}
+		}
+
+		@Override
+		public Set<ModuleRevision> keySet() {
+			return new AbstractSet<ModuleRevision>() {
+				@Override
+				public boolean contains(Object o) {
+					return containsKey(o);
+				}
+
+				@Override
+				public Iterator<ModuleRevision> iterator() {
+					readLock();
+					try {
+						return Collections.unmodifiableSet(new HashSet<ModuleRevision>(wirings.keySet())).iterator();
+					} finally {
+						readUnlock();
+					}
+				}
+
+				@Override
+				public int size() {
+					return LazyWiringsClone.this.size();
+				}
+			};
+		}
+
+		@Override
+		public Set<Map.Entry<ModuleRevision, ModuleWiring>> entrySet() {
+			// only used when the complete map is needed; clone all the wirings
+			Map<ModuleRevision, ModuleWiring> all = new HashMap<ModuleRevision, ModuleWiring>();
+			for (ModuleRevision revision : keySet()) {
+				ModuleWiring clone = get(revision);
+				if (clone != null) {
+					all.put(revision, clone);
+				}
+			}
+			return Collections.unmodifiableMap(all).entrySet();
+		}
+	}
+
+	/**
+	 * Returns the current revisions of all modules which are not resolved,
+	 * ordered by module id.  The result is cached until revisions get installed,
+	 * updated, uninstalled or resolved.
+	 * <p>
+	 * A read operation protected by the {@link #readLock() read} lock.
+	 * @return the unresolved current revisions
+	 */
+	final List<ModuleRevision> getUnresolvedRevisions() {
+		readLock();
+		try {
+			List<ModuleRevision> result = unresolvedRevisions;
+			if (result == null) {
+				result = new ArrayList<ModuleRevision>();
+				for (Module module : getSortedModules()) {
+					ModuleRevision current = module.getCurrentRevision();
+					if (current != null && !wirings.containsKey(current)) {
+						result.add(current);
+					}
+				}
+				result = Collections.unmodifiableList(result);
+				unresolvedRevisions = result;
+			}
+			return result;
+		} finally {
+			readUnlock();
+		}
+	}
+
 	/**
 	 * Replaces the complete wiring map with the specified wiring
 	 * <p>
@@ -504,8 +649,11 @@ public class ModuleDatabase {
 	final void mergeWiring(Map<ModuleRevision, ModuleWiring> deltaWiring) {
 		writeLock();
 		try {
+			// dynamic imports only add wires to existing wirings; keep the unresolved revisions in that case
+			List<ModuleRevision> currentUnresolved = wirings.keySet().containsAll(deltaWiring.keySet()) ? unresolvedRevisions : null;
 			wirings.putAll(deltaWiring);
 			incrementTimestamps(true);
+			unresolvedRevisions = currentUnresolved;
 		} finally {
 			writeUnlock();
 		}
@@ -712,6 +860,7 @@ public class ModuleDatabase {
 		checkWrite();
 		if (incrementRevision) {
 			revisionsTimeStamp.incrementAndGet();
+			unresolvedRevisions = null;
 		}
 		allTimeStamp.incrementAndGet();
 		adaptor.updatedDatabase();
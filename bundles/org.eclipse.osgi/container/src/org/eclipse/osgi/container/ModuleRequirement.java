@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2012, 2013 IBM Corporation and others.
+ * Copyright (c) 2012, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,6 +12,7 @@ package org.eclipse.osgi.container;
 
 import java.util.*;
 import org.eclipse.osgi.internal.container.Capabilities;
+import org.eclipse.osgi.internal.container.CompactMap;
 import org.eclipse.osgi.internal.framework.FilterImpl;
 import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.namespace.*;
@@ -34,8 +35,8 @@ public class ModuleRequirement implements BundleRequirement {
 
 	ModuleRequirement(String namespace, Map<String, String> directives, Map<String, ?> attributes, ModuleRevision revision) {
 		this.namespace = namespace;
-		this.directives = Collections.unmodifiableMap(directives);
-		this.attributes = Collections.unmodifiableMap(attributes);
+		this.directives = CompactMap.copyOf(directives);
+		this.attributes = CompactMap.copyOf(attributes);
 		this.revision = revision;
 	}
 
@@ -505,7 +505,7 @@ final class ModuleResolver {
 		private final boolean triggersMandatory;
 		private final ModuleDatabase moduleDatabase;
 		private final Map<ModuleRevision, ModuleWiring> wirings;
-		private final Set<ModuleRevision> previouslyResolved;
+		private final Collection<ModuleRevision> previouslyResolved;
 		private final DynamicModuleRequirement dynamicReq;
 		private volatile ResolverHook hook = null;
 		private volatile Map<String, Collection<ModuleRevision>> byName = null;
@@ -548,7 +548,9 @@ final class ModuleResolver {
 			this.triggersMandatory = false;
 			this.optionals = new ArrayList<ModuleRevision>(unresolved);
 			this.wirings = wirings;
-			this.previouslyResolved = new HashSet<ModuleRevision>(wirings.keySet());
+			// the wirings are not modified when resolving a dynamic import; use the key set directly
+			// to avoid copying the keys of a possibly lazily cloned wirings map
+			this.previouslyResolved = wirings.keySet();
 			this.moduleDatabase = moduleDatabase;
 			this.dynamicReq = dynamicReq;
 		}
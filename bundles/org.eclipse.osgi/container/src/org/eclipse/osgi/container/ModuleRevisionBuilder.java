@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2012 IBM Corporation and others.
+ * Copyright (c) 2012, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,6 +12,7 @@ package org.eclipse.osgi.container;
 
 import java.security.AllPermission;
 import java.util.*;
+import org.eclipse.osgi.internal.container.CompactMap;
 import org.eclipse.osgi.internal.framework.FilterImpl;
 import org.osgi.framework.*;
 import org.osgi.framework.namespace.HostNamespace;
@@ -105,7 +106,9 @@ public final class ModuleRevisionBuilder {
 	}
 
 	/**
-	 * Adds a capability to this builder using the specified namespace, directives and attributes
+	 * Adds a capability to this builder using the specified namespace, directives and attributes.
+	 * The directives and attributes are copied into unmodifiable maps which iterate
+	 * over their keys in sorted order, regardless of the order of the specified maps.
 	 * @param namespace the namespace of the capability
 	 * @param directives the directives of the capability
 	 * @param attributes the attributes of the capability
@@ -123,7 +126,9 @@ public final class ModuleRevisionBuilder {
 	}
 
 	/**
-	 * Adds a requirement to this builder using the specified namespace, directives and attributes
+	 * Adds a requirement to this builder using the specified namespace, directives and attributes.
+	 * The directives and attributes are copied into unmodifiable maps which iterate
+	 * over their keys in sorted order, regardless of the order of the specified maps.
 	 * @param namespace the namespace of the requirement
 	 * @param directives the directives of the requirement
 	 * @param attributes the attributes of the requirement
@@ -231,10 +236,6 @@ public final class ModuleRevisionBuilder {
 		if (infos == null) {
 			infos = new ArrayList<GenericInfo>();
 		}
-		infos.add(new GenericInfo(namespace, copyUnmodifiableMap(directives), copyUnmodifiableMap(attributes)));
-	}
-
-	private static <K, V> Map<K, V> copyUnmodifiableMap(Map<K, V> map) {
-		return Collections.unmodifiableMap(new HashMap<K, V>(map));
+		infos.add(new GenericInfo(namespace, CompactMap.copyOf(directives), CompactMap.copyOf(attributes)));
 	}
 }
@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.osgi.internal.container;
+
+import java.util.*;
+import org.eclipse.osgi.framework.util.ObjectPool;
+import org.osgi.framework.Version;
+
+/**
+ * An unmodifiable map with string keys which is backed by arrays.  It is used
+ * for the attributes and directives of capabilities and requirements.
+ * <p>
+ * The sorted keys of a map are pooled so that all maps with the same keys share
+ * one key array, and immutable values are pooled so that equal values are shared.
+ * Lookups scan the keys which is as fast as hashing for the few keys
+ * capabilities and requirements have.
+ * <p>
+ * The map iterates over its entries in the sorted order of the keys, not in the
+ * iteration order of the map it was copied from.
+ */
+public final class CompactMap<V> extends AbstractMap<String, V> {
+	private final Keys keys;
+	private final Object[] values;
+
+	private static final class Keys {
+		final String[] names;
+		private final int hashCode;
+
+		Keys(String[] names) {
+			this.names = names;
+			this.hashCode = Arrays.hashCode(names);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Keys && Arrays.equals(names, ((Keys) obj).names);
+		}
+	}
+
+	private CompactMap(Keys keys, Object[] values) {
+		this.keys = keys;
+		this.values = values;
+	}
+
+	/**
+	 * Returns an unmodifiable copy of the specified map.  If the map is
+	 * already a compact map then it is returned.
+	 * @param map the map to copy
+	 * @return an unmodifiable copy of the map
+	 */
+	@SuppressWarnings("unchecked")
+	public static <V> Map<String, V> copyOf(Map<String, ? extends V> map) {
+		if (map instanceof CompactMap) {
+			return (Map<String, V>) map;
+		}
+		if (map.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		if (map.containsKey(null)) {
+			return Collections.unmodifiableMap(new HashMap<String, V>(map));
+		}
+		String[] names = map.keySet().toArray(new String[map.size()]);
+		Arrays.sort(names);
+		Object[] values = new Object[names.length];
+		for (int i = 0; i < names.length; i++) {
+			values[i] = intern(map.get(names[i]));
+		}
+		return new CompactMap<V>((Keys) ObjectPool.intern(new Keys(names)), values);
+	}
+
+	private static Object intern(Object value) {
+		// only immutable values may be shared
+		if (value instanceof String || value instanceof Version || value instanceof Long || value instanceof Integer || value instanceof Double || value instanceof Boolean) {
+			return ObjectPool.intern(value);
+		}
+		return value;
+	}
+
+	private int indexOf(Object key) {
+		String[] names = keys.names;
+		for (int i = 0; i < names.length; i++) {
+			if (names[i] == key || names[i].equals(key)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public int size() {
+		return values.length;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return values.length == 0;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return indexOf(key) >= 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V get(Object key) {
+		int index = indexOf(key);
+		return index < 0 ? null : (V) values[index];
+	}
+
+	@Override
+	public Set<Map.Entry<String, V>> entrySet() {
+		return new AbstractSet<Map.Entry<String, V>>() {
+			@Override
+			public Iterator<Map.Entry<String, V>> iterator() {
+				return new Iterator<Map.Entry<String, V>>() {
+					private int index = 0;
+
+					public boolean hasNext() {
+						return index < values.length;
+					}
+
+					@SuppressWarnings("unchecked")
+					public Map.Entry<String, V> next() {
+						if (index >= values.length) {
+							throw new NoSuchElementException();
+						}
+						Map.Entry<String, V> entry = new SimpleImmutableEntry<String, V>(keys.names[index], (V) values[index]);
+						index++;
+						return entry;
+					}
+
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return values.length;
+			}
+		};
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2013 IBM Corporation and others.
+ * Copyright (c) 2009, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,11 +11,9 @@
 package org.eclipse.osgi.internal.debug;
 
 import java.io.*;
-import java.security.AccessController;
 import java.text.MessageFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import org.eclipse.osgi.framework.util.SecureAction;
 import org.eclipse.osgi.service.debug.DebugTrace;
 
 /**
@@ -23,10 +21,6 @@ import org.eclipse.osgi.service.debug.DebugTrace;
  */
 class EclipseDebugTrace implements DebugTrace {
 
-	/** The system property used to specify size a trace file can grow before it is rotated */
-	private static final String PROP_TRACE_SIZE_MAX = "eclipse.trace.size.max"; //$NON-NLS-1$
-	/** The system property used to specify the maximum number of backup trace files to use */
-	private static final String PROP_TRACE_FILE_MAX = "eclipse.trace.backup.max"; //$NON-NLS-1$
 	/** The trace message for a thread stack dump */
 	private final static String MESSAGE_THREAD_DUMP = "Thread Stack dump: "; //$NON-NLS-1$
 	/** The trace message for a method completing with a return value */
@@ -37,54 +31,52 @@ class EclipseDebugTrace implements DebugTrace {
 	private final static String MESSAGE_ENTER_METHOD_WITH_PARAMS = "Entering method {0}with parameters: ("; //$NON-NLS-1$
 	/** The trace message for a method starting with no arguments */
 	private final static String MESSAGE_ENTER_METHOD_NO_PARAMS = "Entering method {0}with no parameters"; //$NON-NLS-1$
-	/** The version attribute written in the header of a new session */
-	private final static String TRACE_FILE_VERSION_COMMENT = "version: "; //$NON-NLS-1$
-	/** The verbose attribute written in the header of a new session */
-	private final static String TRACE_FILE_VERBOSE_COMMENT = "verbose: "; //$NON-NLS-1$
-	/** The version value written in the header of a new session */
-	private final static String TRACE_FILE_VERSION = "1.1"; //$NON-NLS-1$
-	/** The new session identifier to be written whenever a new session starts */
-	private final static String TRACE_NEW_SESSION = "!SESSION "; //$NON-NLS-1$
-	/** The date attribute written to the header of the trace file to show when this file was created */
-	private final static String TRACE_FILE_DATE = "Time of creation: "; //$NON-NLS-1$
-	/** Trace date formatter using the pattern: yyyy-MM-dd HH:mm:ss.SSS  */
-	private final static SimpleDateFormat TRACE_FILE_DATE_FORMATTER = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS"); //$NON-NLS-1$
-	/** The comment character used by the trace file */
-	private final static String TRACE_COMMENT = "#"; //$NON-NLS-1$
+	/** Trace date format pattern: yyyy-MM-dd HH:mm:ss.SSS  */
+	final static String TRACE_FILE_DATE_PATTERN = "yyyy-MM-dd HH:mm:ss.SSS"; //$NON-NLS-1$
 	/** The delimiter used to separate trace elements such as the time stamp, message, etc */
 	private final static String TRACE_ELEMENT_DELIMITER = "|"; //$NON-NLS-1$
 	/** The string written in place of the {@link EclipseDebugTrace#TRACE_TRACE_ELEMENT_DELIMITER} in entries */
 	private final static String TRACE_ELEMENT_DELIMITER_ENCODED = "&#124;"; //$NON-NLS-1$
 	/** OS-specific line separator */
-	private static final String LINE_SEPARATOR;
+	static final String LINE_SEPARATOR;
 	static {
 		String s = System.getProperty("line.separator"); //$NON-NLS-1$
 		LINE_SEPARATOR = s == null ? "\n" : s; //$NON-NLS-1$
 	}
 	/** The value written to the trace file if a null object is being traced */
 	private final static String NULL_VALUE = "<null>"; //$NON-NLS-1$
-	/**  */
-	private final static SecureAction secureAction = AccessController.doPrivileged(SecureAction.createSecureAction());
 	/** A lock object used to synchronize access to the trace file */
-	private final static Object writeLock = new Object();
-
-	/******************* Tracing file attributes **************************/
-	/** The default size a trace file can grow before it is rotated */
-	private static final int DEFAULT_TRACE_FILE_SIZE = 1000; // The value is in KB.
-	/** The default number of backup trace files */
-	private static final int DEFAULT_TRACE_FILES = 10;
-	/** The minimum size limit for trace file rotation */
-	private static final int DEFAULT_TRACE_FILE_MIN_SIZE = 10;
-	/** The extension used for log files */
-	private static final String TRACE_FILE_EXTENSION = ".trace"; //$NON-NLS-1$
-	/** The extension markup to use for backup log files*/
-	private static final String BACKUP_MARK = ".bak_"; //$NON-NLS-1$
-	/** The maximum size that a trace file should grow (0 = unlimited) */
-	private int maxTraceFileSize = DEFAULT_TRACE_FILE_SIZE; // The value is in KB.
-	/** The maximum number of trace files that should be saved */
-	private int maxTraceFiles = DEFAULT_TRACE_FILES;
-	/** The index of the currently backed-up trace file */
-	private int backupTraceFileIndex = 0;
+	final static Object writeLock = new Object();
+	/** The largest buffer capacity kept for reuse by a thread */
+	private final static int MAX_REUSED_BUFFER_SIZE = 64 * 1024;
+	/** Per-thread buffers used to format trace entries */
+	private final static ThreadLocal<TraceBuffer> traceBuffers = new ThreadLocal<TraceBuffer>() {
+		protected TraceBuffer initialValue() {
+			return new TraceBuffer();
+		}
+	};
+
+	/**
+	 * The reusable buffers of a thread.  Each thread gets its own date formatter
+	 * so that entries can be formatted without holding the write lock.
+	 */
+	private static final class TraceBuffer {
+		final SimpleDateFormat dateFormatter = new SimpleDateFormat(TRACE_FILE_DATE_PATTERN);
+		final Date date = new Date();
+		StringBuilder text = new StringBuilder(256);
+
+		StringBuilder getText() {
+			if (text.capacity() > MAX_REUSED_BUFFER_SIZE)
+				text = new StringBuilder(256);
+			text.setLength(0);
+			return text;
+		}
+
+		String format(long timestamp) {
+			date.setTime(timestamp);
+			return dateFormatter.format(date);
+		}
+	}
 
 	/** An optional argument to specify the name of the class used by clients to trace messages.  If no trace class is specified
 	 * then the class calling this API is assumed to be the class being traced.
@@ -122,7 +114,6 @@ class EclipseDebugTrace implements DebugTrace {
 		this.traceClass = traceClass != null ? traceClass.getName() : null;
 		this.debugOptions = debugOptions;
 		this.bundleSymbolicName = bundleSymbolicName;
-		readLogProperties();
 	}
 
 	/**
@@ -328,160 +319,17 @@ class EclipseDebugTrace implements DebugTrace {
 	}
 
 	/**
-	 * Write the specified FrameworkTraceEntry to trace file
+	 * Write the specified FrameworkTraceEntry to trace file.  The entry is formatted on the calling thread and
+	 * then handed to the trace writer which keeps the trace file open between entries.
 	 * 
 	 * @param entry The FrameworkTraceEntry to write to the log file.
 	 */
 	private void writeRecord(final FrameworkDebugTraceEntry entry) {
 
 		if (entry != null) {
-			synchronized (EclipseDebugTrace.writeLock) {
-				final File tracingFile = debugOptions.getFile(); // the tracing file may be null if it has not been set
-				Writer traceWriter = null;
-				try {
-					// check to see if the file should be rotated
-					checkTraceFileSize(tracingFile, entry.getTimestamp());
-					// open the trace file
-					traceWriter = openWriter(tracingFile);
-					if (EclipseDebugTrace.newSession) {
-						writeSession(traceWriter, entry.getTimestamp());
-						EclipseDebugTrace.newSession = false;
-					}
-					writeMessage(traceWriter, entry);
-					// flush the writer
-					traceWriter.flush();
-				} catch (Exception ex) {
-					// any exceptions during tracing should be caught 
-					System.err.println("An exception occurred while writing to the platform trace file: ");//$NON-NLS-1$
-					ex.printStackTrace(System.err);
-				} finally {
-					// close the trace writer
-					if (tracingFile != null) {
-						closeWriter(traceWriter);
-					}
-				}
-			}
-		}
-	}
-
-	/**
-	 * Reads the PROP_TRACE_SIZE_MAX and PROP_TRACE_FILE_MAX properties.
-	 */
-	private void readLogProperties() {
-
-		String newMaxTraceFileSize = debugOptions.getConfiguration().getConfiguration(PROP_TRACE_SIZE_MAX);
-		if (newMaxTraceFileSize != null) {
-			maxTraceFileSize = Integer.parseInt(newMaxTraceFileSize);
-			if (maxTraceFileSize != 0 && maxTraceFileSize < DEFAULT_TRACE_FILE_MIN_SIZE) {
-				// If the value is '0', then it means no size limitation.
-				// Also, make sure no inappropriate(too small) assigned value.
-				maxTraceFileSize = DEFAULT_TRACE_FILE_MIN_SIZE;
-			}
-		}
-
-		String newMaxLogFiles = debugOptions.getConfiguration().getConfiguration(PROP_TRACE_FILE_MAX);
-		if (newMaxLogFiles != null) {
-			maxTraceFiles = Integer.parseInt(newMaxLogFiles);
-			if (maxTraceFiles < 1) {
-				// Make sure no invalid assigned value. (at least >= 1)
-				maxTraceFiles = DEFAULT_TRACE_FILES;
-			}
-		}
-	}
-
-	/**
-	 * Checks the trace file size.  If the file size reaches the limit then the trace file is rotated. 
-	 * 
-	 * @param traceFile The tracing file
-	 * @param timestamp the timestamp for the session; this is the same timestamp as the first entry
-	 * @return false if an error occurred trying to rotate the trace file
-	 */
-	private boolean checkTraceFileSize(final File traceFile, long timestamp) {
-
-		// 0 file size means there is no size limit
-		boolean isBackupOK = true;
-		if (maxTraceFileSize > 0) {
-			if ((traceFile != null) && traceFile.exists()) {
-				if ((traceFile.length() >> 10) > maxTraceFileSize) { // Use KB as file size unit.
-					final String traceFileName = traceFile.getAbsolutePath();
-
-					// Delete old backup file that will be replaced.
-					String backupFilename = ""; //$NON-NLS-1$
-					if (traceFileName.toLowerCase().endsWith(TRACE_FILE_EXTENSION)) {
-						backupFilename = traceFileName.substring(0, traceFileName.length() - TRACE_FILE_EXTENSION.length()) + BACKUP_MARK + backupTraceFileIndex + TRACE_FILE_EXTENSION;
-					} else {
-						backupFilename = traceFileName + BACKUP_MARK + backupTraceFileIndex;
-					}
-					final File backupFile = new File(backupFilename);
-					if (backupFile.exists()) {
-						if (!backupFile.delete()) {
-							System.err.println("Error when trying to delete old trace file: " + backupFile.getName());//$NON-NLS-1$ 
-							if (backupFile.renameTo(new File(backupFile.getAbsolutePath() + System.currentTimeMillis()))) {
-								System.err.println("So we rename it to filename: " + backupFile.getName()); //$NON-NLS-1$
-							} else {
-								System.err.println("And we also cannot rename it!"); //$NON-NLS-1$
-								isBackupOK = false;
-							}
-						}
-					}
-
-					// Rename current log file to backup one.
-					boolean isRenameOK = traceFile.renameTo(backupFile);
-					if (!isRenameOK) {
-						System.err.println("Error when trying to rename trace file to backup one."); //$NON-NLS-1$
-						isBackupOK = false;
-					}
-					/*
-					 * Write a header to new log file stating that this new file is a continuation file. 
-					 * This method should already be called with the file lock set so we should be safe 
-					 * to update it here.
-					*/
-					Writer traceWriter = null;
-					try {
-						traceWriter = openWriter(traceFile);
-						writeComment(traceWriter, "This is a continuation of trace file " + backupFile.getAbsolutePath()); //$NON-NLS-1$
-						writeComment(traceWriter, EclipseDebugTrace.TRACE_FILE_VERSION_COMMENT + EclipseDebugTrace.TRACE_FILE_VERSION);
-						writeComment(traceWriter, EclipseDebugTrace.TRACE_FILE_VERBOSE_COMMENT + debugOptions.isVerbose());
-						writeComment(traceWriter, EclipseDebugTrace.TRACE_FILE_DATE + getFormattedDate(timestamp));
-						traceWriter.flush();
-					} catch (IOException ioEx) {
-						ioEx.printStackTrace();
-					} finally {
-						if (traceFile != null) {
-							closeWriter(traceWriter);
-						}
-					}
-					backupTraceFileIndex = (++backupTraceFileIndex) % maxTraceFiles;
-				}
-			}
+			final File tracingFile = debugOptions.getFile(); // the tracing file may be null if it has not been set
+			debugOptions.getTraceWriter().write(tracingFile, entry.getTimestamp(), formatMessage(entry));
 		}
-		return isBackupOK;
-	}
-
-	/**
-	 * Writes a comment to the trace file
-	 *
-	 * @param traceWriter the trace writer
-	 * @param comment the comment to be written to the trace file
-	 * @throws IOException If an error occurs while writing the comment
-	 */
-	private void writeComment(final Writer traceWriter, final String comment) throws IOException {
-
-		StringBuffer commentText = new StringBuffer(EclipseDebugTrace.TRACE_COMMENT);
-		commentText.append(" "); //$NON-NLS-1$
-		commentText.append(comment);
-		commentText.append(EclipseDebugTrace.LINE_SEPARATOR);
-		traceWriter.write(commentText.toString());
-	}
-
-	/**
-	 * Accessor to retrieve the time stamp in a formatted manner.
-	 * 
-	 * @return A formatted time stamp based on the {@link EclipseDebugTrace#TRACE_FILE_DATE_FORMATTER} formatter
-	 */
-	private final String getFormattedDate(long timestamp) {
-
-		return EclipseDebugTrace.TRACE_FILE_DATE_FORMATTER.format(new Date(timestamp));
 	}
 
 	/**
@@ -511,42 +359,24 @@ class EclipseDebugTrace implements DebugTrace {
 	}
 
 	/**
-	 * Writes header information to a new trace file
-	 * 
-	 * @param traceWriter the trace writer
-	 * @param timestamp the timestamp for the session; this is the same timestamp as the first entry
-	 * @throws IOException If an error occurs while writing this session information 
-	 */
-	private void writeSession(final Writer traceWriter, long timestamp) throws IOException {
-
-		writeComment(traceWriter, EclipseDebugTrace.TRACE_NEW_SESSION + this.getFormattedDate(timestamp));
-		writeComment(traceWriter, EclipseDebugTrace.TRACE_FILE_VERSION_COMMENT + EclipseDebugTrace.TRACE_FILE_VERSION);
-		writeComment(traceWriter, EclipseDebugTrace.TRACE_FILE_VERBOSE_COMMENT + debugOptions.isVerbose());
-		writeComment(traceWriter, "The following option strings are specified for this debug session:"); //$NON-NLS-1$ 
-		final String[] allOptions = debugOptions.getAllOptions();
-		for (int i = 0; i < allOptions.length; i++) {
-			writeComment(traceWriter, "\t" + allOptions[i]); //$NON-NLS-1$
-		}
-	}
-
-	/**
-	 * Writes the specified trace entry object to the trace file using the 
+	 * Formats the specified trace entry object using the 
 	 * {@link EclipseDebugTrace#TRACE_ELEMENT_DELIMITER} as the delimiter between
-	 * each element of the entry.
+	 * each element of the entry.  The per-thread trace buffer is used to build the message.
 	 * 
-	 * @param traceWriter the trace writer
-	 * @param entry The trace entry object to write to the trace file
-	 * @throws IOException If an error occurs while writing this message
+	 * @param entry The trace entry object to format
+	 * @return the formatted entry
 	 */
-	private void writeMessage(final Writer traceWriter, final FrameworkDebugTraceEntry entry) throws IOException {
+	private String formatMessage(final FrameworkDebugTraceEntry entry) {
 
-		final StringBuffer message = new StringBuffer(EclipseDebugTrace.TRACE_ELEMENT_DELIMITER);
+		final TraceBuffer buffer = traceBuffers.get();
+		final StringBuilder message = buffer.getText();
+		message.append(EclipseDebugTrace.TRACE_ELEMENT_DELIMITER);
 		message.append(" "); //$NON-NLS-1$
 		message.append(encodeText(entry.getThreadName()));
 		message.append(" "); //$NON-NLS-1$
 		message.append(EclipseDebugTrace.TRACE_ELEMENT_DELIMITER);
 		message.append(" "); //$NON-NLS-1$
-		message.append(this.getFormattedDate(entry.getTimestamp()));
+		message.append(buffer.format(entry.getTimestamp()));
 		message.append(" "); //$NON-NLS-1$
 		message.append(EclipseDebugTrace.TRACE_ELEMENT_DELIMITER);
 		message.append(" "); //$NON-NLS-1$
@@ -586,10 +416,7 @@ class EclipseDebugTrace implements DebugTrace {
 		message.append(" "); //$NON-NLS-1$
 		message.append(EclipseDebugTrace.TRACE_ELEMENT_DELIMITER);
 		message.append(EclipseDebugTrace.LINE_SEPARATOR);
-		// write the message
-		if ((traceWriter != null) && (message != null)) {
-			traceWriter.write(message.toString());
-		}
+		return message.toString();
 	}
 
 	/**
@@ -615,58 +442,4 @@ class EclipseDebugTrace implements DebugTrace {
 		}
 		return tempBuffer.toString();
 	}
-
-	/**
-	 * Returns a Writer for the given OutputStream
-	 * @param output an OutputStream to use for the Writer
-	 * @return A Writer for the given OutputStream
-	 */
-	private Writer logForStream(OutputStream output) {
-
-		try {
-			return new BufferedWriter(new OutputStreamWriter(output, "UTF-8")); //$NON-NLS-1$
-		} catch (UnsupportedEncodingException e) {
-			return new BufferedWriter(new OutputStreamWriter(output));
-		}
-	}
-
-	/**
-	 * Creates the trace writer.
-	 * If the tracing file is null then the writer will use System.out to print any messages.
-	 * 
-	 * @param traceFile The tracing file
-	 * @return Returns a new Writer object  
-	 */
-	private Writer openWriter(final File traceFile) {
-
-		Writer traceWriter = null;
-		if (traceFile != null) {
-			try {
-				traceWriter = logForStream(secureAction.getFileOutputStream(traceFile, true));
-			} catch (IOException ioEx) {
-				traceWriter = logForStream(System.out);
-			}
-		} else {
-			traceWriter = logForStream(System.out);
-		}
-		return traceWriter;
-	}
-
-	/**
-	 * Close the trace writer
-	 * 
-	 * @param traceWriter The trace writer
-	 */
-	private void closeWriter(Writer traceWriter) {
-
-		if (traceWriter != null) {
-			try {
-				traceWriter.close();
-			} catch (IOException ioEx) {
-				// we cannot log here; just print the stacktrace.
-				ioEx.printStackTrace();
-			}
-			traceWriter = null;
-		}
-	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,548 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.osgi.internal.debug;
+
+import java.io.*;
+import java.security.AccessController;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import org.eclipse.osgi.framework.util.SecureAction;
+
+/**
+ * Writes formatted trace entries to the trace file on behalf of all the
+ * {@link EclipseDebugTrace} objects of a framework.
+ * <p>
+ * The trace file is kept open between entries and is only closed when a
+ * new trace session is started, when the trace file is rotated or when the
+ * writer is closed.  The file is also opened again if its size no longer
+ * matches the size written by this writer, for example because the file got
+ * rotated or deleted by someone else.  Entries are either written on the
+ * calling thread or, if {@link #PROP_TRACE_ASYNC} is enabled, handed off
+ * through a bounded queue to a single writer thread which also performs the
+ * trace file rotation.
+ * <p>
+ * No entry is ever dropped by closing the writer.  The writer thread only
+ * stops once it finds the queue empty while holding the thread monitor, and
+ * an entry is always queued before the writer thread is checked, and started
+ * if none is running, while holding the same monitor.  Thus each queued entry
+ * is either written by the running writer thread or by a new one, and there
+ * is never more than one writer thread.
+ * <p>
+ * Once the writer is closed no new writer thread is started and the trace file is
+ * not kept open anymore.  Entries written after the writer got closed are written
+ * on the calling thread which opens the trace file, writes the entry and closes the
+ * trace file again, until the writer is {@link #open() opened} again.
+ */
+class EclipseDebugTraceWriter {
+
+	/** The system property used to specify size a trace file can grow before it is rotated */
+	private static final String PROP_TRACE_SIZE_MAX = "eclipse.trace.size.max"; //$NON-NLS-1$
+	/** The system property used to specify the maximum number of backup trace files to use */
+	private static final String PROP_TRACE_FILE_MAX = "eclipse.trace.backup.max"; //$NON-NLS-1$
+	/** The system property used to enable writing trace entries asynchronously */
+	private static final String PROP_TRACE_ASYNC = "eclipse.trace.async"; //$NON-NLS-1$
+	/** The system property used to specify the number of trace entries that may be waiting to be written */
+	private static final String PROP_TRACE_QUEUE_SIZE = "eclipse.trace.queue.size"; //$NON-NLS-1$
+	/** The version attribute written in the header of a new session */
+	private final static String TRACE_FILE_VERSION_COMMENT = "version: "; //$NON-NLS-1$
+	/** The verbose attribute written in the header of a new session */
+	private final static String TRACE_FILE_VERBOSE_COMMENT = "verbose: "; //$NON-NLS-1$
+	/** The version value written in the header of a new session */
+	private final static String TRACE_FILE_VERSION = "1.1"; //$NON-NLS-1$
+	/** The new session identifier to be written whenever a new session starts */
+	private final static String TRACE_NEW_SESSION = "!SESSION "; //$NON-NLS-1$
+	/** The date attribute written to the header of the trace file to show when this file was created */
+	private final static String TRACE_FILE_DATE = "Time of creation: "; //$NON-NLS-1$
+	/** The comment character used by the trace file */
+	private final static String TRACE_COMMENT = "#"; //$NON-NLS-1$
+	/** */
+	private final static SecureAction secureAction = AccessController.doPrivileged(SecureAction.createSecureAction());
+
+	/******************* Tracing file attributes **************************/
+	/** The default size a trace file can grow before it is rotated */
+	private static final int DEFAULT_TRACE_FILE_SIZE = 1000; // The value is in KB.
+	/** The default number of backup trace files */
+	private static final int DEFAULT_TRACE_FILES = 10;
+	/** The minimum size limit for trace file rotation */
+	private static final int DEFAULT_TRACE_FILE_MIN_SIZE = 10;
+	/** The default number of trace entries that may be waiting to be written */
+	private static final int DEFAULT_TRACE_QUEUE_SIZE = 1024;
+	/** The extension used for log files */
+	private static final String TRACE_FILE_EXTENSION = ".trace"; //$NON-NLS-1$
+	/** The extension markup to use for backup log files*/
+	private static final String BACKUP_MARK = ".bak_"; //$NON-NLS-1$
+	/** The maximum size that a trace file should grow (0 = unlimited) */
+	private int maxTraceFileSize = DEFAULT_TRACE_FILE_SIZE; // The value is in KB.
+	/** The maximum number of trace files that should be saved */
+	private int maxTraceFiles = DEFAULT_TRACE_FILES;
+	/** The index of the currently backed-up trace file */
+	private int backupTraceFileIndex = 0;
+
+	/** A trace entry waiting to be written by the writer thread */
+	private static final class TraceRecord {
+		final File traceFile;
+		final long timestamp;
+		final boolean newSession;
+		final String text;
+
+		TraceRecord(File traceFile, long timestamp, boolean newSession, String text) {
+			this.traceFile = traceFile;
+			this.timestamp = timestamp;
+			this.newSession = newSession;
+			this.text = text;
+		}
+	}
+
+	/** The record used to tell the writer thread to stop */
+	private static final TraceRecord CLOSE = new TraceRecord(null, 0, false, null);
+
+	private final FrameworkDebugOptions debugOptions;
+	/** The queue of entries waiting for the writer thread; null if entries are written on the calling thread */
+	private final BlockingQueue<TraceRecord> queue;
+	/** Guards the start and the end of the writer thread */
+	private final Object threadMonitor = new Object();
+	/** The writer thread; null if no writer thread is running.  Only accessed while holding the threadMonitor */
+	private Thread writerThread;
+	/** Indicates that the writer is closed.  Only changed while holding the threadMonitor */
+	private volatile boolean closed;
+	/** The date formatter used for comments; only accessed while holding the write lock */
+	private final SimpleDateFormat dateFormatter = new SimpleDateFormat(EclipseDebugTrace.TRACE_FILE_DATE_PATTERN);
+
+	/* The following fields are only accessed while holding the write lock */
+	/** The currently opened trace writer; null if no writer is open */
+	private Writer traceWriter;
+	/** The file the current trace writer is writing to; null if writing to System.out */
+	private File openFile;
+	/** The approximate size in bytes of the open trace file */
+	private long openFileSize;
+	/** The size of the open trace file after the last flush; -1 if entries got written since */
+	private long flushedFileSize = -1;
+
+	EclipseDebugTraceWriter(FrameworkDebugOptions debugOptions) {
+		this.debugOptions = debugOptions;
+		readLogProperties();
+		boolean async = Boolean.valueOf(debugOptions.getConfiguration().getConfiguration(PROP_TRACE_ASYNC)).booleanValue();
+		if (async) {
+			int queueSize = DEFAULT_TRACE_QUEUE_SIZE;
+			String newQueueSize = debugOptions.getConfiguration().getConfiguration(PROP_TRACE_QUEUE_SIZE);
+			if (newQueueSize != null) {
+				queueSize = Integer.parseInt(newQueueSize);
+				if (queueSize < 1)
+					queueSize = DEFAULT_TRACE_QUEUE_SIZE;
+			}
+			queue = new ArrayBlockingQueue<TraceRecord>(queueSize);
+		} else {
+			queue = null;
+		}
+	}
+
+	/**
+	 * Reads the PROP_TRACE_SIZE_MAX and PROP_TRACE_FILE_MAX properties.
+	 */
+	private void readLogProperties() {
+
+		String newMaxTraceFileSize = debugOptions.getConfiguration().getConfiguration(PROP_TRACE_SIZE_MAX);
+		if (newMaxTraceFileSize != null) {
+			maxTraceFileSize = Integer.parseInt(newMaxTraceFileSize);
+			if (maxTraceFileSize != 0 && maxTraceFileSize < DEFAULT_TRACE_FILE_MIN_SIZE) {
+				// If the value is '0', then it means no size limitation.
+				// Also, make sure no inappropriate(too small) assigned value.
+				maxTraceFileSize = DEFAULT_TRACE_FILE_MIN_SIZE;
+			}
+		}
+
+		String newMaxLogFiles = debugOptions.getConfiguration().getConfiguration(PROP_TRACE_FILE_MAX);
+		if (newMaxLogFiles != null) {
+			maxTraceFiles = Integer.parseInt(newMaxLogFiles);
+			if (maxTraceFiles < 1) {
+				// Make sure no invalid assigned value. (at least >= 1)
+				maxTraceFiles = DEFAULT_TRACE_FILES;
+			}
+		}
+	}
+
+	/**
+	 * Writes an already formatted trace entry to the trace file.  If asynchronous
+	 * tracing is enabled then the entry is queued for the writer thread; the calling
+	 * thread only blocks if the queue is full.
+	 *
+	 * @param traceFile the trace file, may be null in which case System.out is used
+	 * @param timestamp the timestamp of the entry
+	 * @param text the formatted entry
+	 */
+	void write(File traceFile, long timestamp, String text) {
+		if (queue == null) {
+			synchronized (EclipseDebugTrace.writeLock) {
+				boolean newSession = EclipseDebugTrace.newSession;
+				EclipseDebugTrace.newSession = false;
+				try {
+					writeRecord(traceFile, timestamp, newSession, text);
+					flush();
+				} catch (Exception ex) {
+					handleError(ex);
+				} finally {
+					if (closed)
+						closeWriter();
+				}
+			}
+			return;
+		}
+		boolean newSession;
+		synchronized (EclipseDebugTrace.writeLock) {
+			newSession = EclipseDebugTrace.newSession;
+			EclipseDebugTrace.newSession = false;
+		}
+		try {
+			// queue the entry before making sure a writer thread is running for it
+			queue.put(new TraceRecord(traceFile, timestamp, newSession, text));
+		} catch (InterruptedException e) {
+			// preserve the interrupt; the entry is dropped
+			Thread.currentThread().interrupt();
+			return;
+		}
+		ensureWriterThread();
+	}
+
+	/**
+	 * Opens the writer again after it got closed.  The trace file is opened again
+	 * by the next entry.
+	 */
+	void open() {
+		synchronized (threadMonitor) {
+			closed = false;
+		}
+	}
+
+	/**
+	 * Closes the trace file.  If asynchronous tracing is enabled then the writer
+	 * thread is stopped after all entries queued before it got the request to
+	 * close have been written.  Entries which are written while or after the
+	 * writer is closed are not dropped; they are written by the current writer
+	 * thread or on the calling thread, which opens and closes the trace file.
+	 */
+	void close() {
+		Thread current;
+		synchronized (threadMonitor) {
+			closed = true;
+			current = writerThread;
+		}
+		if (current != null) {
+			try {
+				// a request which arrives after the thread ended only ends the next writer thread early
+				queue.put(CLOSE);
+				current.join(5000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		synchronized (EclipseDebugTrace.writeLock) {
+			closeWriter();
+		}
+	}
+
+	private void ensureWriterThread() {
+		synchronized (threadMonitor) {
+			if (writerThread != null)
+				return;
+			if (!closed) {
+				writerThread = secureAction.createThread(new Runnable() {
+					public void run() {
+						processQueue();
+					}
+				}, "Framework Trace Writer", null); //$NON-NLS-1$
+				writerThread.setDaemon(true);
+				writerThread.start();
+				return;
+			}
+		}
+		// the writer got closed after the entry was queued and the writer thread has ended
+		writeQueued();
+	}
+
+	/*
+	 * Writes the queued entries on the calling thread and closes the trace file
+	 */
+	private void writeQueued() {
+		List<TraceRecord> batch = new ArrayList<TraceRecord>();
+		synchronized (EclipseDebugTrace.writeLock) {
+			// drain while holding the write lock to keep the order of the entries
+			queue.drainTo(batch);
+			try {
+				for (TraceRecord record : batch) {
+					if (record != CLOSE)
+						writeRecord(record.traceFile, record.timestamp, record.newSession, record.text);
+				}
+				flush();
+			} catch (Exception ex) {
+				handleError(ex);
+			} finally {
+				closeWriter();
+			}
+		}
+	}
+
+	void processQueue() {
+		List<TraceRecord> batch = new ArrayList<TraceRecord>();
+		boolean closeRequested = false;
+		try {
+			while (true) {
+				try {
+					batch.add(queue.take());
+				} catch (InterruptedException e) {
+					// keep writing until told to close
+					continue;
+				}
+				queue.drainTo(batch);
+				synchronized (EclipseDebugTrace.writeLock) {
+					try {
+						for (TraceRecord record : batch) {
+							if (record == CLOSE) {
+								// the entries queued after the request are written too
+								closeRequested = true;
+								continue;
+							}
+							writeRecord(record.traceFile, record.timestamp, record.newSession, record.text);
+						}
+						// only flush once the queue has been drained
+						flush();
+					} catch (Exception ex) {
+						handleError(ex);
+					}
+				}
+				batch.clear();
+				if (closeRequested) {
+					synchronized (threadMonitor) {
+						if (queue.isEmpty()) {
+							// entries queued from now on start a new writer thread or are written on the calling thread
+							writerThread = null;
+							break;
+						}
+					}
+				}
+			}
+			if (closed) {
+				// do not keep the trace file open if close gave up waiting for this thread
+				synchronized (EclipseDebugTrace.writeLock) {
+					closeWriter();
+				}
+			}
+		} finally {
+			synchronized (threadMonitor) {
+				if (writerThread == Thread.currentThread())
+					writerThread = null;
+			}
+		}
+	}
+
+	/*
+	 * Must be called while holding the write lock
+	 */
+	private void writeRecord(File traceFile, long timestamp, boolean newSession, String text) throws IOException {
+		if (openFile != null && flushedFileSize >= 0 && openFile.length() != flushedFileSize) {
+			// the trace file got rotated, truncated or deleted by someone else
+			closeWriter();
+		}
+		if (newSession || traceWriter == null || !equals(openFile, traceFile)) {
+			// a new session or a different file; start over with a newly opened writer
+			closeWriter();
+			openWriter(traceFile);
+		}
+		// check to see if the file should be rotated
+		checkTraceFileSize(timestamp);
+		if (newSession) {
+			writeSession(timestamp);
+		}
+		write(text);
+	}
+
+	private static boolean equals(File f1, File f2) {
+		return f1 == null ? f2 == null : f1.equals(f2);
+	}
+
+	private static void handleError(Exception ex) {
+		// any exceptions during tracing should be caught
+		System.err.println("An exception occurred while writing to the platform trace file: ");//$NON-NLS-1$
+		ex.printStackTrace(System.err);
+	}
+
+	/**
+	 * Checks the trace file size.  If the file size reaches the limit then the trace file is rotated.
+	 *
+	 * @param timestamp the timestamp for the session; this is the same timestamp as the first entry
+	 * @return false if an error occurred trying to rotate the trace file
+	 */
+	private boolean checkTraceFileSize(long timestamp) {
+
+		// 0 file size means there is no size limit
+		boolean isBackupOK = true;
+		if (maxTraceFileSize > 0) {
+			final File traceFile = openFile;
+			if (traceFile != null && (openFileSize >> 10) > maxTraceFileSize) { // Use KB as file size unit.
+				// the writer must be closed before the file can be renamed
+				closeWriter();
+				final String traceFileName = traceFile.getAbsolutePath();
+
+				// Delete old backup file that will be replaced.
+				String backupFilename = ""; //$NON-NLS-1$
+				if (traceFileName.toLowerCase().endsWith(TRACE_FILE_EXTENSION)) {
+					backupFilename = traceFileName.substring(0, traceFileName.length() - TRACE_FILE_EXTENSION.length()) + BACKUP_MARK + backupTraceFileIndex + TRACE_FILE_EXTENSION;
+				} else {
+					backupFilename = traceFileName + BACKUP_MARK + backupTraceFileIndex;
+				}
+				final File backupFile = new File(backupFilename);
+				if (backupFile.exists()) {
+					if (!backupFile.delete()) {
+						System.err.println("Error when trying to delete old trace file: " + backupFile.getName());//$NON-NLS-1$
+						if (backupFile.renameTo(new File(backupFile.getAbsolutePath() + System.currentTimeMillis()))) {
+							System.err.println("So we rename it to filename: " + backupFile.getName()); //$NON-NLS-1$
+						} else {
+							System.err.println("And we also cannot rename it!"); //$NON-NLS-1$
+							isBackupOK = false;
+						}
+					}
+				}
+
+				// Rename current log file to backup one.
+				boolean isRenameOK = traceFile.renameTo(backupFile);
+				if (!isRenameOK) {
+					System.err.println("Error when trying to rename trace file to backup one."); //$NON-NLS-1$
+					isBackupOK = false;
+				}
+				/*
+				 * Write a header to new log file stating that this new file is a continuation file.
+				 */
+				openWriter(traceFile);
+				try {
+					writeComment("This is a continuation of trace file " + backupFile.getAbsolutePath()); //$NON-NLS-1$
+					writeComment(TRACE_FILE_VERSION_COMMENT + TRACE_FILE_VERSION);
+					writeComment(TRACE_FILE_VERBOSE_COMMENT + debugOptions.isVerbose());
+					writeComment(TRACE_FILE_DATE + dateFormatter.format(new Date(timestamp)));
+				} catch (IOException ioEx) {
+					ioEx.printStackTrace();
+				}
+				backupTraceFileIndex = (++backupTraceFileIndex) % maxTraceFiles;
+			}
+		}
+		return isBackupOK;
+	}
+
+	/**
+	 * Writes header information to a new trace file
+	 *
+	 * @param timestamp the timestamp for the session; this is the same timestamp as the first entry
+	 * @throws IOException If an error occurs while writing this session information
+	 */
+	private void writeSession(long timestamp) throws IOException {
+
+		writeComment(TRACE_NEW_SESSION + dateFormatter.format(new Date(timestamp)));
+		writeComment(TRACE_FILE_VERSION_COMMENT + TRACE_FILE_VERSION);
+		writeComment(TRACE_FILE_VERBOSE_COMMENT + debugOptions.isVerbose());
+		writeComment("The following option strings are specified for this debug session:"); //$NON-NLS-1$
+		final String[] allOptions = debugOptions.getAllOptions();
+		for (int i = 0; i < allOptions.length; i++) {
+			writeComment("\t" + allOptions[i]); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Writes a comment to the trace file
+	 *
+	 * @param comment the comment to be written to the trace file
+	 * @throws IOException If an error occurs while writing the comment
+	 */
+	private void writeComment(final String comment) throws IOException {
+
+		StringBuffer commentText = new StringBuffer(TRACE_COMMENT);
+		commentText.append(" "); //$NON-NLS-1$
+		commentText.append(comment);
+		commentText.append(EclipseDebugTrace.LINE_SEPARATOR);
+		write(commentText.toString());
+	}
+
+	private void write(String text) throws IOException {
+		traceWriter.write(text);
+		// assume mostly single byte characters; this is only used to decide when to rotate
+		openFileSize += text.length();
+		flushedFileSize = -1;
+	}
+
+	private void flush() throws IOException {
+		if (traceWriter != null) {
+			traceWriter.flush();
+			if (openFile != null) {
+				flushedFileSize = openFile.length();
+				openFileSize = flushedFileSize;
+			}
+		}
+	}
+
+	/**
+	 * Returns a Writer for the given OutputStream
+	 * @param output an OutputStream to use for the Writer
+	 * @return A Writer for the given OutputStream
+	 */
+	private Writer logForStream(OutputStream output) {
+
+		try {
+			return new BufferedWriter(new OutputStreamWriter(output, "UTF-8")); //$NON-NLS-1$
+		} catch (UnsupportedEncodingException e) {
+			return new BufferedWriter(new OutputStreamWriter(output));
+		}
+	}
+
+	/**
+	 * Opens the trace writer.
+	 * If the tracing file is null then the writer will use System.out to print any messages.
+	 *
+	 * @param traceFile The tracing file
+	 */
+	private void openWriter(final File traceFile) {
+
+		openFile = null;
+		openFileSize = 0;
+		if (traceFile != null) {
+			try {
+				traceWriter = logForStream(secureAction.getFileOutputStream(traceFile, true));
+				openFile = traceFile;
+				openFileSize = traceFile.length();
+				flushedFileSize = openFileSize;
+				return;
+			} catch (IOException ioEx) {
+				// fall through to System.out
+			}
+		}
+		traceWriter = logForStream(System.out);
+	}
+
+	/**
+	 * Closes the trace writer.  System.out is flushed but never closed.
+	 */
+	private void closeWriter() {
+
+		if (traceWriter != null) {
+			try {
+				if (openFile != null)
+					traceWriter.close();
+				else
+					traceWriter.flush();
+			} catch (IOException ioEx) {
+				// we cannot log here; just print the stacktrace.
+				ioEx.printStackTrace();
+			}
+			traceWriter = null;
+			openFile = null;
+			openFileSize = 0;
+			flushedFileSize = -1;
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2003, 2013 IBM Corporation and others.
+ * Copyright (c) 2003, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -48,11 +48,14 @@ public class FrameworkDebugOptions implements DebugOptions, ServiceTrackerCustom
 	/** Is verbose debugging enabled?  Changing this value causes a new tracing session to start. */
 	protected boolean verboseDebug = true;
 	private final EquinoxConfiguration environmentInfo;
+	/** The writer used by all the <code>DebugTrace</code> objects to write to the trace file */
+	private final EclipseDebugTraceWriter traceWriter;
 	private volatile BundleContext context;
 	private volatile ServiceTracker<DebugOptionsListener, DebugOptionsListener> listenerTracker;
 
 	public FrameworkDebugOptions(EquinoxConfiguration environmentInfo) {
 		this.environmentInfo = environmentInfo;
+		this.traceWriter = new EclipseDebugTraceWriter(this);
 		// check if verbose debugging was set during initialization.  This needs to be set even if debugging is disabled
 		this.verboseDebug = Boolean.valueOf(environmentInfo.getConfiguration(OSGI_DEBUG_VERBOSE, Boolean.TRUE.toString())).booleanValue();
 		// if no debug option was specified, don't even bother to try.
@@ -100,6 +103,8 @@ public class FrameworkDebugOptions implements DebugOptions, ServiceTrackerCustom
 
 	public void start(BundleContext bc) {
 		this.context = bc;
+		// the writer is closed if the framework got stopped before
+		traceWriter.open();
 		listenerTracker = new ServiceTracker<DebugOptionsListener, DebugOptionsListener>(bc, DebugOptionsListener.class.getName(), this);
 		listenerTracker.open();
 	}
@@ -108,6 +113,8 @@ public class FrameworkDebugOptions implements DebugOptions, ServiceTrackerCustom
 		listenerTracker.close();
 		listenerTracker = null;
 		this.context = null;
+		// write out any pending trace entries and release the trace file
+		traceWriter.close();
 	}
 
 	@SuppressWarnings("deprecation")
@@ -441,6 +448,10 @@ public class FrameworkDebugOptions implements DebugOptions, ServiceTrackerCustom
 		return this.environmentInfo;
 	}
 
+	EclipseDebugTraceWriter getTraceWriter() {
+		return this.traceWriter;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see org.eclipse.osgi.service.debug.DebugOptions#setVerbose(boolean)
@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.osgi.internal.debug;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.*;
+import org.eclipse.osgi.service.monitoring.FrameworkTimeline;
+import org.eclipse.osgi.service.monitoring.TimelineEventDTO;
+
+/**
+ * Records a timeline of the startup and activation events of the framework.  The
+ * timeline is only recorded if the
+ * {@link org.eclipse.osgi.internal.framework.EquinoxConfiguration#PROP_TIMELINE}
+ * configuration property is set to true.  Then the system bundle registers the
+ * timeline as the {@link FrameworkTimeline} service and the timeline is written to
+ * the {@link #TIMELINE_FILE} of the storage area when the framework is closed.
+ * <p>
+ * The events are recorded into a preallocated ring buffer; once the buffer is full
+ * the oldest events are overwritten.  Recording an event does not allocate any
+ * objects and does not lock.  Events which are being overwritten while the timeline
+ * is read are skipped.
+ * <p>
+ * Each slot is guarded by a sequence lock.  The fields of the slots are volatile
+ * so that the reads of the fields cannot be reordered after the second read of
+ * the sequence, which would let a reader accept the fields of a newer event.
+ */
+public final class Timeline implements FrameworkTimeline {
+	public static final String TIMELINE_FILE = "timeline.txt"; //$NON-NLS-1$
+	private static final int CAPACITY = 1 << 14;
+	private static final int MASK = CAPACITY - 1;
+
+	/**
+	 * The types of the recorded events.
+	 */
+	public enum Type {
+		/** The storage is loaded. */
+		STORAGE_LOAD,
+		/** The module database is loaded from the storage. */
+		DATABASE_LOAD,
+		/** The modules are resolved.  The detail is the number of trigger modules. */
+		RESOLVE,
+		/** The active start level is changed.  The detail is the new start level. */
+		START_LEVEL,
+		/** A module is started. */
+		MODULE_START,
+		/** The activator of a bundle is started.  The detail is the activator class. */
+		ACTIVATOR_START,
+		/** The lazy activation of a bundle is triggered.  The detail is the trigger class. */
+		LAZY_TRIGGER,
+		/**
+		 * A service is registered.  The detail is the first class of the service or the
+		 * number of services if a batch of services is registered.
+		 */
+		SERVICE_REGISTER
+	}
+
+	private static final Type[] TYPES = Type.values();
+
+	private final long origin = System.nanoTime();
+	private final AtomicLong next = new AtomicLong();
+	// the sequence number of the event in each slot; set after the slot is written
+	private final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+	private final AtomicLongArray starts = new AtomicLongArray(CAPACITY);
+	private final AtomicLongArray durations = new AtomicLongArray(CAPACITY);
+	private final AtomicLongArray bundleIds = new AtomicLongArray(CAPACITY);
+	private final AtomicIntegerArray types = new AtomicIntegerArray(CAPACITY);
+	private final AtomicReferenceArray<Object> details = new AtomicReferenceArray<Object>(CAPACITY);
+
+	public Timeline() {
+		for (int i = 0; i < CAPACITY; i++) {
+			sequences.set(i, -1);
+		}
+	}
+
+	/**
+	 * Records an event which started at the specified time and ends now.
+	 * @param type the type of the event
+	 * @param start the {@link System#nanoTime() time} the event started
+	 * @param bundleId the id of the bundle of the event or -1 if the event does not
+	 * belong to a bundle
+	 * @param detail the detail of the event or {@code null}.  The detail is only
+	 * converted to a string when the timeline is written.
+	 */
+	public void record(Type type, long start, long bundleId, Object detail) {
+		long end = System.nanoTime();
+		long sequence = next.getAndIncrement();
+		int slot = (int) (sequence & MASK);
+		// invalidate the slot while it is written
+		sequences.set(slot, -1);
+		starts.set(slot, start - origin);
+		durations.set(slot, end - start);
+		bundleIds.set(slot, bundleId);
+		types.set(slot, type.ordinal());
+		details.set(slot, detail);
+		sequences.set(slot, sequence);
+	}
+
+	/**
+	 * Records an event which happens now.
+	 * @param type the type of the event
+	 * @param bundleId the id of the bundle of the event or -1 if the event does not
+	 * belong to a bundle
+	 * @param detail the detail of the event or {@code null}
+	 */
+	public void record(Type type, long bundleId, Object detail) {
+		record(type, System.nanoTime(), bundleId, detail);
+	}
+
+	public List<TimelineEventDTO> getEvents() {
+		long last = next.get();
+		long first = Math.max(0, last - CAPACITY);
+		List<TimelineEventDTO> result = new ArrayList<TimelineEventDTO>((int) (last - first));
+		for (long sequence = first; sequence < last; sequence++) {
+			int slot = (int) (sequence & MASK);
+			if (sequences.get(slot) != sequence) {
+				continue;
+			}
+			long start = starts.get(slot);
+			long duration = durations.get(slot);
+			long bundleId = bundleIds.get(slot);
+			Type type = TYPES[types.get(slot)];
+			Object detail = details.get(slot);
+			if (sequences.get(slot) != sequence) {
+				// overwritten while reading
+				continue;
+			}
+			TimelineEventDTO event = new TimelineEventDTO();
+			event.start = start;
+			event.duration = duration;
+			event.type = type.name();
+			event.bundle = bundleId;
+			event.detail = detail == null ? null : String.valueOf(detail);
+			result.add(event);
+		}
+		return result;
+	}
+
+	/**
+	 * Writes the recorded events to the specified file in the order the events
+	 * ended.  Each line
+	 * contains the start time and the duration of an event in microseconds, the
+	 * start time relative to the creation of the timeline, followed by the type,
+	 * the bundle id and the detail of the event, separated by tabs.
+	 * @param file the file to write to
+	 * @throws IOException if an error occurs writing the file
+	 */
+	public void write(File file) throws IOException {
+		List<TimelineEventDTO> events = getEvents();
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8")); //$NON-NLS-1$
+		try {
+			StringBuilder line = new StringBuilder();
+			for (TimelineEventDTO event : events) {
+				line.setLength(0);
+				line.append(event.start / 1000).append('\t').append(event.duration / 1000).append('\t').append(event.type).append('\t');
+				if (event.bundle < 0) {
+					line.append('-');
+				} else {
+					line.append(event.bundle);
+				}
+				if (event.detail != null) {
+					line.append('\t').append(event.detail);
+				}
+				line.append('\n');
+				out.write(line.toString());
+			}
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2003, 2013 IBM Corporation and others.
+ * Copyright (c) 2003, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -20,6 +20,7 @@ import org.eclipse.osgi.container.ModuleWiring;
 import org.eclipse.osgi.container.namespaces.EquinoxModuleDataNamespace;
 import org.eclipse.osgi.framework.eventmgr.EventDispatcher;
 import org.eclipse.osgi.internal.debug.Debug;
+import org.eclipse.osgi.internal.debug.Timeline;
 import org.eclipse.osgi.internal.loader.BundleLoader;
 import org.eclipse.osgi.internal.messages.Msg;
 import org.eclipse.osgi.internal.serviceregistry.*;
@@ -464,6 +465,52 @@ public class BundleContextImpl implements BundleContext, EventDispatcher<Object,
 		return container.getServiceRegistry().registerService(this, clazzes, service, properties);
 	}
 
+	/**
+	 * Registers a batch of services.
+	 * <p>
+	 * This is an Equinox specific method for extenders which register many services
+	 * at once.  The services are added to the service registry together and the
+	 * {@link ServiceEvent#REGISTERED} events are then synchronously sent in the order
+	 * of the services.  Otherwise registering the services is identical to calling
+	 * {@link #registerService(String[], Object, Dictionary)} for each service.  If a
+	 * service cannot be registered then no service is registered.
+	 *
+	 * @param clazzes The class names under which each service can be located.
+	 * @param services The service objects or {@link ServiceFactory} objects.
+	 * @param properties The properties for each service.  An element may be
+	 *        <code>null</code> if the service has no properties.
+	 * @return The {@link ServiceRegistration} objects in the order of the services.
+	 * @exception java.lang.IllegalArgumentException If the lists are not of the same
+	 * size or if a service cannot be registered.
+	 * @exception java.lang.SecurityException If the caller does not have
+	 * {@link ServicePermission} permission to "register" a service.
+	 * @exception java.lang.IllegalStateException
+	 * If the bundle context has stopped.
+	 * @see #registerService(String[], Object, Dictionary)
+	 */
+	public List<ServiceRegistration<?>> registerServices(List<String[]> clazzes, List<?> services, List<? extends Dictionary<String, ?>> properties) {
+		checkValid();
+		return Collections.<ServiceRegistration<?>> unmodifiableList(container.getServiceRegistry().registerServices(this, clazzes, services, properties));
+	}
+
+	/**
+	 * Unregisters a batch of services.
+	 * <p>
+	 * This is an Equinox specific method for extenders which unregister many services
+	 * at once.  The services are removed from the service registry together and the
+	 * {@link ServiceEvent#UNREGISTERING} events are then synchronously sent in the order
+	 * of the registrations.  Otherwise unregistering the services is identical to calling
+	 * {@link ServiceRegistration#unregister()} for each registration.
+	 *
+	 * @param registrations The registrations of the services to unregister.
+	 * @exception java.lang.IllegalStateException If a service has already been
+	 * unregistered.  No service is unregistered in this case.
+	 * @see ServiceRegistration#unregister()
+	 */
+	public void unregisterServices(Collection<? extends ServiceRegistration<?>> registrations) {
+		container.getServiceRegistry().unregisterServices(registrations);
+	}
+
 	/**
 	 * Register a service with a single name.
 	 * This method registers the given service object with the given properties
@@ -717,8 +764,13 @@ public class BundleContextImpl implements BundleContext, EventDispatcher<Object,
 				start = System.currentTimeMillis();
 				Debug.println("Starting " + bundle); //$NON-NLS-1$
 			}
+			Timeline timeline = container.getTimeline();
+			long activatorStart = timeline == null ? 0 : System.nanoTime();
 			try {
 				startActivator(activator);
+				if (timeline != null) {
+					timeline.record(Timeline.Type.ACTIVATOR_START, activatorStart, bundle.getBundleId(), activator.getClass().getName());
+				}
 			} catch (BundleException be) {
 				activator = null;
 				throw be;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2012, 2013 IBM Corporation and others.
+ * Copyright (c) 2012, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -330,6 +330,10 @@ public class DTOBuilder {
 		return dto;
 	}
 
+	static ServiceReferenceDTO newServiceReferenceDTO(ServiceReference<?> ref) {
+		return new DTOBuilder().getServiceReferenceDTO(ref);
+	}
+
 	public static FrameworkStartLevelDTO newFrameworkStartLevelDTO(FrameworkStartLevel fsl) {
 		if (fsl == null) {
 			return null;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2003, 2013 IBM Corporation and others.
+ * Copyright (c) 2003, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -27,6 +27,7 @@ import java.net.*;
 import java.security.CodeSource;
 import java.security.ProtectionDomain;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import org.eclipse.core.runtime.internal.adaptor.ConsoleManager;
 import org.eclipse.osgi.internal.debug.Debug;
 import org.eclipse.osgi.internal.debug.FrameworkDebugOptions;
@@ -67,6 +68,8 @@ public class EquinoxConfiguration implements EnvironmentInfo {
 
 	private final Map<String, Object> initialConfig;
 	private final Properties configuration;
+	// incremented each time the configuration is set or cleared
+	private final AtomicLong configurationChanges = new AtomicLong();
 
 	private final Debug debug;
 	private final DebugOptions debugOptions;
@@ -94,6 +97,11 @@ public class EquinoxConfiguration implements EnvironmentInfo {
 	public final boolean COPY_NATIVES;
 	public final List<String> ECLIPSE_NL_JAR_VARIANTS;
 	public final boolean DEFINE_PACKAGE_ATTRIBUTES;
+	public final boolean CLASS_CACHE;
+	public final boolean CLASS_LIST;
+	public final boolean RESOURCE_USAGE;
+	public final boolean TIMELINE;
+	public final boolean FRAMEWORK_STATE;
 	public final boolean BUNDLE_SET_TCCL;
 
 	public final int BSN_VERSION;
@@ -167,10 +175,22 @@ public class EquinoxConfiguration implements EnvironmentInfo {
 	public static final String PROP_FRAMEWORK_LIBRARY_EXTENSIONS = "osgi.framework.library.extensions"; //$NON-NLS-1$
 	public static final String PROP_COPY_NATIVES = "osgi.classloader.copy.natives"; //$NON-NLS-1$
 	public static final String PROP_DEFINE_PACKAGES = "osgi.classloader.define.packages"; //$NON-NLS-1$
+	// enables the persistent cache of the class bytes produced by class loader hooks
+	public static final String PROP_CLASS_CACHE = "osgi.classloader.cache"; //$NON-NLS-1$
+	// enables recording a class list of the classes defined by bundle class loaders for class data sharing
+	public static final String PROP_CLASS_LIST = "osgi.classloader.classList"; //$NON-NLS-1$
+	// enables the accounting of the resources used by each bundle
+	public static final String PROP_RESOURCE_USAGE = "osgi.resourceUsage"; //$NON-NLS-1$
+	// enables the recording of the startup and activation timeline
+	public static final String PROP_TIMELINE = "osgi.timeline"; //$NON-NLS-1$
+	// enables the service providing snapshots of the framework state
+	public static final String PROP_FRAMEWORK_STATE = "osgi.frameworkState"; //$NON-NLS-1$
 	public static final String PROP_BUNDLE_SETTCCL = "eclipse.bundle.setTCCL"; //$NON-NLS-1$
 
 	public static final String PROP_EQUINOX_SECURITY = "eclipse.security"; //$NON-NLS-1$
 	public static final String PROP_FILE_LIMIT = "osgi.bundlefile.limit"; //$NON-NLS-1$
+	// additional manifest headers to persist with the bundle data; * persists the complete manifest
+	public static final String PROP_CACHED_MANIFEST_HEADERS = "osgi.manifest.cachedHeaders"; //$NON-NLS-1$
 
 	public final static String PROP_CLASS_CERTIFICATE_SUPPORT = "osgi.support.class.certificate"; //$NON-NLS-1$
 	public final static String PROP_CLASS_LOADER_TYPE = "osgi.classloader.type"; //$NON-NLS-1$
@@ -265,6 +285,11 @@ public class EquinoxConfiguration implements EnvironmentInfo {
 		ECLIPSE_LIB_VARIANTS = buildEclipseLibraryVariants(getWS(), getOS(), getOSArch(), getNL());
 		ECLIPSE_NL_JAR_VARIANTS = buildNLJarVariants(getNL());
 		DEFINE_PACKAGE_ATTRIBUTES = !"noattributes".equals(configuration.getProperty(PROP_DEFINE_PACKAGES)); //$NON-NLS-1$
+		CLASS_CACHE = Boolean.valueOf(configuration.getProperty(PROP_CLASS_CACHE)).booleanValue();
+		CLASS_LIST = Boolean.valueOf(configuration.getProperty(PROP_CLASS_LIST)).booleanValue();
+		RESOURCE_USAGE = Boolean.valueOf(configuration.getProperty(PROP_RESOURCE_USAGE)).booleanValue();
+		TIMELINE = Boolean.valueOf(configuration.getProperty(PROP_TIMELINE)).booleanValue();
+		FRAMEWORK_STATE = Boolean.valueOf(configuration.getProperty(PROP_FRAMEWORK_STATE)).booleanValue();
 
 		String bsnVersion = configuration.getProperty(org.osgi.framework.Constants.FRAMEWORK_BSNVERSION);
 		if (org.osgi.framework.Constants.FRAMEWORK_BSNVERSION_SINGLE.equals(bsnVersion)) {
@@ -439,14 +464,25 @@ public class EquinoxConfiguration implements EnvironmentInfo {
 
 	public String setConfiguration(String key, String value) {
 		Object result = configuration.put(key, value);
+		configurationChanges.incrementAndGet();
 		return result instanceof String ? (String) result : null;
 	}
 
 	public String clearConfiguration(String key) {
 		Object result = configuration.remove(key);
+		configurationChanges.incrementAndGet();
 		return result instanceof String ? (String) result : null;
 	}
 
+	/**
+	 * Returns a count which changes each time the configuration is set or cleared
+	 * with {@link #setConfiguration(String, String)} or {@link #clearConfiguration(String)}.
+	 * @return the change count of the configuration
+	 */
+	public long getConfigurationChangeCount() {
+		return configurationChanges.get();
+	}
+
 	public Map<String, String> getConfiguration() {
 		Map<String, String> result = new HashMap<String, String>(configuration.size());
 		for (Object key : configuration.keySet()) {
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2012, 2013 IBM Corporation and others.
+ * Copyright (c) 2012, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -21,6 +21,7 @@ import org.eclipse.osgi.framework.eventmgr.EventManager;
 import org.eclipse.osgi.framework.eventmgr.ListenerQueue;
 import org.eclipse.osgi.framework.log.FrameworkLogEntry;
 import org.eclipse.osgi.framework.util.SecureAction;
+import org.eclipse.osgi.internal.debug.Timeline;
 import org.eclipse.osgi.internal.framework.legacy.PackageAdminImpl;
 import org.eclipse.osgi.internal.framework.legacy.StartLevelImpl;
 import org.eclipse.osgi.internal.hookregistry.HookRegistry;
@@ -47,6 +48,7 @@ public class EquinoxContainer implements ThreadFactory {
 	private final EquinoxConfiguration equinoxConfig;
 	private final EquinoxLocations equinoxLocations;
 	private final EquinoxLogServices logServices;
+	private final Timeline timeline;
 	private final Storage storage;
 	private final PackageAdmin packageAdmin;
 	private final StartLevel startLevel;
@@ -71,6 +73,8 @@ public class EquinoxContainer implements ThreadFactory {
 		loadConfig(equinoxConfig, equinoxLocations);
 		this.logServices = new EquinoxLogServices(this.equinoxConfig, this.equinoxLocations.getConfigurationLocation());
 		this.equinoxConfig.getHookRegistry().initialize();
+		this.timeline = equinoxConfig.TIMELINE ? new Timeline() : null;
+		long storageStart = System.nanoTime();
 		try {
 			this.storage = Storage.createStorage(this);
 		} catch (IOException e) {
@@ -78,6 +82,9 @@ public class EquinoxContainer implements ThreadFactory {
 		} catch (BundleException e) {
 			throw new RuntimeException("Error initializing storage.", e); //$NON-NLS-1$
 		}
+		if (timeline != null) {
+			timeline.record(Timeline.Type.STORAGE_LOAD, storageStart, -1, null);
+		}
 		this.packageAdmin = new PackageAdminImpl(storage.getModuleContainer());
 		this.startLevel = new StartLevelImpl(storage.getModuleContainer());
 
@@ -157,6 +164,14 @@ public class EquinoxContainer implements ThreadFactory {
 		return result;
 	}
 
+	/**
+	 * Returns the timeline of the startup and activation events.
+	 * @return the timeline or {@code null} if no timeline is recorded
+	 */
+	public Timeline getTimeline() {
+		return timeline;
+	}
+
 	public Storage getStorage() {
 		return storage;
 	}
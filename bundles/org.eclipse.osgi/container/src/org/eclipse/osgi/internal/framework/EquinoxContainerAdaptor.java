@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2012, 2013 IBM Corporation and others.
+ * Copyright (c) 2012, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -16,6 +16,7 @@ import java.util.concurrent.atomic.AtomicLong;
 import org.eclipse.osgi.container.*;
 import org.eclipse.osgi.container.Module.Settings;
 import org.eclipse.osgi.container.Module.State;
+import org.eclipse.osgi.internal.debug.Timeline;
 import org.eclipse.osgi.internal.hookregistry.ClassLoaderHook;
 import org.eclipse.osgi.internal.loader.*;
 import org.eclipse.osgi.internal.permadmin.BundlePermissions;
@@ -268,4 +269,12 @@ public class EquinoxContainerAdaptor extends ModuleContainerAdaptor {
 	public DebugOptions getDebugOptions() {
 		return container.getConfiguration().getDebugOptions();
 	}
+
+	/**
+	 * Returns the timeline of the startup and activation events.
+	 * @return the timeline or {@code null} if no timeline is recorded
+	 */
+	public Timeline getTimeline() {
+		return container.getTimeline();
+	}
 }
\ No newline at end of file
@@ -0,0 +1,251 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.osgi.internal.framework;
+
+import java.lang.reflect.Array;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import org.eclipse.osgi.internal.serviceregistry.*;
+import org.eclipse.osgi.service.monitoring.FrameworkDTOSnapshot;
+import org.eclipse.osgi.service.monitoring.FrameworkState;
+import org.osgi.dto.framework.*;
+import org.osgi.framework.*;
+
+/**
+ * Provides versioned snapshots of the {@link FrameworkDTO} of the framework for
+ * clients which poll the framework state.  It is registered as the
+ * {@link FrameworkState} service by the system bundle if the
+ * {@link EquinoxConfiguration#PROP_FRAMEWORK_STATE} configuration property is
+ * set to true.
+ * <p>
+ * The DTOs of a snapshot are never handed out; each caller gets its own copy
+ * of the framework DTO from the snapshot.
+ * The snapshot is only built again if a bundle event happened, a service got
+ * registered, modified or unregistered, the bundles using a service changed or
+ * the framework configuration got set since the last snapshot was built.  The
+ * DTOs of the bundles and services which did not change are reused by the new
+ * snapshot.  Getting the snapshot again without any changes does not allocate
+ * any objects nor does it lock the service registry or the module database.
+ * <p>
+ * Changes to the system properties are only noticed by the snapshot when it is
+ * built again for another change, even if the framework uses the system
+ * properties for its configuration.
+ */
+public final class FrameworkStateImpl implements FrameworkState {
+	private final EquinoxContainer container;
+	private final BundleContext systemContext;
+	private final AtomicLong bundleChanges = new AtomicLong();
+	private final Object monitor = new Object();
+	private volatile Snapshot current;
+	// the DTOs of the current snapshot by bundle and by service
+	/* @GuardedBy("monitor") */
+	private Map<Bundle, BundleDTO> bundleDTOs = new IdentityHashMap<Bundle, BundleDTO>(0);
+	/* @GuardedBy("monitor") */
+	private Map<ServiceRegistrationImpl<?>, ServiceEntry> serviceDTOs = new IdentityHashMap<ServiceRegistrationImpl<?>, ServiceEntry>(0);
+
+	private static final class Snapshot implements FrameworkDTOSnapshot {
+		final long version;
+		final long bundleChanges;
+		final long serviceChanges;
+		final long configurationChanges;
+		final FrameworkDTO dto;
+
+		Snapshot(long version, long bundleChanges, long serviceChanges, long configurationChanges, FrameworkDTO dto) {
+			this.version = version;
+			this.bundleChanges = bundleChanges;
+			this.serviceChanges = serviceChanges;
+			this.configurationChanges = configurationChanges;
+			this.dto = dto;
+		}
+
+		public long getVersion() {
+			return version;
+		}
+
+		public FrameworkDTO getFrameworkDTO() {
+			return copy(dto);
+		}
+	}
+
+	private static final class ServiceEntry {
+		final Object properties;
+		final int usageStamp;
+		final ServiceReferenceDTO dto;
+
+		ServiceEntry(Object properties, int usageStamp, ServiceReferenceDTO dto) {
+			this.properties = properties;
+			this.usageStamp = usageStamp;
+			this.dto = dto;
+		}
+	}
+
+	FrameworkStateImpl(EquinoxContainer container, BundleContext systemContext) {
+		this.container = container;
+		this.systemContext = systemContext;
+		systemContext.addBundleListener(new SynchronousBundleListener() {
+			public void bundleChanged(BundleEvent event) {
+				bundleChanges.incrementAndGet();
+			}
+		});
+	}
+
+	public FrameworkDTOSnapshot getSnapshot() {
+		Snapshot snapshot = current;
+		if (isCurrent(snapshot)) {
+			return snapshot;
+		}
+		synchronized (monitor) {
+			snapshot = current;
+			if (isCurrent(snapshot)) {
+				return snapshot;
+			}
+			// read the change counts before the state so that concurrent changes cause another build
+			long bundleCount = bundleChanges.get();
+			long serviceCount = container.getServiceRegistry().getChangeCount();
+			long configurationCount = container.getConfiguration().getConfigurationChangeCount();
+			FrameworkDTO dto = new FrameworkDTO();
+			dto.properties = new HashMap<String, Object>(container.getConfiguration().getConfiguration());
+			dto.bundles = getBundleDTOs();
+			dto.services = getServiceReferenceDTOs();
+			snapshot = new Snapshot(snapshot == null ? 1 : snapshot.version + 1, bundleCount, serviceCount, configurationCount, dto);
+			current = snapshot;
+			return snapshot;
+		}
+	}
+
+	private boolean isCurrent(Snapshot snapshot) {
+		return snapshot != null && snapshot.bundleChanges == bundleChanges.get() && snapshot.serviceChanges == container.getServiceRegistry().getChangeCount() && snapshot.configurationChanges == container.getConfiguration().getConfigurationChangeCount();
+	}
+
+	/* @GuardedBy("monitor") */
+	private List<BundleDTO> getBundleDTOs() {
+		Bundle[] bundles = systemContext.getBundles();
+		Map<Bundle, BundleDTO> newBundleDTOs = new IdentityHashMap<Bundle, BundleDTO>(bundles.length);
+		List<BundleDTO> result = new ArrayList<BundleDTO>(bundles.length);
+		for (Bundle bundle : bundles) {
+			BundleDTO dto = bundleDTOs.get(bundle);
+			if (dto == null || !isCurrent(dto, bundle)) {
+				dto = DTOBuilder.newBundleDTO(bundle);
+			}
+			newBundleDTOs.put(bundle, dto);
+			result.add(dto);
+		}
+		bundleDTOs = newBundleDTOs;
+		return result;
+	}
+
+	private static boolean isCurrent(BundleDTO dto, Bundle bundle) {
+		return dto.state == bundle.getState() && dto.lastModified == bundle.getLastModified() && equals(dto.symbolicName, bundle.getSymbolicName()) && dto.version.equals(bundle.getVersion().toString());
+	}
+
+	private static boolean equals(String s1, String s2) {
+		return s1 == null ? s2 == null : s1.equals(s2);
+	}
+
+	/* @GuardedBy("monitor") */
+	private List<ServiceReferenceDTO> getServiceReferenceDTOs() {
+		ServiceReference<?>[] references;
+		try {
+			references = systemContext.getAllServiceReferences(null, null);
+		} catch (InvalidSyntaxException e) {
+			references = null;
+		}
+		int size = references == null ? 0 : references.length;
+		Map<ServiceRegistrationImpl<?>, ServiceEntry> newServiceDTOs = new IdentityHashMap<ServiceRegistrationImpl<?>, ServiceEntry>(size);
+		List<ServiceReferenceDTO> result = new ArrayList<ServiceReferenceDTO>(size);
+		for (int i = 0; i < size; i++) {
+			ServiceRegistrationImpl<?> registration = ((ServiceReferenceImpl<?>) references[i]).getRegistration();
+			// get the properties and the usage stamp before the DTO is built
+			Object properties = registration.getProperties();
+			int usageStamp = registration.getUsageStamp();
+			ServiceEntry entry = serviceDTOs.get(registration);
+			if (entry == null || entry.properties != properties || entry.usageStamp != usageStamp) {
+				ServiceReferenceDTO dto = DTOBuilder.newServiceReferenceDTO(references[i]);
+				if (dto == null) {
+					// service has been unregistered
+					continue;
+				}
+				entry = new ServiceEntry(properties, usageStamp, dto);
+			}
+			newServiceDTOs.put(registration, entry);
+			result.add(entry.dto);
+		}
+		serviceDTOs = newServiceDTOs;
+		return result;
+	}
+
+	private static FrameworkDTO copy(FrameworkDTO dto) {
+		FrameworkDTO result = new FrameworkDTO();
+		result.properties = copy(dto.properties);
+		result.bundles = new ArrayList<BundleDTO>(dto.bundles.size());
+		for (BundleDTO bundle : dto.bundles) {
+			BundleDTO copy = new BundleDTO();
+			copy.id = bundle.id;
+			copy.lastModified = bundle.lastModified;
+			copy.state = bundle.state;
+			copy.symbolicName = bundle.symbolicName;
+			copy.version = bundle.version;
+			result.bundles.add(copy);
+		}
+		result.services = new ArrayList<ServiceReferenceDTO>(dto.services.size());
+		for (ServiceReferenceDTO service : dto.services) {
+			ServiceReferenceDTO copy = new ServiceReferenceDTO();
+			copy.bundle = service.bundle;
+			copy.properties = copy(service.properties);
+			copy.usingBundles = service.usingBundles.clone();
+			result.services.add(copy);
+		}
+		return result;
+	}
+
+	private static Map<String, Object> copy(Map<String, Object> properties) {
+		Map<String, Object> result = new HashMap<String, Object>(properties.size());
+		for (Map.Entry<String, Object> entry : properties.entrySet()) {
+			result.put(entry.getKey(), copyValue(entry.getValue()));
+		}
+		return result;
+	}
+
+	// the values are already mapped by the DTOBuilder; only the containers are mutable
+	private static Object copyValue(Object v) {
+		if (v instanceof Map) {
+			Map<?, ?> m = (Map<?, ?>) v;
+			Map<Object, Object> map = new HashMap<Object, Object>(m.size());
+			for (Map.Entry<?, ?> e : m.entrySet()) {
+				map.put(copyValue(e.getKey()), copyValue(e.getValue()));
+			}
+			return map;
+		}
+		if (v instanceof List) {
+			List<Object> list = new ArrayList<Object>(((List<?>) v).size());
+			for (Object o : (List<?>) v) {
+				list.add(copyValue(o));
+			}
+			return list;
+		}
+		if (v instanceof Set) {
+			Set<Object> set = new HashSet<Object>(((Set<?>) v).size());
+			for (Object o : (Set<?>) v) {
+				set.add(copyValue(o));
+			}
+			return set;
+		}
+		if (v != null && v.getClass().isArray()) {
+			int length = Array.getLength(v);
+			Object array = Array.newInstance(v.getClass().getComponentType(), length);
+			for (int i = 0; i < length; i++) {
+				Array.set(array, i, copyValue(Array.get(v, i)));
+			}
+			return array;
+		}
+		return v;
+	}
+}
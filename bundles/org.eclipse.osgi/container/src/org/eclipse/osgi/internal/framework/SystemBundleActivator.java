@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2003, 2013 IBM Corporation and others.
+ * Copyright (c) 2003, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -19,6 +19,7 @@ import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.SAXParserFactory;
 import org.eclipse.osgi.internal.debug.Debug;
 import org.eclipse.osgi.internal.debug.FrameworkDebugOptions;
+import org.eclipse.osgi.internal.debug.Timeline;
 import org.eclipse.osgi.internal.location.EquinoxLocations;
 import org.eclipse.osgi.internal.permadmin.EquinoxSecurityManager;
 import org.eclipse.osgi.internal.permadmin.SecurityAdmin;
@@ -27,6 +28,7 @@ import org.eclipse.osgi.service.datalocation.Location;
 import org.eclipse.osgi.service.debug.DebugOptions;
 import org.eclipse.osgi.service.environment.EnvironmentInfo;
 import org.eclipse.osgi.service.localization.BundleLocalization;
+import org.eclipse.osgi.service.monitoring.*;
 import org.eclipse.osgi.service.urlconversion.URLConverter;
 import org.eclipse.osgi.storage.BundleLocalizationImpl;
 import org.eclipse.osgi.storage.url.BundleResourceHandler;
@@ -80,6 +82,15 @@ public class SystemBundleActivator implements BundleActivator {
 
 		register(bc, DebugOptions.class, dbgOptions, null);
 
+		if (bundle.getEquinoxContainer().getConfiguration().FRAMEWORK_STATE)
+			register(bc, FrameworkState.class, new FrameworkStateImpl(bundle.getEquinoxContainer(), bc), null);
+		ResourceUsage resourceUsage = bundle.getEquinoxContainer().getStorage().getResourceUsage();
+		if (resourceUsage != null)
+			register(bc, ResourceUsage.class, resourceUsage, null);
+		Timeline timeline = bundle.getEquinoxContainer().getTimeline();
+		if (timeline != null)
+			register(bc, FrameworkTimeline.class, timeline, null);
+
 		Hashtable<String, Object> props = new Hashtable<String, Object>(7);
 		if (tccl != null) {
 			props.clear();
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2013 IBM Corporation and others.
+ * Copyright (c) 2005, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -41,6 +41,28 @@ public abstract class ClassLoaderHook {
 		return null;
 	}
 
+	/**
+	 * Gets called by a classpath manager before the bytes of a class are read.  This method tells if
+	 * this hook needs the class bytes, either to transform them in the
+	 * {@link #processClass(String, byte[], ClasspathEntry, BundleEntry, ClasspathManager) processClass}
+	 * method or to inspect them in the
+	 * {@link #recordClassDefine(String, Class, byte[], ClasspathEntry, BundleEntry, ClasspathManager) recordClassDefine}
+	 * method.  Only if no hook needs the class bytes is the class defined directly from a reusable
+	 * buffer; the processClass methods are then not called and the recordClassDefine methods are
+	 * called without the class bytes.
+	 * <p>
+	 * The default implementation returns true.  Hooks that neither transform nor inspect the class
+	 * bytes should return false.
+	 * @param name the name of the class being defined
+	 * @param classpathEntry the ClasspathEntry where the class bytes are read from
+	 * @param entry the BundleEntry source of the class bytes
+	 * @param manager the class path manager used to define the requested class
+	 * @return true if this hook needs the class bytes
+	 */
+	public boolean isProcessClassRequired(String name, ClasspathEntry classpathEntry, BundleEntry entry, ClasspathManager manager) {
+		return true;
+	}
+
 	/**
 	 * Gets called by a classpath manager before defining a class.  This method allows a class loading hook
 	 * to reject a transformation to the class bytes by a 
@@ -56,6 +78,41 @@ public abstract class ClassLoaderHook {
 		return false;
 	}
 
+	/**
+	 * Gets called by a classpath manager instead of 
+	 * {@link #processClass(String, byte[], ClasspathEntry, BundleEntry, ClasspathManager) processClass}
+	 * when the processed bytes of a class are served from the persistent class cache.  This method allows 
+	 * a hook to announce the transformation it did when the cached bytes were produced, for example to 
+	 * notify listeners.  The class bytes must not be transformed.
+	 * <p>
+	 * The default implementation does nothing.
+	 * @param name the name of the class being defined
+	 * @param classbytes the cached bytes of the class being defined
+	 * @param classpathEntry the ClasspathEntry where the class bytes have been read from.
+	 * @param entry the BundleEntry source of the class bytes
+	 * @param manager the class path manager used to define the requested class
+	 */
+	public void processCachedClass(String name, byte[] classbytes, ClasspathEntry classpathEntry, BundleEntry entry, ClasspathManager manager) {
+		// do nothing
+	}
+
+	/**
+	 * Gets called by a classpath manager when the persistent class cache is enabled.  This method 
+	 * returns a key which identifies the transformations currently done by the 
+	 * {@link #processClass(String, byte[], ClasspathEntry, BundleEntry, ClasspathManager) processClass}
+	 * method of this hook.  Class bytes cached with a different key are not used.  A hook that 
+	 * transforms classes differently depending on its configuration must include that configuration 
+	 * in the key.  This method is called for each class defined; it should be fast and return the 
+	 * same string instance as long as the key does not change so that the combined key of all 
+	 * hooks does not need to be built again.
+	 * <p>
+	 * The default implementation returns the class name of the hook.
+	 * @return the key for the transformations of this hook
+	 */
+	public String getClassCacheKey() {
+		return getClass().getName();
+	}
+
 	/**
 	 * Gets called by a classpath manager when looking for ClasspathEntry objects.  This method allows 
 	 * a classloading hook to add additional ClasspathEntry objects
@@ -270,7 +327,10 @@ public abstract class ClassLoaderHook {
 	 * a class loading stat hook to record data about a class definition. 
 	 * @param name the name of the class that got defined
 	 * @param clazz the class object that got defined or null if an error occurred while defining a class
-	 * @param classbytes the class bytes used to define the class
+	 * @param classbytes the class bytes used to define the class.  The class bytes are only
+	 * <code>null</code> if every configured hook returned false from
+	 * {@link #isProcessClassRequired(String, ClasspathEntry, BundleEntry, ClasspathManager) isProcessClassRequired},
+	 * which means that this hook told that it does not need them.
 	 * @param classpathEntry the ClasspathEntry where the class bytes got read from
 	 * @param entry the BundleEntyr source of the class bytes
 	 * @param manager the classpath manager used to define the class
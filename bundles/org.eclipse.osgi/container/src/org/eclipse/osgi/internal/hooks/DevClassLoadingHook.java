@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2012 IBM Corporation and others.
+ * Copyright (c) 2006, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -18,6 +18,7 @@ import org.eclipse.osgi.internal.framework.EquinoxConfiguration;
 import org.eclipse.osgi.internal.hookregistry.ClassLoaderHook;
 import org.eclipse.osgi.internal.loader.classpath.*;
 import org.eclipse.osgi.storage.BundleInfo.Generation;
+import org.eclipse.osgi.storage.bundlefile.BundleEntry;
 import org.eclipse.osgi.storage.bundlefile.BundleFile;
 
 public class DevClassLoadingHook extends ClassLoaderHook implements KeyedElement {
@@ -31,6 +32,11 @@ public class DevClassLoadingHook extends ClassLoaderHook implements KeyedElement
 		this.configuration = configuration;
 	}
 
+	@Override
+	public boolean isProcessClassRequired(String name, ClasspathEntry classpathEntry, BundleEntry entry, ClasspathManager manager) {
+		return false;
+	}
+
 	@Override
 	public boolean addClassPathEntry(ArrayList<ClasspathEntry> cpEntries, String cp, ClasspathManager hostmanager, Generation sourceGeneration) {
 		// first check that we are in devmode for this sourcedata
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2013 IBM Corporation and others.
+ * Copyright (c) 2006, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -19,10 +19,13 @@ import org.eclipse.osgi.container.Module.State;
 import org.eclipse.osgi.container.namespaces.EquinoxModuleDataNamespace;
 import org.eclipse.osgi.framework.log.FrameworkLogEntry;
 import org.eclipse.osgi.framework.util.SecureAction;
+import org.eclipse.osgi.internal.debug.Timeline;
 import org.eclipse.osgi.internal.framework.EquinoxContainer;
 import org.eclipse.osgi.internal.hookregistry.ClassLoaderHook;
+import org.eclipse.osgi.internal.loader.classpath.ClasspathEntry;
 import org.eclipse.osgi.internal.loader.classpath.ClasspathManager;
 import org.eclipse.osgi.internal.messages.Msg;
+import org.eclipse.osgi.storage.bundlefile.BundleEntry;
 import org.eclipse.osgi.util.NLS;
 import org.osgi.framework.*;
 
@@ -43,6 +46,11 @@ public class EclipseLazyStarter extends ClassLoaderHook {
 		this.container = container;
 	}
 
+	@Override
+	public boolean isProcessClassRequired(String name, ClasspathEntry classpathEntry, BundleEntry entry, ClasspathManager manager) {
+		return false;
+	}
+
 	@Override
 	public void preFindLocalClass(String name, ClasspathManager manager) throws ClassNotFoundException {
 		ModuleRevision revision = manager.getGeneration().getRevision();
@@ -104,6 +112,10 @@ public class EclipseLazyStarter extends ClassLoaderHook {
 			try {
 				// do not persist the start of this bundle
 				Module m = managers[i].getGeneration().getRevision().getRevisions().getModule();
+				Timeline timeline = container.getTimeline();
+				if (timeline != null) {
+					timeline.record(Timeline.Type.LAZY_TRIGGER, m.getId(), name);
+				}
 				secureAction.start(m, StartOptions.LAZY_TRIGGER);
 			} catch (BundleException e) {
 				Bundle bundle = managers[i].getGeneration().getRevision().getBundle();
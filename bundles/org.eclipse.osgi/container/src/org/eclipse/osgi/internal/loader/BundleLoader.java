@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2013 IBM Corporation and others.
+ * Copyright (c) 2004, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -89,6 +89,8 @@ public class BundleLoader implements ModuleLoader {
 	/* @GuardedBy("importedSources") */
 	/* If not null, list of package names to import dynamically. */
 	private String[] dynamicImportPackages;
+	/* The number of times dynamic imports got added after the loader was created */
+	private volatile int dynamicImportChangeCount;
 
 	private Object classLoaderMonitor = new Object();
 	/* @GuardedBy("classLoaderMonitor") */
@@ -241,6 +243,8 @@ public class BundleLoader implements ModuleLoader {
 			addFragmentExports(wiring.getModuleCapabilities(PackageNamespace.PACKAGE_NAMESPACE));
 			loadClassLoaderFragments(fragments);
 		}
+		// the fragments may contribute localization resources to the headers of the host
+		((Generation) wiring.getRevision().getRevisionInfo()).clearManifestCache();
 	}
 
 	/* @GuardedBy("classLoaderMonitor") */
@@ -978,6 +982,7 @@ public class BundleLoader implements ModuleLoader {
 		}
 
 		if (dynamicImports.size() > 0) {
+			dynamicImportChangeCount++;
 			addDynamicImportPackage(dynamicImports.toArray(new String[dynamicImports.size()]));
 
 			Map<String, String> dynamicImportMap = new HashMap<String, String>();
@@ -994,6 +999,15 @@ public class BundleLoader implements ModuleLoader {
 		}
 	}
 
+	/**
+	 * Returns the number of times dynamic imports got added to this loader
+	 * with {@link #addDynamicImportPackage(ManifestElement[])}.
+	 * @return the number of times dynamic imports got added
+	 */
+	public int getDynamicImportChangeCount() {
+		return dynamicImportChangeCount;
+	}
+
 	/*
 	 * Finds a packagesource that is either imported or required from another bundle.
 	 * This will not include an local package source
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2013 IBM Corporation and others.
+ * Copyright (c) 2005, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -15,9 +15,12 @@ import java.io.IOException;
 import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.security.*;
 import java.security.cert.Certificate;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.eclipse.osgi.container.ModuleRevision;
 import org.eclipse.osgi.internal.debug.Debug;
 import org.eclipse.osgi.internal.framework.EquinoxConfiguration;
@@ -90,7 +93,37 @@ public abstract class ModuleClassLoader extends ClassLoader implements BundleRef
 		}
 	}
 
-	private final Map<String, Thread> classNameLocks = new HashMap<String, Thread>(5);
+	/**
+	 * A lock on a class name held by the thread defining the class.  Locks are removed
+	 * from the map when released so that only threads waiting on the same class name
+	 * are notified.
+	 */
+	private static final class ClassNameLock {
+		final Thread owner;
+		private boolean released = false;
+
+		ClassNameLock(Thread owner) {
+			this.owner = owner;
+		}
+
+		synchronized void await(String classname) {
+			try {
+				while (!released) {
+					wait();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw (LinkageError) new LinkageError(classname).initCause(e);
+			}
+		}
+
+		synchronized void release() {
+			released = true;
+			notifyAll();
+		}
+	}
+
+	private final ConcurrentMap<String, ClassNameLock> classNameLocks = new ConcurrentHashMap<String, ClassNameLock>();
 	private final Object pkgLock = new Object();
 
 	/**
@@ -257,6 +290,22 @@ public abstract class ModuleClassLoader extends ClassLoader implements BundleRef
 	}
 
 	public DefineClassResult defineClass(String name, byte[] classbytes, ClasspathEntry classpathEntry) {
+		return defineClass(name, classbytes, null, classpathEntry);
+	}
+
+	/**
+	 * Defines a class from the bytes remaining in the specified buffer.  The buffer may be
+	 * reused once this method returns.
+	 * @param name the name of the class
+	 * @param classbytes the buffer containing the class bytes
+	 * @param classpathEntry the classpath entry the class bytes got read from
+	 * @return the result of defining the class
+	 */
+	public DefineClassResult defineClass(String name, ByteBuffer classbytes, ClasspathEntry classpathEntry) {
+		return defineClass(name, null, classbytes, classpathEntry);
+	}
+
+	private DefineClassResult defineClass(String name, byte[] classbytes, ByteBuffer classbuffer, ClasspathEntry classpathEntry) {
 		// Note that we must check findLoadedClass again here since no locks are held between
 		// calling findLoadedClass the first time and defineClass.
 		// This is to allow weavers to get called while holding no locks.
@@ -269,7 +318,7 @@ public abstract class ModuleClassLoader extends ClassLoader implements BundleRef
 			try {
 				result = findLoadedClass(name);
 				if (result == null) {
-					result = defineClass(name, classbytes, 0, classbytes.length, classpathEntry.getDomain());
+					result = classbytes != null ? defineClass(name, classbytes, 0, classbytes.length, classpathEntry.getDomain()) : defineClass(name, classbuffer, classpathEntry.getDomain());
 					defined = true;
 				}
 			} finally {
@@ -282,7 +331,7 @@ public abstract class ModuleClassLoader extends ClassLoader implements BundleRef
 			synchronized (this) {
 				result = findLoadedClass(name);
 				if (result == null) {
-					result = defineClass(name, classbytes, 0, classbytes.length, classpathEntry.getDomain());
+					result = classbytes != null ? defineClass(name, classbytes, 0, classbytes.length, classpathEntry.getDomain()) : defineClass(name, classbuffer, classpathEntry.getDomain());
 					defined = true;
 				}
 			}
@@ -400,37 +449,38 @@ public abstract class ModuleClassLoader extends ClassLoader implements BundleRef
 	}
 
 	private boolean lockClassName(String classname) {
-		synchronized (classNameLocks) {
-			Object lockingThread = classNameLocks.get(classname);
-			Thread current = Thread.currentThread();
-			if (lockingThread == current)
-				return false;
-			boolean previousInterruption = Thread.interrupted();
-			try {
-				while (true) {
-					if (lockingThread == null) {
-						classNameLocks.put(classname, current);
+		Thread current = Thread.currentThread();
+		ClassNameLock lock = null;
+		boolean previousInterruption = Thread.interrupted();
+		try {
+			while (true) {
+				ClassNameLock existing = classNameLocks.get(classname);
+				if (existing == null) {
+					if (lock == null) {
+						lock = new ClassNameLock(current);
+					}
+					existing = classNameLocks.putIfAbsent(classname, lock);
+					if (existing == null) {
 						return true;
 					}
-
-					classNameLocks.wait();
-					lockingThread = classNameLocks.get(classname);
 				}
-			} catch (InterruptedException e) {
-				current.interrupt();
-				throw (LinkageError) new LinkageError(classname).initCause(e);
-			} finally {
-				if (previousInterruption) {
-					current.interrupt();
+				if (existing.owner == current) {
+					return false;
 				}
+				// only wait for the thread holding the lock of this class name
+				existing.await(classname);
+			}
+		} finally {
+			if (previousInterruption) {
+				current.interrupt();
 			}
 		}
 	}
 
 	private void unlockClassName(String classname) {
-		synchronized (classNameLocks) {
-			classNameLocks.remove(classname);
-			classNameLocks.notifyAll();
+		ClassNameLock lock = classNameLocks.remove(classname);
+		if (lock != null) {
+			lock.release();
 		}
 	}
 
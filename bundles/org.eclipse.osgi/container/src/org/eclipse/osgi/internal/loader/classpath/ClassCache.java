@@ -0,0 +1,213 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.osgi.internal.loader.classpath;
+
+import java.io.*;
+import java.util.List;
+import org.eclipse.osgi.internal.hookregistry.ClassLoaderHook;
+import org.eclipse.osgi.signedcontent.SignedContent;
+import org.eclipse.osgi.storage.BundleInfo.Generation;
+import org.eclipse.osgi.storage.StorageUtil;
+import org.eclipse.osgi.storage.bundlefile.*;
+
+/**
+ * A persistent cache of the class bytes produced by the class loader hooks for the
+ * classes of a classpath entry.  The cache is stored in the directory of the generation
+ * which contributes the classpath entry so it gets deleted along with the generation.
+ * <p>
+ * Each cached class records the key of the class loader hooks that processed the class
+ * and the time and size of the bundle entry of the class.  A cached class is only used
+ * if all of them still match.  For classes that the hooks did not transform only a marker
+ * is stored so that the hooks do not have to be called again.
+ * <p>
+ * The cache is not used for signed content because the cached bytes are not verified
+ * against the signatures.
+ */
+class ClassCache {
+	private static final String CACHE_DIR = ".classcache"; //$NON-NLS-1$
+	private static final int VERSION = 2;
+	/**
+	 * Returned by {@link #read(String, String, BundleEntry)} if the hooks did not transform the class.
+	 */
+	static final byte[] NOT_TRANSFORMED = new byte[0];
+
+	// the last combined key of the class loader hooks
+	private static volatile HooksKey lastHooksKey;
+
+	private static final class HooksKey {
+		final String[] hookKeys;
+		final String key;
+
+		HooksKey(String[] hookKeys, String key) {
+			this.hookKeys = hookKeys;
+			this.key = key;
+		}
+	}
+
+	private final File root;
+
+	ClassCache(BundleFile bundleFile, Generation generation) {
+		File baseFile = bundleFile.getBaseFile();
+		String entryDir = baseFile == null ? "0" : Integer.toHexString(getPath(baseFile).hashCode()); //$NON-NLS-1$
+		this.root = generation.getBundleInfo().getStorage().getFile(generation.getBundleInfo().getBundleId() + "/" + generation.getGenerationId() + "/" + CACHE_DIR + "/" + entryDir, false); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+	private static String getPath(File file) {
+		// the path of reference installs may be relative to the install area after a restart
+		try {
+			return file.getCanonicalPath();
+		} catch (IOException e) {
+			return file.getAbsolutePath();
+		}
+	}
+
+	/**
+	 * Returns the combined key of the specified class loader hooks.  The combined key is only
+	 * built again if the key of one of the hooks changed.
+	 * @param hooks the class loader hooks
+	 * @return the combined key of the hooks
+	 */
+	static String getHooksKey(List<ClassLoaderHook> hooks) {
+		int size = hooks.size();
+		HooksKey last = lastHooksKey;
+		if (last != null && last.hookKeys.length == size) {
+			boolean changed = false;
+			for (int i = 0; i < size && !changed; i++) {
+				changed = hooks.get(i).getClassCacheKey() != last.hookKeys[i];
+			}
+			if (!changed) {
+				return last.key;
+			}
+		}
+		String[] hookKeys = new String[size];
+		StringBuilder key = new StringBuilder();
+		for (int i = 0; i < size; i++) {
+			hookKeys[i] = hooks.get(i).getClassCacheKey();
+			if (i > 0)
+				key.append(';');
+			key.append(hookKeys[i]);
+		}
+		last = new HooksKey(hookKeys, key.toString());
+		lastHooksKey = last;
+		return last.key;
+	}
+
+	/**
+	 * Returns true if the specified bundle file or any bundle file it wraps has signed content.
+	 * @param bundleFile the bundle file
+	 * @return true if the bundle file has signed content
+	 */
+	static boolean isSigned(BundleFile bundleFile) {
+		if (bundleFile instanceof SignedContent) {
+			return ((SignedContent) bundleFile).isSigned();
+		}
+		if (bundleFile instanceof BundleFileWrapperChain) {
+			BundleFileWrapperChain chain = (BundleFileWrapperChain) bundleFile;
+			return isSigned(chain.getWrapped()) || (chain.getNext() != null && isSigned(chain.getNext()));
+		}
+		if (bundleFile instanceof BundleFileWrapper) {
+			return isSigned(((BundleFileWrapper) bundleFile).getBundleFile());
+		}
+		return false;
+	}
+
+	/**
+	 * Reads the cached class bytes.
+	 * @param filename the path of the class file
+	 * @param hooksKey the key of the class loader hooks currently configured
+	 * @param entry the current bundle entry of the class file
+	 * @return the cached transformed class bytes, {@link #NOT_TRANSFORMED} if the class
+	 * is not transformed by the hooks or {@code null} if no valid entry is cached.
+	 */
+	byte[] read(String filename, String hooksKey, BundleEntry entry) {
+		File cacheFile = new File(root, filename);
+		if (!cacheFile.isFile()) {
+			return null;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+			if (in.readInt() != VERSION || in.readLong() != entry.getTime() || in.readLong() != entry.getSize() || !hooksKey.equals(in.readUTF())) {
+				return null;
+			}
+			int length = in.readInt();
+			if (length == 0) {
+				return NOT_TRANSFORMED;
+			}
+			byte[] bytes = new byte[length];
+			in.readFully(bytes);
+			return bytes;
+		} catch (IOException e) {
+			// treat a corrupted entry as a cache miss; it gets replaced by the next write
+			return null;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the class bytes to the cache.  The entry is written to a temporary file first
+	 * which is then renamed so that readers never see a partially written entry.
+	 * @param filename the path of the class file
+	 * @param hooksKey the key of the class loader hooks currently configured
+	 * @param entry the bundle entry the class bytes were read from
+	 * @param transformed the transformed class bytes or {@code null} if the
+	 * hooks did not transform the class
+	 */
+	void write(String filename, String hooksKey, BundleEntry entry, byte[] transformed) {
+		File cacheFile = new File(root, filename);
+		File parent = cacheFile.getParentFile();
+		if (!parent.isDirectory() && !parent.mkdirs()) {
+			return;
+		}
+		File tmpFile = new File(parent, cacheFile.getName() + '.' + Thread.currentThread().getId() + ".tmp"); //$NON-NLS-1$
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+			out.writeInt(VERSION);
+			out.writeLong(entry.getTime());
+			out.writeLong(entry.getSize());
+			out.writeUTF(hooksKey);
+			if (transformed == null) {
+				out.writeInt(0);
+			} else {
+				out.writeInt(transformed.length);
+				out.write(transformed);
+			}
+			out.close();
+			out = null;
+			if (!tmpFile.renameTo(cacheFile)) {
+				// some platforms do not replace an existing file on rename
+				cacheFile.delete();
+				tmpFile.renameTo(cacheFile);
+			}
+		} catch (IOException e) {
+			// the cache is only an optimization
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+			if (tmpFile.exists()) {
+				StorageUtil.rm(tmpFile, false);
+			}
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2013 IBM Corporation and others.
+ * Copyright (c) 2005, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -42,7 +42,10 @@ public class ClasspathEntry {
 	private final BundleFile bundlefile;
 	private final ProtectionDomain domain;
 	private final Manifest manifest;
+	private final Generation generation;
 	private KeyedHashSet userObjects = null;
+	private ClassCache classCache = null;
+	private boolean classCacheDisabled = false;
 
 	// TODO Note that PDE has internal dependency on this field type/name (bug 267238)
 	private final PDEData data;
@@ -55,6 +58,7 @@ public class ClasspathEntry {
 	public ClasspathEntry(BundleFile bundlefile, ProtectionDomain domain, Generation generation) {
 		this.bundlefile = bundlefile;
 		this.domain = domain;
+		this.generation = generation;
 		this.data = new PDEData(generation.getBundleFile().getBaseFile(), generation.getRevision().getSymbolicName());
 		this.manifest = getManifest(bundlefile, generation);
 	}
@@ -75,6 +79,14 @@ public class ClasspathEntry {
 		return domain;
 	}
 
+	/**
+	 * Returns the generation which contributes this classpath entry
+	 * @return the generation which contributes this classpath entry
+	 */
+	public Generation getGeneration() {
+		return generation;
+	}
+
 	/**
 	 * Returns a user object which is keyed by the specified key
 	 * @param key the key of the user object to get
@@ -97,6 +109,20 @@ public class ClasspathEntry {
 		userObjects.add(userObject);
 	}
 
+	/**
+	 * Returns the class cache for this classpath entry
+	 * @return the class cache for this classpath entry
+	 */
+	synchronized ClassCache getClassCache() {
+		if (classCache == null && !classCacheDisabled) {
+			// cached bytes would bypass the verification of signed content
+			classCacheDisabled = ClassCache.isSigned(bundlefile);
+			if (!classCacheDisabled)
+				classCache = new ClassCache(bundlefile, generation);
+		}
+		return classCache;
+	}
+
 	private static Manifest getManifest(BundleFile cpBundleFile, Generation generation) {
 		if (!generation.hasPackageInfo() && generation.getBundleFile() == cpBundleFile) {
 			return null;
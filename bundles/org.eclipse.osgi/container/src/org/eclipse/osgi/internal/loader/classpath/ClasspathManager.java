@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2013 IBM Corporation and others.
+ * Copyright (c) 2005, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -13,6 +13,7 @@ package org.eclipse.osgi.internal.loader.classpath;
 
 import java.io.*;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
@@ -24,6 +25,7 @@ import org.eclipse.osgi.internal.debug.Debug;
 import org.eclipse.osgi.internal.framework.EquinoxConfiguration;
 import org.eclipse.osgi.internal.hookregistry.ClassLoaderHook;
 import org.eclipse.osgi.internal.hookregistry.HookRegistry;
+import org.eclipse.osgi.internal.loader.BundleLoader;
 import org.eclipse.osgi.internal.loader.ModuleClassLoader;
 import org.eclipse.osgi.internal.loader.ModuleClassLoader.DefineClassResult;
 import org.eclipse.osgi.internal.messages.Msg;
@@ -52,6 +54,11 @@ public class ClasspathManager {
 	private final static Class<?>[] NULL_CLASS_RESULT = new Class[2];
 	@SuppressWarnings("unchecked")
 	private static final Enumeration<URL> EMPTY_ENUMERATION = Collections.enumeration(Collections.EMPTY_LIST);
+	private static final int CLASS_BUFFER_SIZE = 16 * 1024;
+	private static final int MAX_CLASS_BUFFER_SIZE = 128 * 1024;
+	// a buffer per thread to read class bytes into when no hook processes the class bytes;
+	// removed from the thread local while in use so nested class defines use another buffer
+	private static final ThreadLocal<ByteBuffer> classBuffers = new ThreadLocal<ByteBuffer>();
 
 	private final Generation generation;
 	private final ModuleClassLoader classloader;
@@ -344,6 +351,7 @@ public class ClasspathManager {
 	 * @return the requested resource URL or null if the resource does not exist
 	 */
 	public URL findLocalResource(String resource) {
+		recordResourceLookup();
 		List<ClassLoaderHook> hooks = hookRegistry.getClassLoaderHooks();
 		for (ClassLoaderHook hook : hooks) {
 			hook.preFindLocalResource(resource, this);
@@ -390,6 +398,7 @@ public class ClasspathManager {
 	 * @return an enumeration of the the requested resources
 	 */
 	public Enumeration<URL> findLocalResources(String resource) {
+		recordResourceLookup();
 		List<URL> resources = new ArrayList<URL>(6);
 		int classPathIndex = 0;
 		for (int i = 0; i < entries.length; i++) {
@@ -416,6 +425,12 @@ public class ClasspathManager {
 		return EMPTY_ENUMERATION;
 	}
 
+	private void recordResourceLookup() {
+		ResourceUsageImpl.Counters usage = generation.getBundleInfo().getResourceUsage();
+		if (usage != null)
+			usage.resourceLookup();
+	}
+
 	private URL findResourceImpl(String name, BundleFile bundlefile, int index) {
 		return bundlefile.getResourceURL(name, generation.getRevision().getRevisions().getModule(), index);
 	}
@@ -502,7 +517,8 @@ public class ClasspathManager {
 	 * <ol>
 	 *   <li>All configured class loader hooks
 	 *       {@link ClassLoaderHook#processClass(String, byte[], ClasspathEntry, BundleEntry, ClasspathManager)}
-	 *       methods will be called.</li>
+	 *       methods will be called.  The hooks are not called if the persistent class cache
+	 *       ({@link EquinoxConfiguration#PROP_CLASS_CACHE}) already contains the processed class bytes.</li>
 	 *   <li>The class is then defined.</li>  
 	 *   <li>Finally, all configured class loading 
 	 *       stats hooks {@link ClassLoaderHook#recordClassDefine(String, Class, byte[], ClasspathEntry, BundleEntry, ClasspathManager)}
@@ -563,16 +579,44 @@ public class ClasspathManager {
 		if (entry == null)
 			return null;
 
-		byte[] classbytes;
+		// the class cache is not available for signed content
+		ClassCache classCache = isClassCacheEnabled() ? classpathEntry.getClassCache() : null;
+		String cacheKey = null;
+		boolean fromCache = false;
+		byte[] classbytes = null;
+		ByteBuffer classbuffer = null;
+		ByteBuffer readBuffer = null;
+		boolean transformed = false;
+		if (classCache != null) {
+			cacheKey = ClassCache.getHooksKey(hooks);
+			byte[] cached = classCache.read(filename, cacheKey, entry);
+			if (cached != null) {
+				// a valid cache entry exists; no need to call the hooks or to write the cache again
+				fromCache = true;
+				if (cached != ClassCache.NOT_TRANSFORMED) {
+					classbytes = cached;
+					transformed = true;
+				}
+			}
+		}
 		try {
-			classbytes = entry.getBytes();
+			if (classbytes == null) {
+				// the class cache needs the bytes of the class to store them or to replay the hooks;
+				// the buffer is only used if none of the hooks needs the bytes of the class
+				if (classCache != null || isProcessClassRequired(name, classpathEntry, entry, hooks)) {
+					classbytes = entry.getBytes();
+				} else {
+					readBuffer = takeClassBuffer(entry.getSize());
+					classbuffer = entry.getByteBuffer(readBuffer);
+				}
+			}
 		} catch (IOException e) {
 			if (debug.DEBUG_LOADER)
 				Debug.println("  IOException reading " + filename + " from " + classpathEntry.getBundleFile()); //$NON-NLS-1$ //$NON-NLS-2$
 			throw (LinkageError) new LinkageError("Error reading class bytes: " + name).initCause(e); //$NON-NLS-1$
 		}
 		if (debug.DEBUG_LOADER) {
-			Debug.println("  read " + classbytes.length + " bytes from " + classpathEntry.getBundleFile() + "/" + filename); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			Debug.println("  read " + (classbytes != null ? classbytes.length : classbuffer.remaining()) + " bytes from " + classpathEntry.getBundleFile() + "/" + filename); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 			Debug.println("  defining class " + name); //$NON-NLS-1$
 		}
 
@@ -581,18 +625,90 @@ public class ClasspathManager {
 			current = new ArrayList<String>(5);
 			currentlyDefining.set(current);
 		}
-		if (current.contains(name))
+		if (current.contains(name)) {
+			if (readBuffer != null)
+				releaseClassBuffer(readBuffer);
 			return null; // avoid recursive defines (bug 345500)
+		}
 		try {
 			current.add(name);
-			return defineClass(name, classbytes, classpathEntry, entry, hooks);
+			if (classbuffer != null)
+				return defineClass(name, classbuffer, classpathEntry, entry, hooks);
+			return defineClass(name, classbytes, transformed, fromCache, classpathEntry, entry, hooks, classCache, cacheKey);
 		} catch (Error e) {
 			if (debug.DEBUG_LOADER)
 				Debug.println("  error defining class " + name); //$NON-NLS-1$
 			throw e;
 		} finally {
 			current.remove(name);
+			if (readBuffer != null)
+				releaseClassBuffer(readBuffer);
+		}
+	}
+
+	private boolean isProcessClassRequired(String name, ClasspathEntry classpathEntry, BundleEntry entry, List<ClassLoaderHook> hooks) {
+		for (ClassLoaderHook hook : hooks) {
+			if (hook.isProcessClassRequired(name, classpathEntry, entry, this))
+				return true;
+		}
+		return false;
+	}
+
+	private static ByteBuffer takeClassBuffer(long size) {
+		if (size < 0 || size > MAX_CLASS_BUFFER_SIZE)
+			return null;
+		ByteBuffer buffer = classBuffers.get();
+		if (buffer == null || buffer.capacity() < size)
+			return ByteBuffer.allocate(Math.max(CLASS_BUFFER_SIZE, Integer.highestOneBit((int) size - 1) << 1));
+		classBuffers.set(null);
+		return buffer;
+	}
+
+	private static void releaseClassBuffer(ByteBuffer buffer) {
+		ByteBuffer current = classBuffers.get();
+		if (current == null || current.capacity() < buffer.capacity())
+			classBuffers.set(buffer);
+	}
+
+	/**
+	 * Defines the specified class from a buffer.  This is used when no class loader hook
+	 * needs the class bytes; the hooks are only called to announce the class definition
+	 * and get <code>null</code> class bytes as allowed by
+	 * {@link ClassLoaderHook#isProcessClassRequired(String, ClasspathEntry, BundleEntry, ClasspathManager)}.
+	 * @param name the name of the class to define
+	 * @param classbuffer the buffer containing the class bytes
+	 * @param classpathEntry the classpath entry used to load the class bytes
+	 * @param entry the BundleEntry used to load the class bytes
+	 * @param hooks the class loader hooks
+	 * @return the defined class
+	 */
+	private Class<?> defineClass(String name, ByteBuffer classbuffer, ClasspathEntry classpathEntry, BundleEntry entry, List<ClassLoaderHook> hooks) {
+		DefineClassResult result = null;
+		try {
+			definePackage(name, classpathEntry);
+			ResourceUsageImpl.Counters usage = generation.getBundleInfo().getResourceUsage();
+			if (usage == null) {
+				result = classloader.defineClass(name, classbuffer, classpathEntry);
+			} else {
+				int size = classbuffer.remaining();
+				long start = System.nanoTime();
+				result = classloader.defineClass(name, classbuffer, classpathEntry);
+				if (result.defined)
+					usage.classDefined(size, System.nanoTime() - start);
+			}
+			ClassListRecorder classListRecorder = generation.getBundleInfo().getStorage().getClassListRecorder();
+			if (classListRecorder != null && result.defined) {
+				classListRecorder.recordClassDefine(classpathEntry.getGeneration(), result.clazz, classpathEntry.getBundleFile().getBaseFile(), false);
+			}
+		} finally {
+			// only pass the newly defined class to the hook
+			Class<?> defined = result != null && result.defined ? result.clazz : null;
+			for (ClassLoaderHook hook : hooks) {
+				hook.recordClassDefine(name, defined, null, classpathEntry, entry, this);
+			}
 		}
+		// return either the pre-loaded class or the newly defined class
+		return result == null ? null : result.clazz;
 	}
 
 	/**
@@ -601,18 +717,34 @@ public class ClasspathManager {
 	 * methods.  Then it will call the {@link ModuleClassLoader#defineClass(String, byte[], ClasspathEntry, BundleEntry)}
 	 * method to define the class. After that, the class loader hooks are called to announce the class
 	 * definition.
+	 * <p>
+	 * If the class bytes were found in the persistent class cache then the
+	 * {@link ClassLoaderHook#processCachedClass(String, byte[], ClasspathEntry, BundleEntry, ClasspathManager)}
+	 * methods are called instead of the processClass methods.  Otherwise, if a class cache is given then
+	 * the class bytes produced by the hooks are written to the cache after the class got defined.
 	 * @param name the name of the class to define
 	 * @param classbytes the class bytes
+	 * @param transformed true if the class bytes are already transformed by the hooks
+	 * @param fromCache true if the class bytes were found in the persistent class cache
 	 * @param classpathEntry the classpath entry used to load the class bytes
 	 * @param entry the BundleEntry used to load the class bytes
 	 * @param hooks the class loader hooks
+	 * @param classCache the class cache, may be {@code null} if the class cache is disabled
+	 * @param cacheKey the key of the class loader hooks, may be {@code null} if the class cache is disabled
 	 * @return the defined class
 	 */
-	private Class<?> defineClass(String name, byte[] classbytes, ClasspathEntry classpathEntry, BundleEntry entry, List<ClassLoaderHook> hooks) {
+	private Class<?> defineClass(String name, byte[] classbytes, boolean transformed, boolean fromCache, ClasspathEntry classpathEntry, BundleEntry entry, List<ClassLoaderHook> hooks, ClassCache classCache, String cacheKey) {
 		DefineClassResult result = null;
+		byte[] originalBytes = classbytes;
+		BundleLoader loader = classloader.getBundleLoader();
+		int dynamicImportChangeCount = loader.getDynamicImportChangeCount();
 		try {
 			definePackage(name, classpathEntry);
-			for (ClassLoaderHook hook : hooks) {
+			for (int i = 0; fromCache && i < hooks.size(); i++) {
+				hooks.get(i).processCachedClass(name, classbytes, classpathEntry, entry, this);
+			}
+			for (int i = 0; !fromCache && i < hooks.size(); i++) {
+				ClassLoaderHook hook = hooks.get(i);
 				byte[] modifiedBytes = hook.processClass(name, classbytes, classpathEntry, entry, this);
 				if (modifiedBytes != null) {
 					// the WeavingHookConfigurator already calls the rejectTransformation method; avoid calling it again.
@@ -629,7 +761,23 @@ public class ClasspathManager {
 					}
 				}
 			}
-			result = classloader.defineClass(name, classbytes, classpathEntry);
+			ResourceUsageImpl.Counters usage = generation.getBundleInfo().getResourceUsage();
+			if (usage == null) {
+				result = classloader.defineClass(name, classbytes, classpathEntry);
+			} else {
+				long start = System.nanoTime();
+				result = classloader.defineClass(name, classbytes, classpathEntry);
+				if (result.defined)
+					usage.classDefined(originalBytes.length, System.nanoTime() - start);
+			}
+			// do not cache classes for which the hooks added dynamic imports; the imports would be missing on a cache hit
+			if (classCache != null && !fromCache && result.defined && dynamicImportChangeCount == loader.getDynamicImportChangeCount()) {
+				classCache.write(name.replace('.', '/').concat(".class"), cacheKey, entry, classbytes == originalBytes ? null : classbytes); //$NON-NLS-1$
+			}
+			ClassListRecorder classListRecorder = generation.getBundleInfo().getStorage().getClassListRecorder();
+			if (classListRecorder != null && result.defined) {
+				classListRecorder.recordClassDefine(classpathEntry.getGeneration(), result.clazz, classpathEntry.getBundleFile().getBaseFile(), transformed || classbytes != originalBytes);
+			}
 		} finally {
 			// only pass the newly defined class to the hook
 			Class<?> defined = result != null && result.defined ? result.clazz : null;
@@ -641,6 +789,12 @@ public class ClasspathManager {
 		return result == null ? null : result.clazz;
 	}
 
+	private boolean isClassCacheEnabled() {
+		Storage storage = generation.getBundleInfo().getStorage();
+		// the woven bytes may depend on permissions; do not use the cache with a security manager
+		return storage.getConfiguration().CLASS_CACHE && !storage.isReadOnly() && System.getSecurityManager() == null;
+	}
+
 	private void definePackage(String name, ClasspathEntry classpathEntry) {
 		// Define the package if it is not the default package.
 		int lastIndex = name.lastIndexOf('.');
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2013 IBM Corporation and others.
+ * Copyright (c) 2008, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,11 +10,16 @@
  *******************************************************************************/
 package org.eclipse.osgi.internal.permadmin;
 
+import java.io.FilePermission;
+import java.lang.reflect.ReflectPermission;
+import java.net.NetPermission;
+import java.net.SocketPermission;
 import java.security.*;
-import java.util.Enumeration;
-import java.util.NoSuchElementException;
-import org.osgi.framework.Bundle;
-import org.osgi.framework.PackagePermission;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.osgi.framework.*;
 
 public final class BundlePermissions extends PermissionCollection {
 	private static final long serialVersionUID = -5443618108312606612L;
@@ -30,11 +35,18 @@ public final class BundlePermissions extends PermissionCollection {
 		}
 	};
 
+	private static final int MAX_CACHED_DECISIONS = 256;
+	// the permission types which are completely described by their name and actions
+	private static final Set<Class<?>> VALUE_TYPES = new HashSet<Class<?>>(Arrays.<Class<?>> asList(AllPermission.class, FilePermission.class, PropertyPermission.class, RuntimePermission.class, ReflectPermission.class, SecurityPermission.class, NetPermission.class, SocketPermission.class, BundlePermission.class));
+
 	private final Bundle bundle;
 	private final SecurityAdmin securityAdmin;
 	private final PermissionInfoCollection impliedPermissions;
 	private final PermissionInfoCollection restrictedPermissions;
 	private final Permissions wovenPermissions;
+	// incremented each time the decisions of this bundle permissions may change
+	private final AtomicInteger localDecisionVersion = new AtomicInteger();
+	private volatile DecisionCache decisionCache;
 
 	public BundlePermissions(Bundle bundle, SecurityAdmin securityAdmin, PermissionInfoCollection impliedPermissions, PermissionInfoCollection restrictedPermissions) {
 		this.bundle = bundle;
@@ -63,6 +75,7 @@ public final class BundlePermissions extends PermissionCollection {
 		if (!permission.getActions().equals(PackagePermission.IMPORT))
 			throw new SecurityException();
 		wovenPermissions.add(permission);
+		localDecisionVersion.incrementAndGet();
 	}
 
 	public Enumeration<Permission> elements() {
@@ -73,29 +86,140 @@ public final class BundlePermissions extends PermissionCollection {
 	}
 
 	public boolean implies(Permission permission) {
+		if (!isDescribedByKey(permission))
+			return (getDecision(permission) & SecurityTable.GRANTED) != 0;
+		DecisionCache cache = getDecisionCache();
+		DecisionKey key = new DecisionKey(permission);
+		Boolean cached = cache.decisions.get(key);
+		if (cached != null)
+			return cached.booleanValue();
+		int decision = getDecision(permission);
+		boolean implied = (decision & SecurityTable.GRANTED) != 0;
+		if ((decision & SecurityTable.CACHEABLE) != 0)
+			cache.putDecision(key, implied);
+		return implied;
+	}
+
+	private int getDecision(Permission permission) {
 		// first check implied permissions
 		if ((impliedPermissions != null) && impliedPermissions.implies(permission))
-			return true;
+			return SecurityTable.GRANTED | SecurityTable.CACHEABLE;
 
 		// Now check implied permissions added by weaving hooks.
 		if (wovenPermissions.implies(permission))
-			return true;
+			return SecurityTable.GRANTED | SecurityTable.CACHEABLE;
 
 		// We must be allowed by the restricted permissions to have any hope of passing the check
 		if ((restrictedPermissions != null) && !restrictedPermissions.implies(permission))
-			return false;
+			return SecurityTable.DENIED | SecurityTable.CACHEABLE;
 
 		return securityAdmin.checkPermission(permission, this);
 	}
 
+	private DecisionCache getDecisionCache() {
+		// the versions must be read before the decision is made
+		long adminVersion = securityAdmin.getDecisionVersion();
+		int localVersion = localDecisionVersion.get();
+		DecisionCache cache = decisionCache;
+		if (cache == null || cache.adminVersion != adminVersion || cache.localVersion != localVersion)
+			decisionCache = cache = new DecisionCache(adminVersion, localVersion);
+		return cache;
+	}
+
+	/*
+	 * A decision can only be cached if the permission is completely described by its
+	 * type, name and actions.  Only the decisions for the known value types below are
+	 * cached; other types, like the AdaptPermission and AdminPermission or any permission
+	 * type supplied by a bundle, may carry state beyond the name and actions such as the
+	 * bundle they refer to.  Subclasses of the known types may carry such state too.
+	 * The framework permissions may refer to a bundle or a service depending on their
+	 * actions so no permission has to be created to find out.
+	 */
+	private static boolean isDescribedByKey(Permission permission) {
+		Class<?> type = permission.getClass();
+		if (VALUE_TYPES.contains(type))
+			return true;
+		if (type == ServicePermission.class)
+			return !hasAction(permission.getActions(), ServicePermission.GET);
+		if (type == PackagePermission.class)
+			return !hasAction(permission.getActions(), PackagePermission.IMPORT);
+		if (type == CapabilityPermission.class)
+			return !hasAction(permission.getActions(), CapabilityPermission.REQUIRE);
+		return false;
+	}
+
+	private static boolean hasAction(String actions, String action) {
+		int index = actions.indexOf(action);
+		while (index >= 0) {
+			int end = index + action.length();
+			if ((index == 0 || actions.charAt(index - 1) == ',') && (end == actions.length() || actions.charAt(end) == ','))
+				return true;
+			index = actions.indexOf(action, end);
+		}
+		return false;
+	}
+
 	public Bundle getBundle() {
 		return bundle;
 	}
 
 	public void clearPermissionCache() {
+		localDecisionVersion.incrementAndGet();
 		if (impliedPermissions != null)
 			impliedPermissions.clearPermissionCache();
 		if (restrictedPermissions != null)
 			restrictedPermissions.clearPermissionCache();
 	}
+
+	private static final class DecisionKey {
+		private final Class<?> type;
+		private final String name;
+		private final String actions;
+		private final int hash;
+
+		DecisionKey(Permission permission) {
+			this.type = permission.getClass();
+			this.name = permission.getName();
+			this.actions = permission.getActions();
+			int h = 31 * 17 + type.getName().hashCode();
+			h = 31 * h + (name == null ? 0 : name.hashCode());
+			this.hash = 31 * h + (actions == null ? 0 : actions.hashCode());
+		}
+
+		public boolean equals(Object obj) {
+			if (obj == this)
+				return true;
+			if (!(obj instanceof DecisionKey))
+				return false;
+			DecisionKey other = (DecisionKey) obj;
+			return type == other.type && (name == null ? other.name == null : name.equals(other.name)) && (actions == null ? other.actions == null : actions.equals(other.actions));
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	private static final class DecisionCache {
+		final long adminVersion;
+		final int localVersion;
+		final ConcurrentMap<DecisionKey, Boolean> decisions = new ConcurrentHashMap<DecisionKey, Boolean>();
+
+		DecisionCache(long adminVersion, int localVersion) {
+			this.adminVersion = adminVersion;
+			this.localVersion = localVersion;
+		}
+
+		void putDecision(DecisionKey key, boolean implied) {
+			if (decisions.size() >= MAX_CACHED_DECISIONS) {
+				// evict some decision to keep the cache bounded
+				Iterator<DecisionKey> keys = decisions.keySet().iterator();
+				if (keys.hasNext()) {
+					keys.next();
+					keys.remove();
+				}
+			}
+			decisions.put(key, Boolean.valueOf(implied));
+		}
+	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2012 IBM Corporation and others.
+ * Copyright (c) 2008, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -15,6 +15,8 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.security.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.osgi.service.permissionadmin.PermissionInfo;
 
 public final class PermissionInfoCollection extends PermissionCollection {
@@ -25,8 +27,12 @@ public final class PermissionInfoCollection extends PermissionCollection {
 	static private final Class<?> noArgClassArray[] = new Class[] {};
 	static private final Class<?>[][] permClassArrayArgs = new Class[][] {noArgClassArray, oneStringClassArray, twoStringClassArray};
 
-	/* @GuardedBy(cachedPermisssionCollections) */
-	private final Map<Class<? extends Permission>, PermissionCollection> cachedPermissionCollections = new HashMap<Class<? extends Permission>, PermissionCollection>();
+	/* The index into permClassArrayArgs of the constructor used for a permission class;
+	 * only the index is kept so the cache does not hold on to permission classes */
+	/* @GuardedBy(constructorArgs) */
+	static private final Map<Class<?>, Integer> constructorArgs = new WeakHashMap<Class<?>, Integer>();
+
+	private final ConcurrentMap<Class<? extends Permission>, PermissionCollection> cachedPermissionCollections = new ConcurrentHashMap<Class<? extends Permission>, PermissionCollection>();
 	private final boolean hasAllPermission;
 	private final PermissionInfo[] permInfos;
 
@@ -53,11 +59,8 @@ public final class PermissionInfoCollection extends PermissionCollection {
 		if (hasAllPermission)
 			return true;
 		Class<? extends Permission> permClass = perm.getClass();
-		PermissionCollection collection;
-		synchronized (cachedPermissionCollections) {
-			collection = cachedPermissionCollections.get(permClass);
-		}
-		// must populate the collection outside of the lock to prevent class loader deadlock
+		PermissionCollection collection = cachedPermissionCollections.get(permClass);
+		// must populate the collection outside of any lock to prevent class loader deadlock
 		if (collection == null) {
 			collection = perm.newPermissionCollection();
 			if (collection == null)
@@ -67,14 +70,10 @@ public final class PermissionInfoCollection extends PermissionCollection {
 			} catch (Exception e) {
 				throw (SecurityException) new SecurityException("Exception creating permissions: " + permClass + ": " + e.getMessage()).initCause(e); //$NON-NLS-1$ //$NON-NLS-2$
 			}
-			synchronized (cachedPermissionCollections) {
-				// check to see if another thread beat this thread at adding the collection
-				PermissionCollection exists = cachedPermissionCollections.get(permClass);
-				if (exists != null)
-					collection = exists;
-				else
-					cachedPermissionCollections.put(permClass, collection);
-			}
+			// check to see if another thread beat this thread at adding the collection
+			PermissionCollection exists = cachedPermissionCollections.putIfAbsent(permClass, collection);
+			if (exists != null)
+				collection = exists;
 		}
 		return collection.implies(perm);
 	}
@@ -85,48 +84,64 @@ public final class PermissionInfoCollection extends PermissionCollection {
 
 	private void addPermissions(PermissionCollection collection, Class<? extends Permission> permClass) throws NoSuchMethodException, IllegalAccessException, InstantiationException, InvocationTargetException {
 		String permClassName = permClass.getName();
-		Constructor<? extends Permission> constructor = null;
-		int numArgs = -1;
-		for (int i = permClassArrayArgs.length - 1; i >= 0; i--) {
-			try {
-				constructor = permClass.getConstructor(permClassArrayArgs[i]);
-				numArgs = i;
-				break;
-			} catch (NoSuchMethodException e) {
-				// ignore
-			}
-		}
-		if (constructor == null)
-			throw new NoSuchMethodException(permClass.getName() + ".<init>()"); //$NON-NLS-1$
-		/*
-		 * TODO: We need to cache the permission constructors to enhance performance (see bug 118813).
-		 */
+		Constructor<? extends Permission> constructor = getConstructor(permClass);
 		for (int i = 0; i < permInfos.length; i++) {
 			if (permInfos[i].getType().equals(permClassName)) {
-				String args[] = new String[numArgs];
-				if (numArgs > 0)
-					args[0] = permInfos[i].getName();
-				if (numArgs > 1)
-					args[1] = permInfos[i].getActions();
-
 				if (permInfos[i].getType().equals("java.io.FilePermission")) { //$NON-NLS-1$
 					// map FilePermissions for relative names to the bundle's data area
-					if (!args[0].equals("<<ALL FILES>>")) { //$NON-NLS-1$
-						File file = new File(args[0]);
+					if (!permInfos[i].getName().equals("<<ALL FILES>>")) { //$NON-NLS-1$
+						File file = new File(permInfos[i].getName());
 						if (!file.isAbsolute()) { // relative name
 							// TODO need to figure out how to do relative FilePermissions from the dataFile
 							continue;
 						}
 					}
 				}
-				collection.add(constructor.newInstance((Object[]) args));
+				collection.add(newPermission(constructor, permInfos[i].getName(), permInfos[i].getActions()));
 			}
 		}
 	}
 
-	void clearPermissionCache() {
-		synchronized (cachedPermissionCollections) {
-			cachedPermissionCollections.clear();
+	/**
+	 * Returns the constructor used to create permissions of the specified class.
+	 * The constructor taking a name and actions is preferred over the constructor
+	 * taking a name which is preferred over the no argument constructor.
+	 * @param permClass the permission class
+	 * @return the constructor of the permission class
+	 * @throws NoSuchMethodException if the permission class has none of the constructors
+	 */
+	private static <P extends Permission> Constructor<P> getConstructor(Class<P> permClass) throws NoSuchMethodException {
+		Integer numArgs;
+		synchronized (constructorArgs) {
+			numArgs = constructorArgs.get(permClass);
 		}
+		if (numArgs != null)
+			return permClass.getConstructor(permClassArrayArgs[numArgs.intValue()]);
+		for (int i = permClassArrayArgs.length - 1; i >= 0; i--) {
+			try {
+				Constructor<P> constructor = permClass.getConstructor(permClassArrayArgs[i]);
+				synchronized (constructorArgs) {
+					constructorArgs.put(permClass, new Integer(i));
+				}
+				return constructor;
+			} catch (NoSuchMethodException e) {
+				// ignore
+			}
+		}
+		throw new NoSuchMethodException(permClass.getName() + ".<init>()"); //$NON-NLS-1$
+	}
+
+	private static <P extends Permission> P newPermission(Constructor<P> constructor, String name, String actions) throws IllegalAccessException, InstantiationException, InvocationTargetException {
+		int numArgs = constructor.getParameterTypes().length;
+		String args[] = new String[numArgs];
+		if (numArgs > 0)
+			args[0] = name;
+		if (numArgs > 1)
+			args[1] = actions;
+		return constructor.newInstance((Object[]) args);
+	}
+
+	void clearPermissionCache() {
+		cachedPermissionCollections.clear();
 	}
 }
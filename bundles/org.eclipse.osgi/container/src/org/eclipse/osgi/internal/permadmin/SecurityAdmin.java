@@ -47,6 +47,8 @@ public final class SecurityAdmin implements PermissionAdmin, ConditionalPermissi
 	private long timeStamp = 0;
 	/* @GuardedBy(lock) */
 	private long nextID = System.currentTimeMillis();
+	// incremented after any change which may affect permission decisions; used to invalidate cached decisions
+	private volatile long decisionVersion = 0;
 	/* @GuardedBy(lock) */
 	private final PermissionData permissionStorage;
 	private final Object lock = new Object();
@@ -105,7 +107,14 @@ public final class SecurityAdmin implements PermissionAdmin, ConditionalPermissi
 		return results;
 	}
 
-	boolean checkPermission(Permission permission, BundlePermissions bundlePermissions) {
+	/**
+	 * Checks the permission for the specified bundle permissions.
+	 * @param permission the permission to check
+	 * @param bundlePermissions the bundle permissions
+	 * @return {@link SecurityTable#GRANTED} or {@link SecurityTable#DENIED} combined with
+	 * {@link SecurityTable#CACHEABLE} if the decision may be cached until the {@link #getDecisionVersion() decision version} changes
+	 */
+	int checkPermission(Permission permission, BundlePermissions bundlePermissions) {
 		// check permissions by location
 		PermissionInfoCollection locationCollection;
 		SecurityTable curCondAdminTable;
@@ -119,19 +128,33 @@ public final class SecurityAdmin implements PermissionAdmin, ConditionalPermissi
 			curPermAdminDefaults = permAdminDefaults;
 		}
 		if (locationCollection != null)
-			return locationCollection.implies(permission);
+			return getDecision(locationCollection.implies(permission)) | SecurityTable.CACHEABLE;
 		// if conditional admin table is empty the fall back to defaults
 		if (curCondAdminTable.isEmpty())
-			return curPermAdminDefaults != null ? curPermAdminDefaults.implies(permission) : DEFAULT_DEFAULT.implies(permission);
+			return getDecision(curPermAdminDefaults != null ? curPermAdminDefaults.implies(permission) : DEFAULT_DEFAULT.implies(permission)) | SecurityTable.CACHEABLE;
 		// check the condition table	
 		int result = curCondAdminTable.evaluate(bundlePermissions, permission);
+		int cacheable = result & SecurityTable.CACHEABLE;
 		if ((result & SecurityTable.GRANTED) != 0)
-			return true;
+			return SecurityTable.GRANTED | cacheable;
 		if ((result & SecurityTable.DENIED) != 0)
-			return false;
+			return SecurityTable.DENIED | cacheable;
 		if ((result & SecurityTable.POSTPONED) != 0)
-			return true;
-		return false;
+			return SecurityTable.GRANTED;
+		return SecurityTable.DENIED | cacheable;
+	}
+
+	private static int getDecision(boolean implied) {
+		return implied ? SecurityTable.GRANTED : SecurityTable.DENIED;
+	}
+
+	/**
+	 * Returns the decision version.  The version changes each time the permission
+	 * tables are updated or the caches are cleared.
+	 * @return the decision version
+	 */
+	long getDecisionVersion() {
+		return decisionVersion;
 	}
 
 	public PermissionInfo[] getDefaultPermissions() {
@@ -163,6 +186,7 @@ public final class SecurityAdmin implements PermissionAdmin, ConditionalPermissi
 			else
 				permAdminDefaults = new PermissionInfoCollection(permissions);
 			permissionStorage.setPermissionData(null, getEncodedPermissionInfos(permissions));
+			decisionVersion++;
 		}
 	}
 
@@ -186,6 +210,7 @@ public final class SecurityAdmin implements PermissionAdmin, ConditionalPermissi
 		synchronized (lock) {
 			permAdminTable.setPermissions(location, permissions);
 			permissionStorage.setPermissionData(location, getEncodedPermissionInfos(permissions));
+			decisionVersion++;
 		}
 	}
 
@@ -330,6 +355,7 @@ public final class SecurityAdmin implements PermissionAdmin, ConditionalPermissi
 			condAdminTable = new SecurityTable(this, newRows);
 			permissionStorage.saveConditionalPermissionInfos(condAdminTable.getEncodedRows());
 			timeStamp += 1;
+			decisionVersion++;
 			return true;
 		}
 	}
@@ -404,6 +430,9 @@ public final class SecurityAdmin implements PermissionAdmin, ConditionalPermissi
 			permAdminCollections[i].clearPermissionCache();
 		for (int i = 0; i < condAdminRows.length; i++)
 			condAdminRows[i].clearCaches();
+		synchronized (lock) {
+			decisionVersion++;
+		}
 	}
 
 	EquinoxSecurityManager getSupportedSecurityManager() {
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2012 IBM Corporation and others.
+ * Copyright (c) 2008, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -342,6 +342,23 @@ public final class SecurityRow implements ConditionalPermissionInfo {
 		return evaluatePermission(permission);
 	}
 
+	/**
+	 * Returns true if the conditions of this row have been resolved for the specified
+	 * bundle permissions.  A row is resolved if it has no conditions or all its conditions
+	 * are immutable and have been evaluated.  The decision of a resolved row only
+	 * depends on the permission being checked.
+	 * @param bundlePermissions the bundle permissions
+	 * @return true if the conditions of this row have been resolved
+	 */
+	boolean isResolved(BundlePermissions bundlePermissions) {
+		if (bundleConditions == null)
+			return true;
+		synchronized (bundleConditions) {
+			Condition[] conditions = bundleConditions.get(bundlePermissions);
+			return conditions == ABSTAIN_LIST || conditions == SATISFIED_LIST;
+		}
+	}
+
 	private boolean isPostponed(Condition condition) {
 		// postponed checks can only happen if we are using a supported security manager
 		return condition.isPostponed() && securityAdmin.getSupportedSecurityManager() != null;
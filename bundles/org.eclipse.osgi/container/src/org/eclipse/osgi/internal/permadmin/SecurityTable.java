@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2012 IBM Corporation and others.
+ * Copyright (c) 2008, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -21,6 +21,8 @@ public class SecurityTable extends PermissionCollection {
 	static final int DENIED = 0x0002;
 	static final int ABSTAIN = 0x0004;
 	static final int POSTPONED = 0x0008;
+	// indicates the decision does not depend on mutable or postponed conditions
+	static final int CACHEABLE = 0x0010;
 
 	private final SecurityRow[] rows;
 	private final SecurityAdmin securityAdmin;
@@ -40,6 +42,7 @@ public class SecurityTable extends PermissionCollection {
 		if (isEmpty())
 			return ABSTAIN;
 		boolean postponed = false;
+		boolean resolved = bundlePermissions != null;
 		Decision[] results = new Decision[rows.length];
 		int immediateDecisionIdx = -1;
 		// evaluate each row
@@ -49,7 +52,9 @@ public class SecurityTable extends PermissionCollection {
 			} catch (Throwable t) {
 				// TODO log?
 				results[i] = SecurityRow.DECISION_ABSTAIN;
+				resolved = false;
 			}
+			resolved &= rows[i].isResolved(bundlePermissions);
 			if ((results[i].decision & ABSTAIN) != 0)
 				continue; // ignore this row and continue to next row
 			if ((results[i].decision & POSTPONED) != 0) {
@@ -59,7 +64,7 @@ public class SecurityTable extends PermissionCollection {
 			}
 			if (!postponed)
 				// no postpones encountered yet; we can return the decision quickly
-				return results[i].decision; // return GRANTED or DENIED
+				return resolved ? results[i].decision | CACHEABLE : results[i].decision; // return GRANTED or DENIED
 			// got an immediate answer; but it is after a postponed condition.
 			// no need to process the rest of the rows
 			immediateDecisionIdx = i;
@@ -93,7 +98,9 @@ public class SecurityTable extends PermissionCollection {
 				return ABSTAIN;
 			equinoxManager.addConditionsForDomain(results);
 		}
-		return postponed ? POSTPONED : ABSTAIN;
+		if (postponed)
+			return POSTPONED;
+		return resolved ? ABSTAIN | CACHEABLE : ABSTAIN;
 	}
 
 	SecurityRow getRow(int i) {
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2003, 2013 IBM Corporation and others.
+ * Copyright (c) 2003, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -16,6 +16,7 @@ import org.eclipse.osgi.internal.debug.Debug;
 import org.eclipse.osgi.internal.framework.BundleContextImpl;
 import org.eclipse.osgi.internal.loader.sources.PackageSource;
 import org.eclipse.osgi.internal.messages.Msg;
+import org.eclipse.osgi.storage.ResourceUsageImpl;
 import org.osgi.framework.*;
 
 /**
@@ -60,6 +61,10 @@ public class ServiceRegistrationImpl<S> implements ServiceRegistration<S>, Compa
 	/* @GuardedBy("registrationLock") */
 	private final List<BundleContextImpl> contextsUsing;
 
+	/** Incremented each time the list of contexts using the service changes. */
+	/* @GuardedBy("registrationLock") */
+	private int usageStamp;
+
 	/** properties for this registration. */
 	/* @GuardedBy("registrationLock") */
 	private ServiceProperties properties;
@@ -113,13 +118,7 @@ public class ServiceRegistrationImpl<S> implements ServiceRegistration<S>, Compa
 		final ServiceReferenceImpl<S> ref;
 		synchronized (registry) {
 			context.checkValid();
-			synchronized (registrationLock) {
-				ref = reference; /* used to publish event outside sync */
-				this.properties = createProperties(props); /* must be valid after unregister is called. */
-			}
-			if (registry.debug.DEBUG_SERVICES) {
-				Debug.println("registerService[" + bundle + "](" + this + ")"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-			}
+			ref = prepareRegister(props); /* used to publish event outside sync */
 			registry.addServiceRegistration(context, this);
 		}
 
@@ -127,6 +126,29 @@ public class ServiceRegistrationImpl<S> implements ServiceRegistration<S>, Compa
 		registry.publishServiceEvent(new ServiceEvent(ServiceEvent.REGISTERED, ref));
 	}
 
+	/**
+	 * Sets the properties of this registration before it is added to the registry.
+	 * @param props the properties for this service
+	 * @return the reference used to publish the registered event
+	 */
+	/* @GuardedBy("registry") */
+	ServiceReferenceImpl<S> prepareRegister(Dictionary<String, ?> props) {
+		assert Thread.holdsLock(registry);
+		final ServiceReferenceImpl<S> ref;
+		synchronized (registrationLock) {
+			ref = reference;
+			this.properties = createProperties(props); /* must be valid after unregister is called. */
+		}
+		ResourceUsageImpl.Counters usage = registry.getResourceUsage(context, true);
+		if (usage != null) {
+			usage.servicesRegistered(1);
+		}
+		if (registry.debug.DEBUG_SERVICES) {
+			Debug.println("registerService[" + bundle + "](" + this + ")"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		}
+		return ref;
+	}
+
 	/**
 	 * Update the properties associated with this service.
 	 *
@@ -207,20 +229,67 @@ public class ServiceRegistrationImpl<S> implements ServiceRegistration<S>, Compa
 				}
 
 				/* remove this object from the service registry */
-				if (registry.debug.DEBUG_SERVICES) {
-					Debug.println("unregisterService[" + bundle + "](" + this + ")"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-				}
-
 				registry.removeServiceRegistration(context, this);
 
-				state = UNREGISTERING; /* mark unregisterING */
-				ref = reference; /* used to publish event outside sync */
+				ref = prepareUnregister(); /* used to publish event outside sync */
 			}
 		}
 
 		/* must not hold the registrationLock when this event is published */
 		registry.publishServiceEvent(new ServiceEvent(ServiceEvent.UNREGISTERING, ref));
 
+		completeUnregister();
+	}
+
+	ServiceRegistry getRegistry() {
+		return registry;
+	}
+
+	BundleContextImpl getContext() {
+		return context;
+	}
+
+	/**
+	 * Checks that this registration is registered.  Used to check all the
+	 * registrations of a batch before any registration is unregistered.
+	 * @exception java.lang.IllegalStateException If this registration is
+	 * not registered.
+	 */
+	/* @GuardedBy("registry") */
+	void checkRegistered() {
+		assert Thread.holdsLock(registry);
+		synchronized (registrationLock) {
+			if (state != REGISTERED) { /* in the process of unregisterING */
+				throw new IllegalStateException(Msg.SERVICE_ALREADY_UNREGISTERED_EXCEPTION);
+			}
+		}
+	}
+
+	/**
+	 * Marks this registration as unregistering.  The registration must already be
+	 * removed from the registry.
+	 * @return the reference used to publish the unregistering event
+	 */
+	/* @GuardedBy("registry") */
+	ServiceReferenceImpl<S> prepareUnregister() {
+		assert Thread.holdsLock(registry);
+		synchronized (registrationLock) {
+			if (registry.debug.DEBUG_SERVICES) {
+				Debug.println("unregisterService[" + bundle + "](" + this + ")"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			}
+			state = UNREGISTERING; /* mark unregisterING */
+			ResourceUsageImpl.Counters usage = registry.getResourceUsage(context, false);
+			if (usage != null) {
+				usage.servicesRegistered(-1);
+			}
+			return reference;
+		}
+	}
+
+	/**
+	 * Completes the unregistration after the unregistering event got published.
+	 */
+	void completeUnregister() {
 		int size = 0;
 		BundleContextImpl[] users = null;
 
@@ -243,6 +312,9 @@ public class ServiceRegistrationImpl<S> implements ServiceRegistration<S>, Compa
 		}
 
 		synchronized (registrationLock) {
+			for (BundleContextImpl user : contextsUsing) {
+				contextsUsingChanged(user, -1);
+			}
 			contextsUsing.clear();
 
 			reference = null; /* mark registration dead */
@@ -471,6 +543,7 @@ public class ServiceRegistrationImpl<S> implements ServiceRegistration<S>, Compa
 						}
 						servicesInUse.put(this, use);
 						contextsUsing.add(user);
+						contextsUsingChanged(user, 1);
 					}
 				}
 			}
@@ -494,6 +567,7 @@ public class ServiceRegistrationImpl<S> implements ServiceRegistration<S>, Compa
 						synchronized (registrationLock) {
 							servicesInUse.remove(this);
 							contextsUsing.remove(user);
+							contextsUsingChanged(user, -1);
 						}
 					}
 				}
@@ -576,6 +650,7 @@ public class ServiceRegistrationImpl<S> implements ServiceRegistration<S>, Compa
 					synchronized (registrationLock) {
 						servicesInUse.remove(this);
 						contextsUsing.remove(user);
+						contextsUsingChanged(user, -1);
 					}
 				}
 			}
@@ -613,6 +688,7 @@ public class ServiceRegistrationImpl<S> implements ServiceRegistration<S>, Compa
 					return;
 				}
 				contextsUsing.remove(user);
+				contextsUsingChanged(user, -1);
 			}
 		}
 		synchronized (use) {
@@ -620,6 +696,28 @@ public class ServiceRegistrationImpl<S> implements ServiceRegistration<S>, Compa
 		}
 	}
 
+	/* @GuardedBy("registrationLock") */
+	private void contextsUsingChanged(BundleContextImpl user, int delta) {
+		usageStamp++;
+		registry.serviceChanged();
+		ResourceUsageImpl.Counters usage = registry.getResourceUsage(user, delta > 0);
+		if (usage != null) {
+			usage.servicesInUse(delta);
+		}
+	}
+
+	/**
+	 * Returns a stamp which changes each time the bundles using this
+	 * service change.
+	 * 
+	 * @return The usage stamp of this service.
+	 */
+	public int getUsageStamp() {
+		synchronized (registrationLock) {
+			return usageStamp;
+		}
+	}
+
 	/**
 	 * Return the list of bundle which are using this service.
 	 *
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2013 IBM Corporation and others.
+ * Copyright (c) 2004, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -13,14 +13,17 @@ package org.eclipse.osgi.internal.serviceregistry;
 
 import java.security.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import org.eclipse.osgi.container.Module;
 import org.eclipse.osgi.container.ModuleRevision;
 import org.eclipse.osgi.framework.eventmgr.*;
 import org.eclipse.osgi.internal.debug.Debug;
+import org.eclipse.osgi.internal.debug.Timeline;
 import org.eclipse.osgi.internal.framework.BundleContextImpl;
 import org.eclipse.osgi.internal.framework.EquinoxContainer;
 import org.eclipse.osgi.internal.messages.Msg;
 import org.eclipse.osgi.storage.BundleInfo.Generation;
+import org.eclipse.osgi.storage.ResourceUsageImpl;
 import org.eclipse.osgi.util.NLS;
 import org.osgi.framework.*;
 import org.osgi.framework.hooks.service.*;
@@ -64,15 +67,22 @@ public class ServiceRegistry {
 	/* @GuardedBy("this") */
 	private final Map<BundleContextImpl, List<ServiceRegistrationImpl<?>>> publishedServicesByContext;
 
+	/** Incremented when services are registered, modified or unregistered or the bundles using a service change. */
+	private final AtomicLong changeCount = new AtomicLong();
+	/** Incremented when services are registered, modified or unregistered. */
+	private final AtomicLong registrationChangeCount = new AtomicLong();
+
 	/** next free service id. */
 	/* @GuardedBy("this") */
 	private long serviceid;
 
 	/** Active Service Listeners.
 	 * {@literal Map<BundleContextImpl,CopyOnWriteIdentityMap<ServiceListener,FilteredServiceListener>>}.
+	 * Both maps are copy on write so event publishers read them without locking;
+	 * modifications are done while holding the lock on the outer map.
 	 */
-	/* @GuardedBy("serviceEventListeners") */
-	private final Map<BundleContextImpl, CopyOnWriteIdentityMap<ServiceListener, FilteredServiceListener>> serviceEventListeners;
+	/* @GuardedBy("serviceEventListeners") for writes only; reads are not locked */
+	private final CopyOnWriteIdentityMap<BundleContextImpl, CopyOnWriteIdentityMap<ServiceListener, FilteredServiceListener>> serviceEventListeners;
 
 	/** initial capacity of the main data structure */
 	private static final int initialCapacity = 50;
@@ -94,7 +104,7 @@ public class ServiceRegistry {
 		publishedServicesByClass = new HashMap<String, List<ServiceRegistrationImpl<?>>>(initialCapacity);
 		publishedServicesByContext = new HashMap<BundleContextImpl, List<ServiceRegistrationImpl<?>>>(initialCapacity);
 		allPublishedServices = new ArrayList<ServiceRegistrationImpl<?>>(initialCapacity);
-		serviceEventListeners = new HashMap<BundleContextImpl, CopyOnWriteIdentityMap<ServiceListener, FilteredServiceListener>>(initialCapacity);
+		serviceEventListeners = new CopyOnWriteIdentityMap<BundleContextImpl, CopyOnWriteIdentityMap<ServiceListener, FilteredServiceListener>>();
 		Module systemModule = container.getStorage().getModuleContainer().getModule(0);
 		systemBundleContext = (BundleContextImpl) systemModule.getBundle().getBundleContext();
 		systemBundleContext.provisionServicesInUseMap();
@@ -178,6 +188,130 @@ public class ServiceRegistry {
 	 * @see ServiceFactory
 	 */
 	public ServiceRegistrationImpl<?> registerService(BundleContextImpl context, String[] clazzes, Object service, Dictionary<String, ?> properties) {
+		clazzes = checkServiceRegistration(clazzes, service);
+		Timeline timeline = container.getTimeline();
+		long start = timeline == null ? 0 : System.nanoTime();
+		ServiceRegistrationImpl<?> registration = new ServiceRegistrationImpl<Object>(this, context, clazzes, service);
+		registration.register(properties);
+		if (Arrays.asList(clazzes).contains(listenerHookName)) {
+			notifyNewListenerHook(registration);
+		}
+		if (timeline != null) {
+			timeline.record(Timeline.Type.SERVICE_REGISTER, start, context.getBundleImpl().getBundleId(), clazzes[0]);
+		}
+		return registration;
+	}
+
+	/**
+	 * Registers a batch of services.  The services are added to the registry
+	 * in a single pass while holding the registry lock and then the
+	 * {@link ServiceEvent#REGISTERED} events are published in the order of the
+	 * specified services.  The event hooks and event listener hooks called for
+	 * the events are looked up once for the batch.
+	 * <p>
+	 * Each service is checked as by {@link #registerService(BundleContextImpl, String[], Object, Dictionary)}
+	 * before any service is registered; if a check fails no service is registered.
+	 * 
+	 * @param context The BundleContext of the registering bundle.
+	 * @param clazzes The class names under which each service can be located.
+	 * @param services The service objects or <code>ServiceFactory</code> objects.
+	 * @param properties The properties for each service; a <code>null</code>
+	 *        element is allowed for a service without properties.
+	 * @return The registrations of the services in the order of the specified services.
+	 * @throws java.lang.IllegalArgumentException If the lists are not of the same
+	 *         size or a service cannot be registered as described by
+	 *         {@link #registerService(BundleContextImpl, String[], Object, Dictionary)}.
+	 * @throws java.lang.SecurityException If the caller does not have the
+	 *         <code>ServicePermission</code> to register a service.
+	 * @throws java.lang.IllegalStateException If this BundleContext is no
+	 *         longer valid.
+	 */
+	public List<ServiceRegistrationImpl<?>> registerServices(BundleContextImpl context, List<String[]> clazzes, List<?> services, List<? extends Dictionary<String, ?>> properties) {
+		int size = services.size();
+		if (clazzes.size() != size || properties.size() != size) {
+			throw new IllegalArgumentException("The number of class names, services and properties must be equal."); //$NON-NLS-1$
+		}
+		List<String[]> checkedClazzes = new ArrayList<String[]>(size);
+		for (int i = 0; i < size; i++) {
+			checkedClazzes.add(checkServiceRegistration(clazzes.get(i), services.get(i)));
+		}
+		Timeline timeline = container.getTimeline();
+		long start = timeline == null ? 0 : System.nanoTime();
+		List<ServiceRegistrationImpl<?>> registrations = new ArrayList<ServiceRegistrationImpl<?>>(size);
+		for (int i = 0; i < size; i++) {
+			registrations.add(new ServiceRegistrationImpl<Object>(this, context, checkedClazzes.get(i), services.get(i)));
+		}
+		List<ServiceEvent> events = new ArrayList<ServiceEvent>(size);
+		synchronized (this) {
+			context.checkValid();
+			for (int i = 0; i < size; i++) {
+				events.add(new ServiceEvent(ServiceEvent.REGISTERED, registrations.get(i).prepareRegister(properties.get(i))));
+			}
+			addServiceRegistrations(context, registrations);
+		}
+
+		/* must not hold the registrations lock when the events are published */
+		publishServiceEvents(events);
+		for (int i = 0; i < size; i++) {
+			if (Arrays.asList(checkedClazzes.get(i)).contains(listenerHookName)) {
+				notifyNewListenerHook(registrations.get(i));
+			}
+		}
+		if (timeline != null) {
+			timeline.record(Timeline.Type.SERVICE_REGISTER, start, context.getBundleImpl().getBundleId(), Integer.valueOf(size));
+		}
+		return registrations;
+	}
+
+	/**
+	 * Unregisters a batch of services.  The services are removed from the registry
+	 * in a single pass while holding the registry lock and then the
+	 * {@link ServiceEvent#UNREGISTERING} events are published in the order of the
+	 * specified registrations.  The event hooks and event listener hooks called for
+	 * the events are looked up once for the batch.
+	 * 
+	 * @param registrations The registrations to unregister.
+	 * @throws java.lang.IllegalArgumentException If a registration is not a
+	 *         registration of this registry.
+	 * @throws java.lang.IllegalStateException If a registration has already been
+	 *         unregistered or is contained more than once.  No service is unregistered
+	 *         in this case.
+	 */
+	public void unregisterServices(Collection<? extends ServiceRegistration<?>> registrations) {
+		List<ServiceRegistrationImpl<?>> toUnregister = new ArrayList<ServiceRegistrationImpl<?>>(registrations.size());
+		for (ServiceRegistration<?> registration : registrations) {
+			if (!(registration instanceof ServiceRegistrationImpl) || ((ServiceRegistrationImpl<?>) registration).getRegistry() != this) {
+				throw new IllegalArgumentException(String.valueOf(registration));
+			}
+			toUnregister.add((ServiceRegistrationImpl<?>) registration);
+		}
+		List<ServiceEvent> events = new ArrayList<ServiceEvent>(toUnregister.size());
+		synchronized (this) {
+			Set<ServiceRegistrationImpl<?>> checked = Collections.newSetFromMap(new IdentityHashMap<ServiceRegistrationImpl<?>, Boolean>());
+			for (ServiceRegistrationImpl<?> registration : toUnregister) {
+				if (!checked.add(registration)) {
+					throw new IllegalStateException(Msg.SERVICE_ALREADY_UNREGISTERED_EXCEPTION);
+				}
+				registration.checkRegistered();
+			}
+			removeServiceRegistrations(checked);
+			for (ServiceRegistrationImpl<?> registration : toUnregister) {
+				events.add(new ServiceEvent(ServiceEvent.UNREGISTERING, registration.prepareUnregister()));
+			}
+		}
+
+		/* must not hold the registrations lock when the events are published */
+		publishServiceEvents(events);
+		for (ServiceRegistrationImpl<?> registration : toUnregister) {
+			registration.completeUnregister();
+		}
+	}
+
+	/**
+	 * Checks that a service can be registered.
+	 * @return the class names to register the service under; interned and without duplicates
+	 */
+	private String[] checkServiceRegistration(String[] clazzes, Object service) {
 		if (service == null) {
 			if (debug.DEBUG_SERVICES) {
 				Debug.println("Service object is null"); //$NON-NLS-1$
@@ -220,13 +354,7 @@ public class ServiceRegistry {
 				throw new IllegalArgumentException(NLS.bind(Msg.SERVICE_NOT_INSTANCEOF_CLASS_EXCEPTION, invalidService));
 			}
 		}
-
-		ServiceRegistrationImpl<?> registration = new ServiceRegistrationImpl<Object>(this, context, clazzes, service);
-		registration.register(properties);
-		if (copy.contains(listenerHookName)) {
-			notifyNewListenerHook(registration);
-		}
-		return registration;
+		return clazzes;
 	}
 
 	/**
@@ -809,23 +937,66 @@ public class ServiceRegistry {
 		}
 	}
 
+	/**
+	 * Deliver a batch of ServiceEvents in order.  The event hooks and event
+	 * listener hooks are looked up once for all the events.
+	 * 
+	 * @param events The ServiceEvents to deliver.
+	 */
+	void publishServiceEvents(final List<ServiceEvent> events) {
+		if (System.getSecurityManager() == null) {
+			publishServiceEventsPrivileged(events);
+		} else {
+			AccessController.doPrivileged(new PrivilegedAction<Void>() {
+				public Void run() {
+					publishServiceEventsPrivileged(events);
+					return null;
+				}
+			});
+		}
+	}
+
+	void publishServiceEventsPrivileged(List<ServiceEvent> events) {
+		if (events.size() == 1) {
+			publishServiceEventPrivileged(events.get(0));
+			return;
+		}
+		List<ServiceRegistrationImpl<?>> eventHooks = lookupServiceRegistrations(eventHookName, null);
+		List<ServiceRegistrationImpl<?>> eventListenerHooks = lookupServiceRegistrations(eventListenerHookName, null);
+		for (ServiceEvent event : events) {
+			publishServiceEventPrivileged(event, eventHooks, eventListenerHooks);
+		}
+	}
+
 	void publishServiceEventPrivileged(final ServiceEvent event) {
+		publishServiceEventPrivileged(event, null, null);
+	}
+
+	/**
+	 * Deliver a ServiceEvent.
+	 * 
+	 * @param event The ServiceEvent to deliver.
+	 * @param eventHooks The event hooks to call or <code>null</code> to look them up.
+	 * @param eventListenerHooks The event listener hooks to call or <code>null</code> to look them up.
+	 */
+	private void publishServiceEventPrivileged(final ServiceEvent event, List<ServiceRegistrationImpl<?>> eventHooks, List<ServiceRegistrationImpl<?>> eventListenerHooks) {
 		/* Build the listener snapshot */
 		Map<BundleContextImpl, Set<Map.Entry<ServiceListener, FilteredServiceListener>>> listenerSnapshot;
 		Set<Map.Entry<ServiceListener, FilteredServiceListener>> systemServiceListenersOrig = null;
 		BundleContextImpl systemContext = null;
-		synchronized (serviceEventListeners) {
-			listenerSnapshot = new HashMap<BundleContextImpl, Set<Map.Entry<ServiceListener, FilteredServiceListener>>>(serviceEventListeners.size());
-			for (Map.Entry<BundleContextImpl, CopyOnWriteIdentityMap<ServiceListener, FilteredServiceListener>> entry : serviceEventListeners.entrySet()) {
-				Map<ServiceListener, FilteredServiceListener> listeners = entry.getValue();
-				if (!listeners.isEmpty()) {
-					if (entry.getKey().getBundleImpl().getBundleId() == 0) {
-						systemContext = entry.getKey();
-						// make a copy that we can use to discard hook removals later
-						systemServiceListenersOrig = listeners.entrySet();
-					}
-					listenerSnapshot.put(entry.getKey(), listeners.entrySet());
+		// no lock is needed; the entry sets are snapshots of the copy on write maps
+		Set<Map.Entry<BundleContextImpl, CopyOnWriteIdentityMap<ServiceListener, FilteredServiceListener>>> contextListeners = serviceEventListeners.entrySet();
+		listenerSnapshot = new HashMap<BundleContextImpl, Set<Map.Entry<ServiceListener, FilteredServiceListener>>>(contextListeners.size());
+		for (Map.Entry<BundleContextImpl, CopyOnWriteIdentityMap<ServiceListener, FilteredServiceListener>> entry : contextListeners) {
+			Set<Map.Entry<ServiceListener, FilteredServiceListener>> listeners = entry.getValue().entrySet();
+			if (!listeners.isEmpty()) {
+				if (entry.getKey().getBundleImpl().getBundleId() == 0) {
+					systemContext = entry.getKey();
+					// copy the same snapshot so that hook removals can be discarded later;
+					// a second snapshot of the map could see a different set of listeners
+					systemServiceListenersOrig = new LinkedHashSet<Map.Entry<ServiceListener, FilteredServiceListener>>(listeners);
 				}
+				listenerSnapshot.put(entry.getKey(), listeners);
 			}
 		}
 
@@ -835,10 +1006,10 @@ public class ServiceRegistry {
 		 * entry from the snapshot.
 		 */
 		Collection<BundleContext> contexts = asBundleContexts(listenerSnapshot.keySet());
-		notifyEventHooksPrivileged(event, contexts);
+		notifyEventHooksPrivileged(event, contexts, eventHooks);
 		if (!listenerSnapshot.isEmpty()) {
 			Map<BundleContext, Collection<ListenerInfo>> listeners = new ShrinkableValueCollectionMap<BundleContext, ListenerInfo>(listenerSnapshot);
-			notifyEventListenerHooksPrivileged(event, listeners);
+			notifyEventListenerHooksPrivileged(event, listeners, eventListenerHooks);
 		}
 		// always add back the system service listeners if they were removed
 		if (systemServiceListenersOrig != null) {
@@ -884,6 +1055,49 @@ public class ServiceRegistry {
 		return id;
 	}
 
+	void serviceChanged() {
+		changeCount.incrementAndGet();
+	}
+
+	private void registrationsChanged() {
+		registrationChangeCount.incrementAndGet();
+		serviceChanged();
+	}
+
+	/**
+	 * Returns the resource usage counters of the bundle of the specified context.
+	 * @param context the context of the bundle
+	 * @param create true if the counters are created if they do not exist yet.  Only
+	 * increasing a counter must create the counters.
+	 * @return the resource usage counters or {@code null} if the resource usage is not
+	 * accounted or the counters do not exist and are not created
+	 */
+	ResourceUsageImpl.Counters getResourceUsage(BundleContextImpl context, boolean create) {
+		ResourceUsageImpl usage = container.getStorage().getResourceUsage();
+		return usage == null ? null : usage.getCounters(context.getBundleImpl().getBundleId(), create);
+	}
+
+	/**
+	 * Returns a count which changes each time a service is registered, modified
+	 * or unregistered or the bundles using a service change.
+	 * 
+	 * @return The change count of this registry.
+	 */
+	public long getChangeCount() {
+		return changeCount.get();
+	}
+
+	/**
+	 * Returns a count which changes each time a service is registered, modified
+	 * or unregistered.  Unlike {@link #getChangeCount()} the count does not change
+	 * when the bundles using a service change.
+	 * 
+	 * @return The registration change count of this registry.
+	 */
+	public long getRegistrationChangeCount() {
+		return registrationChangeCount.get();
+	}
+
 	/**
 	 * Add the ServiceRegistrationImpl to the data structure.
 	 * 
@@ -921,6 +1135,80 @@ public class ServiceRegistry {
 		// The list is sorted, so we must find the proper location to insert
 		insertIndex = -Collections.binarySearch(allPublishedServices, registration) - 1;
 		allPublishedServices.add(insertIndex, registration);
+		registrationsChanged();
+	}
+
+	/**
+	 * Add a batch of new ServiceRegistrationImpls to the data structure.  The sorted
+	 * lists are updated by merging the sorted registrations into them instead of
+	 * inserting each registration.
+	 * 
+	 * @param context The BundleContext of the bundle registering the services.
+	 * @param registrations The new ServiceRegistrations.
+	 */
+	/* @GuardedBy("this") */
+	void addServiceRegistrations(BundleContextImpl context, List<ServiceRegistrationImpl<?>> registrations) {
+		assert Thread.holdsLock(this);
+		if (registrations.size() == 1) {
+			addServiceRegistration(context, registrations.get(0));
+			return;
+		}
+		// Add the ServiceRegistrationImpls to the list of Services published by BundleContextImpl.
+		List<ServiceRegistrationImpl<?>> contextServices = publishedServicesByContext.get(context);
+		if (contextServices == null) {
+			contextServices = new ArrayList<ServiceRegistrationImpl<?>>(Math.max(initialSubCapacity, registrations.size()));
+			publishedServicesByContext.put(context, contextServices);
+		}
+		// The list is NOT sorted, so we just add
+		contextServices.addAll(registrations);
+
+		List<ServiceRegistrationImpl<?>> sorted = new ArrayList<ServiceRegistrationImpl<?>>(registrations);
+		Collections.sort(sorted);
+		// Group the sorted registrations by class name; each group stays sorted
+		Map<String, List<ServiceRegistrationImpl<?>>> sortedByClass = new HashMap<String, List<ServiceRegistrationImpl<?>>>();
+		for (ServiceRegistrationImpl<?> registration : sorted) {
+			for (String clazz : registration.getClasses()) {
+				List<ServiceRegistrationImpl<?>> added = sortedByClass.get(clazz);
+				if (added == null) {
+					added = new ArrayList<ServiceRegistrationImpl<?>>(initialSubCapacity);
+					sortedByClass.put(clazz, added);
+				}
+				added.add(registration);
+			}
+		}
+
+		// Merge the ServiceRegistrationImpls into the lists of Services published by Class Name.
+		for (Map.Entry<String, List<ServiceRegistrationImpl<?>>> entry : sortedByClass.entrySet()) {
+			List<ServiceRegistrationImpl<?>> services = publishedServicesByClass.get(entry.getKey());
+			if (services == null) {
+				services = new ArrayList<ServiceRegistrationImpl<?>>(Math.max(initialSubCapacity, entry.getValue().size()));
+				publishedServicesByClass.put(entry.getKey(), services);
+			}
+			mergeSorted(services, entry.getValue());
+		}
+
+		// Merge the ServiceRegistrationImpls into the list of all published Services.
+		mergeSorted(allPublishedServices, sorted);
+		registrationsChanged();
+	}
+
+	/**
+	 * Merges sorted registrations into a sorted list of registrations.
+	 * @param services the sorted list to merge into
+	 * @param added the sorted registrations to merge
+	 */
+	private static void mergeSorted(List<ServiceRegistrationImpl<?>> services, List<ServiceRegistrationImpl<?>> added) {
+		int i = services.size() - 1;
+		int j = added.size() - 1;
+		// grow the list and then fill it from the end
+		services.addAll(added);
+		for (int k = services.size() - 1; j >= 0; k--) {
+			if (i >= 0 && services.get(i).compareTo(added.get(j)) > 0) {
+				services.set(k, services.get(i--));
+			} else {
+				services.set(k, added.get(j--));
+			}
+		}
 	}
 
 	/**
@@ -952,6 +1240,7 @@ public class ServiceRegistry {
 		// The list is sorted, so we must find the proper location to insert
 		insertIndex = -Collections.binarySearch(allPublishedServices, registration) - 1;
 		allPublishedServices.add(insertIndex, registration);
+		registrationsChanged();
 	}
 
 	/**
@@ -980,6 +1269,61 @@ public class ServiceRegistry {
 
 		// Remove the ServiceRegistrationImpl from the list of all published Services.
 		allPublishedServices.remove(registration);
+		registrationsChanged();
+	}
+
+	/**
+	 * Remove a batch of ServiceRegistrationImpls from the data structure.  Each list
+	 * is filtered once instead of removing each registration.
+	 * 
+	 * @param registrations The ServiceRegistrations to remove.
+	 */
+	/* @GuardedBy("this") */
+	void removeServiceRegistrations(Set<ServiceRegistrationImpl<?>> registrations) {
+		assert Thread.holdsLock(this);
+		if (registrations.size() == 1) {
+			ServiceRegistrationImpl<?> registration = registrations.iterator().next();
+			removeServiceRegistration(registration.getContext(), registration);
+			return;
+		}
+		Set<BundleContextImpl> contexts = new HashSet<BundleContextImpl>();
+		Set<String> clazzes = new HashSet<String>();
+		for (ServiceRegistrationImpl<?> registration : registrations) {
+			contexts.add(registration.getContext());
+			clazzes.addAll(Arrays.asList(registration.getClasses()));
+		}
+		// Remove the ServiceRegistrationImpls from the lists of Services published by BundleContextImpl.
+		for (BundleContextImpl context : contexts) {
+			List<ServiceRegistrationImpl<?>> contextServices = publishedServicesByContext.get(context);
+			if (contextServices != null) {
+				removeAll(contextServices, registrations);
+			}
+		}
+
+		// Remove the ServiceRegistrationImpls from the lists of Services published by Class Name.
+		for (String clazz : clazzes) {
+			List<ServiceRegistrationImpl<?>> services = publishedServicesByClass.get(clazz);
+			removeAll(services, registrations);
+			if (services.isEmpty()) { // remove empty list
+				publishedServicesByClass.remove(clazz);
+			}
+		}
+
+		// Remove the ServiceRegistrationImpls from the list of all published Services.
+		removeAll(allPublishedServices, registrations);
+		registrationsChanged();
+	}
+
+	private static void removeAll(List<ServiceRegistrationImpl<?>> services, Set<ServiceRegistrationImpl<?>> removed) {
+		int size = services.size();
+		int k = 0;
+		for (int i = 0; i < size; i++) {
+			ServiceRegistrationImpl<?> registration = services.get(i);
+			if (!removed.contains(registration)) {
+				services.set(k++, registration);
+			}
+		}
+		services.subList(k, size).clear();
 	}
 
 	/**
@@ -1198,7 +1542,7 @@ public class ServiceRegistry {
 	 * @param event The service event to be delivered.
 	 * @param result The result to return to the caller which may have been shrunk by the EventHooks.
 	 */
-	private void notifyEventHooksPrivileged(final ServiceEvent event, final Collection<BundleContext> result) {
+	private void notifyEventHooksPrivileged(final ServiceEvent event, final Collection<BundleContext> result, List<ServiceRegistrationImpl<?>> hooks) {
 		if (debug.DEBUG_HOOKS) {
 			Debug.println("notifyServiceEventHooks(" + event.getType() + ":" + event.getServiceReference() + "," + result + ")"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ 
 		}
@@ -1217,7 +1561,7 @@ public class ServiceRegistry {
 			public String getHookMethodName() {
 				return "event"; //$NON-NLS-1$
 			}
-		});
+		}, hooks);
 	}
 
 	/**
@@ -1228,7 +1572,7 @@ public class ServiceRegistry {
 	 * @param event The service event to be delivered.
 	 * @param result The result to return to the caller which may have been shrunk by the EventListenerHooks.
 	 */
-	private void notifyEventListenerHooksPrivileged(final ServiceEvent event, final Map<BundleContext, Collection<ListenerInfo>> result) {
+	private void notifyEventListenerHooksPrivileged(final ServiceEvent event, final Map<BundleContext, Collection<ListenerInfo>> result, List<ServiceRegistrationImpl<?>> hooks) {
 		if (debug.DEBUG_HOOKS) {
 			Debug.println("notifyServiceEventListenerHooks(" + event.getType() + ":" + event.getServiceReference() + "," + result + ")"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ 
 		}
@@ -1246,7 +1590,7 @@ public class ServiceRegistry {
 			public String getHookMethodName() {
 				return "event"; //$NON-NLS-1$
 			}
-		});
+		}, hooks);
 	}
 
 	/**
@@ -1255,7 +1599,20 @@ public class ServiceRegistry {
 	 * @param hookContext Context to use when calling the hook services.
 	 */
 	public void notifyHooksPrivileged(HookContext hookContext) {
-		List<ServiceRegistrationImpl<?>> hooks = lookupServiceRegistrations(hookContext.getHookClassName(), null);
+		notifyHooksPrivileged(hookContext, null);
+	}
+
+	/**
+	 * Call the specified hook services or look up the registered hook services if
+	 * no hook services are specified.
+	 * 
+	 * @param hookContext Context to use when calling the hook services.
+	 * @param hooks The registrations of the hook services or <code>null</code>.
+	 */
+	private void notifyHooksPrivileged(HookContext hookContext, List<ServiceRegistrationImpl<?>> hooks) {
+		if (hooks == null) {
+			hooks = lookupServiceRegistrations(hookContext.getHookClassName(), null);
+		}
 		// Since the list is already sorted, we don't need to sort the list to call the hooks
 		// in the proper order.
 
@@ -1264,6 +1621,17 @@ public class ServiceRegistry {
 		}
 	}
 
+	/**
+	 * Returns the registrations of the hook services with the specified class name.
+	 * The registrations are in the order the hooks are called.
+	 * 
+	 * @param hookClassName The class name of the hook services.
+	 * @return The registrations of the hook services.
+	 */
+	public List<ServiceRegistrationImpl<?>> getHookRegistrations(String hookClassName) {
+		return lookupServiceRegistrations(hookClassName, null);
+	}
+
 	/**
 	 * Call a hook service via a hook context.
 	 * 
@@ -1319,11 +1687,9 @@ public class ServiceRegistry {
 
 		// snapshot the listeners
 		Collection<ListenerInfo> addedListeners = new ArrayList<ListenerInfo>(initialCapacity);
-		synchronized (serviceEventListeners) {
-			for (CopyOnWriteIdentityMap<ServiceListener, FilteredServiceListener> listeners : serviceEventListeners.values()) {
-				if (!listeners.isEmpty()) {
-					addedListeners.addAll(listeners.values());
-				}
+		for (CopyOnWriteIdentityMap<ServiceListener, FilteredServiceListener> listeners : serviceEventListeners.values()) {
+			if (!listeners.isEmpty()) {
+				addedListeners.addAll(listeners.values());
 			}
 		}
 
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2012 IBM Corporation and others.
+ * Copyright (c) 2006, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -15,6 +15,8 @@ import java.io.FilterInputStream;
 import java.io.IOException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.eclipse.osgi.signedcontent.InvalidContentException;
 import org.eclipse.osgi.signedcontent.SignerInfo;
 import org.eclipse.osgi.storage.bundlefile.BundleEntry;
@@ -27,6 +29,8 @@ import org.eclipse.osgi.util.NLS;
  * if the calculated digest do not match the expected digests.
  */
 class DigestedInputStream extends FilterInputStream {
+	// unused message digests keyed by algorithm; these are cloned to avoid a provider lookup for each entry
+	private static final ConcurrentMap<String, MessageDigest> digestPrototypes = new ConcurrentHashMap<String, MessageDigest>();
 	private final MessageDigest digests[];
 	private final byte result[][];
 	private final BundleEntry entry;
@@ -51,10 +55,36 @@ class DigestedInputStream extends FilterInputStream {
 		this.remaining = size;
 		this.digests = new MessageDigest[signerInfos.length];
 		for (int i = 0; i < signerInfos.length; i++)
-			this.digests[i] = MessageDigest.getInstance(signerInfos[i].getMessageDigestAlgorithm());
+			this.digests[i] = getMessageDigest(signerInfos[i].getMessageDigestAlgorithm());
 		this.result = results;
 	}
 
+	/**
+	 * Returns a new message digest for the specified algorithm.
+	 * @param algorithm the digest algorithm
+	 * @return a new message digest
+	 * @throws NoSuchAlgorithmException if the algorithm is not available
+	 */
+	static MessageDigest getMessageDigest(String algorithm) throws NoSuchAlgorithmException {
+		MessageDigest prototype = digestPrototypes.get(algorithm);
+		if (prototype != null) {
+			try {
+				return (MessageDigest) prototype.clone();
+			} catch (CloneNotSupportedException e) {
+				// fall through and get a new instance
+			}
+		}
+		MessageDigest result = MessageDigest.getInstance(algorithm);
+		if (prototype == null) {
+			try {
+				digestPrototypes.putIfAbsent(algorithm, (MessageDigest) result.clone());
+			} catch (CloneNotSupportedException e) {
+				// the provider does not support cloning; always get a new instance
+			}
+		}
+		return result;
+	}
+
 	/**
 	 * Not supported.
 	 */
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2013 IBM Corporation and others. All rights reserved.
+ * Copyright (c) 2007, 2014 IBM Corporation and others. All rights reserved.
  * This program and the accompanying materials are made available under the
  * terms of the Eclipse Public License v1.0 which accompanies this distribution,
  * and is available at http://www.eclipse.org/legal/epl-v10.html
@@ -310,9 +310,9 @@ public class SignatureBlockProcessor implements SignedContentConstants {
 		return new String(Base64.encode(digest.digest(bytes)));
 	}
 
-	synchronized MessageDigest getMessageDigest(String algorithm) {
+	MessageDigest getMessageDigest(String algorithm) {
 		try {
-			return MessageDigest.getInstance(algorithm);
+			return DigestedInputStream.getMessageDigest(algorithm);
 		} catch (NoSuchAlgorithmException e) {
 			signedBundleHook.log(e.getMessage(), FrameworkLogEntry.ERROR, e);
 		}
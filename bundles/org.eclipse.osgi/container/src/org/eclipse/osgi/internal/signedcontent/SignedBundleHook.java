@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2013 IBM Corporation and others.
+ * Copyright (c) 2006, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -152,11 +152,16 @@ public class SignedBundleHook implements ActivatorHookFactory, BundleFileWrapper
 				StorageHookImpl hook = generation.getStorageHook(SignedStorageHook.class);
 				SignedBundleFile signedBaseFile;
 				if (base && hook != null) {
+					if (hook.verified && hook.signedContent == null)
+						// the persisted result says the content is unsigned; no need to process the signature blocks again
+						return null;
 					signedBaseFile = new SignedBundleFile(bundleFile, hook.signedContent, supportSignedBundles, this);
 					if (hook.signedContent == null) {
 						signedBaseFile.initializeSignedContent();
 						SignedContentImpl signedContent = signedBaseFile.getSignedContent();
-						hook.signedContent = signedContent != null && signedContent.isSigned() ? signedContent : null;
+						hook.setVerified(signedContent != null && signedContent.isSigned() ? signedContent : null);
+						// persist the result so the signature blocks are not processed again on the next launch
+						generation.getBundleInfo().getStorage().storageHookDataChanged();
 					}
 				} else
 					signedBaseFile = new SignedBundleFile(bundleFile, null, supportSignedBundles, this);
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2013 IBM Corporation and others. All rights reserved.
+ * Copyright (c) 2006, 2014 IBM Corporation and others. All rights reserved.
  * This program and the accompanying materials are made available under the
  * terms of the Eclipse Public License v1.0 which accompanies this distribution,
  * and is available at http://www.eclipse.org/legal/epl-v10.html
@@ -9,8 +9,10 @@
 package org.eclipse.osgi.internal.signedcontent;
 
 import java.io.*;
+import java.security.AccessController;
 import java.security.cert.*;
 import java.util.*;
+import org.eclipse.osgi.framework.util.SecureAction;
 import org.eclipse.osgi.internal.hookregistry.StorageHookFactory;
 import org.eclipse.osgi.signedcontent.SignedContent;
 import org.eclipse.osgi.signedcontent.SignerInfo;
@@ -18,7 +20,8 @@ import org.eclipse.osgi.storage.BundleInfo.Generation;
 import org.osgi.framework.BundleException;
 
 public class SignedStorageHook extends StorageHookFactory<List<SignerInfo>, List<SignerInfo>, SignedStorageHook.StorageHookImpl> {
-	private static final int STORAGE_VERSION = 4;
+	private static final int STORAGE_VERSION = 6;
+	static final SecureAction secureAction = AccessController.doPrivileged(SecureAction.createSecureAction());
 
 	public int getStorageVersion() {
 		return STORAGE_VERSION;
@@ -41,6 +44,11 @@ public class SignedStorageHook extends StorageHookFactory<List<SignerInfo>, List
 
 	static class StorageHookImpl extends StorageHookFactory.StorageHook<List<SignerInfo>, List<SignerInfo>> {
 		SignedContentImpl signedContent;
+		// indicates the content has been processed; signedContent is null if the content is unsigned
+		boolean verified;
+		// the last modified time and the length of the content when it was processed
+		private long contentLastModified;
+		private long contentLength;
 
 		public StorageHookImpl(Generation generation) {
 			super(generation, SignedStorageHook.class);
@@ -51,11 +59,46 @@ public class SignedStorageHook extends StorageHookFactory<List<SignerInfo>, List
 			// do nothing
 		}
 
+		/**
+		 * Records the result of processing the signature blocks of the content.
+		 * @param result the signed content or null if the content is unsigned
+		 */
+		void setVerified(SignedContentImpl result) {
+			signedContent = result;
+			verified = true;
+			File content = getContentStampFile();
+			contentLastModified = secureAction.lastModified(content);
+			contentLength = secureAction.length(content);
+		}
+
+		private boolean isContentUnchanged() {
+			File content = getContentStampFile();
+			return contentLastModified == secureAction.lastModified(content) && contentLength == secureAction.length(content);
+		}
+
+		private File getContentStampFile() {
+			File content = getGeneration().getContent();
+			// signing a directory bundle rewrites its manifest with the entry digests
+			return getGeneration().isDirectory() ? new File(content, "META-INF/MANIFEST.MF") : content; //$NON-NLS-1$
+		}
+
 		@Override
 		public void load(List<SignerInfo> loadContext, DataInputStream is) throws IOException {
+			verified = is.readBoolean();
+			contentLastModified = is.readLong();
+			contentLength = is.readLong();
+			signedContent = loadSignedContent(loadContext, is);
+			if (verified && !isContentUnchanged()) {
+				// the content got replaced since it was processed; process it again
+				verified = false;
+				signedContent = null;
+			}
+		}
+
+		private SignedContentImpl loadSignedContent(List<SignerInfo> loadContext, DataInputStream is) throws IOException {
 			boolean signed = is.readBoolean();
 			if (!signed)
-				return;
+				return null;
 			int numSigners = is.readInt();
 			SignerInfo[] signerInfos = new SignerInfo[numSigners];
 			for (int i = 0; i < numSigners; i++)
@@ -88,7 +131,7 @@ public class SignedStorageHook extends StorageHookFactory<List<SignerInfo>, List
 				Date signingDate = new Date(is.readLong());
 				result.addTSASignerInfo(signerInfos[i], tsaSigner, signingDate);
 			}
-			signedContent = result;
+			return result;
 		}
 
 		private SignerInfo readSignerInfo(DataInputStream is, List<SignerInfo> loadContext) throws IOException {
@@ -115,6 +158,9 @@ public class SignedStorageHook extends StorageHookFactory<List<SignerInfo>, List
 
 		@Override
 		public void save(List<SignerInfo> saveContext, DataOutputStream os) throws IOException {
+			os.writeBoolean(verified);
+			os.writeLong(contentLastModified);
+			os.writeLong(contentLength);
 			os.writeBoolean(signedContent != null);
 			if (signedContent == null)
 				return;
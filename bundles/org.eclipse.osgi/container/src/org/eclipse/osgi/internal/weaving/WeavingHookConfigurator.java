@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2012 IBM Corporation and others.
+ * Copyright (c) 2010, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -17,18 +17,36 @@ import org.eclipse.osgi.internal.loader.BundleLoader;
 import org.eclipse.osgi.internal.loader.ModuleClassLoader;
 import org.eclipse.osgi.internal.loader.classpath.ClasspathEntry;
 import org.eclipse.osgi.internal.loader.classpath.ClasspathManager;
+import org.eclipse.osgi.internal.serviceregistry.ServiceRegistrationImpl;
 import org.eclipse.osgi.internal.serviceregistry.ServiceRegistry;
 import org.eclipse.osgi.storage.bundlefile.BundleEntry;
 import org.osgi.framework.*;
+import org.osgi.framework.hooks.weaving.WeavingHook;
 
 public class WeavingHookConfigurator extends ClassLoaderHook {
 	// holds the map of black listed hooks.  Use weak map to avoid pinning and simplify cleanup.
 	private final Map<ServiceRegistration<?>, Boolean> blackList = Collections.synchronizedMap(new WeakHashMap<ServiceRegistration<?>, Boolean>());
 	// holds the stack of WovenClass objects currently being used to define classes
 	private final ThreadLocal<List<WovenClassImpl>> wovenClassStack = new ThreadLocal<List<WovenClassImpl>>();
+	// holds the weaving hooks which were active the last time the registrations or the black list changed
+	private volatile WeavingHooks weavingHooks;
 
 	private final EquinoxContainer container;
 
+	private static final class WeavingHooks {
+		final long changeCount;
+		final int blackListSize;
+		final boolean active;
+		final String cacheKey;
+
+		WeavingHooks(long changeCount, int blackListSize, boolean active, String cacheKey) {
+			this.changeCount = changeCount;
+			this.blackListSize = blackListSize;
+			this.active = active;
+			this.cacheKey = cacheKey;
+		}
+	}
+
 	public WeavingHookConfigurator(EquinoxContainer container) {
 		this.container = container;
 	}
@@ -37,6 +55,50 @@ public class WeavingHookConfigurator extends ClassLoaderHook {
 		return container.getServiceRegistry();
 	}
 
+	private WeavingHooks getWeavingHooks(ServiceRegistry registry) {
+		long changeCount = registry.getRegistrationChangeCount();
+		int blackListSize = blackList.size();
+		WeavingHooks current = weavingHooks;
+		if (current != null && current.changeCount == changeCount && current.blackListSize == blackListSize)
+			return current;
+		boolean active = false;
+		StringBuilder key = new StringBuilder(getClass().getName());
+		for (ServiceRegistrationImpl<?> registration : registry.getHookRegistrations(WeavingHook.class.getName())) {
+			if (blackList.containsKey(registration))
+				continue;
+			ServiceReference<?> reference;
+			try {
+				reference = registration.getReference();
+			} catch (IllegalStateException e) {
+				continue; // unregistered in the meantime
+			}
+			Bundle bundle = reference.getBundle();
+			if (bundle == null)
+				continue; // unregistered in the meantime
+			active = true;
+			key.append(',').append(bundle.getSymbolicName()).append('_').append(bundle.getVersion()).append('@').append(bundle.getLastModified());
+			// the properties may configure the hook; the id changes with each registration
+			String[] propertyKeys = reference.getPropertyKeys();
+			Arrays.sort(propertyKeys);
+			for (String propertyKey : propertyKeys) {
+				if (Constants.SERVICE_ID.equals(propertyKey))
+					continue;
+				Object value = reference.getProperty(propertyKey);
+				key.append(';').append(propertyKey).append('=').append(value instanceof Object[] ? Arrays.deepToString((Object[]) value) : String.valueOf(value));
+			}
+		}
+		current = new WeavingHooks(changeCount, blackListSize, active, key.toString());
+		weavingHooks = current;
+		return current;
+	}
+
+	@Override
+	public boolean isProcessClassRequired(String name, ClasspathEntry classpathEntry, BundleEntry entry, ClasspathManager manager) {
+		ServiceRegistry registry = getRegistry();
+		// only weaving hooks that are not black listed get called
+		return registry != null && getWeavingHooks(registry).active;
+	}
+
 	public byte[] processClass(String name, byte[] classbytes, ClasspathEntry classpathEntry, BundleEntry entry, ClasspathManager manager) {
 		ServiceRegistry registry = getRegistry();
 		if (registry == null)
@@ -65,14 +127,45 @@ public class WeavingHookConfigurator extends ClassLoaderHook {
 		}
 	}
 
+	@Override
+	public void processCachedClass(String name, byte[] classbytes, ClasspathEntry classpathEntry, BundleEntry entry, ClasspathManager manager) {
+		ServiceRegistry registry = getRegistry();
+		if (registry == null || !getWeavingHooks(registry).active)
+			return;
+		// the cached bytes were woven by the same hooks; announce the transformation to the listeners
+		WovenClassImpl wovenClass = new WovenClassImpl(name, classbytes, entry, classpathEntry, manager.getClassLoader().getBundleLoader(), container, blackList);
+		List<WovenClassImpl> wovenClasses = wovenClassStack.get();
+		if (wovenClasses == null) {
+			wovenClasses = new ArrayList<WovenClassImpl>(6);
+			wovenClassStack.set(wovenClasses);
+		}
+		wovenClasses.add(wovenClass);
+		wovenClass.replayHooks();
+	}
+
 	public void recordClassDefine(String name, Class<?> clazz, byte[] classbytes, ClasspathEntry classpathEntry, BundleEntry entry, ClasspathManager manager) {
-		// here we assume the stack contans a woven class with the same name as the class we are defining.
+		// the stack contains a woven class with the same name as the class we are defining
+		// unless no weaving hook was active and processClass was not called.
 		List<WovenClassImpl> wovenClasses = wovenClassStack.get();
 		if (wovenClasses == null || wovenClasses.size() == 0)
 			return;
+		if (!name.equals(wovenClasses.get(wovenClasses.size() - 1).getClassName()))
+			return;
 		WovenClassImpl wovenClass = wovenClasses.remove(wovenClasses.size() - 1);
 		// inform the woven class about the class that was defined.
 		wovenClass.setWeavingCompleted(clazz);
 	}
 
+	/**
+	 * Returns a key which includes each registered weaving hook with the symbolic name, version 
+	 * and last modified time of the bundle which registered it and the properties of the hook.
+	 * The key is only built again when the service registrations or the black list change.
+	 */
+	public String getClassCacheKey() {
+		ServiceRegistry registry = getRegistry();
+		if (registry == null)
+			return getClass().getName();
+		return getWeavingHooks(registry).cacheKey;
+	}
+
 }
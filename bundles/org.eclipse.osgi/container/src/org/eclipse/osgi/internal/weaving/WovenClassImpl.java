@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2013 IBM Corporation and others.
+ * Copyright (c) 2010, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -171,6 +171,18 @@ public final class WovenClassImpl implements WovenClass, HookContext {
 		}
 	}
 
+	/**
+	 * Announces a transformation which the weaving hooks did before the class bytes
+	 * were stored in the class cache.  The hooks are not called again but the woven
+	 * class listeners are notified as if they were.
+	 */
+	void replayHooks() {
+		hookFlags |= FLAG_HOOKCALLED;
+		setHooksComplete();
+		setState(TRANSFORMED);
+		notifyWovenClassListeners();
+	}
+
 	private boolean validBytes(byte[] checkBytes) {
 		if (checkBytes == null || checkBytes.length < 4)
 			return false;
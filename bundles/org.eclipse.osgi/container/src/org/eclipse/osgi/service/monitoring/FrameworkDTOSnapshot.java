@@ -0,0 +1,41 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.osgi.service.monitoring;
+
+import org.osgi.dto.framework.FrameworkDTO;
+
+/**
+ * An immutable snapshot of the state of the framework.  The version and the
+ * framework DTO of a snapshot always belong together.
+ * <p>
+ * This interface is not intended to be implemented by clients.
+ * </p>
+ * @see FrameworkState#getSnapshot()
+ * @since 3.10
+ * @noimplement This interface is not intended to be implemented by clients.
+ */
+public interface FrameworkDTOSnapshot {
+	/**
+	 * Returns the version of this snapshot.  The version increases each time
+	 * a snapshot is taken of a changed framework state.
+	 * @return the version of this snapshot
+	 */
+	public long getVersion();
+
+	/**
+	 * Returns the framework DTO of this snapshot.  Each call returns a new copy
+	 * of the DTO which the caller is free to modify.  Clients which poll the
+	 * framework state should compare the {@link #getVersion() version} of the
+	 * snapshots and only get the DTO of a snapshot with a new version.
+	 * @return a new copy of the framework DTO of this snapshot
+	 */
+	public FrameworkDTO getFrameworkDTO();
+}
@@ -0,0 +1,33 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.osgi.service.monitoring;
+
+/**
+ * The interface of the service that provides snapshots of the state of the
+ * framework for clients which poll the framework state.  The service is only
+ * registered by the system bundle if the <code>osgi.frameworkState</code>
+ * configuration property is set to true.
+ * <p>
+ * This interface is not intended to be implemented by clients.
+ * </p>
+ * @since 3.10
+ * @noimplement This interface is not intended to be implemented by clients.
+ */
+public interface FrameworkState {
+	/**
+	 * Returns the snapshot of the current framework state.  The same snapshot
+	 * is returned as long as the framework state does not change.  Getting the
+	 * snapshot without any changes does not allocate any objects nor does it
+	 * lock the service registry or the module database.
+	 * @return the snapshot of the current framework state
+	 */
+	public FrameworkDTOSnapshot getSnapshot();
+}
@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.osgi.service.monitoring;
+
+import java.util.List;
+
+/**
+ * The interface of the service that provides the timeline of the startup and
+ * activation events of the framework.  The service is only registered by the
+ * system bundle if the <code>osgi.timeline</code> configuration property is
+ * set to true.
+ * <p>
+ * Only the most recent events are kept by the timeline.
+ * </p>
+ * <p>
+ * This interface is not intended to be implemented by clients.
+ * </p>
+ * @since 3.10
+ * @noimplement This interface is not intended to be implemented by clients.
+ */
+public interface FrameworkTimeline {
+	/**
+	 * Returns the recorded events in the order the events ended.
+	 * @return the recorded events
+	 */
+	public List<TimelineEventDTO> getEvents();
+}
@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.osgi.service.monitoring;
+
+import java.util.List;
+
+/**
+ * The interface of the service that provides the resources used by each bundle.
+ * The service is only registered by the system bundle if the
+ * <code>osgi.resourceUsage</code> configuration property is set to true.
+ * <p>
+ * The resources of a bundle are accounted until the bundle is uninstalled.
+ * </p>
+ * <p>
+ * This interface is not intended to be implemented by clients.
+ * </p>
+ * @since 3.10
+ * @noimplement This interface is not intended to be implemented by clients.
+ */
+public interface ResourceUsage {
+	/**
+	 * Returns the resource usage of the specified bundle.
+	 * @param bundleId the id of the bundle
+	 * @return the resource usage of the bundle or <code>null</code> if no resources
+	 * got accounted for the bundle
+	 */
+	public ResourceUsageDTO getResourceUsageDTO(long bundleId);
+
+	/**
+	 * Returns the resource usage of all bundles which resources got accounted
+	 * for, sorted by bundle id.
+	 * @return the resource usage of the bundles
+	 */
+	public List<ResourceUsageDTO> getResourceUsageDTOs();
+}
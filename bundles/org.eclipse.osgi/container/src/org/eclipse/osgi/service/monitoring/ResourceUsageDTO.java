@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.osgi.service.monitoring;
+
+import org.osgi.dto.DTO;
+
+/**
+ * Data Transfer Object for the resource usage of a bundle.
+ *
+ * @see ResourceUsage
+ * @since 3.10
+ * @NotThreadSafe
+ */
+public class ResourceUsageDTO extends DTO {
+	/**
+	 * The id of the bundle.
+	 */
+	public long bundle;
+
+	/**
+	 * The number of classes defined by the class loader of the bundle.
+	 */
+	public long classesDefined;
+
+	/**
+	 * The number of class bytes read to define the classes.
+	 */
+	public long classBytesRead;
+
+	/**
+	 * The time in nanoseconds spent defining the classes.
+	 */
+	public long defineTime;
+
+	/**
+	 * The number of times the bundle files of the bundle got opened.
+	 */
+	public long bundleFileOpens;
+
+	/**
+	 * The number of times the bundle files of the bundle got opened again
+	 * after they got closed to limit the number of open files.
+	 */
+	public long bundleFileReopens;
+
+	/**
+	 * The number of resource lookups on the class path of the bundle.
+	 */
+	public long resourceLookups;
+
+	/**
+	 * The number of services currently registered by the bundle.
+	 */
+	public long servicesRegistered;
+
+	/**
+	 * The number of services currently used by the bundle.
+	 */
+	public long servicesInUse;
+}
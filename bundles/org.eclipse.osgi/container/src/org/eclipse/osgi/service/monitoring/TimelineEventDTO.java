@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.osgi.service.monitoring;
+
+import org.osgi.dto.DTO;
+
+/**
+ * Data Transfer Object for an event of the framework timeline.
+ *
+ * @see FrameworkTimeline
+ * @since 3.10
+ * @NotThreadSafe
+ */
+public class TimelineEventDTO extends DTO {
+	/**
+	 * The time in nanoseconds the event started, relative to the start of
+	 * the timeline.
+	 */
+	public long start;
+
+	/**
+	 * The duration of the event in nanoseconds.
+	 */
+	public long duration;
+
+	/**
+	 * The type of the event.  One of <code>STORAGE_LOAD</code>,
+	 * <code>DATABASE_LOAD</code>, <code>RESOLVE</code>, <code>START_LEVEL</code>,
+	 * <code>MODULE_START</code>, <code>ACTIVATOR_START</code>,
+	 * <code>LAZY_TRIGGER</code> or <code>SERVICE_REGISTER</code>.
+	 */
+	public String type;
+
+	/**
+	 * The id of the bundle of the event or -1 if the event does not belong
+	 * to a bundle.
+	 */
+	public long bundle;
+
+	/**
+	 * The detail of the event or <code>null</code>.
+	 */
+	public String detail;
+}
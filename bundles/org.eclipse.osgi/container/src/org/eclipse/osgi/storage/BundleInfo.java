@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2012, 2013 IBM Corporation and others.
+ * Copyright (c) 2012, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -53,16 +53,16 @@ public final class BundleInfo {
 
 		Generation(long generationId) {
 			this.generationId = generationId;
-			this.cachedHeaders = new CachedManifest(this, Collections.<String, String> emptyMap());
+			this.cachedHeaders = new CachedManifest(this, Collections.<String, String> emptyMap(), false);
 		}
 
-		Generation(long generationId, File content, boolean isDirectory, boolean isReference, boolean hasPackageInfo, Map<String, String> cached, long lastModified) {
+		Generation(long generationId, File content, boolean isDirectory, boolean isReference, boolean hasPackageInfo, Map<String, String> cached, boolean cachedAll, long lastModified) {
 			this.generationId = generationId;
 			this.content = content;
 			this.isDirectory = isDirectory;
 			this.isReference = isReference;
 			this.hasPackageInfo = hasPackageInfo;
-			this.cachedHeaders = new CachedManifest(this, cached);
+			this.cachedHeaders = cachedAll ? new CachedManifest(this, toHeaders(cached), true) : new CachedManifest(this, cached, false);
 			this.lastModified = lastModified;
 		}
 
@@ -95,6 +95,15 @@ public final class BundleInfo {
 			return cachedHeaders;
 		}
 
+		/**
+		 * Returns all the headers of the bundle manifest.  If the complete manifest got
+		 * restored from the persistent cache then the bundle file is not accessed.
+		 * @return all the headers of the bundle manifest
+		 */
+		Dictionary<String, String> getAllHeaders() {
+			return ((CachedManifest) cachedHeaders).getHeaders();
+		}
+
 		Headers<String, String> getRawHeaders() {
 			synchronized (genMonitor) {
 				if (rawHeaders == null) {
@@ -324,6 +333,9 @@ public final class BundleInfo {
 	private long nextGenerationId;
 	private final Object infoMonitor = new Object();
 	private LockSet<Long> generationLocks;
+	private volatile ResourceUsageImpl.Counters resourceUsage;
+	/* @GuardedBy("infoMonitor") */
+	private boolean deleted;
 
 	public BundleInfo(Storage storage, long bundleId, String location, long nextGenerationId) {
 		this.storage = storage;
@@ -369,9 +381,9 @@ public final class BundleInfo {
 		}
 	}
 
-	Generation restoreGeneration(long generationId, File content, boolean isDirectory, boolean isReference, boolean hasPackageInfo, Map<String, String> cached, long lastModified) {
+	Generation restoreGeneration(long generationId, File content, boolean isDirectory, boolean isReference, boolean hasPackageInfo, Map<String, String> cached, boolean cachedAll, long lastModified) {
 		synchronized (this.infoMonitor) {
-			Generation restoredGeneration = new Generation(generationId, content, isDirectory, isReference, hasPackageInfo, cached, lastModified);
+			Generation restoredGeneration = new Generation(generationId, content, isDirectory, isReference, hasPackageInfo, cached, cachedAll, lastModified);
 			return restoredGeneration;
 		}
 	}
@@ -380,7 +392,38 @@ public final class BundleInfo {
 		return storage;
 	}
 
+	/**
+	 * Returns the resource usage counters of this bundle or {@code null} if the
+	 * resource usage is not accounted or this bundle info is deleted.
+	 * @return the resource usage counters or {@code null}
+	 */
+	public ResourceUsageImpl.Counters getResourceUsage() {
+		ResourceUsageImpl.Counters current = resourceUsage;
+		if (current == null) {
+			ResourceUsageImpl usage = storage.getResourceUsage();
+			if (usage == null) {
+				return null;
+			}
+			synchronized (infoMonitor) {
+				// the class loader of an uninstalled bundle may still be used; do not create the counters again
+				if (deleted) {
+					return null;
+				}
+				current = usage.getCounters(bundleId, true);
+				resourceUsage = current;
+			}
+		}
+		return current;
+	}
+
 	public void delete() {
+		ResourceUsageImpl usage = storage.getResourceUsage();
+		if (usage != null) {
+			synchronized (infoMonitor) {
+				deleted = true;
+				usage.remove(bundleId);
+			}
+		}
 		try {
 			getStorage().delete(getStorage().getFile(Long.toString(getBundleId()), false));
 		} catch (IOException e) {
@@ -455,22 +498,48 @@ public final class BundleInfo {
 		return false;
 	}
 
+	static Headers<String, String> toHeaders(Map<String, String> headers) {
+		Headers<String, String> result = new Headers<String, String>(headers.size());
+		for (Map.Entry<String, String> header : headers.entrySet()) {
+			if (header.getValue() != null) {
+				result.set(header.getKey(), header.getValue(), true);
+			}
+		}
+		result.setReadOnly();
+		return result;
+	}
+
+	/**
+	 * The headers of a generation.  The cached headers are restored from the persistent
+	 * storage and can be read without accessing the bundle file.  If all headers are cached
+	 * then the bundle file is never accessed to read the manifest; otherwise headers which
+	 * are not cached are read from the raw manifest of the generation.
+	 */
 	static class CachedManifest extends Dictionary<String, String> implements Map<String, String> {
 		private final Map<String, String> cached;
+		private final Headers<String, String> all;
 		private final Generation generation;
 
-		CachedManifest(Generation generation, Map<String, String> cached) {
+		CachedManifest(Generation generation, Map<String, String> cached, boolean cachedAll) {
 			this.generation = generation;
 			this.cached = cached;
+			this.all = cachedAll ? (Headers<String, String>) cached : null;
+		}
+
+		Headers<String, String> getHeaders() {
+			return all != null ? all : generation.getRawHeaders();
 		}
 
 		@Override
 		public Enumeration<String> elements() {
-			return generation.getRawHeaders().elements();
+			return getHeaders().elements();
 		}
 
 		@Override
 		public String get(Object key) {
+			if (all != null) {
+				return all.get(key);
+			}
 			if (cached.containsKey(key)) {
 				return cached.get(key);
 			}
@@ -482,62 +551,62 @@ public final class BundleInfo {
 
 		@Override
 		public boolean isEmpty() {
-			return generation.getRawHeaders().isEmpty();
+			return getHeaders().isEmpty();
 		}
 
 		@Override
 		public Enumeration<String> keys() {
-			return generation.getRawHeaders().keys();
+			return getHeaders().keys();
 		}
 
 		@Override
 		public String put(String key, String value) {
-			return generation.getRawHeaders().put(key, value);
+			return getHeaders().put(key, value);
 		}
 
 		@Override
 		public String remove(Object key) {
-			return generation.getRawHeaders().remove(key);
+			return getHeaders().remove(key);
 		}
 
 		@Override
 		public int size() {
-			return generation.getRawHeaders().size();
+			return getHeaders().size();
 		}
 
 		@Override
 		public boolean containsKey(Object key) {
-			return cached.containsKey(key) || generation.getRawHeaders().containsKey(key);
+			return (all == null && cached.containsKey(key)) || getHeaders().containsKey(key);
 		}
 
 		@Override
 		public boolean containsValue(Object value) {
-			return cached.containsValue(value) || generation.getRawHeaders().containsValue(value);
+			return (all == null && cached.containsValue(value)) || getHeaders().containsValue(value);
 		}
 
 		@Override
 		public void putAll(Map<? extends String, ? extends String> m) {
-			generation.getRawHeaders().putAll(m);
+			getHeaders().putAll(m);
 		}
 
 		@Override
 		public void clear() {
-			generation.getRawHeaders().clear();
+			getHeaders().clear();
 		}
 
 		@Override
 		public Set<String> keySet() {
-			return generation.getRawHeaders().keySet();
+			return getHeaders().keySet();
 		}
 
 		@Override
 		public Collection<String> values() {
-			return generation.getRawHeaders().values();
+			return getHeaders().values();
 		}
 
 		@Override
 		public Set<java.util.Map.Entry<String, String>> entrySet() {
-			return generation.getRawHeaders().entrySet();
+			return getHeaders().entrySet();
 		}
 	}
 
@@ -0,0 +1,263 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.osgi.storage;
+
+import java.io.*;
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.eclipse.osgi.storage.BundleInfo.Generation;
+
+/**
+ * Records the classes defined by the bundle class loaders during a training run so
+ * that a class data sharing (CDS) archive can be dumped for them.
+ * <p>
+ * Two files are written to the {@link #CLASS_LIST_DIR} directory of the storage area
+ * when the framework is closed:
+ * <ul>
+ *   <li>{@link #CLASS_LIST_FILE} - a class list in the format of the
+ *   {@code -XX:SharedClassListFile} option of the VM.  Classes defined by bundle
+ *   class loaders are listed as classes of unregistered loaders with the jar file
+ *   they got loaded from as the source.</li>
+ *   <li>{@link #LOADERS_FILE} - the loader metadata.  It contains the content of the
+ *   installed bundles and, for each generation, the classpath sources and the
+ *   classes defined from them.</li>
+ * </ul>
+ * On later starts the recorded class list is kept and no recording takes place as
+ * long as the content of the installed bundles is unchanged.  Otherwise the class
+ * list is recorded again.
+ * <p>
+ * Only classes which are defined with the unmodified bytes of a class file in a jar
+ * can be shared; woven classes, classes from directories and classes whose super
+ * types cannot be shared are skipped.
+ */
+public final class ClassListRecorder {
+	public static final String CLASS_LIST_DIR = "classlist"; //$NON-NLS-1$
+	public static final String CLASS_LIST_FILE = "classes.lst"; //$NON-NLS-1$
+	public static final String LOADERS_FILE = "loaders.data"; //$NON-NLS-1$
+	private static final int VERSION = 2;
+
+	private final File root;
+	private final boolean recording;
+	// the defined classes in the order they got recorded; the ids are only assigned when writing
+	private final Queue<ClassRecord> records = new ConcurrentLinkedQueue<ClassRecord>();
+
+	private static final class ClassRecord {
+		// weak so recording does not prevent class unloading
+		final WeakReference<Class<?>> clazz;
+		final String generationKey;
+		final String source;
+
+		ClassRecord(Class<?> clazz, String generationKey, String source) {
+			this.clazz = new WeakReference<Class<?>>(clazz);
+			this.generationKey = generationKey;
+			this.source = source;
+		}
+	}
+
+	ClassListRecorder(File root, List<String> content) {
+		this.root = root;
+		this.recording = !content.equals(readContent());
+	}
+
+	/**
+	 * Returns {@code true} if this recorder records classes.  Recording is disabled if
+	 * the existing class list was recorded for the current content of the bundles.
+	 * @return {@code true} if classes are recorded
+	 */
+	public boolean isRecording() {
+		return recording;
+	}
+
+	/**
+	 * Records a class defined by a bundle class loader.
+	 * @param generation the generation which defines the class
+	 * @param clazz the defined class
+	 * @param source the file the class bytes got loaded from
+	 * @param transformed true if the defined bytes differ from the class file
+	 */
+	public void recordClassDefine(Generation generation, Class<?> clazz, File source, boolean transformed) {
+		if (!recording || transformed || source == null || !source.isFile()) {
+			return;
+		}
+		records.add(new ClassRecord(clazz, generation.getBundleInfo().getBundleId() + " " + generation.getGenerationId(), source.getAbsolutePath())); //$NON-NLS-1$
+	}
+
+	/**
+	 * Writes the recorded class list and loader metadata if classes got recorded.
+	 * @param content the content of the installed bundles
+	 * @throws IOException if an error occurs writing the files
+	 */
+	void write(List<String> content) throws IOException {
+		if (!recording || records.isEmpty()) {
+			return;
+		}
+		// a class may get recorded before its super types when they are defined concurrently;
+		// the super types are listed first when assigning the ids
+		Map<Class<?>, ClassRecord> recorded = new IdentityHashMap<Class<?>, ClassRecord>();
+		List<Class<?>> order = new ArrayList<Class<?>>();
+		for (ClassRecord record : records) {
+			Class<?> clazz = record.clazz.get();
+			if (clazz != null && recorded.put(clazz, record) == null) {
+				order.add(clazz);
+			}
+		}
+		// the id of a listed class is its line in the class list
+		Map<Class<?>, Integer> ids = new IdentityHashMap<Class<?>, Integer>();
+		List<String> classList = new ArrayList<String>();
+		// generation key -> (source -> class names)
+		Map<String, Map<String, List<String>>> loaders = new LinkedHashMap<String, Map<String, List<String>>>();
+		for (Class<?> clazz : order) {
+			getId(clazz, recorded, ids, classList, loaders);
+		}
+		if (loaders.isEmpty()) {
+			return;
+		}
+
+		root.mkdirs();
+		Writer classListOut = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(root, CLASS_LIST_FILE)), "UTF-8")); //$NON-NLS-1$
+		try {
+			for (String line : classList) {
+				classListOut.write(line);
+				classListOut.write('\n');
+			}
+		} finally {
+			classListOut.close();
+		}
+		DataOutputStream loadersOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(root, LOADERS_FILE))));
+		try {
+			loadersOut.writeInt(VERSION);
+			loadersOut.writeInt(content.size());
+			for (String bundleContent : content) {
+				loadersOut.writeUTF(bundleContent);
+			}
+			loadersOut.writeInt(loaders.size());
+			for (Map.Entry<String, Map<String, List<String>>> loader : loaders.entrySet()) {
+				loadersOut.writeUTF(loader.getKey());
+				loadersOut.writeInt(loader.getValue().size());
+				for (Map.Entry<String, List<String>> source : loader.getValue().entrySet()) {
+					loadersOut.writeUTF(source.getKey());
+					loadersOut.writeInt(source.getValue().size());
+					for (String className : source.getValue()) {
+						loadersOut.writeUTF(className);
+					}
+				}
+			}
+		} finally {
+			loadersOut.close();
+		}
+	}
+
+	private static Integer getId(Class<?> clazz, Map<Class<?>, ClassRecord> recorded, Map<Class<?>, Integer> ids, List<String> classList, Map<String, Map<String, List<String>>> loaders) {
+		if (clazz == null) {
+			return null;
+		}
+		if (ids.containsKey(clazz)) {
+			// null if the class could not be listed
+			return ids.get(clazz);
+		}
+		ClassRecord record = recorded.get(clazz);
+		if (record == null) {
+			if (!isBuiltinLoader(clazz.getClassLoader())) {
+				// a bundle class that was not recorded or a class of some other custom loader
+				ids.put(clazz, null);
+				return null;
+			}
+			// a class of a builtin loader; the VM loads it by name
+			Integer id = Integer.valueOf(classList.size());
+			ids.put(clazz, id);
+			classList.add(clazz.getName().replace('.', '/') + " id: " + id); //$NON-NLS-1$
+			return id;
+		}
+		// guards against cycles; the class cannot be listed until its super types are
+		ids.put(clazz, null);
+		// the VM expects java.lang.Object as the super class of interfaces
+		Integer superId = getId(clazz.isInterface() ? Object.class : clazz.getSuperclass(), recorded, ids, classList, loaders);
+		if (superId == null) {
+			return null;
+		}
+		Class<?>[] interfaces = clazz.getInterfaces();
+		Integer[] interfaceIds = new Integer[interfaces.length];
+		for (int i = 0; i < interfaces.length; i++) {
+			interfaceIds[i] = getId(interfaces[i], recorded, ids, classList, loaders);
+			if (interfaceIds[i] == null) {
+				return null;
+			}
+		}
+		Integer id = Integer.valueOf(classList.size());
+		ids.put(clazz, id);
+		StringBuilder line = new StringBuilder(clazz.getName().replace('.', '/'));
+		line.append(" id: ").append(id).append(" super: ").append(superId); //$NON-NLS-1$ //$NON-NLS-2$
+		if (interfaceIds.length > 0) {
+			line.append(" interfaces:"); //$NON-NLS-1$
+			for (Integer interfaceId : interfaceIds) {
+				line.append(' ').append(interfaceId);
+			}
+		}
+		line.append(" source: ").append(record.source); //$NON-NLS-1$
+		classList.add(line.toString());
+
+		Map<String, List<String>> sources = loaders.get(record.generationKey);
+		if (sources == null) {
+			sources = new LinkedHashMap<String, List<String>>();
+			loaders.put(record.generationKey, sources);
+		}
+		List<String> classes = sources.get(record.source);
+		if (classes == null) {
+			classes = new ArrayList<String>();
+			sources.put(record.source, classes);
+		}
+		classes.add(clazz.getName());
+		return id;
+	}
+
+	private static boolean isBuiltinLoader(ClassLoader loader) {
+		if (loader == null) {
+			return true;
+		}
+		for (ClassLoader builtin = ClassLoader.getSystemClassLoader(); builtin != null; builtin = builtin.getParent()) {
+			if (builtin == loader) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private List<String> readContent() {
+		File loadersFile = new File(root, LOADERS_FILE);
+		if (!loadersFile.isFile()) {
+			return null;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(loadersFile)));
+			if (in.readInt() != VERSION) {
+				return null;
+			}
+			int size = in.readInt();
+			List<String> content = new ArrayList<String>(size);
+			for (int i = 0; i < size; i++) {
+				content.add(in.readUTF());
+			}
+			return content;
+		} catch (IOException e) {
+			return null;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.osgi.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.osgi.framework.InvalidSyntaxException;
+
+/**
+ * A compiled file pattern as used by {@link org.osgi.framework.Bundle#findEntries(String, String, boolean)}.
+ * The pattern matches file names in the same way as a filter of the form
+ * <code>(filename=pattern)</code> does; the character <code>*</code> matches zero or
+ * more characters and the character <code>\</code> escapes the next character.
+ * <p>
+ * Matching is done on a region of an entry path so no file name strings need to be
+ * created to match the entries of a bundle file.
+ */
+final class FilePattern {
+	// the pattern operands; null for a wildcard
+	private final String[] operands;
+
+	private FilePattern(String[] operands) {
+		this.operands = operands;
+	}
+
+	/**
+	 * Compiles a file pattern.
+	 * @param filePattern the file pattern
+	 * @return the compiled file pattern
+	 * @throws InvalidSyntaxException if the pattern ends with an escape character
+	 */
+	static FilePattern compile(String filePattern) throws InvalidSyntaxException {
+		List<String> operands = new ArrayList<String>(5);
+		StringBuilder sb = new StringBuilder(filePattern.length());
+		for (int i = 0; i < filePattern.length(); i++) {
+			char c = filePattern.charAt(i);
+			switch (c) {
+				case '*' :
+					if (sb.length() > 0) {
+						operands.add(sb.toString());
+						sb.setLength(0);
+					}
+					// consecutive wildcards are the same as one wildcard
+					if (operands.isEmpty() || operands.get(operands.size() - 1) != null)
+						operands.add(null);
+					break;
+				case '\\' :
+					if (++i == filePattern.length())
+						throw new InvalidSyntaxException("Trailing escape characters must be escaped.", filePattern); //$NON-NLS-1$
+					sb.append(filePattern.charAt(i));
+					break;
+				default :
+					sb.append(c);
+					break;
+			}
+		}
+		if (sb.length() > 0 || operands.isEmpty())
+			operands.add(sb.toString());
+		return new FilePattern(operands.toArray(new String[operands.size()]));
+	}
+
+	/**
+	 * Returns true if the file name of the specified entry path matches this pattern.
+	 * The file name of a directory path is the name of the directory without the
+	 * trailing slash.
+	 * @param entryPath the entry path
+	 * @return true if the file name matches
+	 */
+	boolean matchFileName(String entryPath) {
+		int end = entryPath.length();
+		if (end > 0 && entryPath.charAt(end - 1) == '/')
+			end--;
+		int start = end == 0 ? 0 : entryPath.lastIndexOf('/', end - 1) + 1;
+		return matches(entryPath, start, end);
+	}
+
+	private boolean matches(String string, int start, int end) {
+		int pos = start;
+		for (int i = 0; i < operands.length; i++) {
+			String operand = operands[i];
+			boolean last = i == operands.length - 1;
+			if (operand == null) {
+				if (last)
+					return true;
+				String next = operands[++i];
+				if (i == operands.length - 1) {
+					// the last operand must match the end of the string
+					return end - next.length() >= pos && string.regionMatches(end - next.length(), next, 0, next.length());
+				}
+				int index = string.indexOf(next, pos);
+				if (index < 0 || index + next.length() > end)
+					return false;
+				pos = index + next.length();
+			} else {
+				if (end - pos < operand.length() || !string.regionMatches(pos, operand, 0, operand.length()))
+					return false;
+				pos += operand.length();
+				if (last)
+					return pos == end;
+			}
+		}
+		return pos == end;
+	}
+}
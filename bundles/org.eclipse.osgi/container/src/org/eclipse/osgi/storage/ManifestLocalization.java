@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2012 IBM Corporation and others.
+ * Copyright (c) 2004, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -14,6 +14,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.eclipse.osgi.container.*;
 import org.eclipse.osgi.framework.util.Headers;
 import org.eclipse.osgi.storage.BundleInfo.Generation;
@@ -25,11 +27,48 @@ import org.osgi.framework.wiring.BundleRevision;
  * This class is used to localize manifest headers for a revision.
  */
 public class ManifestLocalization {
+	// the maximum number of localized header snapshots kept for a generation
+	private static final int MAX_LOCALIZED_HEADERS = 16;
+	// the maximum number of NL variant chains shared by all generations
+	private static final int MAX_NL_VARIANTS = 64;
+	private static final ConcurrentMap<String, String[]> nlVariantsCache = new ConcurrentHashMap<String, String[]>();
+
 	final String defaultRoot;
 	private final Generation generation;
 	private final Dictionary<String, String> rawHeaders;
-	private volatile Dictionary<String, String> defaultLocaleHeaders = null;
-	private final Hashtable<String, BundleResourceBundle> cache = new Hashtable<String, BundleResourceBundle>(5);
+	private volatile LocalizationCache cache = null;
+
+	/*
+	 * The resource bundles and localized headers of a generation.  The cache is only
+	 * valid for the wiring it got created for; resource bundles may come from fragments
+	 * so a new cache is used when the bundle gets resolved or refreshed.  Fragments which
+	 * attach dynamically to a resolved host do not change the wiring of the host; the
+	 * cache is cleared by the loader of the host when the fragments get loaded.
+	 */
+	private static class LocalizationCache {
+		final ModuleWiring wiring;
+		// resource bundles keyed by locale; empty resource bundles are cached for missing variants
+		final ConcurrentMap<String, BundleResourceBundle> resourceBundles = new ConcurrentHashMap<String, BundleResourceBundle>(5);
+		// localized header snapshots keyed by locale
+		final ConcurrentMap<String, Dictionary<String, String>> localizedHeaders = new ConcurrentHashMap<String, Dictionary<String, String>>(5);
+		volatile Dictionary<String, String> defaultLocaleHeaders = null;
+
+		LocalizationCache(ModuleWiring wiring) {
+			this.wiring = wiring;
+		}
+
+		void putHeaders(String localeString, Dictionary<String, String> headers) {
+			if (localizedHeaders.size() >= MAX_LOCALIZED_HEADERS) {
+				// evict some locale to keep the cache bounded
+				Iterator<String> locales = localizedHeaders.keySet().iterator();
+				if (locales.hasNext()) {
+					locales.next();
+					locales.remove();
+				}
+			}
+			localizedHeaders.put(localeString, headers);
+		}
+	}
 
 	public ManifestLocalization(Generation generation, Dictionary<String, String> rawHeaders, String defaultRoot) {
 		this.generation = generation;
@@ -38,10 +77,17 @@ public class ManifestLocalization {
 	}
 
 	public void clearCache() {
-		synchronized (cache) {
-			cache.clear();
-			defaultLocaleHeaders = null;
+		cache = null;
+	}
+
+	private LocalizationCache getCache() {
+		ModuleWiring wiring = generation.getRevision().getWiring();
+		LocalizationCache current = cache;
+		if (current == null || current.wiring != wiring) {
+			current = new LocalizationCache(wiring);
+			cache = current;
 		}
+		return current;
 	}
 
 	Dictionary<String, String> getHeaders(String localeString) {
@@ -50,19 +96,26 @@ public class ManifestLocalization {
 		if (localeString.length() == 0)
 			return rawHeaders;
 		boolean isDefaultLocale = localeString.equals(Locale.getDefault().toString());
-		Dictionary<String, String> currentDefault = defaultLocaleHeaders;
-		if (isDefaultLocale && currentDefault != null) {
-			return currentDefault;
-		}
 		if (generation.getRevision().getRevisions().getModule().getState().equals(Module.State.UNINSTALLED)) {
 			// defaultLocaleHeaders should have been initialized on uninstall
-			if (currentDefault != null)
-				return currentDefault;
+			LocalizationCache current = cache;
+			if (current != null) {
+				Dictionary<String, String> localeHeaders = isDefaultLocale ? null : current.localizedHeaders.get(localeString);
+				if (localeHeaders == null)
+					localeHeaders = current.defaultLocaleHeaders;
+				if (localeHeaders != null)
+					return localeHeaders;
+			}
 			return rawHeaders;
 		}
-		ResourceBundle localeProperties = getResourceBundle(localeString, isDefaultLocale);
+		LocalizationCache current = getCache();
+		Dictionary<String, String> localeHeaders = isDefaultLocale ? current.defaultLocaleHeaders : current.localizedHeaders.get(localeString);
+		if (localeHeaders != null) {
+			return localeHeaders;
+		}
+		ResourceBundle localeProperties = getResourceBundle(current, localeString, isDefaultLocale);
 		Enumeration<String> eKeys = this.rawHeaders.keys();
-		Headers<String, String> localeHeaders = new Headers<String, String>(this.rawHeaders.size());
+		Headers<String, String> newHeaders = new Headers<String, String>(this.rawHeaders.size());
 		while (eKeys.hasMoreElements()) {
 			String key = eKeys.nextElement();
 			String value = this.rawHeaders.get(key);
@@ -74,16 +127,22 @@ public class ManifestLocalization {
 					value = propertiesKey;
 				}
 			}
-			localeHeaders.set(key, value);
+			newHeaders.set(key, value);
 		}
-		localeHeaders.setReadOnly();
+		newHeaders.setReadOnly();
 		if (isDefaultLocale) {
-			defaultLocaleHeaders = localeHeaders;
+			current.defaultLocaleHeaders = newHeaders;
+		} else {
+			current.putHeaders(localeString, newHeaders);
 		}
-		return (localeHeaders);
+		return newHeaders;
 	}
 
-	private String[] buildNLVariants(String nl) {
+	private static String[] buildNLVariants(String nl) {
+		String[] cached = nlVariantsCache.get(nl);
+		if (cached != null)
+			return cached;
+		String key = nl;
 		List<String> result = new ArrayList<String>();
 		while (nl.length() > 0) {
 			result.add(nl);
@@ -91,7 +150,11 @@ public class ManifestLocalization {
 			nl = (i < 0) ? "" : nl.substring(0, i); //$NON-NLS-1$
 		}
 		result.add(""); //$NON-NLS-1$
-		return result.toArray(new String[result.size()]);
+		String[] variants = result.toArray(new String[result.size()]);
+		// the number of locales in use is small; stop caching if some client uses many
+		if (nlVariantsCache.size() < MAX_NL_VARIANTS)
+			nlVariantsCache.put(key, variants);
+		return variants;
 	}
 
 	/*
@@ -99,34 +162,46 @@ public class ManifestLocalization {
 	 * bundle. If not found, return null.
 	 */
 	ResourceBundle getResourceBundle(String localeString, boolean isDefaultLocale) {
-		BundleResourceBundle resourceBundle = lookupResourceBundle(localeString);
+		return getResourceBundle(getCache(), localeString, isDefaultLocale);
+	}
+
+	private ResourceBundle getResourceBundle(LocalizationCache current, String localeString, boolean isDefaultLocale) {
+		BundleResourceBundle resourceBundle = lookupResourceBundle(current, localeString);
 		if (isDefaultLocale)
 			return (ResourceBundle) resourceBundle;
 		// need to determine if this is resource bundle is an empty stem
 		// if it is then the default locale should be used
 		if (resourceBundle == null || resourceBundle.isStemEmpty())
-			return (ResourceBundle) lookupResourceBundle(Locale.getDefault().toString());
+			return (ResourceBundle) lookupResourceBundle(current, Locale.getDefault().toString());
 		return (ResourceBundle) resourceBundle;
 	}
 
-	private BundleResourceBundle lookupResourceBundle(String localeString) {
+	private BundleResourceBundle lookupResourceBundle(LocalizationCache current, String localeString) {
+		Map<String, BundleResourceBundle> resourceBundles = current.resourceBundles;
+		BundleResourceBundle result = resourceBundles.get(localeString);
+		if (result != null)
+			return result.isEmpty() ? null : result;
 		// get the localization header as late as possible to avoid accessing the raw headers
 		// getting the first value from the raw headers forces the manifest to be parsed (bug 332039)
 		String localizationHeader = rawHeaders.get(Constants.BUNDLE_LOCALIZATION);
 		if (localizationHeader == null)
 			localizationHeader = Constants.BUNDLE_LOCALIZATION_DEFAULT_BASENAME;
-		synchronized (cache) {
-			BundleResourceBundle result = cache.get(localeString);
+		synchronized (resourceBundles) {
+			// check again now that the lock is held; another thread may have built the variants
+			result = resourceBundles.get(localeString);
 			if (result != null)
 				return result.isEmpty() ? null : result;
 			String[] nlVarients = buildNLVariants(localeString);
 			BundleResourceBundle parent = null;
 			for (int i = nlVarients.length - 1; i >= 0; i--) {
-				BundleResourceBundle varientBundle = null;
+				BundleResourceBundle varientBundle = resourceBundles.get(nlVarients[i]);
+				if (varientBundle != null) {
+					// the variant and its parents got looked up already for another locale
+					parent = varientBundle;
+					continue;
+				}
 				URL varientURL = findResource(localizationHeader + (nlVarients[i].equals("") ? nlVarients[i] : '_' + nlVarients[i]) + ".properties"); //$NON-NLS-1$ //$NON-NLS-2$
-				if (varientURL == null) {
-					varientBundle = cache.get(nlVarients[i]);
-				} else {
+				if (varientURL != null) {
 					InputStream resourceStream = null;
 					try {
 						resourceStream = varientURL.openStream();
@@ -149,10 +224,10 @@ public class ManifestLocalization {
 				}
 				if (parent != null)
 					varientBundle.setParent((ResourceBundle) parent);
-				cache.put(nlVarients[i], varientBundle);
+				resourceBundles.put(nlVarients[i], varientBundle);
 				parent = varientBundle;
 			}
-			result = cache.get(localeString);
+			result = resourceBundles.get(localeString);
 			return result.isEmpty() ? null : result;
 		}
 	}
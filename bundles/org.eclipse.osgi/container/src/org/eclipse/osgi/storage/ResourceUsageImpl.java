@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.osgi.storage;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.eclipse.osgi.service.monitoring.ResourceUsage;
+import org.eclipse.osgi.service.monitoring.ResourceUsageDTO;
+
+/**
+ * Accounts the resources used by each bundle.  The accounting is only enabled if
+ * the {@link org.eclipse.osgi.internal.framework.EquinoxConfiguration#PROP_RESOURCE_USAGE}
+ * configuration property is set to true.  Then the system bundle registers this
+ * object as the {@link ResourceUsage} service so the usage of the bundles can be queried.
+ * <p>
+ * Each bundle has its own counters so bundles never contend for the same counter.
+ * The counters of a bundle are kept until the bundle is uninstalled.
+ */
+public final class ResourceUsageImpl implements ResourceUsage {
+	private final ConcurrentMap<Long, Counters> counters = new ConcurrentHashMap<Long, Counters>();
+
+	/**
+	 * The resource usage counters of a bundle.
+	 */
+	public static final class Counters {
+		final long bundleId;
+		private final AtomicLong classesDefined = new AtomicLong();
+		private final AtomicLong classBytesRead = new AtomicLong();
+		private final AtomicLong defineTime = new AtomicLong();
+		private final AtomicLong bundleFileOpens = new AtomicLong();
+		private final AtomicLong bundleFileReopens = new AtomicLong();
+		private final AtomicLong resourceLookups = new AtomicLong();
+		private final AtomicLong servicesRegistered = new AtomicLong();
+		private final AtomicLong servicesInUse = new AtomicLong();
+
+		Counters(long bundleId) {
+			this.bundleId = bundleId;
+		}
+
+		/**
+		 * Records a class defined by the bundle class loader.
+		 * @param bytes the number of class bytes read for the class
+		 * @param nanos the time in nanoseconds it took to define the class
+		 */
+		public void classDefined(long bytes, long nanos) {
+			classesDefined.incrementAndGet();
+			classBytesRead.addAndGet(bytes);
+			defineTime.addAndGet(nanos);
+		}
+
+		/**
+		 * Records the opening of a bundle file.
+		 * @param reopen true if the bundle file got closed before and is opened again
+		 */
+		public void bundleFileOpened(boolean reopen) {
+			(reopen ? bundleFileReopens : bundleFileOpens).incrementAndGet();
+		}
+
+		/**
+		 * Records a resource lookup on the class path of the bundle.
+		 */
+		public void resourceLookup() {
+			resourceLookups.incrementAndGet();
+		}
+
+		/**
+		 * Records the change of the number of services registered by the bundle.
+		 * @param delta the number of services registered or, if negative, unregistered
+		 */
+		public void servicesRegistered(int delta) {
+			servicesRegistered.addAndGet(delta);
+		}
+
+		/**
+		 * Records the change of the number of services used by the bundle.
+		 * @param delta the number of services got or, if negative, released
+		 */
+		public void servicesInUse(int delta) {
+			servicesInUse.addAndGet(delta);
+		}
+
+		ResourceUsageDTO toDTO() {
+			ResourceUsageDTO dto = new ResourceUsageDTO();
+			dto.bundle = bundleId;
+			dto.classesDefined = classesDefined.get();
+			dto.classBytesRead = classBytesRead.get();
+			dto.defineTime = defineTime.get();
+			dto.bundleFileOpens = bundleFileOpens.get();
+			dto.bundleFileReopens = bundleFileReopens.get();
+			dto.resourceLookups = resourceLookups.get();
+			dto.servicesRegistered = servicesRegistered.get();
+			dto.servicesInUse = servicesInUse.get();
+			return dto;
+		}
+	}
+
+	ResourceUsageImpl() {
+		// only created by the storage
+	}
+
+	/**
+	 * Returns the counters of the specified bundle.  Only increasing a counter
+	 * must create the counters; the counters of an uninstalled bundle must not
+	 * be created again to decrease a counter.
+	 * @param bundleId the id of the bundle
+	 * @param create true if the counters are created if they do not exist yet
+	 * @return the counters of the bundle or {@code null} if the counters do not
+	 * exist and are not created
+	 */
+	public Counters getCounters(long bundleId, boolean create) {
+		Long key = Long.valueOf(bundleId);
+		Counters result = counters.get(key);
+		if (result == null && create) {
+			result = new Counters(bundleId);
+			Counters existing = counters.putIfAbsent(key, result);
+			if (existing != null) {
+				result = existing;
+			}
+		}
+		return result;
+	}
+
+	void remove(long bundleId) {
+		counters.remove(Long.valueOf(bundleId));
+	}
+
+	public ResourceUsageDTO getResourceUsageDTO(long bundleId) {
+		Counters result = counters.get(Long.valueOf(bundleId));
+		return result == null ? null : result.toDTO();
+	}
+
+	public List<ResourceUsageDTO> getResourceUsageDTOs() {
+		List<ResourceUsageDTO> result = new ArrayList<ResourceUsageDTO>(counters.size());
+		for (Counters current : counters.values()) {
+			result.add(current.toDTO());
+		}
+		Collections.sort(result, new Comparator<ResourceUsageDTO>() {
+			public int compare(ResourceUsageDTO dto1, ResourceUsageDTO dto2) {
+				return dto1.bundle < dto2.bundle ? -1 : (dto1.bundle == dto2.bundle ? 0 : 1);
+			}
+		});
+		return result;
+	}
+}
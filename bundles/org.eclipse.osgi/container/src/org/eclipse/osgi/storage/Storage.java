@@ -24,6 +24,7 @@ import org.eclipse.osgi.framework.log.FrameworkLogEntry;
 import org.eclipse.osgi.framework.util.*;
 import org.eclipse.osgi.internal.container.LockSet;
 import org.eclipse.osgi.internal.debug.Debug;
+import org.eclipse.osgi.internal.debug.Timeline;
 import org.eclipse.osgi.internal.framework.*;
 import org.eclipse.osgi.internal.hookregistry.*;
 import org.eclipse.osgi.internal.hookregistry.StorageHookFactory.StorageHook;
@@ -48,7 +49,7 @@ import org.osgi.resource.Namespace;
 import org.osgi.resource.Requirement;
 
 public class Storage {
-	public static final int VERSION = 3;
+	public static final int VERSION = 5;
 	public static final String BUNDLE_DATA_DIR = "data"; //$NON-NLS-1$
 	public static final String BUNDLE_FILE_NAME = "bundleFile"; //$NON-NLS-1$
 	public static final String FRAMEWORK_INFO = "framework.info"; //$NON-NLS-1$
@@ -59,7 +60,7 @@ public class Storage {
 	private static final String J2SE = "J2SE-"; //$NON-NLS-1$
 	private static final String JAVASE = "JavaSE-"; //$NON-NLS-1$
 	private static final String PROFILE_EXT = ".profile"; //$NON-NLS-1$
-	private static final String NUL = new String(new byte[] {0});
+	private static final String UTF_8 = "UTF-8"; //$NON-NLS-1$
 
 	static final SecureAction secureAction = AccessController.doPrivileged(SecureAction.createSecureAction());
 
@@ -78,7 +79,15 @@ public class Storage {
 	private final LockSet<Long> idLocks = new LockSet<Long>();
 	private final MRUBundleFileList mruList;
 	private final FrameworkExtensionInstaller extensionInstaller;
-	private final List<String> cachedHeaderKeys = Arrays.asList(Constants.BUNDLE_SYMBOLICNAME, Constants.BUNDLE_ACTIVATIONPOLICY, "Service-Component"); //$NON-NLS-1$
+	private final ClassListRecorder classListRecorder;
+	private final ResourceUsageImpl resourceUsage;
+	// headers commonly read by the framework and by extenders like DS, Blueprint, JPA and web containers
+	private static final String[] DEFAULT_CACHED_HEADER_KEYS = {Constants.BUNDLE_SYMBOLICNAME, Constants.BUNDLE_ACTIVATIONPOLICY, "Service-Component", //$NON-NLS-1$
+			Constants.BUNDLE_VERSION, Constants.BUNDLE_NAME, Constants.BUNDLE_VENDOR, Constants.BUNDLE_LOCALIZATION, Constants.BUNDLE_ACTIVATOR, Constants.FRAGMENT_HOST, //
+			"Bundle-Blueprint", "Meta-Persistence", "Web-ContextPath"}; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	private static final String ALL_HEADERS = "*"; //$NON-NLS-1$
+	private final List<String> cachedHeaderKeys;
+	private final boolean cacheAllHeaders;
 
 	public static Storage createStorage(EquinoxContainer container) throws IOException, BundleException {
 		Storage storage = new Storage(container);
@@ -93,6 +102,8 @@ public class Storage {
 
 	private Storage(EquinoxContainer container) throws IOException, BundleException {
 		mruList = new MRUBundleFileList(getBundleFileLimit(container.getConfiguration()));
+		cachedHeaderKeys = new ArrayList<String>(Arrays.asList(DEFAULT_CACHED_HEADER_KEYS));
+		cacheAllHeaders = getCachedHeaderKeys(container.getConfiguration(), cachedHeaderKeys);
 		equinoxContainer = container;
 		extensionInstaller = new FrameworkExtensionInstaller(container.getConfiguration());
 
@@ -140,8 +151,13 @@ public class Storage {
 			this.moduleContainer = new ModuleContainer(this.adaptor, this.moduleDatabase);
 			if (data != null) {
 				try {
+					long loadStart = System.nanoTime();
 					moduleDatabase.load(data);
 					lastSavedTimestamp = moduleDatabase.getTimestamp();
+					Timeline timeline = container.getTimeline();
+					if (timeline != null) {
+						timeline.record(Timeline.Type.DATABASE_LOAD, loadStart, -1, null);
+					}
 				} catch (IllegalArgumentException e) {
 					equinoxContainer.getLogServices().log(EquinoxContainer.NAME, FrameworkLogEntry.WARNING, "Incompatible version.  Starting with empty framework.", e); //$NON-NLS-1$
 					// Clean up the cache.
@@ -160,6 +176,25 @@ public class Storage {
 				}
 			}
 		}
+		if (container.getConfiguration().CLASS_LIST && !isReadOnly()) {
+			classListRecorder = new ClassListRecorder(getFile(ClassListRecorder.CLASS_LIST_DIR, false), getBundleContent());
+		} else {
+			classListRecorder = null;
+		}
+		resourceUsage = container.getConfiguration().RESOURCE_USAGE ? new ResourceUsageImpl() : null;
+	}
+
+	private static boolean getCachedHeaderKeys(EquinoxConfiguration configuration, List<String> keys) {
+		String[] additional = ManifestElement.getArrayFromList(configuration.getConfiguration(EquinoxConfiguration.PROP_CACHED_MANIFEST_HEADERS), ","); //$NON-NLS-1$
+		boolean all = false;
+		for (String key : additional) {
+			if (ALL_HEADERS.equals(key)) {
+				all = true;
+			} else if (!keys.contains(key)) {
+				keys.add(key);
+			}
+		}
+		return all;
 	}
 
 	private int getBundleFileLimit(EquinoxConfiguration configuration) {
@@ -216,6 +251,33 @@ public class Storage {
 		}
 	}
 
+	/**
+	 * Returns the path, last modified time and length of the content of each installed
+	 * bundle.  Changes to the module database like start levels or settings do not
+	 * change the classes that get defined and do not require recording the class list again.
+	 */
+	private List<String> getBundleContent() {
+		List<String> result = new ArrayList<String>();
+		for (Module module : moduleContainer.getModules()) {
+			if (module.getId() == Constants.SYSTEM_BUNDLE_ID)
+				continue;
+			ModuleRevision revision = module.getCurrentRevision();
+			File content = revision == null ? null : ((Generation) revision.getRevisionInfo()).getContent();
+			if (content != null)
+				result.add(getCanonicalPath(content) + ' ' + secureAction.lastModified(content) + ' ' + secureAction.length(content));
+		}
+		return result;
+	}
+
+	private static String getCanonicalPath(File file) {
+		// the path of reference installs may be relative to the install area after a restart
+		try {
+			return secureAction.getCanonicalPath(file);
+		} catch (IOException e) {
+			return secureAction.getAbsoluteFile(file).getPath();
+		}
+	}
+
 	private boolean needsDiscarding(Generation generation) {
 		for (StorageHook<?, ?> hook : generation.getStorageHooks()) {
 			try {
@@ -306,6 +368,21 @@ public class Storage {
 		} catch (IOException e) {
 			getLogServices().log(EquinoxContainer.NAME, FrameworkLogEntry.ERROR, "Error saving on shutdown", e); //$NON-NLS-1$
 		}
+		if (classListRecorder != null) {
+			try {
+				classListRecorder.write(getBundleContent());
+			} catch (IOException e) {
+				getLogServices().log(EquinoxContainer.NAME, FrameworkLogEntry.ERROR, "Error writing the class list", e); //$NON-NLS-1$
+			}
+		}
+		Timeline timeline = equinoxContainer.getTimeline();
+		if (timeline != null && !isReadOnly()) {
+			try {
+				timeline.write(getFile(Timeline.TIMELINE_FILE, false));
+			} catch (IOException e) {
+				getLogServices().log(EquinoxContainer.NAME, FrameworkLogEntry.ERROR, "Error writing the timeline", e); //$NON-NLS-1$
+			}
+		}
 
 		// close all the generations
 		List<Module> modules = moduleContainer.getModules();
@@ -362,6 +439,24 @@ public class Storage {
 		}
 	}
 
+	/**
+	 * Returns the recorder for the classes defined by bundle class loaders or
+	 * {@code null} if no classes need to be recorded.
+	 * @return the class list recorder or {@code null}
+	 */
+	public ClassListRecorder getClassListRecorder() {
+		return classListRecorder != null && classListRecorder.isRecording() ? classListRecorder : null;
+	}
+
+	/**
+	 * Returns the resource usage accounting of the bundles or {@code null} if
+	 * the resource usage is not accounted.
+	 * @return the resource usage or {@code null}
+	 */
+	public ResourceUsageImpl getResourceUsage() {
+		return resourceUsage;
+	}
+
 	public ModuleDatabase getModuleDatabase() {
 		return moduleDatabase;
 	}
@@ -1022,6 +1117,17 @@ public class Storage {
 		}
 	}
 
+	/**
+	 * Indicates that the persistent data of a storage hook has changed after the
+	 * generation was installed or loaded.  The changed data is persisted by the next
+	 * {@link #save()} even if the module database has not changed.
+	 */
+	public void storageHookDataChanged() {
+		synchronized (this.saveMonitor) {
+			lastSavedTimestamp = -1;
+		}
+	}
+
 	void save0() throws IOException {
 		StorageManager childStorageManager = null;
 		DataOutputStream out = null;
@@ -1074,6 +1180,7 @@ public class Storage {
 		for (String headerKey : cachedHeaderKeys) {
 			out.writeUTF(headerKey);
 		}
+		out.writeBoolean(cacheAllHeaders);
 
 		out.writeInt(generations.size());
 		for (Generation generation : generations) {
@@ -1101,11 +1208,25 @@ public class Storage {
 
 			Dictionary<String, String> headers = generation.getHeaders();
 			for (String headerKey : cachedHeaderKeys) {
-				String value = headers.get(headerKey);
-				if (value != null) {
-					out.writeUTF(value);
-				} else {
-					out.writeUTF(NUL);
+				writeHeaderValue(out, headers.get(headerKey));
+			}
+			if (cacheAllHeaders && bundleInfo.getBundleId() == 0) {
+				// the system bundle manifest may change on each launch; never cache all of its headers
+				out.writeInt(-1);
+			} else if (cacheAllHeaders) {
+				Dictionary<String, String> allHeaders = generation.getAllHeaders();
+				List<String> otherKeys = new ArrayList<String>(allHeaders.size());
+				for (Enumeration<String> keys = allHeaders.keys(); keys.hasMoreElements();) {
+					String key = keys.nextElement();
+					// no need to write the headers again which are already written above
+					if (!cachedHeaderKeys.contains(key)) {
+						otherKeys.add(key);
+					}
+				}
+				out.writeInt(otherKeys.size());
+				for (String otherKey : otherKeys) {
+					out.writeUTF(otherKey);
+					writeHeaderValue(out, allHeaders.get(otherKey));
 				}
 			}
 		}
@@ -1113,6 +1234,27 @@ public class Storage {
 		saveStorageHookData(out, generations);
 	}
 
+	private static void writeHeaderValue(DataOutputStream out, String value) throws IOException {
+		// header values may exceed the 64k limit of writeUTF
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readHeaderValue(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return (String) ObjectPool.intern(new String(bytes, UTF_8));
+	}
+
 	private void saveStorageHookData(DataOutputStream out, List<Generation> generations) throws IOException {
 		List<StorageHookFactory<?, ?, ?>> factories = getConfiguration().getHookRegistry().getStorageHookFactories();
 		out.writeInt(factories.size());
@@ -1154,6 +1296,7 @@ public class Storage {
 		for (int i = 0; i < numCachedHeaders; i++) {
 			storedCachedHeaderKeys.add((String) ObjectPool.intern(in.readUTF()));
 		}
+		boolean storedCacheAllHeaders = in.readBoolean();
 
 		int numInfos = in.readInt();
 		Map<Long, Generation> result = new HashMap<Long, Generation>(numInfos);
@@ -1171,13 +1314,16 @@ public class Storage {
 
 			Map<String, String> cachedHeaders = new HashMap<String, String>(storedCachedHeaderKeys.size());
 			for (String headerKey : storedCachedHeaderKeys) {
-				String value = in.readUTF();
-				if (NUL.equals(value)) {
-					value = null;
-				} else {
-					value = (String) ObjectPool.intern(value);
+				cachedHeaders.put(headerKey, readHeaderValue(in));
+			}
+			boolean cachedAllHeaders = false;
+			if (storedCacheAllHeaders) {
+				int numOtherHeaders = in.readInt();
+				cachedAllHeaders = numOtherHeaders >= 0;
+				for (int j = 0; j < numOtherHeaders; j++) {
+					String headerKey = (String) ObjectPool.intern(in.readUTF());
+					cachedHeaders.put(headerKey, readHeaderValue(in));
 				}
-				cachedHeaders.put(headerKey, value);
 			}
 
 			File content;
@@ -1200,7 +1346,7 @@ public class Storage {
 			}
 
 			BundleInfo info = new BundleInfo(this, infoId, infoLocation, nextGenId);
-			Generation generation = info.restoreGeneration(generationId, content, isDirectory, isReference, hasPackageInfo, cachedHeaders, lastModified);
+			Generation generation = info.restoreGeneration(generationId, content, isDirectory, isReference, hasPackageInfo, cachedHeaders, cachedAllHeaders, lastModified);
 			result.put(infoId, generation);
 			generations.add(generation);
 		}
@@ -1538,8 +1684,7 @@ public class Storage {
 		// Use LinkedHashSet for optimized performance of contains() plus
 		// ordering guarantees.
 		LinkedHashSet<String> pathList = new LinkedHashSet<String>();
-		Filter patternFilter = null;
-		Hashtable<String, String> patternProps = null;
+		FilePattern pattern = null;
 		if (filePattern != null) {
 			// Optimization: If the file pattern does not include a wildcard  or escape char then it must represent a single file.
 			// Avoid pattern matching and use BundleFile.getEntry() if recursion was not requested.
@@ -1556,10 +1701,8 @@ public class Storage {
 			}
 			// For when the file pattern includes a wildcard.
 			try {
-				// create a file pattern filter with 'filename' as the key
-				patternFilter = FilterImpl.newInstance("(filename=" + sanitizeFilterInput(filePattern) + ")"); //$NON-NLS-1$ //$NON-NLS-2$
-				// create a single hashtable to be shared during the recursive search
-				patternProps = new Hashtable<String, String>(2);
+				// compile the pattern once; it matches the file names of the entries in place
+				pattern = FilePattern.compile(filePattern);
 			} catch (InvalidSyntaxException e) {
 				// TODO something unexpected happened; log error and return nothing
 				//				Bundle b = context == null ? null : context.getBundle();
@@ -1569,7 +1712,7 @@ public class Storage {
 		}
 		// find the entry paths for the datas
 		for (BundleFile bundleFile : bundleFiles) {
-			listEntryPaths(bundleFile, path, patternFilter, patternProps, options, pathList);
+			listEntryPaths(bundleFile, path, pattern, options, pathList);
 		}
 		return new ArrayList<String>(pathList);
 	}
@@ -1616,7 +1759,7 @@ public class Storage {
 
 	// Use LinkedHashSet for optimized performance of contains() plus ordering 
 	// guarantees.
-	private static LinkedHashSet<String> listEntryPaths(BundleFile bundleFile, String path, Filter patternFilter, Hashtable<String, String> patternProps, int options, LinkedHashSet<String> pathList) {
+	private static LinkedHashSet<String> listEntryPaths(BundleFile bundleFile, String path, FilePattern pattern, int options, LinkedHashSet<String> pathList) {
 		if (pathList == null)
 			pathList = new LinkedHashSet<String>();
 		Enumeration<String> entryPaths;
@@ -1628,28 +1771,8 @@ public class Storage {
 			return pathList;
 		while (entryPaths.hasMoreElements()) {
 			String entry = entryPaths.nextElement();
-			int lastSlash = entry.lastIndexOf('/');
-			if (patternProps != null) {
-				int secondToLastSlash = entry.lastIndexOf('/', lastSlash - 1);
-				int fileStart;
-				int fileEnd = entry.length();
-				if (lastSlash < 0)
-					fileStart = 0;
-				else if (lastSlash != entry.length() - 1)
-					fileStart = lastSlash + 1;
-				else {
-					fileEnd = lastSlash; // leave the lastSlash out
-					if (secondToLastSlash < 0)
-						fileStart = 0;
-					else
-						fileStart = secondToLastSlash + 1;
-				}
-				String fileName = entry.substring(fileStart, fileEnd);
-				// set the filename to the current entry
-				patternProps.put("filename", fileName); //$NON-NLS-1$
-			}
-			// prevent duplicates and match on the patternFilter
-			if (!pathList.contains(entry) && (patternFilter == null || patternFilter.matchCase(patternProps)))
+			// match on the pattern; the set prevents duplicates
+			if (pattern == null || pattern.matchFileName(entry))
 				pathList.add(entry);
 		}
 		return pathList;
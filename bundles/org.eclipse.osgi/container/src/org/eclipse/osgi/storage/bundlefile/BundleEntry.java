@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2013 IBM Corporation and others.
+ * Copyright (c) 2004, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,9 +11,11 @@
 
 package org.eclipse.osgi.storage.bundlefile;
 
-import java.io.IOException;
-import java.io.InputStream;
+import java.io.*;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import org.eclipse.osgi.storage.StorageUtil;
 
 /**
@@ -93,4 +95,49 @@ public abstract class BundleEntry {
 		//			Debug.println("  about to read " + length + " bytes from " + getName()); //$NON-NLS-1$ //$NON-NLS-2$
 		return StorageUtil.getBytes(in, length, BUF_SIZE);
 	}
+
+	/**
+	 * Used for class loading.  Reads the content of this entry into the specified buffer if the
+	 * buffer has the capacity to hold the content.  Otherwise the content is returned in a new
+	 * buffer.  The returned buffer is ready to be read; its position is zero and its limit is the
+	 * length of the content.  An {@link EOFException} is thrown if the entry ends before
+	 * the number of bytes specified by {@link #getSize()} could be read.
+	 * <p>
+	 * The specified buffer may be reused by the caller once the content is consumed so this
+	 * entry must not keep a reference to it.  This default implementation gets the input stream
+	 * from this entry and copies the content into the buffer.
+	 * @param buffer the buffer to read the content into; may be <code>null</code>
+	 * @return a byte buffer containing the content of this entry
+	 * @throws IOException
+	 */
+	public ByteBuffer getByteBuffer(ByteBuffer buffer) throws IOException {
+		long length = getSize();
+		if (buffer == null || length < 0 || length > buffer.capacity())
+			return ByteBuffer.wrap(getBytes());
+		buffer.clear();
+		buffer.limit((int) length);
+		InputStream in = getInputStream();
+		try {
+			if (buffer.hasArray()) {
+				byte[] bytes = buffer.array();
+				int offset = buffer.arrayOffset();
+				int read = 0;
+				int count;
+				while (read < length && (count = in.read(bytes, offset + read, (int) length - read)) > 0)
+					read += count;
+				buffer.position(read);
+			} else {
+				ReadableByteChannel channel = Channels.newChannel(in);
+				while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+					// keep reading until the buffer is full or the end of the stream is reached
+				}
+			}
+		} finally {
+			in.close();
+		}
+		if (buffer.position() != length)
+			throw new EOFException("Expected " + length + " bytes but only read " + buffer.position() + " bytes from " + getName()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		buffer.flip();
+		return buffer;
+	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2013 IBM Corporation and others.
+ * Copyright (c) 2005, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -21,6 +21,7 @@ import org.eclipse.osgi.container.ModuleRevision;
 import org.eclipse.osgi.internal.debug.Debug;
 import org.eclipse.osgi.internal.messages.Msg;
 import org.eclipse.osgi.storage.BundleInfo;
+import org.eclipse.osgi.storage.ResourceUsageImpl;
 import org.eclipse.osgi.storage.StorageUtil;
 import org.eclipse.osgi.util.NLS;
 
@@ -45,6 +46,22 @@ public class ZipBundleFile extends BundleFile {
 
 	private int referenceCount = 0;
 
+	// true if the zip file got opened before; used to account reopens
+	private boolean opened = false;
+
+	/**
+	 * The maximum number of entries of a zip file for which a directory index is built.
+	 * Larger zip files are scanned for each request instead.
+	 */
+	private static final int MAX_DIR_INDEX_ENTRIES = 10000;
+
+	/**
+	 * The directory index of the zip file; maps the path of each directory to the paths
+	 * of the entries directly contained in the directory.  Built on first use and
+	 * discarded when the zip file gets closed.
+	 */
+	private Map<String, List<String>> dirIndex = null;
+
 	public ZipBundleFile(File basefile, BundleInfo.Generation generation, MRUBundleFileList mruList, Debug debug) throws IOException {
 		super(basefile);
 		if (!BundleFile.secureAction.exists(basefile))
@@ -96,6 +113,10 @@ public class ZipBundleFile extends BundleFile {
 			mruListAdd();
 			zipFile = basicOpen();
 			closed = false;
+			ResourceUsageImpl.Counters usage = generation == null ? null : generation.getBundleInfo().getResourceUsage();
+			if (usage != null)
+				usage.bundleFileOpened(opened);
+			opened = true;
 		} else
 			mruListUse();
 		return zipFile;
@@ -226,6 +247,9 @@ public class ZipBundleFile extends BundleFile {
 		if (dir.length() > 0 && dir.charAt(dir.length() - 1) != '/')
 			dir = dir + '/';
 
+		Map<String, List<String>> index = getDirIndex();
+		if (index != null)
+			return index.containsKey(dir);
 		Enumeration<? extends ZipEntry> entries = zipFile.entries();
 		ZipEntry zipEntry;
 		String entryPath;
@@ -271,6 +295,42 @@ public class ZipBundleFile extends BundleFile {
 		if (path.length() > 0 && path.charAt(path.length() - 1) != '/')
 			path = new StringBuilder(path).append("/").toString(); //$NON-NLS-1$
 
+		final Map<String, List<String>> index = getDirIndex();
+		if (index == null)
+			return scanEntryPaths(path, recurse);
+		final List<String> children = index.get(path);
+		if (children == null || children.isEmpty())
+			return null;
+		if (!recurse)
+			return Collections.enumeration(children);
+		// walk the directory tree lazily; the index is never modified once built
+		return new Enumeration<String>() {
+			private final LinkedList<Iterator<String>> stack = new LinkedList<Iterator<String>>(Collections.singleton(children.iterator()));
+
+			public boolean hasMoreElements() {
+				while (!stack.isEmpty()) {
+					if (stack.getFirst().hasNext())
+						return true;
+					stack.removeFirst();
+				}
+				return false;
+			}
+
+			public String nextElement() {
+				if (!hasMoreElements())
+					throw new NoSuchElementException();
+				String next = stack.getFirst().next();
+				if (next.charAt(next.length() - 1) == '/') {
+					List<String> dirChildren = index.get(next);
+					if (dirChildren != null && !dirChildren.isEmpty())
+						stack.addFirst(dirChildren.iterator());
+				}
+				return next;
+			}
+		};
+	}
+
+	private Enumeration<String> scanEntryPaths(String path, boolean recurse) {
 		LinkedHashSet<String> result = new LinkedHashSet<String>();
 		// Get all zip file entries and add the ones of interest.
 		Enumeration<? extends ZipEntry> entries = zipFile.entries();
@@ -305,6 +365,50 @@ public class ZipBundleFile extends BundleFile {
 		}
 	}
 
+	/**
+	 * Returns the directory index of the zip file or null if the zip file has too many
+	 * entries to be indexed.  Must be called while holding the lock of this bundle file
+	 * and while the zip file is open.
+	 */
+	private Map<String, List<String>> getDirIndex() {
+		if (dirIndex == null) {
+			if (zipFile.size() > MAX_DIR_INDEX_ENTRIES)
+				return null;
+			Map<String, List<String>> index = new HashMap<String, List<String>>();
+			index.put("", new ArrayList<String>()); //$NON-NLS-1$
+			Enumeration<? extends ZipEntry> entries = zipFile.entries();
+			while (entries.hasMoreElements()) {
+				String entryPath = entries.nextElement().getName();
+				if (entryPath.length() == 0)
+					continue;
+				if (entryPath.charAt(entryPath.length() - 1) == '/')
+					indexDir(index, entryPath);
+				else
+					indexDir(index, getParentDir(entryPath)).add(entryPath);
+			}
+			dirIndex = index;
+		}
+		return dirIndex;
+	}
+
+	private static List<String> indexDir(Map<String, List<String>> index, String dir) {
+		List<String> children = index.get(dir);
+		if (children == null) {
+			children = new ArrayList<String>();
+			index.put(dir, children);
+			// a new directory; add it to the parent and all the missing ancestors
+			indexDir(index, getParentDir(dir)).add(dir);
+		}
+		return children;
+	}
+
+	private static String getParentDir(String entryPath) {
+		// the last slash of a directory path is its trailing slash; skip it
+		int end = entryPath.charAt(entryPath.length() - 1) == '/' ? entryPath.length() - 2 : entryPath.length() - 1;
+		int lastSlash = end < 0 ? -1 : entryPath.lastIndexOf('/', end);
+		return lastSlash < 0 ? "" : entryPath.substring(0, lastSlash + 1); //$NON-NLS-1$
+	}
+
 	public synchronized void close() throws IOException {
 		if (!closed) {
 			if (referenceCount > 0 && isMruListClosing()) {
@@ -324,6 +428,8 @@ public class ZipBundleFile extends BundleFile {
 			}
 			closed = true;
 			zipFile.close();
+			// the index is built again if the zip file gets opened again
+			dirIndex = null;
 			mruListRemove();
 		}
 	}
@@ -17,6 +17,7 @@
 package org.osgi.util.tracker;
 
 import java.lang.reflect.Array;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.SortedMap;
 import java.util.TreeMap;
@@ -117,6 +118,22 @@ public class ServiceTracker<S, T> implements ServiceTrackerCustomizer<S, T> {
 	 * This field is volatile since it is accessed by multiple threads.
 	 */
 	private volatile T						cachedService;
+	/**
+	 * Cached snapshot of the tracked services for getServices. The snapshot is
+	 * only used if this tracker uses the implementations of the methods
+	 * getServices delegates to.
+	 * 
+	 * This field is volatile since it is accessed by multiple threads.
+	 */
+	private volatile Snapshot				snapshot;
+	/**
+	 * Whether the snapshot may be used: 0 if not yet known, 1 if the snapshot
+	 * may be used, -1 if a subclass overrides a method which getServices
+	 * delegates to.
+	 * 
+	 * This field is volatile since it is accessed by multiple threads.
+	 */
+	private volatile int					snapshotAllowed;
 
 	/**
 	 * Create a {@code ServiceTracker} on the specified {@code ServiceReference}
@@ -644,6 +661,10 @@ public class ServiceTracker<S, T> implements ServiceTrackerCustomizer<S, T> {
 		if (t == null) { /* if ServiceTracker is not open */
 			return null;
 		}
+		if (isSnapshotAllowed()) {
+			Object[] services = getSnapshot(t).services;
+			return (services.length == 0) ? null : services.clone();
+		}
 		synchronized (t) {
 			ServiceReference<S>[] references = getServiceReferences();
 			int length = (references == null) ? 0 : references.length;
@@ -762,6 +783,7 @@ public class ServiceTracker<S, T> implements ServiceTrackerCustomizer<S, T> {
 	void modified() {
 		cachedReference = null; /* clear cached value */
 		cachedService = null; /* clear cached value */
+		snapshot = null; /* clear cached value */
 		if (DEBUG) {
 			System.out.println("ServiceTracker.modified: " + filter);
 		}
@@ -837,6 +859,26 @@ public class ServiceTracker<S, T> implements ServiceTrackerCustomizer<S, T> {
 			}
 			return array;
 		}
+		if (isSnapshotAllowed()) {
+			Object[] services = getSnapshot(t).services;
+			int length = services.length;
+			if (length == 0) {
+				if (array.length > 0) {
+					array[0] = null;
+				}
+				return array;
+			}
+			if (length > array.length) {
+				@SuppressWarnings("unchecked")
+				T[] newInstance = (T[]) Array.newInstance(array.getClass().getComponentType(), length);
+				array = newInstance;
+			}
+			System.arraycopy(services, 0, array, 0, length);
+			if (array.length > length) {
+				array[length] = null;
+			}
+			return array;
+		}
 		synchronized (t) {
 			ServiceReference<S>[] references = getServiceReferences();
 			int length = (references == null) ? 0 : references.length;
@@ -861,6 +903,93 @@ public class ServiceTracker<S, T> implements ServiceTrackerCustomizer<S, T> {
 		}
 	}
 
+	/**
+	 * Returns whether the read methods may use the snapshot of the tracked
+	 * services instead of calling {@link #getServiceReferences()} and
+	 * {@link #getService(ServiceReference)}. This is only the case if neither
+	 * method is overridden since the result must be the same as if the methods
+	 * were called.
+	 * 
+	 * @return {@code true} if the snapshot may be used.
+	 */
+	private boolean isSnapshotAllowed() {
+		int allowed = snapshotAllowed;
+		if (allowed == 0) {
+			allowed = overridesReadMethods(getClass()) ? -1 : 1;
+			snapshotAllowed = allowed;
+		}
+		return allowed > 0;
+	}
+
+	private static boolean overridesReadMethods(Class<?> clazz) {
+		if (clazz == ServiceTracker.class) {
+			return false;
+		}
+		try {
+			return (clazz.getMethod("getServiceReferences").getDeclaringClass() != ServiceTracker.class) || (clazz.getMethod("getService", ServiceReference.class).getDeclaringClass() != ServiceTracker.class);
+		} catch (NoSuchMethodException e) {
+			return true;
+		} catch (SecurityException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * Returns the snapshot of the services tracked by the specified
+	 * {@code Tracked} object. The cached snapshot is returned if it is
+	 * current; otherwise a new snapshot is built and cached.
+	 * 
+	 * @param t The current Tracked object.
+	 * @return The snapshot of the tracked services.
+	 */
+	private Snapshot getSnapshot(final Tracked t) {
+		Snapshot current = snapshot;
+		if ((current != null) && (current.tracked == t)) {
+			return current;
+		}
+		synchronized (t) {
+			current = snapshot;
+			if ((current != null) && (current.tracked == t)) {
+				return current;
+			}
+			/*
+			 * The snapshot is built and published while synchronized on t so
+			 * that it cannot overwrite the clearing done by a later
+			 * modification.
+			 */
+			@SuppressWarnings("unchecked")
+			ServiceReference<S>[] references = (ServiceReference<S>[]) new ServiceReference<?>[t.size()];
+			t.copyKeys(references);
+			Arrays.sort(references, Collections.reverseOrder());
+			Object[] services = new Object[references.length];
+			for (int i = 0; i < references.length; i++) {
+				services[i] = t.getCustomizedObject(references[i]);
+			}
+			if (DEBUG) {
+				System.out.println("ServiceTracker.getSnapshot[" + references.length + "]: " + filter);
+			}
+			return snapshot = new Snapshot(t, services);
+		}
+	}
+
+	/**
+	 * Immutable snapshot of the service objects tracked by a {@code Tracked}
+	 * object. The service objects are sorted in reverse natural order of their
+	 * {@code ServiceReference}s. That is, the first service object is the
+	 * service with the highest ranking and the lowest service id.
+	 * 
+	 * @Immutable
+	 */
+	private static class Snapshot {
+		final AbstractTracked<?, ?, ?>	tracked;
+		final Object[]					services;
+
+		Snapshot(AbstractTracked<?, ?, ?> tracked, Object[] services) {
+			this.tracked = tracked;
+			this.services = services;
+		}
+	}
+
 	/**
 	 * Inner class which subclasses AbstractTracked. This class is the
 	 * {@code ServiceListener} object for the tracker.
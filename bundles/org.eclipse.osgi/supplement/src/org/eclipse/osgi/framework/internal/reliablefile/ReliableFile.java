@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2003, 2013 IBM Corporation and others.
+ * Copyright (c) 2003, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -13,6 +13,7 @@ package org.eclipse.osgi.framework.internal.reliablefile;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.zip.CRC32;
 import java.util.zip.Checksum;
 
@@ -125,7 +126,7 @@ public class ReliableFile {
 	private File referenceFile;
 
 	/** List of checksum file objects: File => specific ReliableFile generation */
-	private static Hashtable<File, CacheInfo> cacheFiles = new Hashtable<File, CacheInfo>(20);
+	private static final Map<File, CacheInfo> cacheFiles = new ConcurrentHashMap<File, CacheInfo>(20);
 
 	private File inputFile = null;
 	private File outputFile = null;
@@ -260,31 +261,31 @@ public class ReliableFile {
 			else
 				file = referenceFile;
 			InputStream is = null;
-			CacheInfo info;
-			synchronized (cacheFiles) {
-				info = cacheFiles.get(file);
-				long timeStamp = file.lastModified();
-				if (info == null || timeStamp != info.timeStamp) {
-					InputStream tempIS = new FileInputStream(file);
-					try {
-						long fileSize = file.length();
-						if (fileSize < maxInputStreamBuffer) {
-							tempIS = new BufferedInputStream(tempIS, (int) fileSize);
-							// reuse the tempIS since it supports mark/reset
-							is = tempIS;
-						}
-						Checksum cksum = getChecksumCalculator();
-						int filetype = getStreamType(tempIS, cksum, fileSize);
-						info = new CacheInfo(filetype, cksum, timeStamp, fileSize);
-						cacheFiles.put(file, info);
-					} catch (IOException e) {/*ignore*/
-					} finally {
-						if (is == null) {
-							// close the tempIS since it was simply used to get the check sum
-							try {
-								tempIS.close();
-							} catch (IOException e) {/*ignore*/
-							}
+			// the checksum is calculated without holding a lock so that different files
+			//  can be verified concurrently; if two threads verify the same file then
+			//  both calculate the same info
+			CacheInfo info = cacheFiles.get(file);
+			long timeStamp = file.lastModified();
+			if (info == null || timeStamp != info.timeStamp) {
+				InputStream tempIS = new FileInputStream(file);
+				try {
+					long fileSize = file.length();
+					if (fileSize < maxInputStreamBuffer) {
+						tempIS = new BufferedInputStream(tempIS, (int) fileSize);
+						// reuse the tempIS since it supports mark/reset
+						is = tempIS;
+					}
+					Checksum cksum = getChecksumCalculator();
+					int filetype = getStreamType(tempIS, cksum, fileSize);
+					info = new CacheInfo(filetype, cksum, timeStamp, fileSize);
+					cacheFiles.put(file, info);
+				} catch (IOException e) {/*ignore*/
+				} finally {
+					if (is == null) {
+						// close the tempIS since it was simply used to get the check sum
+						try {
+							tempIS.close();
+						} catch (IOException e) {/*ignore*/
 						}
 					}
 				}
@@ -448,24 +449,22 @@ public class ReliableFile {
 			rmCount++;
 		if (rmCount < 1)
 			return;
-		synchronized (cacheFiles) {
-			// first, see if any of the files not deleted are known to
-			//  be corrupt. If so, be sure to keep not to delete good
-			//  backup files.
-			for (int idx = 0, count = generationCount - rmCount; idx < count; idx++) {
-				File file = new File(parent, name + '.' + generations[idx]);
-				CacheInfo info = cacheFiles.get(file);
-				if (info != null) {
-					if (info.filetype == FILETYPE_CORRUPT)
-						rmCount--;
-				}
-			}
-			for (int idx = generationCount - 1; rmCount > 0; idx--, rmCount--) {
-				File rmFile = new File(parent, name + '.' + generations[idx]);
-				rmFile.delete();
-				cacheFiles.remove(rmFile);
+		// first, see if any of the files not deleted are known to
+		//  be corrupt. If so, be sure to keep not to delete good
+		//  backup files.
+		for (int idx = 0, count = generationCount - rmCount; idx < count; idx++) {
+			File file = new File(parent, name + '.' + generations[idx]);
+			CacheInfo info = cacheFiles.get(file);
+			if (info != null) {
+				if (info.filetype == FILETYPE_CORRUPT)
+					rmCount--;
 			}
 		}
+		for (int idx = generationCount - 1; rmCount > 0; idx--, rmCount--) {
+			File rmFile = new File(parent, name + '.' + generations[idx]);
+			rmFile.delete();
+			cacheFiles.remove(rmFile);
+		}
 	}
 
 	/**
@@ -607,17 +606,15 @@ public class ReliableFile {
 			return false;
 		String name = deleteFile.getName();
 		File parent = new File(deleteFile.getParent());
-		synchronized (cacheFiles) {
-			for (int idx = 0; idx < generations.length; idx++) {
-				// base files (.0 in generations[]) will never be deleted
-				if (generations[idx] == 0)
-					continue;
-				File file = new File(parent, name + '.' + generations[idx]);
-				if (file.exists()) {
-					file.delete();
-				}
-				cacheFiles.remove(file);
+		for (int idx = 0; idx < generations.length; idx++) {
+			// base files (.0 in generations[]) will never be deleted
+			if (generations[idx] == 0)
+				continue;
+			File file = new File(parent, name + '.' + generations[idx]);
+			if (file.exists()) {
+				file.delete();
 			}
+			cacheFiles.remove(file);
 		}
 		return true;
 	}
@@ -680,6 +677,18 @@ public class ReliableFile {
 		lastGenerations = null;
 	}
 
+	/**
+	 * Inform ReliableFile that the intermediate file of an output stream has been
+	 * renamed to a file generation outside of ReliableFile.  The checksum calculated
+	 * while the stream was written is cached for the file generation so that the
+	 * file does not need to be read again to verify it.
+	 * @param file the file generation
+	 * @param checksum the checksum of the file contents
+	 */
+	static void fileGenerationAdded(File file, Checksum checksum) {
+		cacheFiles.put(file, new CacheInfo(FILETYPE_VALID, checksum, file.lastModified(), file.length()));
+	}
+
 	/**
 	 * Append a checksum value to the end of an output stream.
 	 * @param out the output stream.
@@ -843,11 +852,11 @@ public class ReliableFile {
 		return buffer;
 	}
 
-	private class CacheInfo {
-		int filetype;
-		Checksum checksum;
-		long timeStamp;
-		long length;
+	private static final class CacheInfo {
+		final int filetype;
+		final Checksum checksum;
+		final long timeStamp;
+		final long length;
 
 		CacheInfo(int filetype, Checksum checksum, long timeStamp, long length) {
 			this.filetype = filetype;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2003, 2006 IBM Corporation and others.
+ * Copyright (c) 2003, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -121,18 +121,36 @@ public class ReliableFileOutputStream extends FilterOutputStream {
 	}
 
 	public File closeIntermediateFile() throws IOException {
+		return closeIntermediateFile(true);
+	}
+
+	/**
+	 * Closes the intermediate file of this output stream without renaming it
+	 * to a file generation.  The caller is responsible to rename the returned
+	 * file and should then call {@link #intermediateFileRenamed(File)}.
+	 * This method may be called multiple times.
+	 *
+	 * @param sync whether the contents of the intermediate file are synchronized
+	 * with the underlying device before it is closed.  If <code>false</code> then
+	 * the caller is responsible to synchronize the file.
+	 * @return the intermediate file
+	 * @exception 	java.io.IOException If an error occurs closing the file.
+	 */
+	public File closeIntermediateFile(boolean sync) throws IOException {
 		if (reliable == null)
 			throw new IOException("ReliableFile stream not open"); //$NON-NLS-1$
 		if (outputOpen) {
 			// tag on our signature and checksum
 			reliable.writeChecksumSignature(out, crc);
 			out.flush();
-			try {
-				((FileOutputStream) out).getFD().sync();
-			} catch (IOException e) {
-				// just ignore this Exception
-				//Debug
-				e.printStackTrace();
+			if (sync) {
+				try {
+					((FileOutputStream) out).getFD().sync();
+				} catch (IOException e) {
+					// just ignore this Exception
+					//Debug
+					e.printStackTrace();
+				}
 			}
 			out.close();
 			outputOpen = false;
@@ -140,6 +158,21 @@ public class ReliableFileOutputStream extends FilterOutputStream {
 		return reliable.getOutputFile();
 	}
 
+	/**
+	 * Informs this output stream that its intermediate file has been renamed
+	 * to the specified file generation.  The checksum calculated while this stream
+	 * was written is remembered for the file generation so that it does not need
+	 * to be calculated again when the file is read.
+	 *
+	 * @param file the file generation the intermediate file has been renamed to
+	 * @see #closeIntermediateFile(boolean)
+	 */
+	public void intermediateFileRenamed(File file) {
+		if (reliable == null || outputOpen)
+			return;
+		ReliableFile.fileGenerationAdded(file, crc);
+	}
+
 	/**
 	 * Override default FilterOutputStream method.
 	 * @see FilterOutputStream#write(byte[])
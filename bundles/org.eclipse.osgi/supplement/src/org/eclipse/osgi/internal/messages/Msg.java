@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2013 IBM Corporation and others.
+ * Copyright (c) 2004, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -73,6 +73,7 @@ public class Msg extends NLS {
 	public static String fileManager_updateFailed;
 	public static String fileManager_illegalInReadOnlyMode;
 	public static String fileManager_notOpen;
+	public static String fileManager_batchOpen;
 	public static String ECLIPSE_CLASSLOADER_CONCURRENT_STARTUP;
 	public static String ECLIPSE_CLASSLOADER_ACTIVATION;
 	public static String ECLIPSE_STARTUP_ALREADY_RUNNING;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2008 IBM Corporation and others.
+ * Copyright (c) 2005, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -30,6 +30,7 @@ public final class ManagedOutputStream extends FilterOutputStream {
 	private StorageManager manager;
 	private File outputFile;
 	private int state;
+	private boolean synced;
 	private ManagedOutputStream[] streamSet = null;
 
 	ManagedOutputStream(OutputStream out, StorageManager manager, String target, File outputFile) {
@@ -82,6 +83,14 @@ public final class ManagedOutputStream extends FilterOutputStream {
 		this.state = state;
 	}
 
+	boolean isSynced() {
+		return synced;
+	}
+
+	void setSynced(boolean synced) {
+		this.synced = synced;
+	}
+
 	void setStreamSet(ManagedOutputStream[] set) {
 		streamSet = set;
 	}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2013 IBM Corporation and others.
+ * Copyright (c) 2004, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -16,6 +16,7 @@ import org.eclipse.osgi.framework.internal.reliablefile.*;
 import org.eclipse.osgi.internal.location.LocationHelper;
 import org.eclipse.osgi.internal.location.Locker;
 import org.eclipse.osgi.internal.messages.Msg;
+import org.eclipse.osgi.util.NLS;
 
 /**
  * Storage managers provide a facility for tracking the state of a group of files having 
@@ -77,6 +78,13 @@ import org.eclipse.osgi.internal.messages.Msg;
  * storage manager, all other storage manager instances will still have access to that managed file's 
  * content as it was when the instance was first opened.
  * </p>
+ * <p>
+ * Each update of managed files locks the table, writes the table and synchronizes the
+ * new content with the disk.  Clients which update many managed files at once can 
+ * group the updates in a batch with {@link #beginBatch()} and {@link #commitBatch()}.
+ * The managed output streams closed by the thread while its batch is open are 
+ * committed together with one update of the table.
+ * </p>
  * @since 3.2
  */
 
@@ -150,6 +158,17 @@ public final class StorageManager {
 
 	private final Properties table = new Properties();
 
+	// batch related fields; a batch is confined to the thread which began it
+	private final ThreadLocal<Batch> batches = new ThreadLocal<Batch>();
+	/* @GuardedBy("this") */
+	private int openBatches = 0;
+
+	private static final class Batch {
+		int depth = 1;
+		// the closed streams of the batch keyed by managed file
+		final Map<String, ManagedOutputStream> streams = new LinkedHashMap<String, ManagedOutputStream>();
+	}
+
 	/**
 	 * Returns a new storage manager for the area identified by the given base
 	 * directory.
@@ -220,29 +239,41 @@ public final class StorageManager {
 			throw new IOException(Msg.fileManager_cannotLock);
 		try {
 			updateTable();
-			Entry entry = (Entry) table.get(managedFile);
-			if (entry == null) {
-				entry = new Entry(0, 1, fileType);
-				table.put(managedFile, entry);
-				// if this managed file existed before, ensure there is not an old
-				// version on the disk to avoid name collisions. If version found,
-				// us the oldest generation+1 for the write ID.
-				int oldestGeneration = findOldestGeneration(managedFile);
-				if (oldestGeneration != 0)
-					entry.setWriteId(oldestGeneration + 1);
+			if (addEntry(managedFile, fileType))
 				save();
-			} else {
-				if (entry.getFileType() != fileType) {
-					entry.setFileType(fileType);
-					updateTable();
-					save();
-				}
-			}
 		} finally {
 			release();
 		}
 	}
 
+	/* (non-Javadoc)
+	 * Add the given file name to the table of this manager without saving the table.
+	 * This method should be called while the manager is locked.
+	 * 
+	 * @param managedFile name of the file to manage.
+	 * @param fileType the file type.
+	 * @return true if the table has changed
+	 */
+	private boolean addEntry(String managedFile, int fileType) {
+		Entry entry = (Entry) table.get(managedFile);
+		if (entry == null) {
+			entry = new Entry(0, 1, fileType);
+			table.put(managedFile, entry);
+			// if this managed file existed before, ensure there is not an old
+			// version on the disk to avoid name collisions. If version found,
+			// us the oldest generation+1 for the write ID.
+			int oldestGeneration = findOldestGeneration(managedFile);
+			if (oldestGeneration != 0)
+				entry.setWriteId(oldestGeneration + 1);
+			return true;
+		}
+		if (entry.getFileType() != fileType) {
+			entry.setFileType(fileType);
+			return true;
+		}
+		return false;
+	}
+
 	/* (non-Javadoc)
 	 * Find the oldest generation of a file still available on disk 
 	 * @param file the file from which to obtain the oldest generation.
@@ -283,6 +314,15 @@ public final class StorageManager {
 	 * @throws IOException if there are any problems updating the given managed files
 	 */
 	public void update(String[] managedFiles, String[] sources) throws IOException {
+		update(managedFiles, sources, null);
+	}
+
+	/* (non-Javadoc)
+	 * Update the given managed files with the content in the given source files
+	 * while locking and saving the table once.  If file types are given then 
+	 * the managed files are added with the given file types.
+	 */
+	private void update(String[] managedFiles, String[] sources, int[] fileTypes) throws IOException {
 		if (!open)
 			throw new IOException(Msg.fileManager_notOpen);
 		if (readOnly)
@@ -291,6 +331,12 @@ public final class StorageManager {
 			throw new IOException(Msg.fileManager_cannotLock);
 		try {
 			updateTable();
+			for (int i = 0; i < managedFiles.length; i++) {
+				if (fileTypes != null)
+					addEntry(managedFiles[i], fileTypes[i]);
+				else if (!table.containsKey(managedFiles[i]))
+					addEntry(managedFiles[i], FILETYPE_STANDARD);
+			}
 			int[] originalReadIDs = new int[managedFiles.length];
 			boolean error = false;
 			for (int i = 0; i < managedFiles.length; i++) {
@@ -568,10 +614,8 @@ public final class StorageManager {
 		tableStamp = ReliableFile.lastModifiedVersion(tableFile);
 	}
 
-	private boolean update(String managedFile, String source) throws IOException {
+	private boolean update(String managedFile, String source) {
 		Entry entry = (Entry) table.get(managedFile);
-		if (entry == null)
-			add(managedFile);
 		int newId = entry.getWriteId();
 		// attempt to rename the file to the next generation
 		boolean success = move(getAbsolutePath(source), getAbsolutePath(managedFile) + '.' + newId);
@@ -666,10 +710,16 @@ public final class StorageManager {
 	/**
 	 * This method declares the storage manager as closed. From thereon, the instance can no longer be used.
 	 * It is important to close the manager as it also cleans up old copies of the managed files.
+	 * @throws IllegalStateException if a batch of updates is still open
 	 */
 	public void close() {
 		if (!open)
 			return;
+		synchronized (this) {
+			// the updates of an open batch would be lost silently
+			if (openBatches > 0)
+				throw new IllegalStateException(NLS.bind(Msg.fileManager_batchOpen, Integer.valueOf(openBatches)));
+		}
 		open = false;
 		if (readOnly)
 			return;
@@ -838,6 +888,7 @@ public final class StorageManager {
 		if (set == null) {
 			set = new ManagedOutputStream[] {out};
 		}
+		removeFromBatch(set);
 		synchronized (set) {
 			for (int idx = 0; idx < set.length; idx++) {
 				out = set[idx];
@@ -864,6 +915,7 @@ public final class StorageManager {
 	 * Close the managed output stream and update the new content to  
 	 * this manager. If this managed output stream is part of a set, only after closing
 	 * all managed output streams in the set will storage manager be updated.
+	 * If a batch is open the update is deferred until the batch is committed.
 	 * 
 	 * @param smos the output stream.
 	 * @throws IOException if an errors occur.
@@ -873,64 +925,232 @@ public final class StorageManager {
 	void closeOutputStream(ManagedOutputStream smos) throws IOException {
 		if (smos.getState() != ManagedOutputStream.ST_OPEN)
 			return;
-		ManagedOutputStream[] streamSet = smos.getStreamSet();
+		// the content of streams closed in a batch is synchronized when the batch is committed
+		Batch batch = batches.get();
+		boolean sync = batch == null;
 		if (smos.getOutputFile() == null) {
 			// this is a ReliableFileOutputStream
 			ReliableFileOutputStream rfos = (ReliableFileOutputStream) smos.getOutputStream();
-			// manage file deletes
-			File file = rfos.closeIntermediateFile();
-			smos.setState(ManagedOutputStream.ST_CLOSED);
-			String target = smos.getTarget();
-			if (streamSet == null) {
-				add(target, StorageManager.FILETYPE_RELIABLEFILE);
-				update(new String[] {smos.getTarget()}, new String[] {file.getName()});
-				ReliableFile.fileUpdated(new File(getBase(), smos.getTarget()));
-			}
+			rfos.closeIntermediateFile(sync);
 		} else {
 			// this is a plain old file output steam
 			OutputStream out = smos.getOutputStream();
 			out.flush();
-			try {
-				((FileOutputStream) out).getFD().sync();
-			} catch (SyncFailedException e) {/*ignore*/
+			if (sync) {
+				try {
+					((FileOutputStream) out).getFD().sync();
+				} catch (SyncFailedException e) {/*ignore*/
+				}
 			}
 			out.close();
-			smos.setState(ManagedOutputStream.ST_CLOSED);
-			String target = smos.getTarget();
-			if (streamSet == null) {
-				add(target, StorageManager.FILETYPE_STANDARD);
-				update(new String[] {target}, new String[] {smos.getOutputFile().getName()});
+		}
+		smos.setState(ManagedOutputStream.ST_CLOSED);
+		smos.setSynced(sync);
+
+		ManagedOutputStream[] streamSet = smos.getStreamSet();
+		if (streamSet == null) {
+			if (batch != null)
+				addToBatch(batch, new ManagedOutputStream[] {smos});
+			else
+				update(new ManagedOutputStream[] {smos});
+			return;
+		}
+		synchronized (streamSet) {
+			//check all the streams to see if there are any left open....
+			for (int idx = 0; idx < streamSet.length; idx++) {
+				if (streamSet[idx].getState() == ManagedOutputStream.ST_OPEN)
+					return; //done
 			}
+			//all streams are closed, we need to update storage manager
+			if (batch != null) {
+				addToBatch(batch, streamSet);
+				return;
+			}
+			// streams of the set may have been closed by another thread in a batch
+			for (int idx = 0; idx < streamSet.length; idx++) {
+				if (!streamSet[idx].isSynced())
+					sync(getSourceFile(streamSet[idx]));
+			}
+			update(streamSet);
 		}
+	}
 
-		if (streamSet != null) {
-			synchronized (streamSet) {
-				//check all the streams to see if there are any left open....
-				for (int idx = 0; idx < streamSet.length; idx++) {
-					if (streamSet[idx].getState() == ManagedOutputStream.ST_OPEN)
-						return; //done
-				}
-				//all streams are closed, we need to update storage manager
-				String[] targets = new String[streamSet.length];
-				String[] sources = new String[streamSet.length];
-				for (int idx = 0; idx < streamSet.length; idx++) {
-					smos = streamSet[idx];
-					targets[idx] = smos.getTarget();
-					File outputFile = smos.getOutputFile();
-					if (outputFile == null) {
-						// this is a ReliableFile 
-						add(smos.getTarget(), StorageManager.FILETYPE_RELIABLEFILE);
-						ReliableFileOutputStream rfos = (ReliableFileOutputStream) smos.getOutputStream();
-						File file = rfos.closeIntermediateFile(); //multiple calls to close() ok
-						sources[idx] = file.getName();
-						ReliableFile.fileUpdated(new File(getBase(), smos.getTarget()));
-					} else {
-						add(smos.getTarget(), StorageManager.FILETYPE_STANDARD);
-						sources[idx] = outputFile.getName();
-					}
-				}
-				update(targets, sources);
+	/* (non-Javadoc)
+	 * Update this manager with the new content of the given closed managed output
+	 * streams.  The table is locked and saved once for all the streams.
+	 */
+	private void update(ManagedOutputStream[] streams) throws IOException {
+		String[] targets = new String[streams.length];
+		String[] sources = new String[streams.length];
+		int[] fileTypes = new int[streams.length];
+		for (int idx = 0; idx < streams.length; idx++) {
+			targets[idx] = streams[idx].getTarget();
+			sources[idx] = getSourceFile(streams[idx]).getName();
+			fileTypes[idx] = streams[idx].getOutputFile() == null ? FILETYPE_RELIABLEFILE : FILETYPE_STANDARD;
+		}
+		update(targets, sources, fileTypes);
+		for (int idx = 0; idx < streams.length; idx++) {
+			if (fileTypes[idx] == FILETYPE_RELIABLEFILE) {
+				// the checksum of the new generation is already known
+				ReliableFileOutputStream rfos = (ReliableFileOutputStream) streams[idx].getOutputStream();
+				rfos.intermediateFileRenamed(new File(getAbsolutePath(targets[idx] + '.' + getId(targets[idx]))));
+				ReliableFile.fileUpdated(new File(getBase(), targets[idx]));
 			}
 		}
 	}
-}
\ No newline at end of file
+
+	/* (non-Javadoc)
+	 * Returns the file holding the new content of a closed managed output stream.
+	 */
+	private static File getSourceFile(ManagedOutputStream smos) throws IOException {
+		File outputFile = smos.getOutputFile();
+		if (outputFile != null)
+			return outputFile;
+		// this is a ReliableFile; multiple calls to closeIntermediateFile() are ok
+		return ((ReliableFileOutputStream) smos.getOutputStream()).closeIntermediateFile(false);
+	}
+
+	/* (non-Javadoc)
+	 * Discards the new content of a closed managed output stream.
+	 */
+	private static void discard(ManagedOutputStream smos) {
+		if (smos.getOutputFile() == null)
+			((ReliableFileOutputStream) smos.getOutputStream()).abort();
+		else
+			smos.getOutputFile().delete();
+	}
+
+	private static void sync(File file) {
+		// do not create a missing file; the update of a missing file fails
+		if (!file.isFile())
+			return;
+		try {
+			FileOutputStream out = new FileOutputStream(file, true);
+			try {
+				out.getFD().sync();
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {/*ignore*/
+		}
+	}
+
+	/* (non-Javadoc)
+	 * Adds the given closed managed output streams to the given batch.  A stream 
+	 * replaces a stream for the same managed file which was added before.
+	 */
+	private static void addToBatch(Batch batch, ManagedOutputStream[] streams) {
+		for (int idx = 0; idx < streams.length; idx++) {
+			ManagedOutputStream replaced = batch.streams.put(streams[idx].getTarget(), streams[idx]);
+			if (replaced != null && replaced != streams[idx])
+				discard(replaced);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * Removes the given managed output streams from the batch of the current thread.
+	 */
+	private void removeFromBatch(ManagedOutputStream[] streams) {
+		Batch batch = batches.get();
+		if (batch == null)
+			return;
+		for (int idx = 0; idx < streams.length; idx++) {
+			if (batch.streams.get(streams[idx].getTarget()) == streams[idx])
+				batch.streams.remove(streams[idx].getTarget());
+		}
+	}
+
+	/* (non-Javadoc)
+	 * Ends the batch of the current thread.
+	 */
+	private void endBatch() {
+		batches.remove();
+		synchronized (this) {
+			openBatches--;
+		}
+	}
+
+	/**
+	 * Begins a batch of updates for the current thread.  Until the batch is committed 
+	 * the new content of managed output streams and managed output stream sets closed
+	 * by the current thread is not updated when the streams are closed.  Instead all 
+	 * the streams closed in the batch are updated together when the batch is committed:
+	 * the content of the streams is synchronized with the disk one file after the other
+	 * and then the table is locked and saved once.  If a managed file is written more
+	 * than once in a batch only the content written last is updated.
+	 * <p>
+	 * A batch is confined to the thread which began it; streams closed by other threads
+	 * are updated when they are closed.  Batches can be nested; the updates are committed
+	 * when the outermost batch is committed.  Each call to this method must be followed
+	 * by a call to {@link #commitBatch()} or {@link #abortBatch()} by the same thread
+	 * before the storage manager is closed.
+	 * </p>
+	 * @throws IOException if the storage manager is not open or is read-only
+	 * @see #commitBatch()
+	 * @see #abortBatch()
+	 * @since 3.10
+	 */
+	public void beginBatch() throws IOException {
+		if (!open)
+			throw new IOException(Msg.fileManager_notOpen);
+		if (readOnly)
+			throw new IOException(Msg.fileManager_illegalInReadOnlyMode);
+		Batch batch = batches.get();
+		if (batch != null) {
+			batch.depth++;
+			return;
+		}
+		batches.set(new Batch());
+		synchronized (this) {
+			openBatches++;
+		}
+	}
+
+	/**
+	 * Commits the batch of updates begun by {@link #beginBatch()} on the current thread.
+	 * If the batch is nested in another batch then the updates are committed with the 
+	 * outer batch.  Managed output streams which are still open are not part of the batch
+	 * and are updated when they are closed.  If the current thread has no open batch this
+	 * method does nothing.
+	 * <p>
+	 * The managed files of the batch are updated as a group; if any of the 
+	 * updates fails then none of the managed files is updated and the batch remains
+	 * open.  The batch then must be committed again or aborted with {@link #abortBatch()}.
+	 * </p>
+	 * @throws IOException if an error occurs updating the managed files
+	 * @since 3.10
+	 */
+	public void commitBatch() throws IOException {
+		Batch batch = batches.get();
+		if (batch == null)
+			return;
+		if (batch.depth > 1) {
+			batch.depth--;
+			return;
+		}
+		if (!batch.streams.isEmpty()) {
+			ManagedOutputStream[] streams = batch.streams.values().toArray(new ManagedOutputStream[batch.streams.size()]);
+			for (int idx = 0; idx < streams.length; idx++)
+				sync(getSourceFile(streams[idx]));
+			update(streams);
+		}
+		// only end the batch once its content is updated
+		endBatch();
+	}
+
+	/**
+	 * Aborts the open batch of updates begun by {@link #beginBatch()} on the current
+	 * thread including any outer batches.  The new content of all the managed output
+	 * streams closed in the batch is discarded.  If the current thread has no open
+	 * batch this method does nothing.
+	 * @since 3.10
+	 */
+	public void abortBatch() {
+		Batch batch = batches.get();
+		if (batch == null)
+			return;
+		endBatch();
+		for (Iterator<ManagedOutputStream> streams = batch.streams.values().iterator(); streams.hasNext();)
+			discard(streams.next());
+	}
+}